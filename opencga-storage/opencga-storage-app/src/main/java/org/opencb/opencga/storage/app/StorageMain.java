@@ -85,6 +85,12 @@ public class StorageMain {
                     case "stats-variants":
                         commandExecutor = new StatsVariantsCommandExecutor(cliOptionsParser.getStatsVariantsCommandOptions());
                         break;
+                    case "benchmark-variants":
+                        commandExecutor = new BenchmarkVariantsCommandExecutor(cliOptionsParser.getBenchmarkVariantsCommandOptions());
+                        break;
+                    case "advise-indexes":
+                        commandExecutor = new AdviseIndexesCommandExecutor(cliOptionsParser.getAdviseIndexesCommandOptions());
+                        break;
                     default:
                         System.out.printf("ERROR: not valid command passed: '" + parsedCommand + "'");
                         break;
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.app.cli;
+
+import org.opencb.opencga.storage.core.StorageManagerFactory;
+import org.opencb.opencga.storage.core.config.StorageEngineConfiguration;
+import org.opencb.opencga.storage.core.variant.VariantStorageManager;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantIndexAdvisor;
+
+import java.util.List;
+
+/**
+ * Prints the indexes suggested by the {@link VariantIndexAdvisor} of the selected storage engine, and optionally creates them.
+ */
+public class AdviseIndexesCommandExecutor extends CommandExecutor {
+
+    private CliOptionsParser.AdviseIndexesCommandOptions adviseIndexesCommandOptions;
+
+
+    public AdviseIndexesCommandExecutor(CliOptionsParser.AdviseIndexesCommandOptions adviseIndexesCommandOptions) {
+        super(adviseIndexesCommandOptions.logLevel, adviseIndexesCommandOptions.verbose,
+                adviseIndexesCommandOptions.configFile);
+
+        this.logFile = adviseIndexesCommandOptions.logFile;
+        this.adviseIndexesCommandOptions = adviseIndexesCommandOptions;
+    }
+
+
+    @Override
+    public void execute() throws Exception {
+        String storageEngine = (adviseIndexesCommandOptions.storageEngine != null && !adviseIndexesCommandOptions.storageEngine.isEmpty())
+                ? adviseIndexesCommandOptions.storageEngine
+                : configuration.getDefaultStorageEngineId();
+        logger.debug("Storage Engine set to '{}'", storageEngine);
+
+        StorageEngineConfiguration storageConfiguration = configuration.getStorageEngine(storageEngine);
+        storageConfiguration.getVariant().getOptions().putAll(adviseIndexesCommandOptions.params);
+
+        VariantStorageManager variantStorageManager = new StorageManagerFactory(configuration).getVariantStorageManager(storageEngine);
+        String dbName = adviseIndexesCommandOptions.dbName;
+        if (dbName == null || dbName.isEmpty()) {
+            dbName = storageConfiguration.getVariant().getOptions().getString(VariantStorageManager.Options.DB_NAME.key());
+        }
+        VariantIndexAdvisor indexAdvisor = variantStorageManager.getIndexAdvisor(dbName);
+
+        List<VariantIndexAdvisor.IndexAdvice> advice = indexAdvisor.getAdvice(adviseIndexesCommandOptions.minRatio);
+        if (advice.isEmpty()) {
+            System.out.println("No index suggested. Sample more queries with the option dbadaptor.index_advisor.sample_rate");
+            return;
+        }
+        for (VariantIndexAdvisor.IndexAdvice indexAdvice : advice) {
+            System.out.println(indexAdvice);
+        }
+
+        if (adviseIndexesCommandOptions.create) {
+            indexAdvisor.createIndexes(advice);
+            logger.info("Created {} indexes", advice.size());
+        }
+    }
+}
@@ -100,13 +100,18 @@ public class AnnotateVariantsCommandExecutor extends CommandExecutor {
             doLoad = true;
         }
 
+        QueryOptions annotationOptions = new QueryOptions(VariantAnnotationManager.INCREMENTAL, annotateVariantsCommandOptions.incremental);
+        if (annotateVariantsCommandOptions.annotationVersion != null) {
+            annotationOptions.put(VariantAnnotationManager.ANNOTATION_VERSION, annotateVariantsCommandOptions.annotationVersion);
+        }
+
         URI annotationFile = null;
         if (doCreate) {
             long start = System.currentTimeMillis();
             logger.info("Starting annotation creation ");
             annotationFile = variantAnnotationManager.createAnnotation(outDir,
                     annotateVariantsCommandOptions.fileName == null ? annotateVariantsCommandOptions.dbName : annotateVariantsCommandOptions.fileName,
-                    query, new QueryOptions());
+                    query, annotationOptions);
             logger.info("Finished annotation creation {}ms", System.currentTimeMillis() - start);
         }
 
@@ -117,7 +122,7 @@ public class AnnotateVariantsCommandExecutor extends CommandExecutor {
 //                annotationFile = new URI(null, c.load, null);
                 annotationFile = Paths.get(annotateVariantsCommandOptions.load).toUri();
             }
-            variantAnnotationManager.loadAnnotation(annotationFile, new QueryOptions());
+            variantAnnotationManager.loadAnnotation(annotationFile, annotationOptions);
             logger.info("Finished annotation load {}ms", System.currentTimeMillis() - start);
         }
     }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.app.cli;
+
+import org.opencb.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.StorageManagerFactory;
+import org.opencb.opencga.storage.core.benchmark.BenchmarkStats;
+import org.opencb.opencga.storage.core.benchmark.VariantPerformanceEvaluator;
+import org.opencb.opencga.storage.core.config.StorageEngineConfiguration;
+import org.opencb.opencga.storage.core.variant.VariantStorageManager;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link VariantPerformanceEvaluator} against the selected storage engine.
+ */
+public class BenchmarkVariantsCommandExecutor extends CommandExecutor {
+
+    private CliOptionsParser.BenchmarkVariantsCommandOptions benchmarkVariantsCommandOptions;
+
+
+    public BenchmarkVariantsCommandExecutor(CliOptionsParser.BenchmarkVariantsCommandOptions benchmarkVariantsCommandOptions) {
+        super(benchmarkVariantsCommandOptions.logLevel, benchmarkVariantsCommandOptions.verbose,
+                benchmarkVariantsCommandOptions.configFile);
+
+        this.logFile = benchmarkVariantsCommandOptions.logFile;
+        this.benchmarkVariantsCommandOptions = benchmarkVariantsCommandOptions;
+    }
+
+
+    @Override
+    public void execute() throws Exception {
+        if (benchmarkVariantsCommandOptions.numQueries <= 0 && benchmarkVariantsCommandOptions.duration <= 0) {
+            throw new IllegalArgumentException("Either --num-queries or --duration must be greater than 0");
+        }
+
+        String storageEngine = (benchmarkVariantsCommandOptions.storageEngine != null && !benchmarkVariantsCommandOptions.storageEngine.isEmpty())
+                ? benchmarkVariantsCommandOptions.storageEngine
+                : configuration.getDefaultStorageEngineId();
+        logger.debug("Storage Engine set to '{}'", storageEngine);
+
+        StorageEngineConfiguration storageConfiguration = configuration.getStorageEngine(storageEngine);
+        storageConfiguration.getVariant().getOptions().putAll(benchmarkVariantsCommandOptions.params);
+
+        VariantStorageManager variantStorageManager = new StorageManagerFactory(configuration).getVariantStorageManager(storageEngine);
+        String dbName = benchmarkVariantsCommandOptions.dbName;
+        if (dbName == null || dbName.isEmpty()) {
+            dbName = storageConfiguration.getVariant().getOptions().getString(VariantStorageManager.Options.DB_NAME.key());
+        }
+        VariantDBAdaptor dbAdaptor = variantStorageManager.getDBAdaptor(dbName);
+
+        VariantPerformanceEvaluator evaluator = new VariantPerformanceEvaluator(dbAdaptor)
+                .setNumClients(benchmarkVariantsCommandOptions.numClients)
+                .setNumQueries(benchmarkVariantsCommandOptions.numQueries)
+                .setDuration(benchmarkVariantsCommandOptions.duration, TimeUnit.SECONDS)
+                .setRegionLength(benchmarkVariantsCommandOptions.regionLength)
+                .setStudy(benchmarkVariantsCommandOptions.study)
+                .setCohort(benchmarkVariantsCommandOptions.cohort)
+                .setQueryOptions(new QueryOptions("limit", benchmarkVariantsCommandOptions.limit));
+
+        if (benchmarkVariantsCommandOptions.queryMix != null && !benchmarkVariantsCommandOptions.queryMix.isEmpty()) {
+            evaluator.setQueryMix(parseQueryMix(benchmarkVariantsCommandOptions.queryMix));
+        }
+        if (benchmarkVariantsCommandOptions.region != null && !benchmarkVariantsCommandOptions.region.isEmpty()) {
+            evaluator.setRegions(splitCsv(benchmarkVariantsCommandOptions.region));
+        }
+        if (benchmarkVariantsCommandOptions.gene != null && !benchmarkVariantsCommandOptions.gene.isEmpty()) {
+            evaluator.setGenes(splitCsv(benchmarkVariantsCommandOptions.gene));
+        }
+        if (benchmarkVariantsCommandOptions.consequenceType != null && !benchmarkVariantsCommandOptions.consequenceType.isEmpty()) {
+            evaluator.setConsequenceTypes(splitCsv(benchmarkVariantsCommandOptions.consequenceType));
+        }
+        if (benchmarkVariantsCommandOptions.seed != null) {
+            evaluator.setSeed(benchmarkVariantsCommandOptions.seed);
+        }
+
+        BenchmarkStats stats = evaluator.run();
+
+        if (benchmarkVariantsCommandOptions.output == null || benchmarkVariantsCommandOptions.output.isEmpty()) {
+            System.out.print(stats);
+        } else {
+            try (PrintStream printStream = new PrintStream(benchmarkVariantsCommandOptions.output)) {
+                printStream.print(stats);
+            }
+        }
+    }
+
+    private static Map<VariantPerformanceEvaluator.QueryType, Integer> parseQueryMix(String queryMix) {
+        Map<VariantPerformanceEvaluator.QueryType, Integer> mix = new EnumMap<>(VariantPerformanceEvaluator.QueryType.class);
+        for (String entry : splitCsv(queryMix)) {
+            String[] split = entry.split(":");
+            if (split.length != 2) {
+                throw new IllegalArgumentException("Invalid query mix entry '" + entry + "'. Expected <query-type>:<weight>");
+            }
+            mix.put(VariantPerformanceEvaluator.QueryType.valueOf(split[0].trim().toUpperCase()), Integer.parseInt(split[1].trim()));
+        }
+        return mix;
+    }
+
+    private static List<String> splitCsv(String csv) {
+        return Arrays.asList(csv.split(","));
+    }
+}
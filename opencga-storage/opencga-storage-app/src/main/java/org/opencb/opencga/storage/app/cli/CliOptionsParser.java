@@ -48,6 +48,8 @@ public class CliOptionsParser {
 
     private final AnnotateVariantsCommandOptions annotateVariantsCommandOptions;
     private final StatsVariantsCommandOptions statsVariantsCommandOptions;
+    private final BenchmarkVariantsCommandOptions benchmarkVariantsCommandOptions;
+    private final AdviseIndexesCommandOptions adviseIndexesCommandOptions;
 
     public CliOptionsParser() {
 
@@ -66,6 +68,8 @@ public class CliOptionsParser {
         queryVariantsCommandOptions = new QueryVariantsCommandOptions();
         annotateVariantsCommandOptions = new AnnotateVariantsCommandOptions();
         statsVariantsCommandOptions = new StatsVariantsCommandOptions();
+        benchmarkVariantsCommandOptions = new BenchmarkVariantsCommandOptions();
+        adviseIndexesCommandOptions = new AdviseIndexesCommandOptions();
 
         jcommander.addCommand("create-accessions", createAccessionsCommandOption);
         jcommander.addCommand("index-alignments", indexAlignmentsCommandOptions);
@@ -75,6 +79,8 @@ public class CliOptionsParser {
         jcommander.addCommand("fetch-variants", queryVariantsCommandOptions);
         jcommander.addCommand("annotate-variants", annotateVariantsCommandOptions);
         jcommander.addCommand("stats-variants", statsVariantsCommandOptions);
+        jcommander.addCommand("benchmark-variants", benchmarkVariantsCommandOptions);
+        jcommander.addCommand("advise-indexes", adviseIndexesCommandOptions);
     }
 
     public void parse(String[] args) throws ParameterException {
@@ -267,7 +273,7 @@ public class CliOptionsParser {
         @Parameter(names = {"--annotate"}, description = "Annotate indexed variants after the load step")
         public boolean annotate;
 
-        @Parameter(names = {"--annotator"}, description = "Annotation source {cellbase_rest, cellbase_db_adaptor}")
+        @Parameter(names = {"--annotator"}, description = "Annotation source {cellbase_rest, cellbase_db_adaptor, command_line}")
         public org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager.AnnotationSource annotator = null;
 
         @Parameter(names = {"--overwrite-annotations"}, description = "Overwrite annotations in variants already present")
@@ -463,12 +469,18 @@ public class CliOptionsParser {
         @Parameter(names = {"--load"}, description = "Run only the load of the annotations into the DB from FILE")
         public String load = null;
 
-        @Parameter(names = {"--annotator"}, description = "Annotation source {cellbase_rest, cellbase_db_adaptor}")
+        @Parameter(names = {"--annotator"}, description = "Annotation source {cellbase_rest, cellbase_db_adaptor, command_line}")
         public org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager.AnnotationSource annotator;
 
         @Parameter(names = {"--overwrite-annotations"}, description = "Overwrite annotations in variants already present")
         public boolean overwriteAnnotations = false;
 
+        @Parameter(names = {"--incremental"}, description = "Annotate only the variants without annotation, or annotated with other version of the annotator")
+        public boolean incremental = false;
+
+        @Parameter(names = {"--annotation-version"}, description = "Version of the annotator that created the file to load. Default: read from FILE.version, written with --create", arity = 1)
+        public String annotationVersion;
+
         @Deprecated
         @Parameter(names = {"--annotator-config"}, description = "Path to the file with the configuration of the annotator")
         public String annotatorConfig;
@@ -568,6 +580,68 @@ public class CliOptionsParser {
         */
     }
 
+    @Parameters(commandNames = {"benchmark-variants"}, commandDescription = "Run a query load benchmark over indexed variants")
+    public class BenchmarkVariantsCommandOptions extends CommonCommandOptions {
+
+        @Parameter(names = {"-d", "--database"}, description = "DataBase name", required = false, arity = 1)
+        public String dbName;
+
+        @Parameter(names = {"--num-clients"}, description = "Number of concurrent clients", required = false, arity = 1)
+        public int numClients = 4;
+
+        @Parameter(names = {"--num-queries"}, description = "Total number of queries. Use 0 to run until --duration is reached", required = false, arity = 1)
+        public int numQueries = 1000;
+
+        @Parameter(names = {"--duration"}, description = "Maximum duration of the benchmark, in seconds. 0 for no limit", required = false, arity = 1)
+        public int duration = 0;
+
+        @Parameter(names = {"--query-mix"}, description = "Relative weight of each query type. example: region:4,gene:2,consequence_type:1,maf:2,genotype:1", required = false, arity = 1)
+        public String queryMix;
+
+        @Parameter(names = {"-r", "--region"}, description = "CSV list of regions to query. If missing, random regions are generated", required = false, arity = 1)
+        public String region;
+
+        @Parameter(names = {"--region-length"}, description = "Length of the random regions", required = false, arity = 1)
+        public int regionLength = 100000;
+
+        @Parameter(names = {"-g", "--gene"}, description = "CSV list of genes to query", required = false, arity = 1)
+        public String gene;
+
+        @Parameter(names = {"--ct", "--consequence-type"}, description = "CSV list of consequence type SO terms to query", required = false, arity = 1)
+        public String consequenceType;
+
+        @Parameter(names = {"-s", "--study"}, description = "Study to query. Default: first study in the database", required = false, arity = 1)
+        public String study;
+
+        @Parameter(names = {"--cohort"}, description = "Cohort used in MAF queries. Default: first cohort with stats", required = false, arity = 1)
+        public String cohort;
+
+        @Parameter(names = {"--limit"}, description = "Limit the number of returned elements per query", required = false, arity = 1)
+        public int limit = 100;
+
+        @Parameter(names = {"--seed"}, description = "Seed for the random query generation", required = false, arity = 1)
+        public Long seed;
+
+        @Parameter(names = {"-o", "--output"}, description = "Write the results into this file. [STDOUT]", required = false, arity = 1)
+        public String output;
+
+    }
+
+    @Parameters(commandNames = {"advise-indexes"}, commandDescription = "Suggest indexes for the variant queries sampled with the option " +
+            "dbadaptor.index_advisor.sample_rate")
+    public class AdviseIndexesCommandOptions extends CommonCommandOptions {
+
+        @Parameter(names = {"-d", "--database"}, description = "DataBase name", required = false, arity = 1)
+        public String dbName;
+
+        @Parameter(names = {"--min-ratio"}, description = "Minimum number of documents examined per returned document to consider a query inefficient", required = false, arity = 1)
+        public double minRatio = 10;
+
+        @Parameter(names = {"--create"}, description = "Create the suggested indexes", required = false, arity = 0)
+        public boolean create = false;
+
+    }
+
     public void printUsage(){
         if(getCommand().isEmpty()) {
             System.err.println("");
@@ -687,4 +761,12 @@ public class CliOptionsParser {
         return statsVariantsCommandOptions;
     }
 
+    public BenchmarkVariantsCommandOptions getBenchmarkVariantsCommandOptions() {
+        return benchmarkVariantsCommandOptions;
+    }
+
+    public AdviseIndexesCommandOptions getAdviseIndexesCommandOptions() {
+        return adviseIndexesCommandOptions;
+    }
+
 }
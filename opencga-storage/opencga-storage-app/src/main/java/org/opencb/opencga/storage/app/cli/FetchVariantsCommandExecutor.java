@@ -300,7 +300,7 @@ public class FetchVariantsCommandExecutor extends CommandExecutor {
 
 
         if (queryVariantsCommandOptions.count) {
-            QueryResult<Long> result = variantDBAdaptor.count(query);
+            QueryResult<Long> result = variantDBAdaptor.count(query, options);
             System.out.println("Num. results\t" + result.getResult().get(0));
             return;
         }
@@ -123,7 +123,7 @@ public class StatsVariantsCommandExecutor extends CommandExecutor {
         String filename = outputUri.equals(directoryUri) ? VariantStorageManager.buildFilename(studyConfiguration.getStudyName(), statsVariantsCommandOptions.fileId)
                 : Paths.get(outputUri.getPath()).getFileName().toString();
         assertDirectoryExists(directoryUri);
-        VariantStatisticsManager variantStatisticsManager = new VariantStatisticsManager();
+        VariantStatisticsManager variantStatisticsManager = variantStorageManager.getVariantStatisticsManager();
 
         boolean doCreate = true;
         boolean doLoad = true;
@@ -141,6 +141,12 @@ public class StatsVariantsCommandExecutor extends CommandExecutor {
                     .collect(Collectors.toMap(Map.Entry::getKey, e -> Integer.parseInt(e.getValue())));
 
             QueryOptions queryOptions = new QueryOptions(options);
+            if (options.getBoolean(VariantStorageManager.Options.STATS_DIRECT.key(), false)) {
+                // Without timestamp, so an interrupted calculation can be resumed from its checkpoint
+                variantStatisticsManager.calculateStats(dbAdaptor, outputUri.resolve(filename), cohorts, cohortIds,
+                        studyConfiguration, queryOptions);
+                doCreate = doLoad = false;
+            }
             if (doCreate) {
                 filename += "." + TimeUtils.getTime();
                 outputUri = outputUri.resolve(filename);
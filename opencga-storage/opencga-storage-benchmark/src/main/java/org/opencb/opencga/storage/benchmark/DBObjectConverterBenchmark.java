@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.benchmark;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.StudyConfiguration;
+import org.opencb.opencga.storage.mongodb.variant.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting variants to and from the MongoDB storage model.
+ *
+ * Measures the whole {@link DBObjectToVariantConverter}, and the {@link DBObjectToSamplesConverter} alone,
+ * which is the most expensive part for files with many samples.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class DBObjectConverterBenchmark {
+
+    private List<Variant> variants;
+    private List<DBObject> variantObjects;
+    private List<DBObject> studyObjects;
+    private DBObjectToVariantConverter variantConverter;
+    private DBObjectToSamplesConverter samplesConverter;
+
+    @Setup(Level.Trial)
+    public void setUp(VcfBenchmarkState vcf) {
+        StudyConfiguration studyConfiguration = new StudyConfiguration(VcfBenchmarkState.STUDY_ID, "study",
+                VcfBenchmarkState.FILE_ID, vcf.vcf);
+        LinkedHashSet<Integer> sampleIds = new LinkedHashSet<>();
+        for (int i = 0; i < vcf.samples.size(); i++) {
+            studyConfiguration.getSampleIds().put(vcf.samples.get(i), i);
+            sampleIds.add(i);
+        }
+        studyConfiguration.getSamplesInFiles().put(VcfBenchmarkState.FILE_ID, sampleIds);
+        studyConfiguration.getIndexedFiles().add(VcfBenchmarkState.FILE_ID);
+        studyConfiguration.getAttributes().put(MongoDBVariantStorageManager.DEFAULT_GENOTYPE, "0/0");
+
+        samplesConverter = new DBObjectToSamplesConverter(studyConfiguration);
+        DBObjectToStudyVariantEntryConverter studyEntryConverter = new DBObjectToStudyVariantEntryConverter(false, samplesConverter);
+        variantConverter = new DBObjectToVariantConverter(studyEntryConverter, new DBObjectToVariantStatsConverter());
+
+        variants = vcf.parseVariants();
+        variantObjects = new ArrayList<>(variants.size());
+        studyObjects = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            variantObjects.add(variantConverter.convertToStorageType(variant));
+            studyObjects.add(studyEntryConverter.convertToStorageType(variant.getStudies().get(0)));
+        }
+    }
+
+    @Benchmark
+    public void variantToStorage(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            blackhole.consume(variantConverter.convertToStorageType(variant));
+        }
+    }
+
+    @Benchmark
+    public void variantToDataModel(Blackhole blackhole) {
+        for (DBObject object : variantObjects) {
+            blackhole.consume(variantConverter.convertToDataModelType(object));
+        }
+    }
+
+    @Benchmark
+    public void samplesToStorage(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            StudyEntry studyEntry = variant.getStudies().get(0);
+            blackhole.consume(samplesConverter.convertToStorageType(studyEntry,
+                    VcfBenchmarkState.STUDY_ID, VcfBenchmarkState.FILE_ID, new BasicDBObject()));
+        }
+    }
+
+    @Benchmark
+    public void samplesToDataModel(Blackhole blackhole) {
+        for (DBObject object : studyObjects) {
+            blackhole.consume(samplesConverter.convertToDataModelType(object, VcfBenchmarkState.STUDY_ID));
+        }
+    }
+
+}
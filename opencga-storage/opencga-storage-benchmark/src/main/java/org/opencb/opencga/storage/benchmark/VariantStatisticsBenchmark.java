@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.benchmark;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatisticsCalculator;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link VariantStatisticsCalculator#calculateBatch} over the variants of the test file.
+ *
+ * Stats are computed for the cohort ALL plus a number of cohorts with half of the samples each.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class VariantStatisticsBenchmark {
+
+    @Param({"1", "4"})
+    public int numCohorts;
+
+    private List<Variant> variants;
+    private String studyId;
+    private Map<String, Set<String>> cohorts;
+    private VariantStatisticsCalculator calculator;
+
+    @Setup(Level.Trial)
+    public void setUp(VcfBenchmarkState vcf) {
+        variants = vcf.parseVariants();
+        studyId = vcf.source.getStudyId();
+        cohorts = new LinkedHashMap<>();
+        cohorts.put("ALL", new HashSet<>(vcf.samples));
+        for (int i = 1; i < numCohorts; i++) {
+            Set<String> cohort = new HashSet<>();
+            for (int s = 0; s < vcf.samples.size(); s++) {
+                if ((s + i) % 2 == 0) {
+                    cohort.add(vcf.samples.get(s));
+                }
+            }
+            cohorts.put("cohort" + i, cohort);
+        }
+        // Overwrite, so every invocation computes the stats again
+        calculator = new VariantStatisticsCalculator(true);
+    }
+
+    @Benchmark
+    public List<VariantStatsWrapper> calculateBatch() {
+        return calculator.calculateBatch(variants, studyId, null, cohorts);
+    }
+
+}
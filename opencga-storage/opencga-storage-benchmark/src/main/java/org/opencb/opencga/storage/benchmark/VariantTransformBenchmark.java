@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.benchmark;
+
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+import org.opencb.opencga.storage.core.variant.transform.VariantAvroTransformTask;
+import org.opencb.opencga.storage.core.variant.transform.VariantJsonTransformTask;
+import org.opencb.opencga.storage.core.variant.transform.VariantTransformTask;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the transform step: VCF lines parsed, normalized and encoded by a {@link VariantTransformTask}.
+ *
+ * Compares the HTSJDK parser against the biodata {@link VariantVcfFactory}, combined with the avro and json encoders.
+ * Each invocation transforms the whole test file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class VariantTransformBenchmark {
+
+    @Param({"htsjdk", "biodata"})
+    public String parser;
+
+    @Param({"avro", "json"})
+    public String format;
+
+    private List<String> lines;
+    private VariantTransformTask<?> task;
+
+    @Setup(Level.Trial)
+    public void setUp(VcfBenchmarkState vcf) {
+        lines = vcf.variantLines;
+        if (parser.equals("htsjdk")) {
+            task = format.equals("avro")
+                    ? new VariantAvroTransformTask(vcf.header, vcf.headerVersion, vcf.source, vcf.outputMetaFile, false)
+                    : new VariantJsonTransformTask(vcf.header, vcf.headerVersion, vcf.source, vcf.outputMetaFile, false);
+        } else {
+            task = format.equals("avro")
+                    ? new VariantAvroTransformTask(new VariantVcfFactory(), vcf.source, vcf.outputMetaFile, false)
+                    : new VariantJsonTransformTask(new VariantVcfFactory(), vcf.source, vcf.outputMetaFile, false);
+        }
+        task.pre();
+    }
+
+    @Benchmark
+    public List<?> transform() {
+        return task.apply(lines);
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.benchmark;
+
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+import org.opencb.biodata.models.variant.exceptions.NotAVariantException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Benchmark state with the lines of one of the test VCFs bundled with opencga-storage-core.
+ *
+ * The whole file is loaded in memory on setup, so the benchmarks do not measure any I/O.
+ */
+@State(Scope.Benchmark)
+public class VcfBenchmarkState {
+
+    public static final int STUDY_ID = 1;
+    public static final int FILE_ID = 1;
+
+    /** Few samples, many INFO fields vs 2504 samples from the 1000 Genomes project. */
+    @Param({"variant-test-file.vcf.gz", "1k.chr1.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz"})
+    public String vcf;
+
+    public List<String> headerLines;
+    public List<String> variantLines;
+    public VCFHeader header;
+    public VCFHeaderVersion headerVersion;
+    public VariantSource source;
+    public List<String> samples;
+    public Path outputMetaFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        headerLines = new ArrayList<>();
+        variantLines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(openResource(vcf), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    headerLines.add(line);
+                } else if (!line.trim().isEmpty()) {
+                    variantLines.add(line);
+                }
+            }
+        }
+
+        FullVcfCodec codec = new FullVcfCodec();
+        LineIterator lineIterator = codec.makeSourceFromStream(
+                new ByteArrayInputStream(String.join("\n", headerLines).concat("\n").getBytes(StandardCharsets.UTF_8)));
+        header = (VCFHeader) codec.readActualHeader(lineIterator);
+        headerVersion = codec.getVCFHeaderVersion();
+
+        samples = new ArrayList<>(header.getGenotypeSamples());
+        Map<String, Integer> samplesPosition = new LinkedHashMap<>();
+        for (int i = 0; i < samples.size(); i++) {
+            samplesPosition.put(samples.get(i), i);
+        }
+        source = new VariantSource(vcf, Integer.toString(FILE_ID), Integer.toString(STUDY_ID), "study");
+        source.setSamplesPosition(samplesPosition);
+        source.addMetadata("variantFileHeader", String.join("\n", headerLines));
+
+        outputMetaFile = Files.createTempFile("benchmark", ".file.json");
+        outputMetaFile.toFile().deleteOnExit();
+    }
+
+    /**
+     * Parse the variant lines with the biodata {@link VariantVcfFactory}.
+     * Each call returns new Variant objects, so benchmarks are free to modify them.
+     *
+     * @return  Variants of the test file
+     */
+    public List<Variant> parseVariants() {
+        VariantVcfFactory factory = new VariantVcfFactory();
+        List<Variant> variants = new ArrayList<>(variantLines.size());
+        for (String line : variantLines) {
+            try {
+                variants.addAll(factory.create(source, line));
+            } catch (NotAVariantException ignore) {
+                // Skip non variant lines
+            }
+        }
+        return variants;
+    }
+
+    private static InputStream openResource(String name) throws IOException {
+        InputStream is = VcfBenchmarkState.class.getClassLoader().getResourceAsStream(name);
+        if (is == null) {
+            throw new FileNotFoundException("Test VCF " + name + " not found in the classpath");
+        }
+        return name.endsWith(".gz") ? new GZIPInputStream(is) : is;
+    }
+}
@@ -16,9 +16,175 @@
 
 package org.opencb.opencga.storage.core.benchmark;
 
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by imedina on 16/06/15.
+ *
+ * Latencies and throughput of a benchmark, grouped by query type.
+ * Latencies are kept in nanoseconds, and reported in milliseconds.
  */
 public class BenchmarkStats {
 
+    public static final String ALL = "ALL";
+
+    private final Map<String, Latencies> latencies = new TreeMap<>();
+    private long elapsedTime;
+
+    public BenchmarkStats() {
+    }
+
+    /**
+     * Register a finished query. Not thread safe: use one BenchmarkStats per client and {@link #merge} them.
+     *
+     * @param queryType     Type of query
+     * @param nanos         Latency of the query in nanoseconds
+     * @param error         If the query failed
+     */
+    public void addQuery(String queryType, long nanos, boolean error) {
+        latencies.computeIfAbsent(queryType, k -> new Latencies()).add(nanos, error);
+    }
+
+    public BenchmarkStats merge(BenchmarkStats other) {
+        for (Map.Entry<String, Latencies> entry : other.latencies.entrySet()) {
+            latencies.computeIfAbsent(entry.getKey(), k -> new Latencies()).addAll(entry.getValue());
+        }
+        elapsedTime = Math.max(elapsedTime, other.elapsedTime);
+        return this;
+    }
+
+    public Set<String> getQueryTypes() {
+        return Collections.unmodifiableSet(latencies.keySet());
+    }
+
+    public long getNumQueries() {
+        return getNumQueries(ALL);
+    }
+
+    public long getNumQueries(String queryType) {
+        return getLatencies(queryType).size;
+    }
+
+    public long getNumErrors(String queryType) {
+        return getLatencies(queryType).errors;
+    }
+
+    /**
+     * @param queryType Type of query, or {@link #ALL}
+     * @param percentile Percentile, from 0 to 100
+     * @return Latency in milliseconds. Nearest-rank method.
+     */
+    public double getPercentile(String queryType, double percentile) {
+        long[] sorted = getLatencies(queryType).sorted();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return toMillis(sorted[Math.min(Math.max(rank, 1), sorted.length) - 1]);
+    }
+
+    public double getP50(String queryType) {
+        return getPercentile(queryType, 50);
+    }
+
+    public double getP95(String queryType) {
+        return getPercentile(queryType, 95);
+    }
+
+    public double getP99(String queryType) {
+        return getPercentile(queryType, 99);
+    }
+
+    public double getMax(String queryType) {
+        return getPercentile(queryType, 100);
+    }
+
+    public double getMean(String queryType) {
+        Latencies l = getLatencies(queryType);
+        return l.size == 0 ? 0 : toMillis(l.total) / l.size;
+    }
+
+    /**
+     * @param queryType Type of query, or {@link #ALL}
+     * @return Queries per second
+     */
+    public double getThroughput(String queryType) {
+        return elapsedTime == 0 ? 0 : getNumQueries(queryType) / (elapsedTime / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public double getThroughput() {
+        return getThroughput(ALL);
+    }
+
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public BenchmarkStats setElapsedTime(long elapsedTime) {
+        this.elapsedTime = elapsedTime;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-20s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "query", "count", "errors", "qps", "mean(ms)", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)"));
+        List<String> queryTypes = new ArrayList<>(latencies.keySet());
+        queryTypes.add(ALL);
+        for (String queryType : queryTypes) {
+            sb.append(String.format("%-20s %10d %8d %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    queryType, getNumQueries(queryType), getNumErrors(queryType), getThroughput(queryType),
+                    getMean(queryType), getP50(queryType), getP95(queryType), getP99(queryType), getMax(queryType)));
+        }
+        return sb.toString();
+    }
+
+    private Latencies getLatencies(String queryType) {
+        if (ALL.equals(queryType)) {
+            Latencies all = new Latencies();
+            latencies.values().forEach(all::addAll);
+            return all;
+        }
+        return latencies.getOrDefault(queryType, new Latencies());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static class Latencies {
+        private long[] values = new long[1024];
+        private int size;
+        private long errors;
+        private long total;
+
+        void add(long nanos, boolean error) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+            total += nanos;
+            if (error) {
+                errors++;
+            }
+        }
+
+        void addAll(Latencies other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+            total += other.total;
+            errors += other.errors;
+        }
+
+        long[] sorted() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
 }
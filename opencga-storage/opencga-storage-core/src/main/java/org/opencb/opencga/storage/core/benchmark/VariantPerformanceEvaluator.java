@@ -16,24 +16,342 @@
 
 package org.opencb.opencga.storage.core.benchmark;
 
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.datastore.core.Query;
+import org.opencb.datastore.core.QueryOptions;
+import org.opencb.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.StudyConfiguration;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.slf4j.LoggerFactory;
 
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor.VariantQueryParams.*;
+
 /**
  * Created by imedina on 16/06/15.
+ *
+ * Load generator for any {@link VariantDBAdaptor}. A number of concurrent clients run random queries,
+ * picked from a weighted mix of query types, until the number of queries or the duration is reached.
  */
 public class VariantPerformanceEvaluator extends PerformanceEvaluator {
 
+    public enum QueryType {
+        REGION, GENE, CONSEQUENCE_TYPE, MAF, GENOTYPE
+    }
+
+    public static final List<String> DEFAULT_CHROMOSOMES = Collections.unmodifiableList(Arrays.asList(
+            "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12",
+            "13", "14", "15", "16", "17", "18", "19", "20", "21", "22", "X"));
+    public static final List<String> DEFAULT_GENES = Collections.unmodifiableList(Arrays.asList(
+            "BRCA1", "BRCA2", "TP53", "CFTR", "APOE", "EGFR", "KRAS", "PTEN", "MYH7", "TTN"));
+    public static final List<String> DEFAULT_CONSEQUENCE_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "SO:0001583", "SO:0001587", "SO:0001589", "SO:0001574", "SO:0001575", "SO:0001819", "SO:0001627"));
+    public static final List<Double> DEFAULT_MAF_THRESHOLDS = Collections.unmodifiableList(Arrays.asList(0.001, 0.01, 0.05, 0.1));
+    public static final List<String> DEFAULT_GENOTYPES = Collections.unmodifiableList(Arrays.asList("0/1", "1/1", "0/1,1/1"));
+
     private VariantDBAdaptor variantDBAdaptor;
 
+    private int numClients = 4;
+    private int numQueries = 1000;
+    private long duration = 0;
+    private final Map<QueryType, Integer> queryMix = new EnumMap<>(QueryType.class);
+    private QueryOptions queryOptions = new QueryOptions("limit", 100);
+    private long seed = System.currentTimeMillis();
+
+    private List<String> regions = Collections.emptyList();
+    private List<String> chromosomes = DEFAULT_CHROMOSOMES;
+    private int regionLength = 100000;
+    private int maxRegionStart = 50000000;
+    private List<String> genes = DEFAULT_GENES;
+    private List<String> consequenceTypes = DEFAULT_CONSEQUENCE_TYPES;
+    private List<Double> mafThresholds = DEFAULT_MAF_THRESHOLDS;
+    private String study;
+    private String cohort;
+    private List<String> samples;
 
     public VariantPerformanceEvaluator() {
         logger = LoggerFactory.getLogger(this.getClass());
+        for (QueryType queryType : QueryType.values()) {
+            queryMix.put(queryType, 1);
+        }
+    }
+
+    public VariantPerformanceEvaluator(VariantDBAdaptor variantDBAdaptor) {
+        this();
+        this.variantDBAdaptor = variantDBAdaptor;
     }
 
     @Override
     public BenchmarkStats run() {
-        return null;
+        Objects.requireNonNull(variantDBAdaptor, "VariantDBAdaptor not set");
+        // May remove the MAF and GENOTYPE queries from the mix
+        loadStudyInformation();
+        int totalWeight = queryMix.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Empty query mix " + queryMix);
+        }
+        logger.info("Running benchmark with {} clients. Queries: {}, duration: {}s, mix: {}",
+                numClients, numQueries, TimeUnit.NANOSECONDS.toSeconds(duration), queryMix);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numClients);
+        List<Future<BenchmarkStats>> futures = new ArrayList<>(numClients);
+        long start = System.nanoTime();
+        long deadline = duration > 0 ? start + duration : Long.MAX_VALUE;
+        for (int client = 0; client < numClients; client++) {
+            // Split the queries between the clients
+            int clientQueries = numQueries <= 0 ? Integer.MAX_VALUE : numQueries / numClients + (client < numQueries % numClients ? 1 : 0);
+            Random random = new Random(seed + client);
+            futures.add(executorService.submit(() -> runClient(random, clientQueries, deadline, totalWeight)));
+        }
+        executorService.shutdown();
+
+        BenchmarkStats stats = new BenchmarkStats();
+        try {
+            for (Future<BenchmarkStats> future : futures) {
+                stats.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executorService.shutdownNow();
+            throw new IllegalStateException("Benchmark interrupted", e);
+        } catch (ExecutionException e) {
+            executorService.shutdownNow();
+            throw new IllegalStateException("Error running benchmark", e.getCause());
+        }
+        stats.setElapsedTime(System.nanoTime() - start);
+        logger.info("Benchmark finished. {} queries, {} queries/s", stats.getNumQueries(), String.format("%.2f", stats.getThroughput()));
+        return stats;
+    }
+
+    private BenchmarkStats runClient(Random random, int clientQueries, long deadline, int totalWeight) {
+        BenchmarkStats stats = new BenchmarkStats();
+        for (int i = 0; i < clientQueries && System.nanoTime() < deadline; i++) {
+            QueryType queryType = nextQueryType(queryMix, totalWeight, random);
+            Query query = buildQuery(queryType, random);
+            boolean error = false;
+            long start = System.nanoTime();
+            try {
+                QueryResult<?> queryResult = variantDBAdaptor.get(query, new QueryOptions(queryOptions));
+                logger.debug("{} query {} : {} results", queryType, query, queryResult.getNumResults());
+            } catch (RuntimeException e) {
+                logger.warn("Error executing {} query {} : {}", queryType, query, e.getMessage());
+                error = true;
+            }
+            stats.addQuery(queryType.name(), System.nanoTime() - start, error);
+        }
+        return stats;
+    }
+
+    /**
+     * @param queryMix      Weight of each query type
+     * @param totalWeight   Sum of the weights of the mix
+     * @param random        Random generator
+     * @return              Random query type, with probability proportional to its weight
+     */
+    static QueryType nextQueryType(Map<QueryType, Integer> queryMix, int totalWeight, Random random) {
+        int r = random.nextInt(totalWeight);
+        for (Map.Entry<QueryType, Integer> entry : queryMix.entrySet()) {
+            r -= entry.getValue();
+            if (r < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    protected Query buildQuery(QueryType queryType, Random random) {
+        Query query = new Query();
+        switch (queryType) {
+            case REGION:
+                if (!regions.isEmpty()) {
+                    query.put(REGION.key(), pick(regions, random));
+                } else {
+                    int start = 1 + random.nextInt(Math.max(maxRegionStart - regionLength, 1));
+                    query.put(REGION.key(), pick(chromosomes, random) + ":" + start + "-" + (start + regionLength));
+                }
+                break;
+            case GENE:
+                query.put(GENE.key(), pick(genes, random));
+                break;
+            case CONSEQUENCE_TYPE:
+                query.put(ANNOT_CONSEQUENCE_TYPE.key(), pick(consequenceTypes, random));
+                break;
+            case MAF:
+                query.put(STATS_MAF.key(), study + ":" + cohort + "<" + pick(mafThresholds, random));
+                break;
+            case GENOTYPE:
+                query.put(GENOTYPE.key(), pick(samples, random) + ":" + pick(DEFAULT_GENOTYPES, random));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown query type " + queryType);
+        }
+        if (study != null) {
+            query.put(STUDIES.key(), study);
+        }
+        return query;
+    }
+
+    /**
+     * Fill the study, cohort and samples used by the MAF and GENOTYPE queries, if not provided.
+     */
+    private void loadStudyInformation() {
+        if (study == null) {
+            List<String> studyNames = variantDBAdaptor.getStudyConfigurationManager().getStudyNames(new QueryOptions());
+            if (studyNames.isEmpty()) {
+                logger.warn("No studies found. Skipping MAF and GENOTYPE queries");
+                queryMix.remove(QueryType.MAF);
+                queryMix.remove(QueryType.GENOTYPE);
+                return;
+            }
+            study = studyNames.get(0);
+        }
+        if (cohort != null && samples != null && !samples.isEmpty()) {
+            return;
+        }
+        StudyConfiguration studyConfiguration = variantDBAdaptor.getStudyConfigurationManager()
+                .getStudyConfiguration(study, new QueryOptions()).first();
+        if (cohort == null) {
+            cohort = StudyEntry.DEFAULT_COHORT;
+            if (studyConfiguration != null) {
+                for (Map.Entry<String, Integer> entry : studyConfiguration.getCohortIds().entrySet()) {
+                    if (studyConfiguration.getCalculatedStats().contains(entry.getValue())) {
+                        cohort = entry.getKey();
+                        break;
+                    }
+                }
+            }
+        }
+        if (samples == null || samples.isEmpty()) {
+            samples = studyConfiguration == null ? Collections.emptyList() : new ArrayList<>(studyConfiguration.getSampleIds().keySet());
+            if (samples.isEmpty()) {
+                logger.warn("No samples found in study {}. Skipping GENOTYPE queries", study);
+                queryMix.remove(QueryType.GENOTYPE);
+            }
+        }
+    }
+
+    private static <T> T pick(List<T> list, Random random) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    public VariantDBAdaptor getVariantDBAdaptor() {
+        return variantDBAdaptor;
+    }
+
+    public VariantPerformanceEvaluator setVariantDBAdaptor(VariantDBAdaptor variantDBAdaptor) {
+        this.variantDBAdaptor = variantDBAdaptor;
+        return this;
+    }
+
+    public int getNumClients() {
+        return numClients;
+    }
+
+    public VariantPerformanceEvaluator setNumClients(int numClients) {
+        this.numClients = numClients;
+        return this;
+    }
+
+    public int getNumQueries() {
+        return numQueries;
+    }
+
+    /**
+     * @param numQueries Total number of queries among all the clients. If 0, run until the duration is reached.
+     * @return this
+     */
+    public VariantPerformanceEvaluator setNumQueries(int numQueries) {
+        this.numQueries = numQueries;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setDuration(long duration, TimeUnit timeUnit) {
+        this.duration = timeUnit.toNanos(duration);
+        return this;
+    }
+
+    public Map<QueryType, Integer> getQueryMix() {
+        return queryMix;
+    }
+
+    /**
+     * @param queryMix Relative weight of each query type. Missing types are not executed.
+     * @return this
+     */
+    public VariantPerformanceEvaluator setQueryMix(Map<QueryType, Integer> queryMix) {
+        this.queryMix.clear();
+        this.queryMix.putAll(queryMix);
+        return this;
+    }
+
+    public QueryOptions getQueryOptions() {
+        return queryOptions;
+    }
+
+    public VariantPerformanceEvaluator setQueryOptions(QueryOptions queryOptions) {
+        this.queryOptions = queryOptions;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param regions Regions to query. If empty, random regions are generated over the chromosomes.
+     * @return this
+     */
+    public VariantPerformanceEvaluator setRegions(List<String> regions) {
+        this.regions = regions;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setChromosomes(List<String> chromosomes) {
+        this.chromosomes = chromosomes;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setRegionLength(int regionLength) {
+        this.regionLength = regionLength;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setMaxRegionStart(int maxRegionStart) {
+        this.maxRegionStart = maxRegionStart;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setGenes(List<String> genes) {
+        this.genes = genes;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setConsequenceTypes(List<String> consequenceTypes) {
+        this.consequenceTypes = consequenceTypes;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setMafThresholds(List<Double> mafThresholds) {
+        this.mafThresholds = mafThresholds;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setStudy(String study) {
+        this.study = study;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setCohort(String cohort) {
+        this.cohort = cohort;
+        return this;
+    }
+
+    public VariantPerformanceEvaluator setSamples(List<String> samples) {
+        this.samples = samples;
+        return this;
     }
 
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.runner;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * InputStream over a BGZF (block gzip) file that inflates the blocks in parallel.
+ *
+ * The compressed file is split on the block boundaries given by the BSIZE field of each block header.
+ * Every block is inflated by a worker thread, and the decompressed blocks are served in the same order
+ * they have in the file, so the resulting stream is identical to the one given by a {@link java.util.zip.GZIPInputStream}.
+ */
+public class ParallelBgzfInputStream extends InputStream {
+
+    private static final int BLOCK_HEADER_LENGTH = 12;
+    private static final int BLOCK_FOOTER_LENGTH = 8;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final InputStream in;
+    private final ExecutorService executorService;
+    private final Deque<Future<byte[]>> pendingBlocks;
+    private final int maxPendingBlocks;
+    private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private byte[] currentBlock = EMPTY;
+    private int position = 0;
+    private boolean endOfInput = false;
+
+    public ParallelBgzfInputStream(Path path, int numThreads) throws IOException {
+        this(new FileInputStream(path.toFile()), numThreads);
+    }
+
+    public ParallelBgzfInputStream(InputStream in, int numThreads) {
+        this.in = new BufferedInputStream(in, 1 << 20);
+        this.executorService = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "bgzf-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPendingBlocks = numThreads * 4;
+        this.pendingBlocks = new ArrayDeque<>(maxPendingBlocks);
+    }
+
+    /**
+     * Check if the file is compressed with BGZF.
+     * A BGZF file is a gzip file with a "BC" extra subfield in the header of each member.
+     *
+     * @param path  File to check
+     * @return      If the first gzip member is a BGZF block
+     * @throws IOException  If the file can not be read
+     */
+    public static boolean isBgzf(Path path) throws IOException {
+        byte[] header = new byte[18];
+        try (InputStream is = new FileInputStream(path.toFile())) {
+            int read = 0;
+            while (read < header.length) {
+                int r = is.read(header, read, header.length - read);
+                if (r < 0) {
+                    return false;
+                }
+                read += r;
+            }
+        }
+        return (header[0] & 0xFF) == 0x1F
+                && (header[1] & 0xFF) == 0x8B
+                && header[2] == 8
+                && (header[3] & 0x04) != 0
+                && readShort(header, 10) >= 6
+                && header[12] == 'B'
+                && header[13] == 'C'
+                && readShort(header, 14) == 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (position >= currentBlock.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        return currentBlock[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position >= currentBlock.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, currentBlock.length - position);
+        System.arraycopy(currentBlock, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return currentBlock.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executorService.shutdownNow();
+        pendingBlocks.clear();
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (!endOfInput && pendingBlocks.size() < maxPendingBlocks) {
+            byte[] compressedBlock = readCompressedBlock();
+            if (compressedBlock == null) {
+                endOfInput = true;
+            } else {
+                pendingBlocks.add(executorService.submit(() -> inflate(compressedBlock)));
+            }
+        }
+        Future<byte[]> future = pendingBlocks.poll();
+        if (future == null) {
+            return false;
+        }
+        try {
+            currentBlock = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inflating BGZF block");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error inflating BGZF block", e.getCause());
+        }
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Read a full BGZF block from the input, without decompressing it.
+     *
+     * @return  The whole block, including header and footer, or null if the end of the input was reached
+     * @throws IOException  If the input is not a valid BGZF file
+     */
+    private byte[] readCompressedBlock() throws IOException {
+        byte[] header = new byte[BLOCK_HEADER_LENGTH];
+        int read = readFully(header, 0, header.length);
+        if (read == 0) {
+            return null;
+        } else if (read < header.length) {
+            throw new EOFException("Truncated BGZF block header");
+        }
+        if ((header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B || header[2] != 8 || (header[3] & 0x04) == 0) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        int extraLength = readShort(header, 10);
+        byte[] extra = new byte[extraLength];
+        if (readFully(extra, 0, extraLength) < extraLength) {
+            throw new EOFException("Truncated BGZF block header");
+        }
+
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= extraLength; ) {
+            int subfieldLength = readShort(extra, i + 2);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && subfieldLength == 2) {
+                blockSize = readShort(extra, i + 4) + 1;
+                break;
+            }
+            i += 4 + subfieldLength;
+        }
+        if (blockSize < 0) {
+            throw new IOException("Missing BSIZE field in BGZF block header");
+        }
+
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, BLOCK_HEADER_LENGTH);
+        System.arraycopy(extra, 0, block, BLOCK_HEADER_LENGTH, extraLength);
+        int offset = BLOCK_HEADER_LENGTH + extraLength;
+        if (readFully(block, offset, blockSize - offset) < blockSize - offset) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        return block;
+    }
+
+    private byte[] inflate(byte[] block) throws IOException {
+        int dataOffset = BLOCK_HEADER_LENGTH + readShort(block, 10);
+        int dataLength = block.length - dataOffset - BLOCK_FOOTER_LENGTH;
+        long expectedCrc = readInt(block, block.length - 8) & 0xFFFFFFFFL;
+        int uncompressedSize = readInt(block, block.length - 4);
+
+        byte[] uncompressed = new byte[uncompressedSize];
+        Inflater inflater = this.inflater.get();
+        inflater.reset();
+        inflater.setInput(block, dataOffset, dataLength);
+        try {
+            int total = 0;
+            while (total < uncompressedSize) {
+                int n = inflater.inflate(uncompressed, total, uncompressedSize - total);
+                if (n == 0) {
+                    break;
+                }
+                total += n;
+            }
+            if (total != uncompressedSize) {
+                throw new IOException("Corrupted BGZF block. Expected " + uncompressedSize + " bytes, found " + total);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted BGZF block", e);
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(uncompressed, 0, uncompressedSize);
+        if (crc32.getValue() != expectedCrc) {
+            throw new IOException("Corrupted BGZF block. CRC mismatch");
+        }
+        return uncompressed;
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int r = in.read(b, off + total, len - total);
+            if (r < 0) {
+                break;
+            }
+            total += r;
+        }
+        return total;
+    }
+
+    private static int readShort(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.runner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * StringDataWriter that compresses the output in BGZF format using several threads, like pigz does.
+ *
+ * Strings are encoded as UTF-8 into reusable chunk buffers. Each full chunk is compressed by a worker thread
+ * into a sequence of independent BGZF blocks, and the compressed chunks are written to the file in the same
+ * order they were produced. The result is a valid gzip file, readable by any gzip reader, that can also be
+ * decompressed in parallel with {@link ParallelBgzfInputStream}.
+ */
+public class ParallelBgzfStringDataWriter extends StringDataWriter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_BLOCK_INPUT_SIZE = 0xFF00;
+    private static final int MAX_BLOCK_SIZE = 0x10000;
+    private static final byte[] EOF_BLOCK = new byte[]{
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private final int numThreads;
+    private final int chunkSize;
+    private final ThreadLocal<Deflater> deflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+    private ExecutorService executorService;
+    private Deque<Future<byte[]>> pendingChunks;
+
+    private byte[] chunk;
+    private int chunkLength;
+
+    public ParallelBgzfStringDataWriter(Path path, int numThreads) {
+        this(path, numThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelBgzfStringDataWriter(Path path, int numThreads, int chunkSize) {
+        super(path);
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            logger.info("BGZF output compress. Compressing with {} threads", numThreads);
+            os = new BufferedOutputStream(new FileOutputStream(path.toAbsolutePath().toString()), 1024 * 1024);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        executorService = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "bgzf-deflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pendingChunks = new ArrayDeque<>(numThreads * 2);
+        chunk = new byte[chunkSize];
+        chunkLength = 0;
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            if (chunkLength > 0) {
+                submitChunk();
+            }
+            while (!pendingChunks.isEmpty()) {
+                writeNextChunk();
+            }
+            os.write(EOF_BLOCK);
+            os.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            executorService.shutdownNow();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean write(String elem) {
+        try {
+            if ( ++writtenLines % 1000 == 0) {
+                logger.info("written lines = {}", writtenLines);
+            }
+            encode(elem);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean write(List<String> batch) {
+        try {
+            long start = System.currentTimeMillis();
+            for (String b : batch) {
+                encode(b);
+            }
+            if ((writtenLines + batch.size()) / 1000 != writtenLines / 1000) {
+                logger.info("written lines = {}", writtenLines + batch.size());
+            }
+            writtenLines += batch.size();
+            logger.debug("another batch of {} elements written. time: {}ms", batch.size(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Encode the string as UTF-8 directly into the current chunk.
+     * ASCII characters are copied without any intermediate array.
+     */
+    private void encode(String s) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (chunkLength == chunk.length) {
+                    submitChunk();
+                }
+                chunk[chunkLength++] = (byte) c;
+            } else {
+                byte[] bytes = s.substring(i).getBytes(StandardCharsets.UTF_8);
+                for (int offset = 0; offset < bytes.length; ) {
+                    if (chunkLength == chunk.length) {
+                        submitChunk();
+                    }
+                    int n = Math.min(bytes.length - offset, chunk.length - chunkLength);
+                    System.arraycopy(bytes, offset, chunk, chunkLength, n);
+                    chunkLength += n;
+                    offset += n;
+                }
+                break;
+            }
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        if (pendingChunks.size() >= numThreads * 2) {
+            writeNextChunk();
+        }
+        final byte[] data = chunk;
+        final int length = chunkLength;
+        pendingChunks.add(executorService.submit(() -> compress(data, length)));
+
+        byte[] buffer = freeBuffers.poll();
+        chunk = buffer == null ? new byte[chunkSize] : buffer;
+        chunkLength = 0;
+    }
+
+    private void writeNextChunk() throws IOException {
+        try {
+            os.write(pendingChunks.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing BGZF chunk", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error compressing BGZF chunk", e.getCause());
+        }
+    }
+
+    /**
+     * Compress a chunk of data as a sequence of BGZF blocks.
+     * The uncompressed buffer is given back to the pool of free buffers.
+     */
+    private byte[] compress(byte[] data, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+        byte[] block = new byte[MAX_BLOCK_SIZE];
+        Deflater deflater = this.deflater.get();
+        CRC32 crc32 = new CRC32();
+        for (int offset = 0; offset < length; offset += MAX_BLOCK_INPUT_SIZE) {
+            int blockInputSize = Math.min(MAX_BLOCK_INPUT_SIZE, length - offset);
+            deflater.reset();
+            deflater.setInput(data, offset, blockInputSize);
+            deflater.finish();
+            int compressedSize = 18;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(block, compressedSize, MAX_BLOCK_SIZE - 8 - compressedSize);
+                if (n == 0 && !deflater.finished()) {
+                    throw new IllegalStateException("BGZF block overflow");
+                }
+                compressedSize += n;
+            }
+            crc32.reset();
+            crc32.update(data, offset, blockInputSize);
+
+            int blockSize = compressedSize + 8;
+            writeBlockHeader(block, blockSize);
+            writeInt(block, compressedSize, (int) crc32.getValue());
+            writeInt(block, compressedSize + 4, blockInputSize);
+            out.write(block, 0, blockSize);
+        }
+        freeBuffers.add(data);
+        return out.toByteArray();
+    }
+
+    private static void writeBlockHeader(byte[] block, int blockSize) {
+        block[0] = 0x1f;
+        block[1] = (byte) 0x8b;
+        block[2] = 8;           // CM = DEFLATE
+        block[3] = 4;           // FLG = FEXTRA
+        block[4] = 0;           // MTIME
+        block[5] = 0;
+        block[6] = 0;
+        block[7] = 0;
+        block[8] = 0;           // XFL
+        block[9] = (byte) 0xff; // OS = unknown
+        block[10] = 6;          // XLEN
+        block[11] = 0;
+        block[12] = 'B';
+        block[13] = 'C';
+        block[14] = 2;          // SLEN
+        block[15] = 0;
+        block[16] = (byte) ((blockSize - 1) & 0xFF);
+        block[17] = (byte) ((blockSize - 1) >> 8);
+    }
+
+    private static void writeInt(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+    }
+}
@@ -22,9 +22,15 @@ import org.slf4j.LoggerFactory;
 import org.xerial.snappy.SnappyInputStream;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -35,27 +41,69 @@ import java.util.zip.GZIPInputStream;
  */
 public class StringDataReader implements DataReader<String> {
 
+    protected static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+    protected static final int LOG_BATCH = 100000;
+
     protected BufferedReader reader;
     protected final Path path;
     protected static Logger logger = LoggerFactory.getLogger(StringDataReader.class);
     protected long readLines = 0l;
+    protected final int decompressionThreads;
+
+    /* Byte mode */
+    protected boolean byteMode = false;
+    protected ReadableByteChannel channel;
+    protected ByteBuffer buffer;
+    protected byte[] lineBuffer;
+    protected boolean endOfInput;
+
     public StringDataReader(Path path) {
+        this(path, 1);
+    }
+
+    /**
+     * @param path                  Input file
+     * @param decompressionThreads  Number of threads used to inflate BGZF compressed files.
+     *                              Plain gzip files are always decompressed in a single thread.
+     */
+    public StringDataReader(Path path, int decompressionThreads) {
         this.path = path;
+        this.decompressionThreads = decompressionThreads;
     }
 
     @Override
     public boolean open() {
         try {
             String fileName = path.toFile().getName();
-            if (fileName.endsWith(".gz")) {
+            InputStream inputStream;
+            if (fileName.endsWith(".gz") && decompressionThreads > 1 && ParallelBgzfInputStream.isBgzf(path)) {
+                logger.info("BGZF input compress. Decompressing with {} threads", decompressionThreads);
+                inputStream = new ParallelBgzfInputStream(path, decompressionThreads);
+            } else if (fileName.endsWith(".gz")) {
                 logger.info("Gzip input compress");
-                this.reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(path.toFile()))));
+                inputStream = new GZIPInputStream(new FileInputStream(path.toFile()), 64 * 1024);
             } else if (fileName.endsWith(".snappy") || fileName.endsWith(".snz")) {
                 logger.info("Snappy input compress");
-                this.reader = new BufferedReader(new InputStreamReader(new SnappyInputStream(new FileInputStream(path.toFile()))));
+                inputStream = new SnappyInputStream(new FileInputStream(path.toFile()));
             } else {
                 logger.info("Plain input compress");
+                inputStream = null;
+            }
+
+            if (byteMode) {
+                if (inputStream == null) {
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                } else {
+                    channel = Channels.newChannel(inputStream);
+                }
+                buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+                buffer.flip();
+                lineBuffer = new byte[4096];
+                endOfInput = false;
+            } else if (inputStream == null) {
                 this.reader = Files.newBufferedReader(path, Charset.defaultCharset());
+            } else {
+                this.reader = new BufferedReader(new InputStreamReader(inputStream));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -67,7 +115,13 @@ public class StringDataReader implements DataReader<String> {
     @Override
     public boolean close() {
         try {
-            reader.close();
+            if (byteMode) {
+                channel.close();
+                buffer = null;
+                lineBuffer = null;
+            } else {
+                reader.close();
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return false;
@@ -88,10 +142,10 @@ public class StringDataReader implements DataReader<String> {
     @Override
     public List<String> read() {
         try {
-            if ( ++readLines % 1000 == 0) {
-                logger.info("read lines = " + readLines);
+            if ( ++readLines % LOG_BATCH == 0) {
+                logger.info("read lines = {}", readLines);
             }
-            return Collections.singletonList(reader.readLine());
+            return Collections.singletonList(readLine());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -103,18 +157,114 @@ public class StringDataReader implements DataReader<String> {
         List<String> batch = new ArrayList<>(batchSize);
         try {
             for (int i = 0; i < batchSize; i++) {
-                String line = reader.readLine();
+                String line = readLine();
                 if (line == null) {
-                    return batch;
+                    break;
                 }
                 batch.add(line);
-                if ( ++readLines % 1000 == 0) {
-                    logger.info("read lines = " + readLines);
-                }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if ((readLines + batch.size()) / LOG_BATCH != readLines / LOG_BATCH) {
+            logger.info("read lines = {}", readLines + batch.size());
+        }
+        readLines += batch.size();
         return batch;
     }
+
+    protected String readLine() throws IOException {
+        return byteMode ? readByteLine() : reader.readLine();
+    }
+
+    /**
+     * Read the next line scanning the byte buffer for the newline character.
+     * Lines are decoded as ASCII, unless they contain any non ASCII byte, in which case are decoded as UTF-8.
+     * Line terminators ("\n" or "\r\n") are not included in the returned string.
+     *
+     * @return  Next line, or null if the end of the input was reached
+     * @throws IOException  If the input can not be read
+     */
+    protected String readByteLine() throws IOException {
+        int scanned = buffer.position();
+        boolean ascii = true;
+        while (true) {
+            int limit = buffer.limit();
+            for (int i = scanned; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    String line = decodeLine(i, ascii);
+                    buffer.position(i + 1);
+                    return line;
+                } else if (b < 0) {
+                    ascii = false;
+                }
+            }
+            if (endOfInput) {
+                if (buffer.hasRemaining()) {
+                    String line = decodeLine(limit, ascii);
+                    buffer.position(limit);
+                    return line;
+                }
+                return null;
+            }
+            scanned = fillBuffer();
+        }
+    }
+
+    /**
+     * Move the remaining bytes to the beginning of the buffer and read more bytes from the channel.
+     * If the buffer is full of a single line, the buffer is enlarged.
+     *
+     * @return  Position of the first byte not scanned yet
+     * @throws IOException  If the input can not be read
+     */
+    private int fillBuffer() throws IOException {
+        int remaining = buffer.remaining();
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+        } else {
+            buffer.compact();
+        }
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0 && buffer.hasRemaining());
+        if (read < 0) {
+            endOfInput = true;
+        }
+        buffer.flip();
+        return remaining;
+    }
+
+    private String decodeLine(int end, boolean ascii) {
+        int start = buffer.position();
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        int length = end - start;
+        if (lineBuffer.length < length) {
+            lineBuffer = new byte[Math.max(length, lineBuffer.length * 2)];
+        }
+        buffer.get(lineBuffer, 0, length);
+        return new String(lineBuffer, 0, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    public boolean isByteMode() {
+        return byteMode;
+    }
+
+    /**
+     * Read the input as raw bytes, splitting lines directly over a direct ByteBuffer instead of using a {@link BufferedReader}.
+     * Must be set before opening the reader.
+     *
+     * @param byteMode  Use byte mode
+     * @return          this
+     */
+    public StringDataReader setByteMode(boolean byteMode) {
+        this.byteMode = byteMode;
+        return this;
+    }
 }
@@ -29,8 +29,8 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Jacobo Coll <jacobo167@gmail.com>
@@ -39,7 +39,7 @@ public class FileStudyConfigurationManager extends StudyConfigurationManager {
     public static final String STUDY_CONFIGURATION_PATH = "studyConfigurationPath";
     protected static Logger logger = LoggerFactory.getLogger(FileStudyConfigurationManager.class);
 
-    static final private Map<Integer, Path> filePaths = new HashMap<>();
+    static final private Map<Integer, Path> filePaths = new ConcurrentHashMap<>();
 
     public FileStudyConfigurationManager(ObjectMap objectMap) {
         super(objectMap);
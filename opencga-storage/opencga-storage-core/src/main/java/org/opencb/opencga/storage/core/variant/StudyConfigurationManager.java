@@ -25,9 +25,9 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Jacobo Coll <jacobo167@gmail.com>
@@ -37,8 +37,9 @@ public abstract class StudyConfigurationManager {
     public static final String READ_ONLY = "ro";
     protected static Logger logger = LoggerFactory.getLogger(StudyConfigurationManager.class);
 
-    private final Map<String, StudyConfiguration> stringStudyConfigurationMap = new HashMap<>();
-    private final Map<Integer, StudyConfiguration> intStudyConfigurationMap = new HashMap<>();
+    // Concurrent maps, as the DBAdaptors may read the study configurations from several threads
+    private final Map<String, StudyConfiguration> stringStudyConfigurationMap = new ConcurrentHashMap<>();
+    private final Map<Integer, StudyConfiguration> intStudyConfigurationMap = new ConcurrentHashMap<>();
 
     public StudyConfigurationManager(ObjectMap objectMap) {}
 
@@ -54,7 +55,7 @@ public abstract class StudyConfigurationManager {
         QueryResult<StudyConfiguration> result;
         final boolean cached = options != null && options.getBoolean(CACHED, false);
         final boolean readOnly = options != null && options.getBoolean(READ_ONLY, false);
-        if (stringStudyConfigurationMap.containsKey(studyName)) {
+        if (studyName != null && stringStudyConfigurationMap.containsKey(studyName)) {
             if (cached) {
                 StudyConfiguration studyConfiguration = stringStudyConfigurationMap.get(studyName);
                 if (!readOnly) {
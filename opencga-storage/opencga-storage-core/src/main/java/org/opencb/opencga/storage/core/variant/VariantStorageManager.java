@@ -45,9 +45,11 @@ import org.opencb.opencga.storage.core.StorageManager;
 import org.opencb.opencga.storage.core.StorageManagerException;
 import org.opencb.opencga.storage.core.StudyConfiguration;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
+import org.opencb.opencga.storage.core.runner.ParallelBgzfStringDataWriter;
 import org.opencb.opencga.storage.core.runner.StringDataReader;
 import org.opencb.opencga.storage.core.runner.StringDataWriter;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantIndexAdvisor;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotator;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotatorException;
@@ -124,19 +126,30 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
         SAMPLE_IDS ("sampleIds", ""),
         ISOLATE_FILE_FROM_STUDY_CONFIGURATION("isolateStudyConfiguration", false),
 
-        COMPRESS_METHOD ("compressMethod", "gzip"),
+        COMPRESS_METHOD ("compressMethod", "gzip"),          //gzip, snappy or bgzip. bgzip compresses text outputs in parallel
+        COMPRESS_THREADS ("compress.threads", 4),           //Threads to compress the output when using bgzip
         AGGREGATION_MAPPING_PROPERTIES ("aggregationMappingFile", null),
         DB_NAME ("database.name", "opencga"),
 
         TRANSFORM_BATCH_SIZE ("transform.batch.size", 200),
         TRANSFORM_THREADS ("transform.threads", 4),
         TRANSFORM_FORMAT ("transform.format", "avro"),
+        TRANSFORM_DECOMPRESS_THREADS ("transform.decompress.threads", 4),   //Threads to inflate BGZF compressed inputs
+        TRANSFORM_BYTE_READER ("transform.reader.bytes", true),             //Split input lines over a raw byte buffer
         LOAD_BATCH_SIZE ("load.batch.size", 100),
         LOAD_THREADS ("load.threads", 4),
+        ITERATOR_THREADS ("iterator.threads", 1),           //Threads reading disjoint regions of the query at the same time
+        ITERATOR_SORTED ("iterator.sorted", true),          //Keep the order of the variants when reading with several threads
+        LAZY_CONVERSION ("lazy.conversion", false),         //Build studies, stats and annotation of the read variants only when accessed
+        COUNT_THREADS ("count.threads", 1),                 //Threads counting disjoint regions of the query at the same time
+        APPROXIMATE_COUNT ("count.approximate", false),     //Estimate counts from the database metadata when possible, instead of counting
 
         CALCULATE_STATS ("calculateStats", false),          //Calculate stats on the postLoad step
         OVERWRITE_STATS ("overwriteStats", false),          //Overwrite stats already present
         UPDATE_STATS ("updateStats", false),                //Calculate missing stats
+        STATS_DIRECT ("stats.direct", false),               //Write the stats into the database as they are calculated, without intermediate files
+        STATS_CHUNK_SIZE ("stats.chunkSize", 10000000),     //Size of the regions checkpointed when calculating stats directly
+        STATS_FORMAT ("stats.format", "avro"),              //Format of the stats files: avro or json. Json files are only intended for debugging
         ANNOTATE ("annotate", false);
 
         private final String key;
@@ -261,9 +274,17 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
         String extension = "";
         int numTasks = options.getInt(Options.TRANSFORM_THREADS.key, Options.TRANSFORM_THREADS.defaultValue());
         int capacity = options.getInt("blockingQueueCapacity", numTasks*2);
+        int decompressThreads = options.getInt(Options.TRANSFORM_DECOMPRESS_THREADS.key(), Options.TRANSFORM_DECOMPRESS_THREADS.defaultValue());
+        boolean byteReader = options.getBoolean(Options.TRANSFORM_BYTE_READER.key(), Options.TRANSFORM_BYTE_READER.defaultValue());
+
+        int compressThreads = options.getInt(Options.COMPRESS_THREADS.key(), Options.COMPRESS_THREADS.defaultValue());
+        boolean parallelCompression = false;
 
         if (compression.equalsIgnoreCase("gzip") || compression.equalsIgnoreCase("gz")) {
             extension = ".gz";
+        } else if (compression.equalsIgnoreCase("bgzip") || compression.equalsIgnoreCase("bgzf")) {
+            extension = ".gz";
+            parallelCompression = true;
         } else if (compression.equalsIgnoreCase("snappy") || compression.equalsIgnoreCase("snz")) {
             extension = ".snappy";
         } else if (!compression.isEmpty()) {
@@ -331,12 +352,14 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
             source = readVariantSource(input, source);
 
             //Reader
-            StringDataReader dataReader = new StringDataReader(input);
+            StringDataReader dataReader = new StringDataReader(input, decompressThreads).setByteMode(byteReader);
 
             //Writer
             DataWriter<ByteBuffer> dataWriter;
             try {
-                dataWriter = new AvroFileWriter<>(VariantAvro.getClassSchema(), compression, new FileOutputStream(outputVariantsFile.toFile()));
+                // Avro compresses its own data blocks. BGZF only applies to text outputs
+                String avroCompression = parallelCompression ? "gzip" : compression;
+                dataWriter = new AvroFileWriter<>(VariantAvro.getClassSchema(), avroCompression, new FileOutputStream(outputVariantsFile.toFile()));
             } catch (FileNotFoundException e) {
                 throw new StorageManagerException("Fail init writer", e);
             }
@@ -353,8 +376,7 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
                     LineIterator lineIterator = codec.makeSourceFromStream(fileInputStream);
                     VCFHeader header = (VCFHeader) codec.readActualHeader(lineIterator);
                     VCFHeaderVersion headerVersion = codec.getVCFHeaderVersion();
-                    VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(source);
-                    taskSupplier = () -> new VariantAvroTransformTask(header, headerVersion, finalSource, finalOutputMetaFile, statsCalculator, includeSrc);
+                    taskSupplier = () -> new VariantAvroTransformTask(header, headerVersion, finalSource, finalOutputMetaFile, includeSrc);
                 } catch (IOException e) {
                     throw new StorageManagerException("Unable to read VCFHeader", e);
                 }
@@ -362,8 +384,7 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
                 logger.info("Using Biodata to read variants.");
                 final VariantSource finalSource = source;
                 final Path finalOutputMetaFile = output.resolve(fileName + ".file.json" + extension);   //TODO: Write META in avro too
-                VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(source);
-                taskSupplier = () -> new VariantAvroTransformTask(factory, finalSource, finalOutputMetaFile, statsCalculator, includeSrc);
+                taskSupplier = () -> new VariantAvroTransformTask(factory, finalSource, finalOutputMetaFile, includeSrc);
             }
 
             logger.info("Generating output file {}", outputVariantsFile);
@@ -393,10 +414,12 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
             source = readVariantSource(input, source);
 
             //Reader
-            StringDataReader dataReader = new StringDataReader(input);
+            StringDataReader dataReader = new StringDataReader(input, decompressThreads).setByteMode(byteReader);
 
             //Writers
-            StringDataWriter dataWriter = new StringDataWriter(outputVariantsFile);
+            StringDataWriter dataWriter = parallelCompression
+                    ? new ParallelBgzfStringDataWriter(outputVariantsFile, compressThreads)
+                    : new StringDataWriter(outputVariantsFile);
 
             final VariantSource finalSource = source;
             final Path finalOutputFileJsonFile = outputMetaFile;
@@ -412,17 +435,15 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
                     LineIterator lineIterator = codec.makeSourceFromStream(fileInputStream);
                     VCFHeader header = (VCFHeader) codec.readActualHeader(lineIterator);
                     VCFHeaderVersion headerVersion = codec.getVCFHeaderVersion();
-                    VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(finalSource);
                     taskSupplier = () -> new VariantJsonTransformTask(header, headerVersion, finalSource,
-                            finalOutputFileJsonFile, statsCalculator, includeSrc);
+                            finalOutputFileJsonFile, includeSrc);
                 } catch (IOException e) {
                     throw new StorageManagerException("Unable to read VCFHeader", e);
                 }
             } else {
                 logger.info("Using Biodata to read variants.");
                 final Path finalOutputMetaFile = output.resolve(fileName + ".file.json" + extension);   //TODO: Write META in avro too
-                VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(source);
-                taskSupplier = () -> new VariantJsonTransformTask(factory, finalSource, finalOutputMetaFile, statsCalculator, includeSrc);
+                taskSupplier = () -> new VariantJsonTransformTask(factory, finalSource, finalOutputMetaFile, includeSrc);
             }
 
             logger.info("Generating output file {}", outputVariantsFile);
@@ -707,6 +728,7 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
             annotationQuery.put(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), Collections.singletonList(studyConfiguration.getStudyId()));    // annotate just the indexed variants
             annotationQuery.put(VariantDBAdaptor.VariantQueryParams.FILES.key(), Collections.singletonList(fileId));    // annotate just the indexed variants
 
+            annotationOptions.add(VariantAnnotationManager.INCREMENTAL, options.getBoolean(VariantAnnotationManager.INCREMENTAL, false));
             annotationOptions.add(VariantAnnotationManager.OUT_DIR, output.getPath());
             annotationOptions.add(VariantAnnotationManager.FILE_NAME, dbName + "." + TimeUtils.getTime());
             variantAnnotationManager.annotate(annotationQuery, annotationOptions);
@@ -718,7 +740,7 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
             // TODO add filters
             try {
                 logger.debug("about to calculate stats");
-                VariantStatisticsManager variantStatisticsManager = new VariantStatisticsManager();
+                VariantStatisticsManager variantStatisticsManager = getVariantStatisticsManager();
                 VariantDBAdaptor dbAdaptor = getDBAdaptor(dbName);
                 URI statsOutputUri = output.resolve(buildFilename(studyConfiguration.getStudyName(), fileId) + "." + TimeUtils.getTime());
 
@@ -743,8 +765,12 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
                 }
                 statsOptions.remove(Options.FILE_ID.key());
 
-                URI statsUri = variantStatisticsManager.createStats(dbAdaptor, statsOutputUri, defaultCohort, new HashMap<>(), studyConfiguration, statsOptions);
-                variantStatisticsManager.loadStats(dbAdaptor, statsUri, studyConfiguration, statsOptions);
+                if (statsOptions.getBoolean(Options.STATS_DIRECT.key(), Options.STATS_DIRECT.defaultValue())) {
+                    variantStatisticsManager.calculateStats(dbAdaptor, statsOutputUri, defaultCohort, new HashMap<>(), studyConfiguration, statsOptions);
+                } else {
+                    URI statsUri = variantStatisticsManager.createStats(dbAdaptor, statsOutputUri, defaultCohort, new HashMap<>(), studyConfiguration, statsOptions);
+                    variantStatisticsManager.loadStats(dbAdaptor, statsUri, studyConfiguration, statsOptions);
+                }
             } catch (Exception e) {
                 logger.error("Can't calculate stats." , e);
                 e.printStackTrace();
@@ -756,6 +782,22 @@ public abstract class VariantStorageManager extends StorageManager<VariantWriter
 
     protected abstract void checkLoadedVariants(URI input, int fileId, StudyConfiguration studyConfiguration, ObjectMap options) throws StorageManagerException;
 
+    /**
+     * @return VariantStatisticsManager for the variants of this storage engine
+     */
+    public VariantStatisticsManager getVariantStatisticsManager() {
+        return new VariantStatisticsManager();
+    }
+
+    /**
+     * @param dbName    Database name
+     * @return VariantIndexAdvisor for the queries executed on this database
+     * @throws StorageManagerException If the database can not be accessed, or the storage engine has no index advisor
+     */
+    public VariantIndexAdvisor getIndexAdvisor(String dbName) throws StorageManagerException {
+        throw new StorageManagerException("Index advisor not supported by the storage engine " + getStorageEngineId());
+    }
+
     @Override
     public boolean testConnection(String dbName) {
         return true;
@@ -61,6 +61,7 @@ public interface VariantDBAdaptor extends Iterable<Variant> {
         MISSING_ALLELES ("missingAlleles", TEXT_ARRAY, ""),
         MISSING_GENOTYPES ("missingGenotypes", TEXT_ARRAY, ""),
         ANNOTATION_EXISTS ("annotationExists", TEXT_ARRAY, ""),
+        ANNOTATION_OUTDATED ("annotationOutdated", TEXT, "Select variants not annotated with the given annotator version"),
 
         GENOTYPE ("genotype", TEXT_ARRAY, ""),
         ANNOT_CONSEQUENCE_TYPE ("annot-ct", TEXT_ARRAY, ""),
@@ -170,6 +171,16 @@ public interface VariantDBAdaptor extends Iterable<Variant> {
      */
     QueryResult<Long> count(Query query);
 
+    /**
+     * Counts the variants resulting of executing the query.
+     * @param query Query to be executed in the database to filter variants
+     * @param options Count modifiers, accepted values are: approximate, count.threads
+     * @return A QueryResult with the number of variants
+     */
+    default QueryResult<Long> count(Query query, QueryOptions options) {
+        return count(query);
+    }
+
     /**
      * Performs a distinct operation of the given field over the returned results.
      * @param query Query to be executed in the database to filter variants
@@ -23,7 +23,7 @@ import java.util.Iterator;
 /**
  * Created by jacobo on 9/01/15.
  */
-public abstract class VariantDBIterator implements Iterator<Variant> {
+public abstract class VariantDBIterator implements Iterator<Variant>, AutoCloseable {
     protected long timeFetching = 0;
     protected long timeConverting = 0;
 
@@ -42,4 +42,11 @@ public abstract class VariantDBIterator implements Iterator<Variant> {
     public void setTimeConverting(long timeConverting) {
         this.timeConverting = timeConverting;
     }
+
+    /**
+     * Release the resources held by the iterator, like cursors or threads.
+     */
+    @Override
+    public void close() {
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suggests indexes for the variant queries executed by a {@link VariantDBAdaptor}, from their execution plans.
+ */
+public interface VariantIndexAdvisor {
+
+    /**
+     * @param minExaminedRatio  Minimum ratio of examined documents per returned document to consider a query inefficient
+     * @return                  Suggested indexes, the most useful first
+     */
+    List<IndexAdvice> getAdvice(double minExaminedRatio);
+
+    /**
+     * Creates the suggested indexes. Existing indexes are ignored.
+     *
+     * @param advice    Indexes to create
+     */
+    void createIndexes(List<IndexAdvice> advice);
+
+    class IndexAdvice {
+        private final LinkedHashMap<String, Integer> index;
+        private final Map<String, Object> partialFilter;
+        private long numQueries;
+        private long docsExamined;
+        private long docsReturned;
+        private String winningPlan;
+        private String exampleQuery;
+
+        /**
+         * @param index         Indexed fields, in order, with the direction
+         * @param partialFilter Filter of a partial index, or null
+         */
+        public IndexAdvice(LinkedHashMap<String, Integer> index, Map<String, Object> partialFilter) {
+            this.index = index;
+            this.partialFilter = partialFilter;
+        }
+
+        public IndexAdvice addQueries(long numQueries, long docsExamined, long docsReturned, String winningPlan, String exampleQuery) {
+            this.numQueries += numQueries;
+            this.docsExamined += docsExamined;
+            this.docsReturned += docsReturned;
+            if (this.winningPlan == null) {
+                this.winningPlan = winningPlan;
+                this.exampleQuery = exampleQuery;
+            }
+            return this;
+        }
+
+        public LinkedHashMap<String, Integer> getIndex() {
+            return index;
+        }
+
+        public Map<String, Object> getPartialFilter() {
+            return partialFilter;
+        }
+
+        public long getNumQueries() {
+            return numQueries;
+        }
+
+        public long getDocsExamined() {
+            return docsExamined;
+        }
+
+        public long getDocsReturned() {
+            return docsReturned;
+        }
+
+        public double getExaminedRatio() {
+            return docsExamined / (double) Math.max(1, docsReturned);
+        }
+
+        public String getWinningPlan() {
+            return winningPlan;
+        }
+
+        public String getExampleQuery() {
+            return exampleQuery;
+        }
+
+        @Override
+        public String toString() {
+            return "index " + index + (partialFilter == null ? "" : " partial " + partialFilter)
+                    + " : " + numQueries + " queries, " + String.format("%.1f", getExaminedRatio()) + " examined per returned"
+                    + ", plan " + winningPlan + ", e.g. " + exampleQuery;
+        }
+    }
+}
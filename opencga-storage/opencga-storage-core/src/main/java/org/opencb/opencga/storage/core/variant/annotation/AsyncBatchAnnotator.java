@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the variants to a remote annotation service in concurrent requests.
+ *
+ * Each call to {@link #annotate} is split in sub-batches which are requested in parallel. The number of requests in
+ * flight is bounded by the size of a thread pool shared by all the callers. The size of the sub-batches grows while
+ * the requests are faster than the target latency, and is halved on slow or failed requests.
+ *
+ * Failed requests are retried with an exponential backoff, without blocking any thread. If a request keeps failing
+ * after all the retries, the annotation fails. Batches that can not be annotated, or returning a wrong number of
+ * annotations, are split in halves and requested again until the failing variants are isolated and skipped.
+ */
+public class AsyncBatchAnnotator {
+
+    @FunctionalInterface
+    public interface BatchRequest {
+        /**
+         * @param variants  Variants to annotate
+         * @return          One annotation per variant, or null if the batch can not be annotated
+         * @throws Exception On transient errors, like timeouts. The batch will be retried, and the annotation fails
+         *                   if the error persists after all the retries
+         */
+        List<VariantAnnotation> annotate(List<Variant> variants) throws Exception;
+    }
+
+    private final BatchRequest request;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int batchSizeIncrement;
+    private final long targetLatency;
+    private final int maxRetries;
+    private final long retryBackoff;
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger batchSize;
+
+    // Metrics
+    private final AtomicLong numRequests = new AtomicLong();
+    private final AtomicLong numErrors = new AtomicLong();
+    private final AtomicLong numSkippedVariants = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    protected static Logger logger = LoggerFactory.getLogger(AsyncBatchAnnotator.class);
+
+    /**
+     * @param request           Blocking request to the annotation service
+     * @param maxInFlight       Maximum number of concurrent requests
+     * @param batchSize         Initial number of variants for each request
+     * @param minBatchSize      Minimum number of variants for each request
+     * @param maxBatchSize      Maximum number of variants for each request
+     * @param targetLatency     Maximum latency of a request, in milliseconds, before reducing the batch size
+     * @param maxRetries        Maximum number of retries of a failed request before failing the annotation
+     * @param retryBackoff      Wait before the first retry, in milliseconds. Doubled on each retry
+     */
+    public AsyncBatchAnnotator(BatchRequest request, int maxInFlight, int batchSize, int minBatchSize, int maxBatchSize,
+                               long targetLatency, int maxRetries, long retryBackoff) {
+        this.request = request;
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.batchSizeIncrement = Math.max(1, this.maxBatchSize / 20);
+        this.targetLatency = targetLatency;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.batchSize = new AtomicInteger(Math.min(this.maxBatchSize, Math.max(this.minBatchSize, batchSize)));
+        this.executorService = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread thread = new Thread(r, "annotation-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "annotation-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Annotates a list of variants. The annotations are returned in the same order as the variants.
+     * Variants that can not be annotated are skipped.
+     *
+     * @param variants  Variants to annotate
+     * @return          Annotations
+     * @throws IOException  If the annotation is interrupted, or if a request keeps failing after all the retries
+     */
+    public List<VariantAnnotation> annotate(List<Variant> variants) throws IOException {
+        List<CompletableFuture<List<VariantAnnotation>>> futures = new ArrayList<>();
+        int size = batchSize.get();
+        for (int from = 0; from < variants.size(); from += size) {
+            futures.add(submit(variants.subList(from, Math.min(variants.size(), from + size)), 0));
+        }
+        List<VariantAnnotation> annotations = new ArrayList<>(variants.size());
+        try {
+            for (CompletableFuture<List<VariantAnnotation>> future : futures) {
+                annotations.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return annotations;
+    }
+
+    private CompletableFuture<List<VariantAnnotation>> submit(List<Variant> variants, int attempt) {
+        return CompletableFuture.supplyAsync(() -> execute(variants), executorService).thenCompose(result -> {
+            if (result.annotations != null) {
+                return CompletableFuture.completedFuture(result.annotations);
+            } else if (result.transientError && attempt < maxRetries) {
+                long wait = retryBackoff << attempt;
+                logger.warn("Annotation request of {} variants failed. Retry {}/{} in {}ms", variants.size(), attempt + 1, maxRetries, wait);
+                CompletableFuture<List<VariantAnnotation>> retry = new CompletableFuture<>();
+                scheduler.schedule(() -> {
+                    submit(variants, attempt + 1).whenComplete((annotations, throwable) -> {
+                        if (throwable != null) {
+                            retry.completeExceptionally(throwable);
+                        } else {
+                            retry.complete(annotations);
+                        }
+                    });
+                }, wait, TimeUnit.MILLISECONDS);
+                return retry;
+            } else if (result.transientError) {
+                CompletableFuture<List<VariantAnnotation>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IOException("Annotation request of " + variants.size() + " variants failed after "
+                        + maxRetries + " retries", result.error));
+                return failed;
+            } else if (variants.size() == 1) {
+                logger.error("Annotation error. Skipping variant. {}", variants.get(0));
+                numSkippedVariants.incrementAndGet();
+                return CompletableFuture.completedFuture(Collections.<VariantAnnotation>emptyList());
+            } else {
+                // Isolate the failing variants
+                List<Variant> variants1 = variants.subList(0, variants.size() / 2);
+                List<Variant> variants2 = variants.subList(variants.size() / 2, variants.size());
+                return submit(variants1, 0).thenCombine(submit(variants2, 0), (annotations1, annotations2) -> {
+                    List<VariantAnnotation> annotations = new ArrayList<>(annotations1.size() + annotations2.size());
+                    annotations.addAll(annotations1);
+                    annotations.addAll(annotations2);
+                    return annotations;
+                });
+            }
+        });
+    }
+
+    private RequestResult execute(List<Variant> variants) {
+        long start = System.currentTimeMillis();
+        List<VariantAnnotation> annotations;
+        Exception error = null;
+        try {
+            annotations = request.annotate(variants);
+            if (annotations != null && annotations.size() != variants.size()) {
+                logger.warn("Annotation request returned {} annotations for {} variants", annotations.size(), variants.size());
+                annotations = null;
+            }
+        } catch (Exception e) {
+            logger.warn("Annotation request error: {}", e.toString());
+            annotations = null;
+            error = e;
+        }
+        long latency = System.currentTimeMillis() - start;
+
+        numRequests.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        maxLatency.accumulateAndGet(latency, Math::max);
+        if (annotations == null) {
+            numErrors.incrementAndGet();
+        }
+        adaptBatchSize(annotations != null && latency <= targetLatency);
+        logger.debug("Annotation request of {} variants. Time: {}ms. Error: {}. Next batch size: {}",
+                variants.size(), latency, annotations == null, batchSize.get());
+        return new RequestResult(annotations, error);
+    }
+
+    /**
+     * Additive increase, multiplicative decrease.
+     */
+    private void adaptBatchSize(boolean success) {
+        if (success) {
+            batchSize.updateAndGet(size -> Math.min(maxBatchSize, size + batchSizeIncrement));
+        } else {
+            batchSize.updateAndGet(size -> Math.max(minBatchSize, size / 2));
+        }
+    }
+
+    public void close() {
+        executorService.shutdown();
+        scheduler.shutdown();
+        logger.info("Annotation requests: {}, errors: {}, skipped variants: {}, mean latency: {}ms, max latency: {}ms",
+                getNumRequests(), getNumErrors(), getNumSkippedVariants(), getMeanLatency(), getMaxLatency());
+    }
+
+    public int getBatchSize() {
+        return batchSize.get();
+    }
+
+    public long getNumRequests() {
+        return numRequests.get();
+    }
+
+    public long getNumErrors() {
+        return numErrors.get();
+    }
+
+    public long getNumSkippedVariants() {
+        return numSkippedVariants.get();
+    }
+
+    public double getMeanLatency() {
+        long requests = numRequests.get();
+        return requests == 0 ? 0 : totalLatency.get() / (double) requests;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    private static class RequestResult {
+        private final List<VariantAnnotation> annotations;
+        private final boolean transientError;
+        private final Exception error;
+
+        RequestResult(List<VariantAnnotation> annotations, Exception error) {
+            this.annotations = annotations;
+            this.transientError = error != null;
+            this.error = error;
+        }
+    }
+}
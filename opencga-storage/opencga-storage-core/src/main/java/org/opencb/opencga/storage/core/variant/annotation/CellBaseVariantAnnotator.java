@@ -17,7 +17,6 @@
 package org.opencb.opencga.storage.core.variant.annotation;
 
 import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opencb.biodata.models.variant.Variant;
@@ -33,10 +32,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 //import org.opencb.cellbase.core.db.DBAdaptorFactory;
 //import org.opencb.cellbase.core.db.api.variation.VariantAnnotationDBAdaptor;
@@ -55,6 +51,16 @@ public class CellBaseVariantAnnotator extends VariantAnnotator {
 //    private DBAdaptorFactory dbAdaptorFactory = null;
     private CellBaseClient cellBaseClient = null;
     private ObjectMapper jsonObjectMapper;
+    private String version = null;
+    private AsyncBatchAnnotator asyncAnnotator = null;
+
+    public static final String MAX_IN_FLIGHT = "cellbase.maxInFlight";
+    public static final String REQUEST_BATCH_SIZE = "cellbase.batchSize";
+    public static final String REQUEST_MIN_BATCH_SIZE = "cellbase.minBatchSize";
+    public static final String REQUEST_MAX_BATCH_SIZE = "cellbase.maxBatchSize";
+    public static final String TARGET_LATENCY = "cellbase.targetLatency";   // Milliseconds
+    public static final String MAX_RETRIES = "cellbase.maxRetries";
+    public static final String RETRY_BACKOFF = "cellbase.retryBackoff";     // Milliseconds
 
 //    public static final String CELLBASE_VERSION = "CELLBASE.VERSION";
 //    public static final String CELLBASE_REST_URL = "CELLBASE.REST.URL";
@@ -107,6 +113,15 @@ public class CellBaseVariantAnnotator extends VariantAnnotator {
             }
 
             this.cellBaseClient = cellBaseClient;
+            version = "cellbase:" + cellbaseVersion + ":" + species + ":" + assembly;
+            asyncAnnotator = new AsyncBatchAnnotator(this::queryCellBase,
+                    options.getInt(MAX_IN_FLIGHT, 4),
+                    options.getInt(REQUEST_BATCH_SIZE, 100),
+                    options.getInt(REQUEST_MIN_BATCH_SIZE, 10),
+                    options.getInt(REQUEST_MAX_BATCH_SIZE, 500),
+                    options.getLong(TARGET_LATENCY, 10000),
+                    options.getInt(MAX_RETRIES, 3),
+                    options.getLong(RETRY_BACKOFF, 1000));
             cellBaseClient.getObjectMapper().addMixIn(VariantAnnotation.class, VariantAnnotationMixin.class);
         } else {
             throw new UnsupportedOperationException("Unimplemented CellBase dbAdaptor connection. Use CellBaseClient instead");
@@ -161,6 +176,18 @@ public class CellBaseVariantAnnotator extends VariantAnnotator {
 
     /////// CREATE ANNOTATION - AUX METHODS
 
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (asyncAnnotator != null) {
+            asyncAnnotator.close();
+        }
+    }
+
     @Override
     public List<VariantAnnotation> annotate(List<Variant> variants) throws IOException {
 
@@ -193,66 +220,33 @@ public class CellBaseVariantAnnotator extends VariantAnnotator {
     }
 
     private List<VariantAnnotation> getVariantAnnotationsREST(List<Variant> variants) throws IOException {
+        return asyncAnnotator.annotate(variants);
+    }
 
+    /**
+     * Single blocking request to CellBase.
+     *
+     * @param variants  Variants to annotate
+     * @return          Annotations, or null if CellBase does not return one result per variant
+     * @throws IOException  If the request fails or the response can not be parsed
+     */
+    private List<VariantAnnotation> queryCellBase(List<Variant> variants) throws IOException {
         org.opencb.commons.datastore.core.QueryResponse<org.opencb.commons.datastore.core.QueryResult<VariantAnnotation>> queryResponse;
-
-        boolean queryError = false;
-        try {
-//            queryResponse = cellBaseClient.nativeGet(
-//                    CellBaseClient.Category.genomic.toString(),
-//                    CellBaseClient.SubCategory.variant.toString(),
-//                    variants.stream().map(Object::toString).collect(Collectors.joining(",")),
-//                    "full_annotation",
-//                    queryOptions, VariantAnnotation.class);
-            queryResponse = cellBaseClient.getAnnotation(
-                    CellBaseClient.Category.genomic,
-                    CellBaseClient.SubCategory.variant,
-                    variants,
-                    new org.opencb.commons.datastore.core.QueryOptions(queryOptions));
-            if (queryResponse == null) {
-                logger.warn("CellBase REST fail. Returned null. {} for variants {}", cellBaseClient.getLastQuery(),
-                        variants.stream().map(Variant::toString).collect(Collectors.joining(",")));
-
-                queryError = true;
-            }
-        } catch (JsonProcessingException | javax.ws.rs.ProcessingException e ) {
-            logger.warn("CellBase REST fail. Error parsing " + cellBaseClient.getLastQuery() + " for variants "
-                    + variants.stream().map(Variant::toString).collect(Collectors.joining(",")), e);
-            queryError = true;
-            queryResponse = null;
+        queryResponse = cellBaseClient.getAnnotation(
+                CellBaseClient.Category.genomic,
+                CellBaseClient.SubCategory.variant,
+                variants,
+                new org.opencb.commons.datastore.core.QueryOptions(queryOptions));
+        if (queryResponse == null) {
+            throw new IOException("CellBase REST fail. Returned null. " + cellBaseClient.getLastQuery());
         }
-
-        if(queryResponse != null && queryResponse.getResponse().size() != variants.size()) {
+        if (queryResponse.getResponse().size() != variants.size()) {
             logger.warn("QueryResult size (" + queryResponse.getResponse().size() + ") != variants size (" + variants.size() + ").");
-            //throw new IOException("QueryResult size != " + variants.size() + ". " + queryResponse);
-            queryError = true;
-        }
-
-        if(queryError) {
-//            logger.warn("CellBase REST error. {}", cellBaseClient.getLastQuery());
-
-            if (variants.size() == 1) {
-                logger.error("CellBase REST error. Skipping variant. {}", variants.get(0));
-                return Collections.emptyList();
-            }
-
-            List<VariantAnnotation> variantAnnotationList = new LinkedList<>();
-            List<Variant> variants1 = variants.subList(0, variants.size() / 2);
-            if (!variants1.isEmpty()) {
-                variantAnnotationList.addAll(getVariantAnnotationsREST(variants1));
-            }
-            List<Variant> variants2 = variants.subList(variants.size() / 2, variants.size());
-            if (!variants2.isEmpty()) {
-                variantAnnotationList.addAll(getVariantAnnotationsREST(variants2));
-            }
-            return variantAnnotationList;
+            return null;
         }
 
-
-        List<org.opencb.commons.datastore.core.QueryResult<VariantAnnotation>> queryResults = queryResponse.getResponse();
-
         List<VariantAnnotation> variantAnnotationList = new ArrayList<>(variants.size());
-        for (org.opencb.commons.datastore.core.QueryResult<VariantAnnotation> queryResult : queryResults) {
+        for (org.opencb.commons.datastore.core.QueryResult<VariantAnnotation> queryResult : queryResponse.getResponse()) {
             variantAnnotationList.addAll(queryResult.getResult());
         }
         return variantAnnotationList;
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.datastore.core.ObjectMap;
+import org.opencb.opencga.core.exec.Command;
+import org.opencb.opencga.core.exec.RunnableProcess;
+import org.opencb.opencga.storage.core.config.StorageConfiguration;
+import org.opencb.opencga.storage.core.variant.io.avro.VariantAnnotationJsonDataReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Annotates the variants running a local annotator, like an offline VEP, once for each batch.
+ *
+ * Each batch is sorted and written to a temporary file in the Ensembl default input format
+ * ("chromosome start end ref/alt strand"), which can represent the normalized indels without the anchor base.
+ * The annotator command reads this file and writes one VariantAnnotation in JSON per line, optionally gzipped, in the
+ * same order as the input. The annotations are returned in the order of the requested variants.
+ * The command line is given with {@link #COMMAND}, using the placeholders {@code ${input}} and {@code ${output}}.
+ *
+ * The VariantAnnotationManager annotates {@link VariantAnnotationManager#NUM_THREADS} batches concurrently, so that many
+ * annotator processes run in parallel. Each process has a start up cost, so use a large {@link VariantAnnotationManager#BATCH_SIZE}.
+ */
+public class CommandLineVariantAnnotator extends VariantAnnotator {
+
+    public static final String COMMAND = "annotator.command";
+    public static final String TMP_DIR = "annotator.tmpDir";
+    public static final String VERSION = "annotator.version";
+    public static final String INPUT_PLACEHOLDER = "${input}";
+    public static final String OUTPUT_PLACEHOLDER = "${output}";
+
+    private static final Comparator<Variant> VARIANT_COMPARATOR = Comparator
+            .comparing(Variant::getChromosome)
+            .thenComparing(Variant::getStart);
+
+    private final String command;
+    private final Path tmpDir;
+    private final String version;
+
+    protected static Logger logger = LoggerFactory.getLogger(CommandLineVariantAnnotator.class);
+
+    public CommandLineVariantAnnotator(StorageConfiguration configuration, ObjectMap options) throws VariantAnnotatorException {
+        super(configuration, options);
+        command = options.getString(COMMAND);
+        if (command == null || !command.contains(INPUT_PLACEHOLDER) || !command.contains(OUTPUT_PLACEHOLDER)) {
+            throw new VariantAnnotatorException("Missing or invalid annotator command \"" + command + "\". Must contain "
+                    + INPUT_PLACEHOLDER + " and " + OUTPUT_PLACEHOLDER);
+        }
+        tmpDir = Paths.get(options.getString(TMP_DIR, System.getProperty("java.io.tmpdir")));
+        version = options.getString(VERSION, null);
+    }
+
+    @Override
+    public List<VariantAnnotation> annotate(List<Variant> variants) throws IOException {
+        if (variants.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Variant> sortedVariants = new ArrayList<>(variants);
+        sortedVariants.sort(VARIANT_COMPARATOR);
+        Map<Variant, Integer> positions = new IdentityHashMap<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            positions.put(variants.get(i), i);
+        }
+
+        Path input = Files.createTempFile(tmpDir, "annotator.", ".input.txt");
+        Path output = Paths.get(input.toString().replace(".input.txt", ".output.json"));
+        try {
+            writeInput(sortedVariants, input);
+
+            long start = System.currentTimeMillis();
+            Command process = new Command(command.replace(INPUT_PLACEHOLDER, input.toString()).replace(OUTPUT_PLACEHOLDER, output.toString()));
+            process.run();
+            if (process.getStatus() != RunnableProcess.Status.DONE) {
+                throw new IOException("Annotator command failed with exit value " + process.getExitValue() + ": "
+                        + process.getCommandLine() + "\n" + process.getError());
+            }
+            logger.debug("Annotator finished for {} variants in {}ms", sortedVariants.size(), System.currentTimeMillis() - start);
+
+            List<VariantAnnotation> annotations = readOutput(output);
+            if (annotations.size() != sortedVariants.size()) {
+                logger.warn("Annotator returned {} annotations for {} variants. Annotations can not be matched with the variants",
+                        annotations.size(), sortedVariants.size());
+                return annotations;
+            }
+            // Back to the order of the requested variants
+            List<VariantAnnotation> orderedAnnotations = new ArrayList<>(Collections.nCopies(variants.size(), null));
+            for (int i = 0; i < sortedVariants.size(); i++) {
+                orderedAnnotations.set(positions.get(sortedVariants.get(i)), annotations.get(i));
+            }
+            return orderedAnnotations;
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    private void writeInput(List<Variant> variants, Path input) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            for (Variant variant : variants) {
+                String reference = variant.getReference() == null ? "" : variant.getReference();
+                String alternate = variant.getAlternate() == null ? "" : variant.getAlternate();
+                // Insertions have end = start - 1
+                writer.write(variant.getChromosome() + "\t" + variant.getStart() + "\t" + (variant.getStart() + reference.length() - 1)
+                        + "\t" + (reference.isEmpty() ? "-" : reference) + "/" + (alternate.isEmpty() ? "-" : alternate) + "\t+");
+                writer.newLine();
+            }
+        }
+    }
+
+    private List<VariantAnnotation> readOutput(Path output) throws IOException {
+        List<VariantAnnotation> annotations = new ArrayList<>();
+        if (!Files.exists(output)) {
+            throw new IOException("Annotator command finished without writing the output file " + output);
+        }
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(output.toFile()));
+        if (isGzip(inputStream)) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        VariantAnnotationJsonDataReader reader = new VariantAnnotationJsonDataReader(inputStream);
+        reader.open();
+        try {
+            for (List<VariantAnnotation> batch = reader.read(1000); !batch.isEmpty(); batch = reader.read(1000)) {
+                for (VariantAnnotation annotation : batch) {
+                    // Back to the normalized empty alleles
+                    if ("-".equals(annotation.getReference())) {
+                        annotation.setReference("");
+                    }
+                    if ("-".equals(annotation.getAlternate())) {
+                        annotation.setAlternate("");
+                    }
+                    annotations.add(annotation);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return annotations;
+    }
+
+    private static boolean isGzip(InputStream inputStream) throws IOException {
+        inputStream.mark(2);
+        int b1 = inputStream.read();
+        int b2 = inputStream.read();
+        inputStream.reset();
+        return b1 == 0x1f && b2 == 0x8b;
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+}
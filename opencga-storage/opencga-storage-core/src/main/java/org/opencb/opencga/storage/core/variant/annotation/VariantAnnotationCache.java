@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.*;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Local cache of variant annotations, in a SQLite file shared by all the databases and studies.
+ *
+ * The annotations are stored Avro encoded, keyed by "chromosome:start:reference:alternate" and by the version of the
+ * annotator. The version includes the fingerprint of the VariantAnnotation schema, so annotations written with another
+ * data model are never read.
+ *
+ * Thread safe. All the operations use the same connection.
+ */
+public class VariantAnnotationCache implements Closeable {
+
+    private static final int MAX_QUERY_PARAMS = 900;    // SQLite limit is 999
+
+    private final Connection connection;
+    private final String version;
+    private final PreparedStatement insertStatement;
+    private final DatumWriter<VariantAnnotation> datumWriter = new SpecificDatumWriter<>(VariantAnnotation.class);
+    private final DatumReader<VariantAnnotation> datumReader = new SpecificDatumReader<>(VariantAnnotation.class);
+    private BinaryEncoder encoder;
+    private BinaryDecoder decoder;
+    private long hits = 0;
+    private long misses = 0;
+
+    protected static Logger logger = LoggerFactory.getLogger(VariantAnnotationCache.class);
+
+    /**
+     * @param path              SQLite file. Created if missing
+     * @param annotatorVersion  Version of the annotator, like "cellbase:v3:hsapiens:GRCh37"
+     * @throws IOException      If the cache can not be opened
+     */
+    public VariantAnnotationCache(Path path, String annotatorVersion) throws IOException {
+        this.version = annotatorVersion + ":" + Long.toHexString(SchemaNormalization.parsingFingerprint64(VariantAnnotation.getClassSchema()));
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + path.toAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                // Allow other processes to read while writing
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS annotation ("
+                        + "variant TEXT NOT NULL, version TEXT NOT NULL, annotation BLOB NOT NULL, PRIMARY KEY (variant, version))");
+            }
+            connection.setAutoCommit(false);
+            insertStatement = connection.prepareStatement("INSERT OR REPLACE INTO annotation (variant, version, annotation) VALUES (?, ?, ?)");
+        } catch (SQLException e) {
+            throw new IOException("Unable to open annotation cache " + path, e);
+        }
+        logger.info("Using annotation cache {} for version {}", path, version);
+    }
+
+    public static String buildKey(Variant variant) {
+        return buildKey(variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate());
+    }
+
+    private static String buildKey(String chromosome, int start, String reference, String alternate) {
+        return chromosome + ':' + start + ':' + reference + ':' + alternate;
+    }
+
+    /**
+     * @param variants  Variants to look for
+     * @return          Cached annotations, by {@link #buildKey}. Variants not in the cache are not included
+     * @throws IOException If the cache can not be read
+     */
+    public synchronized Map<String, VariantAnnotation> get(List<Variant> variants) throws IOException {
+        Map<String, VariantAnnotation> annotations = new HashMap<>(variants.size());
+        List<String> keys = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            keys.add(buildKey(variant));
+        }
+        try {
+            for (int from = 0; from < keys.size(); from += MAX_QUERY_PARAMS) {
+                List<String> subKeys = keys.subList(from, Math.min(keys.size(), from + MAX_QUERY_PARAMS));
+                StringBuilder sql = new StringBuilder("SELECT variant, annotation FROM annotation WHERE version = ? AND variant IN (");
+                for (int i = 0; i < subKeys.size(); i++) {
+                    sql.append(i == 0 ? "?" : ",?");
+                }
+                sql.append(')');
+                try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                    statement.setString(1, version);
+                    for (int i = 0; i < subKeys.size(); i++) {
+                        statement.setString(i + 2, subKeys.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            decoder = DecoderFactory.get().binaryDecoder(resultSet.getBytes(2), decoder);
+                            annotations.put(resultSet.getString(1), datumReader.read(null, decoder));
+                        }
+                    }
+                }
+            }
+            connection.commit();    // End the read transaction
+        } catch (SQLException e) {
+            throw new IOException("Error reading annotation cache", e);
+        }
+        hits += annotations.size();
+        misses += variants.size() - annotations.size();
+        return annotations;
+    }
+
+    /**
+     * The annotations are keyed by the requested variant, as the annotator may return other coordinates, like
+     * normalized indels, and the cache is read with the requested variants.
+     *
+     * @param variants      Variants requested to the annotator
+     * @param annotations   Annotation of each variant, in the same order. Replace the existing annotations of the same variant and version
+     * @throws IOException  If the cache can not be written
+     */
+    public synchronized void put(List<Variant> variants, List<VariantAnnotation> annotations) throws IOException {
+        if (variants.size() != annotations.size()) {
+            throw new IllegalArgumentException("Expected one annotation for each variant. Found " + annotations.size()
+                    + " annotations for " + variants.size() + " variants");
+        }
+        if (annotations.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            for (int i = 0; i < annotations.size(); i++) {
+                out.reset();
+                encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+                datumWriter.write(annotations.get(i), encoder);
+                encoder.flush();
+                insertStatement.setString(1, buildKey(variants.get(i)));
+                insertStatement.setString(2, version);
+                insertStatement.setBytes(3, out.toByteArray());
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IOException("Error writing annotation cache", e);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        logger.info("Annotation cache hits: {}, misses: {}", hits, misses);
+        try {
+            insertStatement.close();
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
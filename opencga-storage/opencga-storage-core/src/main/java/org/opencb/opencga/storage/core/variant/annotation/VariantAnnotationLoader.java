@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads an annotation file into the database by genomic chunks, with a checkpoint to resume interrupted loads.
+ *
+ * The annotations are grouped in runs of consecutive annotations from the same chunk of {@link #CHUNK_SIZE} bases.
+ * Each run is sorted, so the updates follow the order of the variant ids, and written with
+ * {@link VariantDBAdaptor#updateAnnotations} in batches. The runs of each chromosome are numbered in file order.
+ *
+ * The checkpoint file, "annotationFile.load.checkpoint", has one line "chromosome\trun" for each loaded run, in the
+ * order they finish. On restart with the same file, those runs are read but not loaded again.
+ */
+public class VariantAnnotationLoader {
+
+    public static final String CHUNK_SIZE = "annotation.load.chunkSize";
+    public static final String CHECKPOINT_SUFFIX = ".load.checkpoint";
+    static final String CHECKPOINT_HEADER = "#file=";
+    private static final int MAX_RUN_SIZE = 100000;
+
+    private static final Comparator<VariantAnnotation> ANNOTATION_COMPARATOR = Comparator
+            .comparing(VariantAnnotation::getStart)
+            .thenComparing(a -> a.getReference() == null ? "" : a.getReference())
+            .thenComparing(a -> a.getAlternate() == null ? "" : a.getAlternate());
+
+    private final VariantDBAdaptor dbAdaptor;
+
+    protected static Logger logger = LoggerFactory.getLogger(VariantAnnotationLoader.class);
+
+    public VariantAnnotationLoader(VariantDBAdaptor dbAdaptor) {
+        this.dbAdaptor = dbAdaptor;
+    }
+
+    /**
+     * @param file      Annotation file, used to name the checkpoint
+     * @param reader    Reader of the annotation file
+     * @param options   {@link VariantAnnotationManager#BATCH_SIZE}, {@link VariantAnnotationManager#NUM_WRITERS} and {@link #CHUNK_SIZE}
+     * @return          Number of annotations loaded in this run
+     * @throws IOException  If the load fails. The checkpoint is kept to resume it
+     */
+    public long load(Path file, DataReader<VariantAnnotation> reader, QueryOptions options) throws IOException {
+        final int batchSize = options.getInt(VariantAnnotationManager.BATCH_SIZE, 1000);
+        final int numWriters = options.getInt(VariantAnnotationManager.NUM_WRITERS, 6);
+        final int chunkSize = options.getInt(CHUNK_SIZE, 1000000);
+        final QueryOptions updateOptions = new QueryOptions();
+        if (options.containsKey(VariantAnnotationManager.ANNOTATION_VERSION)) {
+            updateOptions.put(VariantAnnotationManager.ANNOTATION_VERSION, options.getString(VariantAnnotationManager.ANNOTATION_VERSION));
+        }
+
+        Path checkpointPath = Paths.get(file.toString() + CHECKPOINT_SUFFIX);
+        String checkpointHeader = CHECKPOINT_HEADER + file.getFileName() + "\tsize=" + Files.size(file) + "\tchunkSize=" + chunkSize;
+        Map<String, Set<Integer>> loadedRuns = new HashMap<>();
+        if (Files.exists(checkpointPath)) {
+            List<String> lines = Files.readAllLines(checkpointPath);
+            if (lines.isEmpty() || !lines.get(0).equals(checkpointHeader)) {
+                throw new IOException("Checkpoint file " + checkpointPath + " is from other annotation file. Remove it to load the annotation again");
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] split = line.split("\t");
+                loadedRuns.computeIfAbsent(split[0], c -> new HashSet<>()).add(Integer.valueOf(split[1]));
+            }
+            logger.info("Resuming annotation load from {}. Loaded runs: {}", checkpointPath,
+                    loadedRuns.values().stream().mapToInt(Set::size).sum());
+        } else {
+            Files.write(checkpointPath, Collections.singletonList(checkpointHeader));
+        }
+
+        Checkpoint checkpoint = new Checkpoint(checkpointPath);
+        AtomicLong numLoaded = new AtomicLong();
+        ParallelTaskRunner.Task<AnnotationRun, Void> task = runs -> {
+            for (AnnotationRun run : runs) {
+                run.annotations.sort(ANNOTATION_COMPARATOR);
+                for (int from = 0; from < run.annotations.size(); from += batchSize) {
+                    dbAdaptor.updateAnnotations(run.annotations.subList(from, Math.min(run.annotations.size(), from + batchSize)),
+                            updateOptions);
+                }
+                numLoaded.addAndGet(run.annotations.size());
+                checkpoint.complete(run);
+            }
+            return Collections.emptyList();
+        };
+
+        long start = System.currentTimeMillis();
+        AnnotationRunReader runReader = new AnnotationRunReader(reader, chunkSize, loadedRuns);
+        ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numWriters, 1, numWriters * 2, true, false);
+        try {
+            new ParallelTaskRunner<>(runReader, task, null, config).run();
+        } catch (Exception e) {
+            throw new IOException("Error loading annotation file " + file + ". Run again to resume from " + checkpointPath, e);
+        }
+        logger.info("Loaded {} annotations. Skipped {} already loaded. Time: {}ms", numLoaded.get(), runReader.numSkipped,
+                System.currentTimeMillis() - start);
+        Files.delete(checkpointPath);
+        return numLoaded.get();
+    }
+
+    /**
+     * Consecutive annotations of the same chunk.
+     */
+    static class AnnotationRun {
+        final String chromosome;
+        final int run;
+        final List<VariantAnnotation> annotations = new ArrayList<>();
+
+        AnnotationRun(String chromosome, int run) {
+            this.chromosome = chromosome;
+            this.run = run;
+        }
+    }
+
+    /**
+     * Groups the annotations in runs, discarding the runs already loaded.
+     */
+    static class AnnotationRunReader implements DataReader<AnnotationRun> {
+        private final DataReader<VariantAnnotation> reader;
+        private final int chunkSize;
+        private final Map<String, Set<Integer>> loadedRuns;
+        private final Map<String, Integer> numRuns = new HashMap<>();
+        private Iterator<VariantAnnotation> buffer = Collections.emptyIterator();
+        private AnnotationRun current;
+        private int currentChunk;
+        private long numSkipped = 0;
+
+        AnnotationRunReader(DataReader<VariantAnnotation> reader, int chunkSize, Map<String, Set<Integer>> loadedRuns) {
+            this.reader = reader;
+            this.chunkSize = chunkSize;
+            this.loadedRuns = loadedRuns;
+        }
+
+        @Override
+        public boolean open() {
+            return reader.open();
+        }
+
+        @Override
+        public boolean pre() {
+            return reader.pre();
+        }
+
+        @Override
+        public boolean post() {
+            return reader.post();
+        }
+
+        @Override
+        public boolean close() {
+            return reader.close();
+        }
+
+        @Override
+        public List<AnnotationRun> read(int batchSize) {
+            List<AnnotationRun> runs = new ArrayList<>(batchSize);
+            while (runs.size() < batchSize) {
+                if (!buffer.hasNext()) {
+                    buffer = reader.read(1000).iterator();
+                    if (!buffer.hasNext()) {
+                        // End of file
+                        if (current != null) {
+                            addRun(runs, current);
+                            current = null;
+                        }
+                        break;
+                    }
+                }
+                VariantAnnotation annotation = buffer.next();
+                int chunk = annotation.getStart() / chunkSize;
+                if (current == null || !current.chromosome.equals(annotation.getChromosome()) || currentChunk != chunk
+                        || current.annotations.size() >= MAX_RUN_SIZE) {
+                    if (current != null) {
+                        addRun(runs, current);
+                    }
+                    int run = numRuns.merge(annotation.getChromosome(), 1, Integer::sum) - 1;
+                    current = new AnnotationRun(annotation.getChromosome(), run);
+                    currentChunk = chunk;
+                }
+                current.annotations.add(annotation);
+            }
+            return runs;
+        }
+
+        private void addRun(List<AnnotationRun> runs, AnnotationRun run) {
+            if (loadedRuns.getOrDefault(run.chromosome, Collections.emptySet()).contains(run.run)) {
+                numSkipped += run.annotations.size();
+            } else {
+                runs.add(run);
+            }
+        }
+    }
+
+    /**
+     * Appends the loaded runs to the checkpoint file. Runs may finish in any order.
+     */
+    static class Checkpoint {
+        private final Path path;
+
+        Checkpoint(Path path) {
+            this.path = path;
+        }
+
+        synchronized void complete(AnnotationRun run) {
+            try {
+                Files.write(path, Collections.singletonList(run.chromosome + "\t" + run.run), StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
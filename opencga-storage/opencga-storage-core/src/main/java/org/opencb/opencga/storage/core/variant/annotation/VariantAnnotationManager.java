@@ -38,11 +38,14 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -69,6 +72,12 @@ public class VariantAnnotationManager {
     public static final String NUM_WRITERS = "numWriters";
     public static final String NUM_THREADS = "numThreads";
     public static final String VARIANT_ANNOTATOR_CLASSNAME = "variant.annotator.classname";
+    public static final String ANNOTATION_CACHE = "annotation.cache";                  // Path to the local annotation cache
+    public static final String ANNOTATION_CACHE_VERSION = "annotation.cache.version";  // Override the annotator version
+    public static final String ANNOTATION_VERSION = "annotation.version";              // Annotator version stored with the annotations
+    public static final String INCREMENTAL = "annotation.incremental";                 // Annotate only variants without annotation from the current version
+
+    public static final String VERSION_SUFFIX = ".version";                             // File with the annotator version of an annotation file
 
     private VariantDBAdaptor dbAdaptor;
     private VariantAnnotator variantAnnotator;
@@ -115,6 +124,10 @@ public class VariantAnnotationManager {
         Path path = Paths.get(outDir != null? outDir.toString() : "/tmp" ,fileName + ".annot" + (avro? ".avro" : ".json") + (gzip? ".gz" : ""));
         URI fileUri = path.toUri();
 
+        final Query annotationQuery = options != null && options.getBoolean(INCREMENTAL, false)
+                ? buildIncrementalQuery(query, options)
+                : query;
+
         /** Getting iterator from OpenCGA Variant database. **/
         QueryOptions iteratorQueryOptions;
         if(options == null) {
@@ -135,21 +148,38 @@ public class VariantAnnotationManager {
         final long[] totalVariantsLong = {-1};
 
         new Thread(() -> {
-            totalVariantsLong[0] = dbAdaptor.count(query).first();
+            totalVariantsLong[0] = dbAdaptor.count(annotationQuery).first();
         }).start();
         int logBatchSize = 1000;
 
         final AtomicLong numAnnotations = new AtomicLong(0);
 
+        final VariantAnnotationCache cache;
+        String cachePath = options == null ? null : options.getString(ANNOTATION_CACHE);
+        String cacheVersion = options == null ? null : options.getString(ANNOTATION_CACHE_VERSION, variantAnnotator.getVersion());
+        if (cachePath != null && !cachePath.isEmpty()) {
+            if (cacheVersion == null) {
+                throw new IllegalArgumentException("Unable to use the annotation cache. Unknown version for annotator "
+                        + variantAnnotator.getClass().getName() + ". Use the option " + ANNOTATION_CACHE_VERSION);
+            }
+            cache = new VariantAnnotationCache(Paths.get(cachePath), cacheVersion);
+        } else {
+            cache = null;
+        }
+
         try {
-            DataReader<Variant> variantDataReader = new VariantDBReader(dbAdaptor, query, iteratorQueryOptions);
+            DataReader<Variant> variantDataReader = new VariantDBReader(dbAdaptor, annotationQuery, iteratorQueryOptions);
 
             ParallelTaskRunner.Task<Variant, VariantAnnotation> annotationTask = variantList -> {
                 List<VariantAnnotation> variantAnnotationList;
                 long start = System.currentTimeMillis();
                 logger.debug("Annotating batch of {} genomic variants.", variantList.size());
                 try {
-                    variantAnnotationList = variantAnnotator.annotate(variantList);
+                    if (cache == null) {
+                        variantAnnotationList = variantAnnotator.annotate(variantList);
+                    } else {
+                        variantAnnotationList = annotateWithCache(cache, variantList);
+                    }
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -177,13 +207,56 @@ public class VariantAnnotationManager {
             ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numThreads, batchSize, numThreads * 2, true, false);
             ParallelTaskRunner<Variant, VariantAnnotation> parallelTaskRunner = new ParallelTaskRunner<>(variantDataReader, annotationTask, variantAnnotationDataWriter, config);
             parallelTaskRunner.run();
+
+            String version = getAnnotationVersion(options);
+            if (version != null) {
+                Files.write(getVersionPath(path), version.getBytes(StandardCharsets.UTF_8));
+            }
         } catch (Exception e) {
             throw new IOException(e);
+        } finally {
+            try {
+                variantAnnotator.close();
+            } finally {
+                if (cache != null) {
+                    cache.close();
+                }
+            }
         }
 
         return fileUri;
     }
 
+    /**
+     * Only the variants missing in the cache are sent to the annotator. The new annotations are added to the cache.
+     */
+    private List<VariantAnnotation> annotateWithCache(VariantAnnotationCache cache, List<Variant> variantList) throws IOException {
+        Map<String, VariantAnnotation> cached = cache.get(variantList);
+        List<VariantAnnotation> variantAnnotationList = new ArrayList<>(variantList.size());
+        List<Variant> missing = new ArrayList<>(variantList.size() - cached.size());
+        for (Variant variant : variantList) {
+            VariantAnnotation annotation = cached.get(VariantAnnotationCache.buildKey(variant));
+            if (annotation == null) {
+                missing.add(variant);
+            } else {
+                variantAnnotationList.add(annotation);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<VariantAnnotation> newAnnotations = variantAnnotator.annotate(missing);
+            if (newAnnotations.size() == missing.size()) {
+                // The annotators return one annotation for each variant, in the same order
+                cache.put(missing, newAnnotations);
+            } else {
+                logger.warn("Annotator returned {} annotations for {} variants. Annotations not added to the cache",
+                        newAnnotations.size(), missing.size());
+            }
+            variantAnnotationList.addAll(newAnnotations);
+        }
+        logger.debug("Annotations from cache: {}, from annotator: {}", cached.size(), missing.size());
+        return variantAnnotationList;
+    }
+
     /**
      * Loads variant annotations from an specified file into the selected Variant DataBase
      *
@@ -193,37 +266,86 @@ public class VariantAnnotationManager {
      */
     public void loadAnnotation(URI uri, QueryOptions options) throws IOException {
 
-        final int batchSize = options.getInt(VariantAnnotationManager.BATCH_SIZE, 100);
-        final int numConsumers = options.getInt(VariantAnnotationManager.NUM_WRITERS, 6);
         boolean avro = uri.getPath().endsWith("avro") || uri.getPath().endsWith("avro.gz");
+        Path path = Paths.get(uri);
 
-
-        ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numConsumers, batchSize, numConsumers * 2, true, false);
         DataReader<VariantAnnotation> reader;
 
         //TODO: Read from VEP file
         if (avro) {
-            reader = new AvroDataReader<>(Paths.get(uri).toFile(), VariantAnnotation.class);
+            reader = new AvroDataReader<>(path.toFile(), VariantAnnotation.class);
         } else {
-            reader = new VariantAnnotationJsonDataReader(Paths.get(uri).toFile());
+            reader = new VariantAnnotationJsonDataReader(path.toFile());
         }
-        try {
-            ParallelTaskRunner<VariantAnnotation, Void> prt = new ParallelTaskRunner<>(reader, variantAnnotationList -> {
-                dbAdaptor.updateAnnotations(variantAnnotationList, new QueryOptions());
-                return Collections.emptyList();
-            }, null, config);
-            prt.run();
+        QueryOptions loadOptions = new QueryOptions(options);
+        String version = getLoadedAnnotationVersion(path, options);
+        if (version != null) {
+            loadOptions.put(ANNOTATION_VERSION, version);
+        } else {
+            logger.warn("Unknown annotator version for the file {}. Annotations loaded without version, "
+                    + "so will be annotated again in {} mode. Use the option {}", path, INCREMENTAL, ANNOTATION_VERSION);
+        }
+        new VariantAnnotationLoader(dbAdaptor).load(path, reader, loadOptions);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Version of the annotator that created the file. The current annotator may not be the one that created an external file.
+     *
+     * @param path      Annotation file
+     * @param options   Options, may set the version with {@link #ANNOTATION_VERSION}
+     * @return          Version from the options, or written by {@link #createAnnotation}. Null if unknown
+     * @throws IOException  If the version file can not be read
+     */
+    private String getLoadedAnnotationVersion(Path path, ObjectMap options) throws IOException {
+        String version = options == null ? null : options.getString(ANNOTATION_VERSION);
+        if (version != null && !version.isEmpty()) {
+            return version;
         }
+        Path versionPath = getVersionPath(path);
+        if (Files.exists(versionPath)) {
+            version = new String(Files.readAllBytes(versionPath), StandardCharsets.UTF_8).trim();
+            return version.isEmpty() ? null : version;
+        }
+        return null;
+    }
 
+    private static Path getVersionPath(Path annotationPath) {
+        return Paths.get(annotationPath + VERSION_SUFFIX);
+    }
+
+    /**
+     * Version stored with the annotations, to find the outdated annotations in {@link #INCREMENTAL} mode.
+     *
+     * @param options   Options, may override the version with {@link #ANNOTATION_VERSION}
+     * @return          Version of the annotator, or null if unknown
+     */
+    public String getAnnotationVersion(ObjectMap options) {
+        String version = options == null ? null : options.getString(ANNOTATION_VERSION);
+        return version == null || version.isEmpty() ? variantAnnotator.getVersion() : version;
+    }
+
+    /**
+     * Restricts the query to the variants without annotation, or annotated with other version of the annotator.
+     * Replaces any {@link VariantDBAdaptor.VariantQueryParams#ANNOTATION_EXISTS} filter.
+     */
+    private Query buildIncrementalQuery(Query query, ObjectMap options) {
+        String version = getAnnotationVersion(options);
+        if (version == null) {
+            throw new IllegalArgumentException("Unable to annotate incrementally. Unknown version for annotator "
+                    + variantAnnotator.getClass().getName() + ". Use the option " + ANNOTATION_VERSION);
+        }
+        Query incrementalQuery = new Query(query);
+        incrementalQuery.remove(VariantDBAdaptor.VariantQueryParams.ANNOTATION_EXISTS.key());
+        incrementalQuery.put(VariantDBAdaptor.VariantQueryParams.ANNOTATION_OUTDATED.key(), version);
+        logger.info("Incremental annotation. Annotating variants not annotated with version {}", version);
+        return incrementalQuery;
     }
 
     public enum AnnotationSource {
         CELLBASE_DB_ADAPTOR,
         CELLBASE_REST,
         VEP,
+        COMMAND_LINE,
         OTHER
     }
 
@@ -246,6 +368,8 @@ public class VariantAnnotationManager {
                 return new CellBaseVariantAnnotator(configuration, options, true);
             case VEP:
                 return VepVariantAnnotator.buildVepAnnotator();
+            case COMMAND_LINE:
+                return new CommandLineVariantAnnotator(configuration, options);
             case OTHER:
             default:
                 String className = options.getString(VARIANT_ANNOTATOR_CLASSNAME);
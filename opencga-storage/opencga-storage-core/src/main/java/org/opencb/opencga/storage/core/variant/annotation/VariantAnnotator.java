@@ -40,4 +40,21 @@ public abstract class VariantAnnotator {
      */
     public abstract List<VariantAnnotation> annotate(List<Variant> variants) throws IOException;
 
+    /**
+     * Identifier of the annotation source and the version of its data, used to cache the annotations.
+     *
+     * @return  Annotator version, or null if the annotations can not be cached
+     */
+    public String getVersion() {
+        return null;
+    }
+
+    /**
+     * Release the resources of the annotator, like threads or connections. Called once all the variants are annotated.
+     *
+     * @throws IOException if the resources can not be released
+     */
+    public void close() throws IOException {
+    }
+
 }
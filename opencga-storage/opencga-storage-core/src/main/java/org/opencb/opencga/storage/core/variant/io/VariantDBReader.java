@@ -99,4 +99,12 @@ public class VariantDBReader implements VariantReader {
         
         return variants;
     }
+
+    @Override
+    public boolean close() {
+        if (iterator != null) {
+            iterator.close();
+        }
+        return true;
+    }
 }
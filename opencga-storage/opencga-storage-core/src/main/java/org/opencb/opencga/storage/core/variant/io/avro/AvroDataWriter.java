@@ -20,13 +20,27 @@ import java.util.List;
 public class AvroDataWriter<T extends GenericRecord> implements DataWriter<T> {
 
     private Path outputPath;
-    private boolean gzip;
+    private CodecFactory codec;
     private DataFileWriter<T> avroWriter;
     private Schema schema;
 
     public AvroDataWriter(Path outputPath, boolean gzip, Schema schema) {
+        this(outputPath, gzip ? CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL) : CodecFactory.nullCodec(), schema);
+    }
+
+    /**
+     * @param outputPath    Output file
+     * @param codec         Codec to compress each data block, like "deflate" or "snappy". Accepts "gzip" as "deflate"
+     * @param schema        Schema of the records
+     */
+    public AvroDataWriter(Path outputPath, String codec, Schema schema) {
+        this(outputPath, codec == null || codec.isEmpty() ? CodecFactory.nullCodec() : CodecFactory.fromString(codec.replace("gzip", "deflate")),
+                schema);
+    }
+
+    public AvroDataWriter(Path outputPath, CodecFactory codec, Schema schema) {
         this.outputPath = outputPath;
-        this.gzip = gzip;
+        this.codec = codec;
         this.schema = schema;
     }
 
@@ -37,7 +51,7 @@ public class AvroDataWriter<T extends GenericRecord> implements DataWriter<T> {
         try {
             DatumWriter<T> datumWriter = new SpecificDatumWriter<>();
             avroWriter = new DataFileWriter<>(datumWriter);
-            avroWriter.setCodec(gzip ? CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL) : CodecFactory.nullCodec());
+            avroWriter.setCodec(codec);
             avroWriter.create(schema, outputPath.toFile());
         } catch (IOException e) {
             throw new RuntimeException(e);
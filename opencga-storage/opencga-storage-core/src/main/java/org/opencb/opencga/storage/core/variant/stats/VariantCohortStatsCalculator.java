@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+import java.util.*;
+
+/**
+ * Calculates the stats of several cohorts of the same study reading the genotypes of each variant only once.
+ *
+ * The cohorts are resolved into the positions of their samples once for each samples position map, which is shared by
+ * all the variants of a study. Each distinct genotype gets a numeric code, and every sample adds one to the counter of
+ * its genotype code in each of its cohorts. The VariantStats are built from the counters at the end.
+ *
+ * Not thread safe. Use one instance for each thread.
+ */
+public class VariantCohortStatsCalculator {
+
+    private final List<String> cohortNames;
+    private final List<Set<String>> cohortSamples;
+
+    // Resolved cohorts. Cached for the last samplesPosition map
+    private Map<String, Integer> samplesPosition;
+    private int[][] sampleCohorts;
+
+    // Genotype codes, shared by all the variants
+    private final Map<String, Integer> genotypeCodes = new HashMap<>();
+    private final List<String> genotypes = new ArrayList<>();
+    private final List<int[]> genotypeAlleles = new ArrayList<>();
+
+    private int[][] counts = new int[0][0];
+
+    /**
+     * @param cohorts   keys are cohort names, values are sets of samples names.
+     */
+    public VariantCohortStatsCalculator(Map<String, Set<String>> cohorts) {
+        cohortNames = new ArrayList<>(cohorts.keySet());
+        cohortSamples = new ArrayList<>(cohorts.values());
+    }
+
+    /**
+     * Calculates the stats of the cohorts for one variant.
+     *
+     * @param variant   Variant
+     * @param study     Study of the variant
+     * @param skip      Cohorts not to calculate, like the cohorts with stats already calculated
+     * @return          Stats of each cohort not skipped
+     */
+    public Map<String, VariantStats> calculate(Variant variant, StudyEntry study, Set<String> skip) {
+        resolveCohorts(study.getSamplesPosition());
+        int numCohorts = cohortNames.size();
+        boolean[] calculate = new boolean[numCohorts];
+        boolean any = false;
+        for (int c = 0; c < numCohorts; c++) {
+            calculate[c] = !skip.contains(cohortNames.get(c));
+            any |= calculate[c];
+        }
+        if (!any) {
+            return Collections.emptyMap();
+        }
+
+        // Count the genotypes of all the cohorts in one pass
+        for (int[] cohortCounts : counts) {
+            Arrays.fill(cohortCounts, 0);
+        }
+        int gtPosition = study.getFormat().indexOf("GT");
+        List<List<String>> samplesData = study.getSamplesData();
+        for (int samplePosition = 0; samplePosition < samplesData.size() && samplePosition < sampleCohorts.length; samplePosition++) {
+            int[] cohorts = sampleCohorts[samplePosition];
+            if (cohorts.length == 0) {
+                continue;
+            }
+            List<String> sampleData = samplesData.get(samplePosition);
+            String gt = gtPosition < 0 || gtPosition >= sampleData.size() ? null : sampleData.get(gtPosition);
+            if (gt == null) {
+                continue;
+            }
+            int code = getGenotypeCode(gt);
+            for (int cohort : cohorts) {
+                counts[cohort][code]++;
+            }
+        }
+
+        Map<String, VariantStats> stats = new HashMap<>();
+        for (int c = 0; c < numCohorts; c++) {
+            if (calculate[c]) {
+                stats.put(cohortNames.get(c), buildStats(variant, counts[c]));
+            }
+        }
+        return stats;
+    }
+
+    private void resolveCohorts(Map<String, Integer> samplesPosition) {
+        if (samplesPosition == this.samplesPosition) {
+            return;
+        }
+        int numCohorts = cohortNames.size();
+        int numSamples = 0;
+        for (Integer position : samplesPosition.values()) {
+            numSamples = Math.max(numSamples, position + 1);
+        }
+        BitSet[] cohortPositions = new BitSet[numCohorts];
+        int[] numSampleCohorts = new int[numSamples];
+        for (int c = 0; c < numCohorts; c++) {
+            BitSet positions = new BitSet(numSamples);
+            for (String sample : cohortSamples.get(c)) {
+                Integer position = samplesPosition.get(sample);
+                if (position != null && !positions.get(position)) {
+                    positions.set(position);
+                    numSampleCohorts[position]++;
+                }
+            }
+            cohortPositions[c] = positions;
+        }
+        sampleCohorts = new int[numSamples][];
+        for (int s = 0; s < numSamples; s++) {
+            sampleCohorts[s] = new int[numSampleCohorts[s]];
+        }
+        int[] filled = new int[numSamples];
+        for (int c = 0; c < numCohorts; c++) {
+            for (int s = cohortPositions[c].nextSetBit(0); s >= 0; s = cohortPositions[c].nextSetBit(s + 1)) {
+                sampleCohorts[s][filled[s]++] = c;
+            }
+        }
+        counts = new int[numCohorts][genotypes.size()];
+        this.samplesPosition = samplesPosition;
+    }
+
+    private int getGenotypeCode(String gt) {
+        Integer code = genotypeCodes.get(gt);
+        if (code == null) {
+            code = genotypes.size();
+            genotypeCodes.put(gt, code);
+            genotypes.add(gt);
+            genotypeAlleles.add(new Genotype(gt).getAllelesIdx());
+            for (int c = 0; c < counts.length; c++) {
+                counts[c] = Arrays.copyOf(counts[c], genotypes.size());
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Same values as {@link org.opencb.biodata.tools.variant.stats.VariantStatsCalculator}. Missing alleles are not used
+     * in the allele frequencies, and genotypes with missing alleles are not used in the genotype frequencies.
+     */
+    private VariantStats buildStats(Variant variant, int[] genotypeCounts) {
+        VariantStats variantStats = new VariantStats(variant);
+        String reference = variant.getReference();
+        String alternate = variant.getAlternate();
+
+        int refAlleleCount = 0;
+        int altAlleleCount = 0;
+        int missingAlleles = 0;
+        int missingGenotypes = 0;
+        int totalGenotypes = 0;
+        Map<Genotype, Integer> validGenotypes = new LinkedHashMap<>();
+        for (int code = 0; code < genotypeCounts.length; code++) {
+            int count = genotypeCounts[code];
+            if (count == 0) {
+                continue;
+            }
+            Genotype genotype = new Genotype(genotypes.get(code), reference, alternate);
+            variantStats.addGenotype(genotype, count);
+            boolean missing = false;
+            for (int allele : genotypeAlleles.get(code)) {
+                if (allele < 0) {
+                    missingAlleles += count;
+                    missing = true;
+                } else if (allele == 0) {
+                    refAlleleCount += count;
+                } else if (allele == 1) {
+                    altAlleleCount += count;
+                }
+            }
+            if (missing) {
+                missingGenotypes += count;
+            } else {
+                validGenotypes.merge(genotype, count, Integer::sum);
+                totalGenotypes += count;
+            }
+        }
+        variantStats.setRefAlleleCount(refAlleleCount);
+        variantStats.setAltAlleleCount(altAlleleCount);
+        variantStats.setMissingAlleles(missingAlleles);
+        variantStats.setMissingGenotypes(missingGenotypes);
+
+        // Allele frequencies
+        int totalAlleles = refAlleleCount + altAlleleCount;
+        float refAlleleFreq = totalAlleles > 0 ? refAlleleCount / (float) totalAlleles : 0;
+        float altAlleleFreq = totalAlleles > 0 ? altAlleleCount / (float) totalAlleles : 0;
+        variantStats.setRefAlleleFreq(refAlleleFreq);
+        variantStats.setAltAlleleFreq(altAlleleFreq);
+        if (refAlleleFreq <= altAlleleFreq) {
+            variantStats.setMaf(refAlleleFreq);
+            variantStats.setMafAllele(reference);
+        } else {
+            variantStats.setMaf(altAlleleFreq);
+            variantStats.setMafAllele(alternate);
+        }
+
+        // Genotype frequencies. All the biallelic genotypes are included, even if not found
+        Map<Genotype, Float> genotypesFreq = new LinkedHashMap<>();
+        genotypesFreq.put(new Genotype("0/0", reference, alternate), 0f);
+        genotypesFreq.put(new Genotype("0/1", reference, alternate), 0f);
+        genotypesFreq.put(new Genotype("1/1", reference, alternate), 0f);
+        for (Map.Entry<Genotype, Integer> entry : validGenotypes.entrySet()) {
+            genotypesFreq.put(entry.getKey(), totalGenotypes > 0 ? entry.getValue() / (float) totalGenotypes : 0);
+        }
+        variantStats.setGenotypesFreq(genotypesFreq);
+        float mgf = Float.MAX_VALUE;
+        String mgfGenotype = null;
+        for (Map.Entry<Genotype, Float> entry : genotypesFreq.entrySet()) {
+            if (entry.getValue() < mgf) {
+                mgf = entry.getValue();
+                mgfGenotype = entry.getKey().toString();
+            }
+        }
+        variantStats.setMgf(mgf);
+        variantStats.setMgfGenotype(mgfGenotype);
+        return variantStats;
+    }
+}
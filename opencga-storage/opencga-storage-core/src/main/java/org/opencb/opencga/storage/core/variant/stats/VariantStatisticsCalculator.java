@@ -23,7 +23,6 @@ import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.biodata.tools.variant.stats.VariantAggregatedEVSStatsCalculator;
 import org.opencb.biodata.tools.variant.stats.VariantAggregatedExacStatsCalculator;
 import org.opencb.biodata.tools.variant.stats.VariantAggregatedStatsCalculator;
-import org.opencb.biodata.tools.variant.stats.VariantStatsCalculator;
 
 import java.util.*;
 
@@ -37,6 +36,8 @@ public class VariantStatisticsCalculator {
     private boolean overwrite;
     private VariantAggregatedStatsCalculator aggregatedCalculator;
     private VariantSource.Aggregation aggregation;
+    private VariantCohortStatsCalculator cohortStatsCalculator;
+    private Map<String, Set<String>> cohortStatsSamples;
 
     public VariantStatisticsCalculator() {
         this(false);
@@ -124,16 +125,21 @@ public class VariantStatisticsCalculator {
             }
             
             if (!isAggregated(aggregation) && samples != null) {
-                for (Map.Entry<String, Set<String>> cohort : samples.entrySet()) {
-                    if (overwrite || study.getStats(cohort.getKey()) == null) {
-
-                        Map<String, Map<String, String>> samplesData = filterSamples(study.getSamplesDataAsMap(), cohort.getValue());
-                        VariantStats variantStats = new VariantStats(variant);
-                        VariantStatsCalculator.calculate(samplesData, study.getAttributes(), null, variantStats);
-                        study.setStats(cohort.getKey(), variantStats);
-
+                if (samples != cohortStatsSamples) {
+                    cohortStatsCalculator = new VariantCohortStatsCalculator(samples);
+                    cohortStatsSamples = samples;
+                }
+                Set<String> skip = new HashSet<>();
+                if (!overwrite) {
+                    for (String cohort : samples.keySet()) {
+                        if (study.getStats(cohort) != null) {
+                            skip.add(cohort);
+                        }
                     }
                 }
+                for (Map.Entry<String, VariantStats> entry : cohortStatsCalculator.calculate(variant, study, skip).entrySet()) {
+                    study.setStats(entry.getKey(), entry.getValue());
+                }
             } else if (aggregatedCalculator != null) { // another way to say that the study is aggregated (!VariantSource.Aggregation.NONE.equals(aggregation))
 //                study.setAttributes(removeAttributePrefix(study.getAttributes()));
                 aggregatedCalculator.calculate(variant, study);
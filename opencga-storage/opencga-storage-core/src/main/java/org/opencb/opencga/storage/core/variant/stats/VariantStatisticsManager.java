@@ -22,19 +22,23 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.avro.generic.GenericRecord;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.stats.VariantSourceStats;
 import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.biodata.tools.variant.stats.VariantAggregatedStatsCalculator;
+import org.opencb.commons.io.DataWriter;
 import org.opencb.commons.run.ParallelTaskRunner;
 import org.opencb.datastore.core.Query;
 import org.opencb.datastore.core.QueryOptions;
 import org.opencb.datastore.core.QueryResult;
 import org.opencb.opencga.storage.core.StudyConfiguration;
+import org.opencb.opencga.storage.core.runner.ParallelBgzfStringDataWriter;
 import org.opencb.opencga.storage.core.runner.StringDataWriter;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.io.VariantDBReader;
+import org.opencb.opencga.storage.core.variant.io.avro.AvroDataWriter;
 import org.opencb.opencga.storage.core.variant.io.json.GenericRecordAvroJsonMixin;
 import org.opencb.opencga.storage.core.variant.io.json.VariantStatsJsonMixin;
 import org.slf4j.Logger;
@@ -42,9 +46,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -59,7 +70,10 @@ import static org.opencb.opencga.storage.core.variant.VariantStorageManager.chec
 public class VariantStatisticsManager {
 
     private String VARIANT_STATS_SUFFIX = ".variants.stats.json.gz";
+    private String VARIANT_STATS_AVRO_SUFFIX = ".variants.stats.avro";
     private String SOURCE_STATS_SUFFIX = ".source.stats.json.gz";
+    public static final String CHECKPOINT_SUFFIX = ".stats.checkpoint";
+    static final String CHECKPOINT_HEADER = "#cohorts=";
     private final JsonFactory jsonFactory;
     private ObjectMapper jsonObjectMapper;
     protected static Logger logger = LoggerFactory.getLogger(VariantStatisticsManager.class);
@@ -112,7 +126,7 @@ public class VariantStatisticsManager {
      * @param cohortIds
      * @param options (mandatory) fileId, (optional) filters to the query, batch size, number of threads to use...
      *
-     * @return outputUri prefix for the file names (without the "._type_.stats.json.gz")
+     * @return outputUri prefix for the file names (without the "._type_.stats.avro" or "._type_.stats.json.gz")
      * @throws IOException
      */
     public URI createStats(VariantDBAdaptor variantDBAdaptor, URI output, Map<String, Set<String>> cohorts,
@@ -131,7 +145,193 @@ public class VariantStatisticsManager {
         Properties tagmap = options.get(Options.AGGREGATION_MAPPING_PROPERTIES.key(), Properties.class, null);
 //            fileId = options.getString(VariantStorageManager.Options.FILE_ID.key());
 
-        // if no cohorts provided and the study is aggregated: try to get the cohorts from the tagMap
+        cohorts = getCohorts(cohorts, studyConfiguration, tagmap);
+        overwrite = checkCohorts(studyConfiguration, cohorts, cohortIds, overwrite, updateStats);
+
+
+        VariantSourceStats variantSourceStats = new VariantSourceStats(null/*FILE_ID*/, Integer.toString(studyConfiguration.getStudyId()));
+
+
+       // reader, tasks and writer
+        Query readerQuery = buildReaderQuery(studyConfiguration, cohorts.keySet(), updateStats, options);
+        VariantDBReader reader = new VariantDBReader(studyConfiguration, variantDBAdaptor, readerQuery, buildReaderOptions(options));
+        String compression = options.getString(Options.COMPRESS_METHOD.key(), Options.COMPRESS_METHOD.defaultValue());
+        String format = options.getString(Options.STATS_FORMAT.key(), Options.STATS_FORMAT.defaultValue());
+        ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numTasks, batchSize, numTasks*2, false);
+        ParallelTaskRunner runner;
+        if (format.equalsIgnoreCase("avro")) {
+            List<ParallelTaskRunner.Task<Variant, GenericRecord>> tasks = new ArrayList<>(numTasks);
+            for (int i = 0; i < numTasks; i++) {
+                VariantStatsDirectTask statsTask = new VariantStatsDirectTask(overwrite, cohorts, studyConfiguration,
+                        variantSourceStats, tagmap, null);
+                VariantStatsWrapperAvroConverter converter = new VariantStatsWrapperAvroConverter();
+                tasks.add(variants -> statsTask.apply(variants).stream().map(converter::convertToStorageType).collect(Collectors.toList()));
+            }
+            Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_AVRO_SUFFIX);
+            logger.info("will write stats to {}", variantStatsPath);
+            // Avro compresses its own data blocks. BGZF only applies to text outputs
+            String avroCompression = compression.equalsIgnoreCase("bgzip") || compression.equalsIgnoreCase("bgzf") ? "gzip" : compression;
+            AvroDataWriter<GenericRecord> writer = new AvroDataWriter<>(variantStatsPath, avroCompression, VariantStatsWrapperAvroConverter.SCHEMA);
+            runner = new ParallelTaskRunner<>(reader, tasks, writer, config);
+        } else if (format.equalsIgnoreCase("json")) {
+            List<ParallelTaskRunner.Task<Variant, String>> tasks = new ArrayList<>(numTasks);
+            for (int i = 0; i < numTasks; i++) {
+                tasks.add(new VariantStatsWrapperTask(overwrite, cohorts, studyConfiguration, null/*FILE_ID*/,
+                        variantSourceStats, tagmap));
+            }
+            Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_SUFFIX);
+            logger.info("will write stats to {}", variantStatsPath);
+            StringDataWriter writer;
+            if (compression.equalsIgnoreCase("bgzip") || compression.equalsIgnoreCase("bgzf")) {
+                int compressThreads = options.getInt(Options.COMPRESS_THREADS.key(), Options.COMPRESS_THREADS.defaultValue());
+                writer = new ParallelBgzfStringDataWriter(variantStatsPath, compressThreads);
+            } else {
+                writer = new StringDataWriter(variantStatsPath);
+            }
+            runner = new ParallelTaskRunner<>(reader, tasks, writer, config);
+        } else {
+            throw new IllegalArgumentException("Unknown stats format " + format);
+        }
+
+        logger.info("starting stats creation for cohorts {}", cohorts.keySet());
+        long start = System.currentTimeMillis();
+        runner.run();
+        logger.info("finishing stats creation, time: {}ms", System.currentTimeMillis() - start);
+
+        // source stats
+        Path fileSourcePath = Paths.get(output.getPath() + SOURCE_STATS_SUFFIX);
+        OutputStream outputSourceStream = getOutputStream(fileSourcePath, options);
+        ObjectWriter sourceWriter = jsonObjectMapper.writerFor(VariantSourceStats.class);
+        outputSourceStream.write(sourceWriter.writeValueAsBytes(variantSourceStats));
+        outputSourceStream.close();
+
+        variantDBAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration, options);
+
+        return output;
+    }
+
+    /**
+     * Calculates the stats and writes them directly into the database with {@link VariantDBAdaptor#updateStats}, without
+     * intermediate files. Equivalent to {@link #createStats} followed by {@link #loadStats}.
+     *
+     * The variants are processed by regions, from {@link #getStatsChunks}. Every finished region is written to a checkpoint file,
+     * "output.stats.checkpoint", so a run interrupted can be resumed with the same output and cohorts. The checkpoint file is
+     * removed at the end.
+     *
+     * @param variantDBAdaptor to obtain the Variants and write the stats
+     * @param output prefix of the checkpoint file
+     * @param cohorts cohorts (subsets) of the samples. key: cohort name, defaultValue: list of sample names.
+     * @param cohortIds ids of the cohorts
+     * @param studyConfiguration study of the stats
+     * @param options (optional) filters to the query, batch size, number of threads to use...
+     * @throws IOException if the cohorts are not valid or the checkpoint can not be written
+     */
+    public void calculateStats(VariantDBAdaptor variantDBAdaptor, URI output, Map<String, Set<String>> cohorts,
+                               Map<String, Integer> cohortIds, StudyConfiguration studyConfiguration, QueryOptions options)
+            throws IOException {
+        if (options == null) {
+            options = new QueryOptions();
+        }
+
+        int batchSize = options.getInt(Options.LOAD_BATCH_SIZE.key(), 100);
+        int numTasks = options.getInt(Options.LOAD_THREADS.key(), 6);
+        int chunkSize = options.getInt(Options.STATS_CHUNK_SIZE.key(), Options.STATS_CHUNK_SIZE.defaultValue());
+        boolean overwrite = options.getBoolean(Options.OVERWRITE_STATS.key(), false);
+        boolean updateStats = options.getBoolean(Options.UPDATE_STATS.key(), false);
+        Properties tagmap = options.get(Options.AGGREGATION_MAPPING_PROPERTIES.key(), Properties.class, null);
+
+        cohorts = getCohorts(cohorts, studyConfiguration, tagmap);
+        overwrite = checkCohorts(studyConfiguration, cohorts, cohortIds, overwrite, updateStats);
+
+        // Checkpoint. First line with the cohorts, then one line for each finished region
+        Path checkpointPath = Paths.get(output.getPath() + CHECKPOINT_SUFFIX);
+        String checkpointHeader = CHECKPOINT_HEADER + new TreeSet<>(cohorts.keySet());
+        Set<String> finishedChunks = new HashSet<>();
+        if (Files.exists(checkpointPath)) {
+            List<String> lines = Files.readAllLines(checkpointPath);
+            if (lines.isEmpty() || !lines.get(0).equals(checkpointHeader)) {
+                throw new IOException("Checkpoint file " + checkpointPath + " is from other cohorts. Remove it to calculate the stats again");
+            }
+            finishedChunks.addAll(lines.subList(1, lines.size()));
+            logger.info("Resuming stats calculation from {}. {} regions already finished", checkpointPath, finishedChunks.size());
+        } else {
+            Files.write(checkpointPath, Collections.singletonList(checkpointHeader));
+        }
+        boolean resumed = !finishedChunks.isEmpty();
+
+        Query readerQuery = buildReaderQuery(studyConfiguration, cohorts.keySet(), updateStats, options);
+        List<Region> chunks = getStatsChunks(variantDBAdaptor, readerQuery, chunkSize);
+        if (chunks.isEmpty()) {
+            chunks = Collections.singletonList(null);   // One chunk with all the variants
+        }
+
+        VariantSourceStats variantSourceStats = new VariantSourceStats(null/*FILE_ID*/, Integer.toString(studyConfiguration.getStudyId()));
+        QueryOptions writerOptions = new QueryOptions(options);
+        writerOptions.put(Options.OVERWRITE_STATS.key(), overwrite);
+
+        logger.info("starting direct stats calculation for cohorts {} in {} regions", cohorts.keySet(), chunks.size());
+        long start = System.currentTimeMillis();
+        int processedChunks = 0;
+        for (Region chunk : chunks) {
+            String chunkName = chunk == null ? "all" : chunk.toString();
+            processedChunks++;
+            if (finishedChunks.contains(chunkName)) {
+                continue;
+            }
+            Query chunkQuery = new Query(readerQuery);
+            if (chunk != null) {
+                chunkQuery.put(VariantDBAdaptor.VariantQueryParams.REGION.key(), chunkName);
+            }
+            VariantDBReader reader = new VariantDBReader(studyConfiguration, variantDBAdaptor, chunkQuery, buildReaderOptions(options));
+            List<ParallelTaskRunner.Task<Variant, VariantStatsWrapper>> tasks = new ArrayList<>(numTasks);
+            for (int i = 0; i < numTasks; i++) {
+                tasks.add(new VariantStatsDirectTask(overwrite, cohorts, studyConfiguration, variantSourceStats, tagmap, chunk));
+            }
+            VariantStatsDBWriter writer = new VariantStatsDBWriter(variantDBAdaptor, studyConfiguration, writerOptions);
+
+            ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numTasks, batchSize, numTasks * 2, false);
+            try {
+                new ParallelTaskRunner<>(reader, tasks, writer, config).run();
+            } catch (Exception e) {
+                throw new IOException("Error calculating stats in region " + chunkName, e);
+            }
+
+            Files.write(checkpointPath, Collections.singletonList(chunkName), StandardOpenOption.APPEND);
+            logger.info("stats region {} finished ({}/{}). {} variants updated. time: {}ms", chunkName, processedChunks, chunks.size(),
+                    writer.getNumWrites(), System.currentTimeMillis() - start);
+        }
+        logger.info("finishing direct stats calculation, time: {}ms", System.currentTimeMillis() - start);
+
+        if (resumed) {
+            // Only has the stats of the regions calculated in this run
+            logger.warn("Stats calculation resumed. Source stats not updated");
+        } else {
+            variantDBAdaptor.getVariantSourceDBAdaptor().updateSourceStats(variantSourceStats, studyConfiguration, options);
+        }
+
+        checkAndUpdateCalculatedCohorts(studyConfiguration, cohorts.keySet(), updateStats);
+        variantDBAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration, options);
+        Files.delete(checkpointPath);
+    }
+
+    /**
+     * Regions to calculate the stats directly with {@link #calculateStats}, each one checkpointed separately.
+     * Storage engines able to split the variants efficiently should override this method.
+     *
+     * @param variantDBAdaptor  to obtain the Variants
+     * @param query             query of the variants to calculate stats
+     * @param chunkSize         approximate size of the regions
+     * @return                  disjoint regions covering all the variants, or an empty list to use just one chunk
+     */
+    protected List<Region> getStatsChunks(VariantDBAdaptor variantDBAdaptor, Query query, int chunkSize) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * If no cohorts provided and the study is aggregated: try to get the cohorts from the tagMap.
+     */
+    private Map<String, Set<String>> getCohorts(Map<String, Set<String>> cohorts, StudyConfiguration studyConfiguration,
+                                                Properties tagmap) {
         if (cohorts == null || isAggregated(studyConfiguration.getAggregation()) && tagmap != null) {
             if (isAggregated(studyConfiguration.getAggregation()) && tagmap != null) {
                 cohorts = new LinkedHashMap<>();
@@ -142,7 +342,16 @@ public class VariantStatisticsManager {
                 cohorts = new LinkedHashMap<>();
             }
         }
+        return cohorts;
+    }
 
+    /**
+     * Add the cohorts to the studyConfiguration, and check invalidated stats.
+     *
+     * @return overwrite, or true if any of the cohorts has invalid stats
+     */
+    private boolean checkCohorts(StudyConfiguration studyConfiguration, Map<String, Set<String>> cohorts,
+                                 Map<String, Integer> cohortIds, boolean overwrite, boolean updateStats) throws IOException {
         checkAndUpdateStudyConfigurationCohorts(studyConfiguration, cohorts, cohortIds, overwrite, updateStats);
         if (!overwrite) {
             for (String cohortName : cohorts.keySet()) {
@@ -154,12 +363,10 @@ public class VariantStatisticsManager {
             }
         }
         checkStudyConfiguration(studyConfiguration);
+        return overwrite;
+    }
 
-
-        VariantSourceStats variantSourceStats = new VariantSourceStats(null/*FILE_ID*/, Integer.toString(studyConfiguration.getStudyId()));
-
-
-       // reader, tasks and writer
+    private Query buildReaderQuery(StudyConfiguration studyConfiguration, Set<String> cohorts, boolean updateStats, QueryOptions options) {
         Query readerQuery = new Query(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), studyConfiguration.getStudyId());
         if (options.containsKey(Options.FILE_ID.key())) {
             readerQuery.append(VariantDBAdaptor.VariantQueryParams.FILES.key(), options.get(Options.FILE_ID.key()));
@@ -167,38 +374,126 @@ public class VariantStatisticsManager {
         if (updateStats) {
             //Get all variants that not contain any of the required cohorts
             readerQuery.append(VariantDBAdaptor.VariantQueryParams.COHORTS.key(),
-                    cohorts.keySet().stream().map((cohort) -> "!" + studyConfiguration.getStudyName() + ":" + cohort).collect(Collectors.joining(";")));
+                    cohorts.stream().map((cohort) -> "!" + studyConfiguration.getStudyName() + ":" + cohort).collect(Collectors.joining(";")));
         }
         logger.info("ReaderQuery: " + readerQuery.toJson());
-        VariantDBReader reader = new VariantDBReader(studyConfiguration, variantDBAdaptor, readerQuery, null);
-        List<ParallelTaskRunner.Task<Variant, String>> tasks = new ArrayList<>(numTasks);
-        for (int i = 0; i < numTasks; i++) {
-            tasks.add(new VariantStatsWrapperTask(overwrite, cohorts, studyConfiguration, null/*FILE_ID*/,
-                    variantSourceStats, tagmap));
-        }
-        Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_SUFFIX);
-        logger.info("will write stats to {}", variantStatsPath);
-        StringDataWriter writer = new StringDataWriter(variantStatsPath);
-        
-        // runner 
-        ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numTasks, batchSize, numTasks*2, false);
-        ParallelTaskRunner runner = new ParallelTaskRunner<>(reader, tasks, writer, config);
+        return readerQuery;
+    }
 
-        logger.info("starting stats creation for cohorts {}", cohorts.keySet());
-        long start = System.currentTimeMillis();
-        runner.run();
-        logger.info("finishing stats creation, time: {}ms", System.currentTimeMillis() - start);
+    private QueryOptions buildReaderOptions(QueryOptions options) {
+        QueryOptions readerOptions = null;
+        if (options.containsKey(Options.ITERATOR_THREADS.key())) {
+            readerOptions = new QueryOptions(Options.ITERATOR_THREADS.key(), options.getInt(Options.ITERATOR_THREADS.key()))
+                    .append(Options.ITERATOR_SORTED.key(), options.getBoolean(Options.ITERATOR_SORTED.key(), true));
+        }
+        return readerOptions;
+    }
 
-        // source stats
-        Path fileSourcePath = Paths.get(output.getPath() + SOURCE_STATS_SUFFIX);
-        OutputStream outputSourceStream = getOutputStream(fileSourcePath, options);
-        ObjectWriter sourceWriter = jsonObjectMapper.writerFor(VariantSourceStats.class);
-        outputSourceStream.write(sourceWriter.writeValueAsBytes(variantSourceStats));
-        outputSourceStream.close();
+    /**
+     * Update the file and sample stats, only if the stats of all the samples were calculated.
+     */
+    private static void updateSourceStats(VariantSourceStats variantSourceStats, List<Variant> variants,
+                                          List<VariantStatsWrapper> variantStatsWrappers) {
+        for (VariantStatsWrapper variantStatsWrapper : variantStatsWrappers) {
+            if (variantStatsWrapper.getCohortStats().get(StudyEntry.DEFAULT_COHORT) == null) {
+                // we don't want to overwrite file stats regarding all samples with stats about a subset of samples.
+                return;
+            }
+        }
+        synchronized (variantSourceStats) {
+            variantSourceStats.updateFileStats(variants);
+            variantSourceStats.updateSampleStats(variants, null);  // TODO test
+        }
+    }
 
-        variantDBAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration, options);
+    class VariantStatsDirectTask implements ParallelTaskRunner.Task<Variant, VariantStatsWrapper> {
 
-        return output;
+        private final Map<String, Set<String>> samples;
+        private final StudyConfiguration studyConfiguration;
+        private final VariantSourceStats variantSourceStats;
+        private final Region chunk;
+        private final VariantStatisticsCalculator variantStatisticsCalculator;
+
+        /**
+         * @param chunk Only variants starting in this region. Variants overlapping the region belong to the previous one.
+         */
+        VariantStatsDirectTask(boolean overwrite, Map<String, Set<String>> samples, StudyConfiguration studyConfiguration,
+                               VariantSourceStats variantSourceStats, Properties tagmap, Region chunk) {
+            this.samples = samples;
+            this.studyConfiguration = studyConfiguration;
+            this.variantSourceStats = variantSourceStats;
+            this.chunk = chunk;
+            variantStatisticsCalculator = new VariantStatisticsCalculator(overwrite);
+            variantStatisticsCalculator.setAggregationType(studyConfiguration.getAggregation(), tagmap);
+        }
+
+        @Override
+        public List<VariantStatsWrapper> apply(List<Variant> variants) {
+            if (chunk != null) {
+                variants = variants.stream()
+                        .filter(variant -> variant.getStart() >= chunk.getStart() && variant.getStart() <= chunk.getEnd())
+                        .collect(Collectors.toList());
+            }
+            List<VariantStatsWrapper> variantStatsWrappers = variantStatisticsCalculator.calculateBatch(variants,
+                    studyConfiguration.getStudyName(), null/*fileId*/, samples);
+            updateSourceStats(variantSourceStats, variants, variantStatsWrappers);
+            return variantStatsWrappers;
+        }
+    }
+
+    /**
+     * Writes the stats into the database.
+     */
+    static class VariantStatsDBWriter implements DataWriter<VariantStatsWrapper> {
+
+        private final VariantDBAdaptor variantDBAdaptor;
+        private final StudyConfiguration studyConfiguration;
+        private final QueryOptions options;
+        private final AtomicLong numWrites = new AtomicLong();
+
+        VariantStatsDBWriter(VariantDBAdaptor variantDBAdaptor, StudyConfiguration studyConfiguration, QueryOptions options) {
+            this.variantDBAdaptor = variantDBAdaptor;
+            this.studyConfiguration = studyConfiguration;
+            this.options = options;
+        }
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            return true;
+        }
+
+        @Override
+        public boolean pre() {
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return true;
+        }
+
+        @Override
+        public boolean write(VariantStatsWrapper elem) {
+            return write(Collections.singletonList(elem));
+        }
+
+        @Override
+        public boolean write(List<VariantStatsWrapper> batch) {
+            if (!batch.isEmpty()) {
+                QueryResult writeResult = variantDBAdaptor.updateStats(batch, studyConfiguration, options);
+                numWrites.addAndGet(writeResult.getNumResults());
+            }
+            return true;
+        }
+
+        public long getNumWrites() {
+            return numWrites.get();
+        }
     }
 
     class VariantStatsWrapperTask implements ParallelTaskRunner.Task<Variant, String> {
@@ -268,7 +563,7 @@ public class VariantStatisticsManager {
 
     public void loadStats(VariantDBAdaptor variantDBAdaptor, URI uri, StudyConfiguration studyConfiguration, QueryOptions options) throws IOException {
 
-        URI variantStatsUri = Paths.get(uri.getPath() + VARIANT_STATS_SUFFIX).toUri();
+        URI variantStatsUri = getVariantStatsPath(uri, options).toUri();
         URI sourceStatsUri = Paths.get(uri.getPath() + SOURCE_STATS_SUFFIX).toUri();
 
         boolean updateStats = options.getBoolean(Options.UPDATE_STATS.key(), false);
@@ -286,7 +581,26 @@ public class VariantStatisticsManager {
 
     }
 
+    /**
+     * Stats file written by {@link #createStats}. If the file of the format given in the options does not exist,
+     * uses the file of the other format.
+     */
+    private Path getVariantStatsPath(URI uri, QueryOptions options) {
+        Path avroPath = Paths.get(uri.getPath() + VARIANT_STATS_AVRO_SUFFIX);
+        Path jsonPath = Paths.get(uri.getPath() + VARIANT_STATS_SUFFIX);
+        String format = options.getString(Options.STATS_FORMAT.key(), Options.STATS_FORMAT.defaultValue());
+        if (format.equalsIgnoreCase("avro")) {
+            return Files.exists(avroPath) || !Files.exists(jsonPath) ? avroPath : jsonPath;
+        } else {
+            return Files.exists(jsonPath) || !Files.exists(avroPath) ? jsonPath : avroPath;
+        }
+    }
+
     public void loadVariantStats(VariantDBAdaptor variantDBAdaptor, URI uri, StudyConfiguration studyConfiguration, QueryOptions options) throws IOException {
+        if (uri.getPath().endsWith(VARIANT_STATS_AVRO_SUFFIX)) {
+            loadVariantStatsAvro(variantDBAdaptor, uri, studyConfiguration, options);
+            return;
+        }
 
         /** Open input streams **/
         Path variantInput = Paths.get(uri.getPath());
@@ -330,6 +644,63 @@ public class VariantStatisticsManager {
 
     }
 
+    /**
+     * Loads an Avro stats file, split in one chunk per thread.
+     */
+    private void loadVariantStatsAvro(VariantDBAdaptor variantDBAdaptor, URI uri, StudyConfiguration studyConfiguration,
+                                      QueryOptions options) throws IOException {
+        int batchSize = options.getInt(Options.LOAD_BATCH_SIZE.key(), 1000);
+        int numThreads = options.getInt(Options.LOAD_THREADS.key(), 6);
+        List<VariantStatsAvroReader> readers = VariantStatsAvroReader.split(Paths.get(uri.getPath()).toFile(), numThreads);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, readers.size()));
+        List<Future<int[]>> futures = new ArrayList<>(readers.size());
+        for (VariantStatsAvroReader reader : readers) {
+            futures.add(executorService.submit(() -> {
+                int variantsNumber = 0;
+                int writes = 0;
+                reader.open();
+                try {
+                    List<VariantStatsWrapper> statsBatch = reader.read(batchSize);
+                    while (!statsBatch.isEmpty()) {
+                        variantsNumber += statsBatch.size();
+                        QueryResult writeResult = variantDBAdaptor.updateStats(statsBatch, studyConfiguration, options);
+                        writes += writeResult.getNumResults();
+                        logger.info("stats loaded up to position {}:{}", statsBatch.get(statsBatch.size() - 1).getChromosome(),
+                                statsBatch.get(statsBatch.size() - 1).getPosition());
+                        statsBatch = reader.read(batchSize);
+                    }
+                } finally {
+                    reader.close();
+                }
+                return new int[]{variantsNumber, writes};
+            }));
+        }
+        executorService.shutdown();
+
+        int variantsNumber = 0;
+        int writes = 0;
+        try {
+            for (Future<int[]> future : futures) {
+                int[] counts = future.get();
+                variantsNumber += counts[0];
+                writes += counts[1];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error loading stats from " + uri, e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        if (writes < variantsNumber) {
+            logger.warn("provided statistics of {} variants, but only {} were updated", variantsNumber, writes);
+            logger.info("note: maybe those variants didn't had the proper study? maybe the new and the old stats were the same?");
+        }
+    }
+
     public void loadSourceStats(VariantDBAdaptor variantDBAdaptor, URI uri, StudyConfiguration studyConfiguration, QueryOptions options) throws IOException {
 
         /** Open input streams **/
@@ -477,6 +848,20 @@ public class VariantStatisticsManager {
     }
 
     void checkAndUpdateCalculatedCohorts(StudyConfiguration studyConfiguration, URI uri, boolean updateStats) throws IOException {
+        if (uri.getPath().endsWith(VARIANT_STATS_AVRO_SUFFIX)) {
+            VariantStatsAvroReader reader = new VariantStatsAvroReader(Paths.get(uri.getPath()).toFile());
+            reader.open();
+            try {
+                List<VariantStatsWrapper> first = reader.read(1);
+                if (first.isEmpty()) {
+                    throw new IOException("File " + uri + " is empty");
+                }
+                checkAndUpdateCalculatedCohorts(studyConfiguration, first.get(0).getCohortStats().keySet(), updateStats);
+            } finally {
+                reader.close();
+            }
+            return;
+        }
 
         /** Open input streams **/
         Path variantInput = Paths.get(uri.getPath());
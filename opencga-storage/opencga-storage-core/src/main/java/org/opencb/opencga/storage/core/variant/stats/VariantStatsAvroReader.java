@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.opencb.commons.io.DataReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the VariantStatsWrappers of an Avro stats file, or of a split of the file.
+ *
+ * A split reads all the data blocks starting between the first sync marker after its start offset and the
+ * first sync marker after its end offset, so contiguous splits read every record exactly once.
+ */
+public class VariantStatsAvroReader implements DataReader<VariantStatsWrapper> {
+
+    private final File file;
+    private final long start;
+    private final long end;
+    private final VariantStatsWrapperAvroConverter converter = new VariantStatsWrapperAvroConverter();
+    private DataFileReader<GenericRecord> dataFileReader;
+    private GenericRecord record;
+
+    public VariantStatsAvroReader(File file) {
+        this(file, 0, file.length());
+    }
+
+    public VariantStatsAvroReader(File file, long start, long end) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @param file      Avro stats file
+     * @param numSplits Number of splits
+     * @return          Readers of contiguous splits covering the whole file
+     */
+    public static List<VariantStatsAvroReader> split(File file, int numSplits) {
+        long length = file.length();
+        long splitSize = Math.max(1, (length + numSplits - 1) / numSplits);
+        List<VariantStatsAvroReader> readers = new ArrayList<>(numSplits);
+        for (long splitStart = 0; splitStart < length; splitStart += splitSize) {
+            readers.add(new VariantStatsAvroReader(file, splitStart, Math.min(length, splitStart + splitSize)));
+        }
+        return readers;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            dataFileReader = new DataFileReader<>(file, new GenericDatumReader<>(VariantStatsWrapperAvroConverter.SCHEMA));
+            if (start > 0) {
+                dataFileReader.sync(start);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            dataFileReader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public List<VariantStatsWrapper> read(int batchSize) {
+        List<VariantStatsWrapper> batch = new ArrayList<>(batchSize);
+        try {
+            while (batch.size() < batchSize && dataFileReader.hasNext() && !dataFileReader.pastSync(end)) {
+                record = dataFileReader.next(record);
+                batch.add(converter.convertToDataModelType(record));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.datastore.core.ComplexTypeConverter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts a {@link VariantStatsWrapper} to an Avro record, to write the stats files in binary format.
+ * Contains the same fields as the json stats files.
+ */
+public class VariantStatsWrapperAvroConverter implements ComplexTypeConverter<VariantStatsWrapper, GenericRecord> {
+
+    public static final Schema VARIANT_STATS_SCHEMA = SchemaBuilder.record("VariantStats")
+            .namespace("org.opencb.opencga.storage.core.variant.stats")
+            .fields()
+            .optionalString("refAllele")
+            .optionalString("altAllele")
+            .optionalString("variantType")
+            .requiredInt("refAlleleCount")
+            .requiredInt("altAlleleCount")
+            .requiredFloat("refAlleleFreq")
+            .requiredFloat("altAlleleFreq")
+            .name("genotypesCount").type().map().values().intType().noDefault()
+            .name("genotypesFreq").type().map().values().floatType().noDefault()
+            .requiredInt("missingAlleles")
+            .requiredInt("missingGenotypes")
+            .requiredFloat("maf")
+            .optionalString("mafAllele")
+            .requiredFloat("mgf")
+            .optionalString("mgfGenotype")
+            .requiredInt("mendelianErrors")
+            .requiredFloat("casesPercentDominant")
+            .requiredFloat("controlsPercentDominant")
+            .requiredFloat("casesPercentRecessive")
+            .requiredFloat("controlsPercentRecessive")
+            .requiredFloat("quality")
+            .requiredInt("numSamples")
+            .endRecord();
+
+    public static final Schema SCHEMA = SchemaBuilder.record("VariantStatsWrapper")
+            .namespace("org.opencb.opencga.storage.core.variant.stats")
+            .fields()
+            .requiredString("chromosome")
+            .requiredInt("position")
+            .name("cohortStats").type().map().values(VARIANT_STATS_SCHEMA).noDefault()
+            .endRecord();
+
+    @Override
+    public VariantStatsWrapper convertToDataModelType(GenericRecord record) {
+        Map<?, ?> cohortRecords = (Map<?, ?>) record.get("cohortStats");
+        Map<String, VariantStats> cohortStats = new LinkedHashMap<>(cohortRecords.size());
+        for (Map.Entry<?, ?> entry : cohortRecords.entrySet()) {
+            cohortStats.put(entry.getKey().toString(), convertToVariantStats((GenericRecord) entry.getValue()));
+        }
+        return new VariantStatsWrapper(record.get("chromosome").toString(), (Integer) record.get("position"), cohortStats);
+    }
+
+    @Override
+    public GenericRecord convertToStorageType(VariantStatsWrapper wrapper) {
+        Map<String, GenericRecord> cohortRecords = new HashMap<>(wrapper.getCohortStats().size());
+        for (Map.Entry<String, VariantStats> entry : wrapper.getCohortStats().entrySet()) {
+            cohortRecords.put(entry.getKey(), convertToRecord(entry.getValue()));
+        }
+        GenericRecord record = new GenericData.Record(SCHEMA);
+        record.put("chromosome", wrapper.getChromosome());
+        record.put("position", wrapper.getPosition());
+        record.put("cohortStats", cohortRecords);
+        return record;
+    }
+
+    private GenericRecord convertToRecord(VariantStats stats) {
+        GenericRecord record = new GenericData.Record(VARIANT_STATS_SCHEMA);
+        record.put("refAllele", stats.getRefAllele());
+        record.put("altAllele", stats.getAltAllele());
+        record.put("variantType", stats.getVariantType() == null ? null : stats.getVariantType().toString());
+        record.put("refAlleleCount", (int) stats.getRefAlleleCount());
+        record.put("altAlleleCount", (int) stats.getAltAlleleCount());
+        record.put("refAlleleFreq", (float) stats.getRefAlleleFreq());
+        record.put("altAlleleFreq", (float) stats.getAltAlleleFreq());
+
+        Map<String, Integer> genotypesCount = new HashMap<>();
+        if (stats.getGenotypesCount() != null) {
+            for (Map.Entry<Genotype, Integer> entry : stats.getGenotypesCount().entrySet()) {
+                genotypesCount.put(entry.getKey().toString(), entry.getValue());
+            }
+        }
+        record.put("genotypesCount", genotypesCount);
+        Map<String, Float> genotypesFreq = new HashMap<>();
+        if (stats.getGenotypesFreq() != null) {
+            for (Map.Entry<Genotype, Float> entry : stats.getGenotypesFreq().entrySet()) {
+                genotypesFreq.put(entry.getKey().toString(), entry.getValue());
+            }
+        }
+        record.put("genotypesFreq", genotypesFreq);
+
+        record.put("missingAlleles", (int) stats.getMissingAlleles());
+        record.put("missingGenotypes", (int) stats.getMissingGenotypes());
+        record.put("maf", (float) stats.getMaf());
+        record.put("mafAllele", stats.getMafAllele());
+        record.put("mgf", (float) stats.getMgf());
+        record.put("mgfGenotype", stats.getMgfGenotype());
+        record.put("mendelianErrors", (int) stats.getMendelianErrors());
+        record.put("casesPercentDominant", (float) stats.getCasesPercentDominant());
+        record.put("controlsPercentDominant", (float) stats.getControlsPercentDominant());
+        record.put("casesPercentRecessive", (float) stats.getCasesPercentRecessive());
+        record.put("controlsPercentRecessive", (float) stats.getControlsPercentRecessive());
+        record.put("quality", (float) stats.getQuality());
+        record.put("numSamples", (int) stats.getNumSamples());
+        return record;
+    }
+
+    private VariantStats convertToVariantStats(GenericRecord record) {
+        VariantStats stats = new VariantStats();
+        stats.setRefAllele(toString(record.get("refAllele")));
+        stats.setAltAllele(toString(record.get("altAllele")));
+        String variantType = toString(record.get("variantType"));
+        if (variantType != null) {
+            stats.setVariantType(VariantType.valueOf(variantType));
+        }
+        stats.setRefAlleleCount((Integer) record.get("refAlleleCount"));
+        stats.setAltAlleleCount((Integer) record.get("altAlleleCount"));
+        stats.setRefAlleleFreq((Float) record.get("refAlleleFreq"));
+        stats.setAltAlleleFreq((Float) record.get("altAlleleFreq"));
+
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) record.get("genotypesCount")).entrySet()) {
+            stats.addGenotype(new Genotype(entry.getKey().toString()), (Integer) entry.getValue());
+        }
+        Map<Genotype, Float> genotypesFreq = new HashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) record.get("genotypesFreq")).entrySet()) {
+            genotypesFreq.put(new Genotype(entry.getKey().toString()), (Float) entry.getValue());
+        }
+        stats.setGenotypesFreq(genotypesFreq);
+
+        stats.setMissingAlleles((Integer) record.get("missingAlleles"));
+        stats.setMissingGenotypes((Integer) record.get("missingGenotypes"));
+        stats.setMaf((Float) record.get("maf"));
+        stats.setMafAllele(toString(record.get("mafAllele")));
+        stats.setMgf((Float) record.get("mgf"));
+        stats.setMgfGenotype(toString(record.get("mgfGenotype")));
+        stats.setMendelianErrors((Integer) record.get("mendelianErrors"));
+        stats.setCasesPercentDominant((Float) record.get("casesPercentDominant"));
+        stats.setControlsPercentDominant((Float) record.get("controlsPercentDominant"));
+        stats.setCasesPercentRecessive((Float) record.get("casesPercentRecessive"));
+        stats.setControlsPercentRecessive((Float) record.get("controlsPercentRecessive"));
+        stats.setQuality((Float) record.get("quality"));
+        stats.setNumSamples((Integer) record.get("numSamples"));
+        return stats;
+    }
+
+    /**
+     * Avro strings are read as {@link org.apache.avro.util.Utf8}.
+     */
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -6,7 +6,6 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantFactory;
 import org.opencb.biodata.models.variant.VariantSource;
 import org.opencb.biodata.models.variant.avro.VariantAvro;
-import org.opencb.biodata.tools.variant.stats.VariantGlobalStatsCalculator;
 import org.opencb.hpg.bigdata.core.io.avro.AvroEncoder;
 
 import java.io.IOException;
@@ -24,13 +23,13 @@ public class VariantAvroTransformTask extends VariantTransformTask<ByteBuffer> {
 
     protected final AvroEncoder<VariantAvro> encoder;
 
-    public VariantAvroTransformTask(VariantFactory factory, VariantSource source, Path outputFileJsonFile, VariantGlobalStatsCalculator variantStatsTask, boolean includesrc) {
-        super(factory, source, outputFileJsonFile, variantStatsTask, includesrc);
+    public VariantAvroTransformTask(VariantFactory factory, VariantSource source, Path outputFileJsonFile, boolean includesrc) {
+        super(factory, source, outputFileJsonFile, includesrc);
         this.encoder = new AvroEncoder<>(VariantAvro.getClassSchema());
     }
 
-    public VariantAvroTransformTask(VCFHeader header, VCFHeaderVersion version, VariantSource source, Path outputFileJsonFile, VariantGlobalStatsCalculator variantStatsTask, boolean includeSrc) {
-        super(header, version, source, outputFileJsonFile, variantStatsTask, includeSrc);
+    public VariantAvroTransformTask(VCFHeader header, VCFHeaderVersion version, VariantSource source, Path outputFileJsonFile, boolean includeSrc) {
+        super(header, version, source, outputFileJsonFile, includeSrc);
         this.encoder = new AvroEncoder<>(VariantAvro.getClassSchema());
     }
 
@@ -21,7 +21,6 @@ import htsjdk.variant.vcf.VCFHeaderVersion;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantFactory;
 import org.opencb.biodata.models.variant.VariantSource;
-import org.opencb.biodata.tools.variant.stats.VariantGlobalStatsCalculator;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -32,14 +31,13 @@ import java.util.List;
  */
 public class VariantJsonTransformTask extends VariantTransformTask<String> {
 
-    public VariantJsonTransformTask(VariantFactory factory, VariantSource source, Path outputFileJsonFile,
-                                    VariantGlobalStatsCalculator variantStatsTask, boolean includesrc) {
-        super(factory, source, outputFileJsonFile, variantStatsTask, includesrc);
+    public VariantJsonTransformTask(VariantFactory factory, VariantSource source, Path outputFileJsonFile, boolean includesrc) {
+        super(factory, source, outputFileJsonFile, includesrc);
     }
 
     public VariantJsonTransformTask(VCFHeader header, VCFHeaderVersion version, VariantSource source, Path outputFileJsonFile,
-                                    VariantGlobalStatsCalculator variantStatsTask, boolean includeSrc) {
-        super(header, version, source, outputFileJsonFile, variantStatsTask, includeSrc);
+                                    boolean includeSrc) {
+        super(header, version, source, outputFileJsonFile, includeSrc);
     }
 
     @Override
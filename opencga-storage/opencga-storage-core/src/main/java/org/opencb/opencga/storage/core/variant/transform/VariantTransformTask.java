@@ -12,6 +12,7 @@ import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
 import org.opencb.biodata.models.variant.*;
 import org.opencb.biodata.models.variant.avro.FileEntry;
 import org.opencb.biodata.models.variant.exceptions.NotAVariantException;
+import org.opencb.biodata.models.variant.stats.VariantGlobalStats;
 import org.opencb.biodata.tools.variant.converter.VariantContextToVariantConverter;
 import org.opencb.biodata.tools.variant.stats.VariantGlobalStatsCalculator;
 import org.opencb.commons.run.ParallelTaskRunner;
@@ -22,9 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 /**
  * Created on 25/02/16
@@ -42,15 +41,18 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
     protected final VariantContextToVariantConverter converter;
     protected final VariantNormalizer normalizer;
     protected final Path outputFileJsonFile;
+    /** Private copy of the source where this task accumulates the global stats. */
+    protected final VariantSource taskSource;
     protected final VariantGlobalStatsCalculator variantStatsTask;
 
 
     public VariantTransformTask(VariantFactory factory,
-                                VariantSource source, Path outputFileJsonFile, VariantGlobalStatsCalculator variantStatsTask, boolean includesrc) {
+                                VariantSource source, Path outputFileJsonFile, boolean includesrc) {
         this.factory = factory;
         this.source = source;
         this.outputFileJsonFile = outputFileJsonFile;
-        this.variantStatsTask = variantStatsTask;
+        this.taskSource = copySource(source);
+        this.variantStatsTask = new VariantGlobalStatsCalculator(taskSource);
         this.includeSrc = includesrc;
 
         this.vcfCodec = null;
@@ -59,11 +61,12 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
     }
 
     public VariantTransformTask(VCFHeader header, VCFHeaderVersion version,
-                                VariantSource source, Path outputFileJsonFile, VariantGlobalStatsCalculator variantStatsTask, boolean includeSrc) {
-        this.variantStatsTask = variantStatsTask;
+                                VariantSource source, Path outputFileJsonFile, boolean includeSrc) {
         this.factory = null;
         this.source = source;
         this.outputFileJsonFile = outputFileJsonFile;
+        this.taskSource = copySource(source);
+        this.variantStatsTask = new VariantGlobalStatsCalculator(taskSource);
         this.includeSrc = includeSrc;
 
         this.vcfCodec = new FullVcfCodec();
@@ -74,9 +77,7 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
 
     @Override
     public void pre() {
-        synchronized (variantStatsTask) {
-            variantStatsTask.pre();
-        }
+        variantStatsTask.pre();
     }
 
     @Override
@@ -138,22 +139,83 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
         return encodeVariants(transformedVariants);
     }
 
+    /**
+     * Merge the stats of this task into the shared VariantSource and write it.
+     * Every task rewrites the file with the stats merged so far, so the last task to finish writes the final stats.
+     */
     @Override
     public void post() {
-        synchronized (variantStatsTask) {
-            variantStatsTask.post();
-        }
+        variantStatsTask.post();
+
         ObjectMapper jsonObjectMapper = new ObjectMapper();
         jsonObjectMapper.addMixIn(VariantSource.class, VariantSourceJsonMixin.class);
         jsonObjectMapper.addMixIn(GenericRecord.class, GenericRecordAvroJsonMixin.class);
 
         ObjectWriter variantSourceObjectWriter = jsonObjectMapper.writerFor(VariantSource.class);
-        try {
-            String sourceJsonString = variantSourceObjectWriter.writeValueAsString(source);
-            StringDataWriter.write(outputFileJsonFile, Collections.singletonList(sourceJsonString));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
+        synchronized (source) {
+            source.setStats(mergeGlobalStats(source.getStats(), taskSource.getStats()));
+            try {
+                String sourceJsonString = variantSourceObjectWriter.writeValueAsString(source);
+                StringDataWriter.write(outputFileJsonFile, Collections.singletonList(sourceJsonString));
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static VariantSource copySource(VariantSource source) {
+        VariantSource copy = new VariantSource(source.getFileName(), source.getFileId(), source.getStudyId(), source.getStudyName());
+        copy.setAggregation(source.getAggregation());
+        copy.setType(source.getType());
+        copy.setSamplesPosition(source.getSamplesPosition());
+        copy.setMetadata(source.getMetadata());
+        return copy;
+    }
+
+    /**
+     * Merge two partial VariantGlobalStats computed over disjoint sets of variants.
+     *
+     * Counters are added, the number of samples is kept, and the mean quality is weighted by the number of variants
+     * of each partial stats.
+     *
+     * @param a     Partial stats. May be null
+     * @param b     Partial stats. May be null
+     * @return      Merged stats
+     */
+    static VariantGlobalStats mergeGlobalStats(VariantGlobalStats a, VariantGlobalStats b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
         }
+        int variantsCount = a.getVariantsCount() + b.getVariantsCount();
+        double meanQuality = variantsCount == 0 ? 0
+                : (a.getMeanQuality() * a.getVariantsCount() + b.getMeanQuality() * b.getVariantsCount()) / variantsCount;
+
+        Map<String, Integer> consequenceTypesCount = null;
+        if (a.getConsequenceTypesCount() != null || b.getConsequenceTypesCount() != null) {
+            consequenceTypesCount = new HashMap<>();
+            for (VariantGlobalStats stats : Arrays.asList(a, b)) {
+                if (stats.getConsequenceTypesCount() != null) {
+                    for (Map.Entry<String, Integer> entry : stats.getConsequenceTypesCount().entrySet()) {
+                        consequenceTypesCount.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                    }
+                }
+            }
+        }
+
+        return new VariantGlobalStats(
+                variantsCount,
+                Math.max(a.getSamplesCount(), b.getSamplesCount()),
+                a.getSnpsCount() + b.getSnpsCount(),
+                a.getIndelsCount() + b.getIndelsCount(),
+                a.getStructuralCount() + b.getStructuralCount(),
+                a.getPassCount() + b.getPassCount(),
+                a.getTransitionsCount() + b.getTransitionsCount(),
+                a.getTransversionsCount() + b.getTransversionsCount(),
+                a.getAccumulatedQuality() + b.getAccumulatedQuality(),
+                meanQuality,
+                consequenceTypesCount);
     }
 
     public boolean isIncludeSrc() {
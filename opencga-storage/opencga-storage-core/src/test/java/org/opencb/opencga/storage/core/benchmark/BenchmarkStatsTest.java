@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.benchmark;
+
+import org.junit.Test;
+import org.opencb.opencga.storage.core.benchmark.VariantPerformanceEvaluator.QueryType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BenchmarkStatsTest {
+
+    @Test
+    public void testPercentiles() {
+        BenchmarkStats stats1 = new BenchmarkStats();
+        BenchmarkStats stats2 = new BenchmarkStats();
+        for (int i = 1; i <= 100; i++) {
+            // 1ms to 100ms, split between two clients
+            (i % 2 == 0 ? stats1 : stats2).addQuery(i <= 50 ? "REGION" : "GENE", TimeUnit.MILLISECONDS.toNanos(i), i == 100);
+        }
+        BenchmarkStats stats = new BenchmarkStats().merge(stats1).merge(stats2).setElapsedTime(TimeUnit.SECONDS.toNanos(10));
+
+        assertEquals(100, stats.getNumQueries());
+        assertEquals(50, stats.getNumQueries("REGION"));
+        assertEquals(1, stats.getNumErrors("GENE"));
+        assertEquals(0, stats.getNumErrors("REGION"));
+        assertEquals(50, stats.getP50(BenchmarkStats.ALL), 0.001);
+        assertEquals(95, stats.getP95(BenchmarkStats.ALL), 0.001);
+        assertEquals(99, stats.getP99(BenchmarkStats.ALL), 0.001);
+        assertEquals(100, stats.getMax(BenchmarkStats.ALL), 0.001);
+        assertEquals(25, stats.getP50("REGION"), 0.001);
+        assertEquals(50.5, stats.getMean(BenchmarkStats.ALL), 0.001);
+        assertEquals(10, stats.getThroughput(), 0.001);
+        assertEquals(0, stats.getP50("GENOTYPE"), 0.001);
+    }
+
+    @Test
+    public void testNextQueryType() {
+        Map<QueryType, Integer> queryMix = new EnumMap<>(QueryType.class);
+        queryMix.put(QueryType.REGION, 3);
+        queryMix.put(QueryType.GENE, 0);
+        queryMix.put(QueryType.CONSEQUENCE_TYPE, 1);
+
+        Map<QueryType, Integer> counts = new EnumMap<>(QueryType.class);
+        Random random = new Random(0);
+        for (int i = 0; i < 4000; i++) {
+            counts.merge(VariantPerformanceEvaluator.nextQueryType(queryMix, 4, random), 1, Integer::sum);
+        }
+        assertFalse(counts.containsKey(QueryType.GENE));
+        assertFalse(counts.containsKey(QueryType.MAF));
+        assertEquals(3000, counts.get(QueryType.REGION), 150);
+        assertEquals(1000, counts.get(QueryType.CONSEQUENCE_TYPE), 150);
+    }
+}
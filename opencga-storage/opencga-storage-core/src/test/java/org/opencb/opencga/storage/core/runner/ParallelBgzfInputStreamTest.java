@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.runner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelBgzfInputStreamTest {
+
+    private static final int NUM_LINES = 20000;
+    private Path bgzfFile;
+    private Path gzipFile;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws Exception {
+        Path rootDir = Paths.get("/tmp", "ParallelBgzfInputStreamTest");
+        Files.createDirectories(rootDir);
+        bgzfFile = rootDir.resolve("lines.bgzf.gz");
+        gzipFile = rootDir.resolve("lines.gz");
+
+        lines = new ArrayList<>(NUM_LINES);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NUM_LINES; i++) {
+            String line = "22\t" + (16050000 + i) + "\t.\tA\tC\t100\tPASS\tAC=" + i + "\tGT\t0|1\t1|1";
+            lines.add(line);
+            sb.append(line).append('\n');
+        }
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        try (OutputStream os = new FileOutputStream(bgzfFile.toFile())) {
+            for (int offset = 0; offset < data.length; offset += 0xFF00) {
+                writeBgzfBlock(os, data, offset, Math.min(0xFF00, data.length - offset));
+            }
+            writeBgzfBlock(os, data, 0, 0);
+        }
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(gzipFile.toFile()))) {
+            os.write(data);
+        }
+    }
+
+    @Test
+    public void testIsBgzf() throws Exception {
+        assertTrue(ParallelBgzfInputStream.isBgzf(bgzfFile));
+        assertFalse(ParallelBgzfInputStream.isBgzf(gzipFile));
+    }
+
+    @Test
+    public void testReadLines() throws Exception {
+        List<String> read = new ArrayList<>(NUM_LINES);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ParallelBgzfInputStream(bgzfFile, 4)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                read.add(line);
+            }
+        }
+        assertEquals(lines, read);
+    }
+
+    @Test
+    public void testStringDataReader() throws Exception {
+        for (Path path : new Path[]{bgzfFile, gzipFile}) {
+            StringDataReader reader = new StringDataReader(path, 4);
+            assertTrue(reader.open());
+            List<String> read = new ArrayList<>(NUM_LINES);
+            List<String> batch;
+            while (!(batch = reader.read(100)).isEmpty()) {
+                read.addAll(batch);
+            }
+            reader.close();
+            assertEquals(lines, read);
+        }
+    }
+
+    private static void writeBgzfBlock(OutputStream os, byte[] data, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+
+        int blockSize = 18 + compressedLength + 8;
+        ByteArrayOutputStream block = new ByteArrayOutputStream(blockSize);
+        block.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+        writeLE(block, blockSize - 1, 2);
+        block.write(compressed, 0, compressedLength);
+        writeLE(block, crc32.getValue(), 4);
+        writeLE(block, length, 4);
+        block.writeTo(os);
+    }
+
+    private static void writeLE(OutputStream os, long value, int bytes) throws IOException {
+        for (int i = 0; i < bytes; i++) {
+            os.write((int) (value >> (8 * i)) & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.runner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelBgzfStringDataWriterTest {
+
+    private Path output;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws Exception {
+        Path rootDir = Paths.get("/tmp", "ParallelBgzfStringDataWriterTest");
+        Files.createDirectories(rootDir);
+        output = rootDir.resolve("stats.json.gz");
+        Random random = new Random(0);
+        lines = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            lines.add("{\"chromosome\":\"22\",\"position\":" + (16050000 + i) + ",\"maf\":" + random.nextDouble()
+                    + (i % 1000 == 0 ? ",\"desc\":\"\u00e9\u4e2d\"" : "") + "}");
+        }
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        ParallelBgzfStringDataWriter writer = new ParallelBgzfStringDataWriter(output, 4, 100 * 1024);
+        assertTrue(writer.open());
+        writer.pre();
+        for (int i = 0; i < lines.size(); i += 100) {
+            List<String> batch = new ArrayList<>();
+            for (String line : lines.subList(i, Math.min(i + 100, lines.size()))) {
+                batch.add(line);
+                batch.add("\n");
+            }
+            writer.write(batch);
+        }
+        writer.post();
+        assertTrue(writer.close());
+
+        assertTrue(ParallelBgzfInputStream.isBgzf(output));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(output.toFile())), StandardCharsets.UTF_8))) {
+            assertEquals(lines, readLines(reader));
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParallelBgzfInputStream(output, 4), StandardCharsets.UTF_8))) {
+            assertEquals(lines, readLines(reader));
+        }
+    }
+
+    private List<String> readLines(BufferedReader reader) throws Exception {
+        List<String> read = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            read.add(line);
+        }
+        return read;
+    }
+}
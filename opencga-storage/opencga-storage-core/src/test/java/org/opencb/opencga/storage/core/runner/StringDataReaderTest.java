@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.runner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StringDataReaderTest {
+
+    private Path rootDir;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws Exception {
+        rootDir = Paths.get("/tmp", "StringDataReaderTest");
+        Files.createDirectories(rootDir);
+        lines = new ArrayList<>();
+        lines.add("##fileformat=VCFv4.1");
+        lines.add("##INFO=<ID=DESC,Number=1,Type=String,Description=\"D\u00e9sc\">");
+        lines.add("");
+        StringBuilder longLine = new StringBuilder("22\t16050075\t.\tA\tG\t100\tPASS\t.\tGT");
+        for (int i = 0; i < 2000000; i++) {
+            longLine.append("\t0|0");
+        }
+        lines.add(longLine.toString());
+        for (int i = 0; i < 10000; i++) {
+            lines.add("22\t" + (16050000 + i) + "\t.\tA\tC\t100\tPASS\t.\tGT\t0|1");
+        }
+    }
+
+    @Test
+    public void testByteModePlain() throws Exception {
+        Path path = rootDir.resolve("lines.vcf");
+        try (OutputStream os = new FileOutputStream(path.toFile())) {
+            write(os, "\n");
+        }
+        assertEquals(lines, readAll(path, true));
+    }
+
+    @Test
+    public void testByteModeGzipCRLF() throws Exception {
+        Path path = rootDir.resolve("lines.vcf.gz");
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(path.toFile()))) {
+            write(os, "\r\n");
+        }
+        assertEquals(lines, readAll(path, true));
+    }
+
+    @Test
+    public void testByteModeNoTrailingNewLine() throws Exception {
+        Path path = rootDir.resolve("lines.noeol.vcf");
+        try (OutputStream os = new FileOutputStream(path.toFile())) {
+            write(os, "\n");
+            os.write("last".getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> expected = new ArrayList<>(lines);
+        expected.add("last");
+        assertEquals(expected, readAll(path, true));
+    }
+
+    private void write(OutputStream os, String lineSeparator) throws Exception {
+        for (String line : lines) {
+            os.write(line.getBytes(StandardCharsets.UTF_8));
+            os.write(lineSeparator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private List<String> readAll(Path path, boolean byteMode) {
+        StringDataReader reader = new StringDataReader(path).setByteMode(byteMode);
+        assertTrue(reader.open());
+        List<String> read = new ArrayList<>();
+        List<String> batch;
+        while (!(batch = reader.read(100)).isEmpty()) {
+            read.addAll(batch);
+        }
+        reader.close();
+        return read;
+    }
+}
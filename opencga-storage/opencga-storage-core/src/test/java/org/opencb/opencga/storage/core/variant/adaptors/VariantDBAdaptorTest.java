@@ -450,6 +450,33 @@ public abstract class VariantDBAdaptorTest extends VariantStorageManagerTestUtil
         assertEquals(NUM_VARIANTS, numVariants);
     }
 
+    @Test
+    public void testIteratorParallel() {
+        List<String> expected = new ArrayList<>();
+        dbAdaptor.iterator(new Query(), new QueryOptions()).forEachRemaining(v -> expected.add(v.toString()));
+
+        QueryOptions options = new QueryOptions(VariantStorageManager.Options.ITERATOR_THREADS.key(), 4)
+                .append(VariantStorageManager.Options.ITERATOR_SORTED.key(), false);
+        List<String> unsorted = new ArrayList<>();
+        try (VariantDBIterator iterator = dbAdaptor.iterator(new Query(), options)) {
+            iterator.forEachRemaining(v -> unsorted.add(v.toString()));
+        }
+        assertEquals(NUM_VARIANTS, unsorted.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(unsorted));
+
+        options.put(VariantStorageManager.Options.ITERATOR_SORTED.key(), true);
+        List<Variant> sorted = new ArrayList<>();
+        try (VariantDBIterator iterator = dbAdaptor.iterator(new Query(), options)) {
+            iterator.forEachRemaining(sorted::add);
+        }
+        assertEquals(NUM_VARIANTS, sorted.size());
+        for (int i = 1; i < sorted.size(); i++) {
+            Variant prev = sorted.get(i - 1);
+            Variant variant = sorted.get(i);
+            assertTrue(!prev.getChromosome().equals(variant.getChromosome()) || prev.getStart() <= variant.getStart());
+        }
+    }
+
     @Test
     public void testGetAllVariants_genotypes() {
         Integer na19600 = studyConfiguration.getSampleIds().get("NA19600");
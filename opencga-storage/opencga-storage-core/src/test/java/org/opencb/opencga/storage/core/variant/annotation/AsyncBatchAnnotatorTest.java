@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncBatchAnnotatorTest {
+
+    private static final int BAD_POSITION = 137;
+
+    /**
+     * Stub of the annotation service. Fails the batches containing the bad variant, and the first request of each batch.
+     */
+    private List<VariantAnnotation> stubRequest(List<Variant> variants, Set<String> requested, AtomicInteger inFlight,
+                                                AtomicInteger maxInFlight) throws Exception {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(5);
+            if (requested.add(variants.get(0) + "-" + variants.size())) {
+                throw new IOException("Timeout");
+            }
+            List<VariantAnnotation> annotations = new ArrayList<>(variants.size());
+            for (Variant variant : variants) {
+                if (variant.getStart() == BAD_POSITION) {
+                    return null;
+                }
+                VariantAnnotation annotation = new VariantAnnotation();
+                annotation.setChromosome(variant.getChromosome());
+                annotation.setStart(variant.getStart());
+                annotation.setReference(variant.getReference());
+                annotation.setAlternate(variant.getAlternate());
+                annotations.add(annotation);
+            }
+            return annotations;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testAnnotate() throws Exception {
+        Set<String> requested = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AsyncBatchAnnotator annotator = new AsyncBatchAnnotator(
+                variants -> stubRequest(variants, requested, inFlight, maxInFlight), 4, 20, 5, 100, 1000, 5, 1);
+
+        List<Variant> variants = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            variants.add(new Variant("1", i, i, "A", "C"));
+        }
+        List<VariantAnnotation> annotations = annotator.annotate(variants);
+        annotator.close();
+
+        assertEquals(variants.size() - 1, annotations.size());
+        int expectedPosition = 1;
+        for (VariantAnnotation annotation : annotations) {
+            if (expectedPosition == BAD_POSITION) {
+                expectedPosition++;
+            }
+            assertEquals(expectedPosition++, annotation.getStart().intValue());
+        }
+        assertEquals(1, annotator.getNumSkippedVariants());
+        assertTrue(annotator.getNumErrors() > 0);
+        assertTrue(maxInFlight.get() <= 4);
+    }
+
+    /**
+     * Requests failing after all the retries must fail the annotation, instead of skipping the variants.
+     */
+    @Test
+    public void testAnnotateRetriesExhausted() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        AsyncBatchAnnotator annotator = new AsyncBatchAnnotator(variants -> {
+            requests.incrementAndGet();
+            throw new IOException("Timeout");
+        }, 4, 20, 5, 100, 1000, 3, 1);
+
+        List<Variant> variants = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            variants.add(new Variant("1", i, i, "A", "C"));
+        }
+        try {
+            annotator.annotate(variants);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("Timeout", e.getCause().getMessage());
+        } finally {
+            annotator.close();
+        }
+        // One request and 3 retries, without splitting the batch
+        assertEquals(4, requests.get());
+        assertEquals(0, annotator.getNumSkippedVariants());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.datastore.core.ObjectMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommandLineVariantAnnotatorTest {
+
+    /**
+     * Stub annotator. Writes an annotation with the chromosome, start and alleles of each input line.
+     */
+    private static final String STUB_ANNOTATOR = "#!/bin/bash\n"
+            + "awk -F '\\t' '{split($4, a, \"/\"); "
+            + "printf \"{\\\"chromosome\\\":\\\"%s\\\",\\\"start\\\":%s,\\\"reference\\\":\\\"%s\\\",\\\"alternate\\\":\\\"%s\\\"}\\n\", $1, $2, a[1], a[2]}' $1";
+
+    private Path rootDir;
+    private List<Variant> variants;
+
+    @Before
+    public void setUp() throws Exception {
+        rootDir = Paths.get("/tmp", "CommandLineVariantAnnotatorTest");
+        Files.createDirectories(rootDir);
+        variants = Arrays.asList(
+                new Variant("2", 300, 300, "T", "G"),
+                new Variant("1", 200, 199, "", "AT"),
+                new Variant("1", 100, 100, "A", "C"));
+    }
+
+    private CommandLineVariantAnnotator buildAnnotator(String scriptName, String script) throws Exception {
+        Path scriptPath = rootDir.resolve(scriptName);
+        Files.write(scriptPath, script.getBytes());
+        scriptPath.toFile().setExecutable(true);
+
+        ObjectMap options = new ObjectMap(CommandLineVariantAnnotator.COMMAND, scriptPath + " ${input} ${output}")
+                .append(CommandLineVariantAnnotator.TMP_DIR, rootDir.toString());
+        return new CommandLineVariantAnnotator(null, options);
+    }
+
+    /**
+     * The annotations are returned in the order of the requested variants.
+     */
+    private void checkAnnotations(List<VariantAnnotation> annotations) {
+        assertEquals(3, annotations.size());
+        assertEquals("2", annotations.get(0).getChromosome());
+        assertEquals(300, annotations.get(0).getStart().intValue());
+        assertEquals(200, annotations.get(1).getStart().intValue());
+        assertEquals("", annotations.get(1).getReference());
+        assertEquals("AT", annotations.get(1).getAlternate());
+        assertEquals("1", annotations.get(2).getChromosome());
+        assertEquals(100, annotations.get(2).getStart().intValue());
+    }
+
+    @Test
+    public void testAnnotate() throws Exception {
+        CommandLineVariantAnnotator annotator = buildAnnotator("stub_annotator.sh", STUB_ANNOTATOR + " > $2\n");
+        checkAnnotations(annotator.annotate(variants));
+    }
+
+    @Test
+    public void testAnnotateGzipOutput() throws Exception {
+        CommandLineVariantAnnotator annotator = buildAnnotator("stub_annotator_gzip.sh", STUB_ANNOTATOR + " | gzip > $2\n");
+        checkAnnotations(annotator.annotate(variants));
+    }
+
+    /**
+     * Annotations missing in the output can not be matched with the variants. Returned in the order of the output.
+     */
+    @Test
+    public void testAnnotateMissingAnnotations() throws Exception {
+        CommandLineVariantAnnotator annotator = buildAnnotator("stub_annotator_missing.sh", STUB_ANNOTATOR + " | head -n 2 > $2\n");
+        List<VariantAnnotation> annotations = annotator.annotate(variants);
+        assertEquals(2, annotations.size());
+        assertEquals(100, annotations.get(0).getStart().intValue());
+        assertEquals(200, annotations.get(1).getStart().intValue());
+    }
+
+    @Test(expected = IOException.class)
+    public void testAnnotateCommandFails() throws Exception {
+        CommandLineVariantAnnotator annotator = buildAnnotator("stub_annotator_fail.sh", "#!/bin/bash\necho 'Annotator error' >&2\nexit 1\n");
+        annotator.annotate(variants);
+    }
+
+    @Test(expected = IOException.class)
+    public void testAnnotateNoOutput() throws Exception {
+        CommandLineVariantAnnotator annotator = buildAnnotator("stub_annotator_no_output.sh", "#!/bin/bash\nexit 0\n");
+        annotator.annotate(variants);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VariantAnnotationCacheTest {
+
+    /**
+     * Annotation with other coordinates than the requested variant, like a normalized indel.
+     */
+    private static VariantAnnotation annotation(Variant variant, String id) {
+        VariantAnnotation annotation = new VariantAnnotation();
+        annotation.setChromosome(variant.getChromosome());
+        annotation.setStart(variant.getStart() + 1);
+        annotation.setReference("");
+        annotation.setAlternate(variant.getAlternate().substring(1));
+        annotation.setId(id);
+        annotation.setConsequenceTypes(Collections.emptyList());
+        return annotation;
+    }
+
+    @Test
+    public void testPutGet() throws Exception {
+        Path rootDir = Paths.get("/tmp", "VariantAnnotationCacheTest");
+        Files.createDirectories(rootDir);
+        Path cachePath = rootDir.resolve("annotation.cache.db");
+        Files.deleteIfExists(cachePath);
+
+        // More variants than parameters in a SQLite query
+        List<Variant> variants = new ArrayList<>();
+        List<VariantAnnotation> annotations = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            Variant variant = new Variant("1", i * 10, i * 10, "A", "AT");
+            variants.add(variant);
+            annotations.add(annotation(variant, "v1_" + i));
+        }
+
+        try (VariantAnnotationCache cache = new VariantAnnotationCache(cachePath, "annotator:v1")) {
+            assertTrue(cache.get(variants).isEmpty());
+            cache.put(variants, annotations);
+
+            Map<String, VariantAnnotation> cached = cache.get(variants);
+            assertEquals(variants.size(), cached.size());
+            for (int i = 0; i < variants.size(); i++) {
+                assertEquals(annotations.get(i).getId(), cached.get(VariantAnnotationCache.buildKey(variants.get(i))).getId());
+            }
+            assertEquals(variants.size(), cache.getHits());
+            assertEquals(variants.size(), cache.getMisses());
+        }
+
+        // Other versions do not read the annotations of v1
+        List<Variant> someVariants = variants.subList(0, 10);
+        try (VariantAnnotationCache cache = new VariantAnnotationCache(cachePath, "annotator:v2")) {
+            assertTrue(cache.get(variants).isEmpty());
+            List<VariantAnnotation> v2Annotations = new ArrayList<>();
+            for (Variant variant : someVariants) {
+                v2Annotations.add(annotation(variant, "v2"));
+            }
+            cache.put(someVariants, v2Annotations);
+            Map<String, VariantAnnotation> cached = cache.get(variants);
+            assertEquals(someVariants.size(), cached.size());
+            cached.values().forEach(annotation -> assertEquals("v2", annotation.getId()));
+        }
+
+        try (VariantAnnotationCache cache = new VariantAnnotationCache(cachePath, "annotator:v1")) {
+            Map<String, VariantAnnotation> cached = cache.get(someVariants);
+            assertEquals(someVariants.size(), cached.size());
+            cached.values().forEach(annotation -> assertTrue(annotation.getId().startsWith("v1_")));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutMissingAnnotations() throws Exception {
+        Path rootDir = Paths.get("/tmp", "VariantAnnotationCacheTest");
+        Files.createDirectories(rootDir);
+        try (VariantAnnotationCache cache = new VariantAnnotationCache(rootDir.resolve("annotation.missing.cache.db"), "annotator:v1")) {
+            Variant variant = new Variant("1", 100, 100, "A", "AT");
+            cache.put(Collections.singletonList(variant), Collections.emptyList());
+        }
+    }
+}
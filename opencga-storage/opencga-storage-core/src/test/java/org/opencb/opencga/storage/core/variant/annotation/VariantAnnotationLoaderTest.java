@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.io.DataReader;
+import org.opencb.datastore.core.QueryOptions;
+import org.opencb.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class VariantAnnotationLoaderTest {
+
+    private static final int CHUNK_SIZE = 100;
+
+    private Path annotationFile;
+    private Path checkpointFile;
+    private List<VariantAnnotation> annotations;
+    private Map<String, Integer> written;
+    private List<List<VariantAnnotation>> batches;
+    private String failOn;
+
+    /**
+     * Chromosome 1 with 10 chunks and chromosome 2 with 3 chunks. Unsorted inside each chunk.
+     */
+    @Before
+    public void setUp() throws Exception {
+        Path rootDir = Paths.get("/tmp", "VariantAnnotationLoaderTest");
+        Files.createDirectories(rootDir);
+        annotationFile = rootDir.resolve("annotation.json.gz");
+        Files.write(annotationFile, "annotations".getBytes());
+        checkpointFile = Paths.get(annotationFile + VariantAnnotationLoader.CHECKPOINT_SUFFIX);
+        Files.deleteIfExists(checkpointFile);
+
+        annotations = new ArrayList<>();
+        Random random = new Random(0);
+        for (String chromosome : Arrays.asList("1", "2")) {
+            int numChunks = chromosome.equals("1") ? 10 : 3;
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                List<VariantAnnotation> chunkAnnotations = new ArrayList<>();
+                for (int i = 0; i < CHUNK_SIZE; i += 2) {
+                    chunkAnnotations.add(annotation(chromosome, chunk * CHUNK_SIZE + i));
+                }
+                Collections.shuffle(chunkAnnotations, random);
+                annotations.addAll(chunkAnnotations);
+            }
+        }
+        written = new HashMap<>();
+        batches = new ArrayList<>();
+        failOn = null;
+    }
+
+    private static VariantAnnotation annotation(String chromosome, int start) {
+        VariantAnnotation annotation = new VariantAnnotation();
+        annotation.setChromosome(chromosome);
+        annotation.setStart(start);
+        annotation.setReference("A");
+        annotation.setAlternate("C");
+        return annotation;
+    }
+
+    private static String key(VariantAnnotation annotation) {
+        return annotation.getChromosome() + ":" + annotation.getStart();
+    }
+
+    /**
+     * Only implements updateAnnotations. Fails the batch with the annotation {@link #failOn}.
+     */
+    @SuppressWarnings("unchecked")
+    private VariantDBAdaptor buildDBAdaptor() {
+        return (VariantDBAdaptor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{VariantDBAdaptor.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("updateAnnotations")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    List<VariantAnnotation> batch = new ArrayList<>((List<VariantAnnotation>) args[0]);
+                    for (VariantAnnotation annotation : batch) {
+                        if (key(annotation).equals(failOn)) {
+                            throw new RuntimeException("Simulated failure writing " + failOn);
+                        }
+                    }
+                    synchronized (this) {
+                        batch.forEach(annotation -> written.merge(key(annotation), 1, Integer::sum));
+                        batches.add(batch);
+                    }
+                    return new QueryResult<>();
+                });
+    }
+
+    private DataReader<VariantAnnotation> buildReader() {
+        return new DataReader<VariantAnnotation>() {
+            private int next = 0;
+
+            @Override
+            public boolean open() {return true;}
+            @Override
+            public boolean close() {return true;}
+            @Override
+            public boolean pre() {return true;}
+            @Override
+            public boolean post() {return true;}
+
+            @Override
+            public List<VariantAnnotation> read(int batchSize) {
+                List<VariantAnnotation> batch = new ArrayList<>(annotations.subList(next, Math.min(annotations.size(), next + batchSize)));
+                next += batch.size();
+                return batch;
+            }
+        };
+    }
+
+    private long load(int numWriters) throws IOException {
+        QueryOptions options = new QueryOptions(VariantAnnotationLoader.CHUNK_SIZE, CHUNK_SIZE)
+                .append(VariantAnnotationManager.BATCH_SIZE, 20)
+                .append(VariantAnnotationManager.NUM_WRITERS, numWriters);
+        return new VariantAnnotationLoader(buildDBAdaptor()).load(annotationFile, buildReader(), options);
+    }
+
+    private void checkWrittenOnce() {
+        assertEquals(annotations.size(), written.size());
+        for (Map.Entry<String, Integer> entry : written.entrySet()) {
+            assertEquals("Annotation " + entry.getKey() + " written more than once", 1, entry.getValue().intValue());
+        }
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void testLoadRuns() throws Exception {
+        assertEquals(annotations.size(), load(4));
+        checkWrittenOnce();
+
+        // Each batch is sorted, from only one run
+        for (List<VariantAnnotation> batch : batches) {
+            assertTrue(batch.size() <= 20);
+            for (int i = 1; i < batch.size(); i++) {
+                assertEquals(batch.get(0).getChromosome(), batch.get(i).getChromosome());
+                assertEquals(batch.get(0).getStart() / CHUNK_SIZE, batch.get(i).getStart() / CHUNK_SIZE);
+                assertTrue(batch.get(i - 1).getStart() < batch.get(i).getStart());
+            }
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        // Fail in the 6th run of chromosome 1
+        failOn = "1:" + (5 * CHUNK_SIZE + 10);
+        try {
+            load(1);
+            fail("Expected load to fail");
+        } catch (IOException ignore) {
+        }
+        assertTrue(Files.exists(checkpointFile));
+        // Only the first 5 runs. The failure is in the first batch of the 6th run
+        int writtenFirstLoad = written.size();
+        assertEquals(5 * CHUNK_SIZE / 2, writtenFirstLoad);
+        assertFalse(written.containsKey(failOn));
+
+        failOn = null;
+        assertEquals(annotations.size() - writtenFirstLoad, load(4));
+        checkWrittenOnce();
+    }
+
+    @Test
+    public void testResumeOutOfOrder() throws Exception {
+        // Runs finished out of order by an interrupted load, with gaps
+        Files.write(checkpointFile, Collections.singletonList(VariantAnnotationLoader.CHECKPOINT_HEADER + annotationFile.getFileName()
+                + "\tsize=" + Files.size(annotationFile) + "\tchunkSize=" + CHUNK_SIZE));
+        VariantAnnotationLoader.Checkpoint checkpoint = new VariantAnnotationLoader.Checkpoint(checkpointFile);
+        Set<String> loadedRuns = new HashSet<>(Arrays.asList("1\t7", "1\t2", "2\t1", "1\t0"));
+        for (String loadedRun : loadedRuns) {
+            String[] split = loadedRun.split("\t");
+            VariantAnnotationLoader.AnnotationRun run = new VariantAnnotationLoader.AnnotationRun(split[0], Integer.parseInt(split[1]));
+            checkpoint.complete(run);
+            // Mark the annotations of the run as already written
+            annotations.stream()
+                    .filter(a -> a.getChromosome().equals(run.chromosome) && a.getStart() / CHUNK_SIZE == run.run)
+                    .forEach(a -> written.put(key(a), 1));
+        }
+        int skipped = written.size();
+        assertEquals(4 * CHUNK_SIZE / 2, skipped);
+
+        assertEquals(annotations.size() - skipped, load(4));
+        checkWrittenOnce();
+    }
+
+    @Test(expected = IOException.class)
+    public void testCheckpointFromOtherFile() throws Exception {
+        Files.write(checkpointFile, Collections.singletonList(VariantAnnotationLoader.CHECKPOINT_HEADER + "other.json.gz"));
+        load(1);
+    }
+}
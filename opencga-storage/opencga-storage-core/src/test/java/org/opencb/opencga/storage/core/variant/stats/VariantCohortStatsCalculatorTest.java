@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.junit.Test;
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.biodata.tools.variant.stats.VariantStatsCalculator;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class VariantCohortStatsCalculatorTest {
+
+    @Test
+    public void testCalculate() {
+        String[] gts = {"0/0", "0/1", "1/1", "./.", "0|1", "0/0", "1/1", "0/0", "./1", "0/1"};
+        Variant variant = new Variant("1", 1000, 1000, "A", "C");
+        StudyEntry study = new StudyEntry("1");
+        study.setFormatAsString("GT");
+        for (int i = 0; i < gts.length; i++) {
+            study.addSampleData("S" + i, Collections.singletonMap("GT", gts[i]));
+        }
+        variant.addStudyEntry(study);
+
+        Map<String, Set<String>> cohorts = new LinkedHashMap<>();
+        cohorts.put("c1", new HashSet<>(Arrays.asList("S0", "S1", "S2", "S3", "S4")));
+        cohorts.put("c2", new HashSet<>(Arrays.asList("S3", "S5", "S6", "S7", "S8", "S9")));
+        cohorts.put("c3", new HashSet<>(Arrays.asList("S0", "S5", "S7")));
+
+        VariantCohortStatsCalculator calculator = new VariantCohortStatsCalculator(cohorts);
+        Map<String, VariantStats> stats = calculator.calculate(variant, study, Collections.singleton("c3"));
+
+        assertEquals(2, stats.size());
+        for (String cohort : Arrays.asList("c1", "c2")) {
+            Map<String, Map<String, String>> samplesData = new VariantStatisticsCalculator()
+                    .filterSamples(study.getSamplesDataAsMap(), cohorts.get(cohort));
+            VariantStats expected = new VariantStats(variant);
+            VariantStatsCalculator.calculate(samplesData, study.getAttributes(), null, expected);
+
+            VariantStats actual = stats.get(cohort);
+            assertStatsEquals(expected, actual);
+        }
+    }
+
+    private static void assertStatsEquals(VariantStats expected, VariantStats actual) {
+        assertEquals(expected.getRefAllele(), actual.getRefAllele());
+        assertEquals(expected.getAltAllele(), actual.getAltAllele());
+        assertEquals(expected.getVariantType(), actual.getVariantType());
+        assertEquals(expected.getRefAlleleCount(), actual.getRefAlleleCount());
+        assertEquals(expected.getAltAlleleCount(), actual.getAltAlleleCount());
+        assertEquals(expected.getRefAlleleFreq(), actual.getRefAlleleFreq(), 0.0001);
+        assertEquals(expected.getAltAlleleFreq(), actual.getAltAlleleFreq(), 0.0001);
+        assertEquals(expected.getGenotypesCount(), actual.getGenotypesCount());
+        assertEquals(expected.getGenotypesFreq().keySet(), actual.getGenotypesFreq().keySet());
+        for (Map.Entry<Genotype, Float> entry : expected.getGenotypesFreq().entrySet()) {
+            assertEquals(entry.getKey().toString(), entry.getValue(), actual.getGenotypesFreq().get(entry.getKey()), 0.0001);
+        }
+        assertEquals(expected.getMissingAlleles(), actual.getMissingAlleles());
+        assertEquals(expected.getMissingGenotypes(), actual.getMissingGenotypes());
+        assertEquals(expected.getMaf(), actual.getMaf(), 0.0001);
+        assertEquals(expected.getMafAllele(), actual.getMafAllele());
+        assertEquals(expected.getMgf(), actual.getMgf(), 0.0001);
+        assertEquals(expected.getMgfGenotype(), actual.getMgfGenotype());
+    }
+}
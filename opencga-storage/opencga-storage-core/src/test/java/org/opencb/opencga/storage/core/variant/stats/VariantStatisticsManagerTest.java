@@ -2,10 +2,12 @@ package org.opencb.opencga.storage.core.variant.stats;
 
 import org.junit.*;
 import org.junit.rules.ExpectedException;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.datastore.core.ObjectMap;
+import org.opencb.datastore.core.Query;
 import org.opencb.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.StudyConfiguration;
 import org.opencb.opencga.storage.core.variant.VariantStorageManager;
@@ -22,6 +24,7 @@ import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -151,6 +154,82 @@ public abstract class VariantStatisticsManagerTest extends VariantStorageManager
 
     }
 
+    @Test
+    public void calculateStatsDirectTest() throws Exception {
+        VariantStatisticsManager vsm = getVariantStorageManager().getVariantStatisticsManager();
+
+        Integer fileId = studyConfiguration.getFileIds().get(Paths.get(inputUri).getFileName().toString());
+        QueryOptions options = new QueryOptions(VariantStorageManager.Options.FILE_ID.key(), fileId);
+        options.put(VariantStorageManager.Options.LOAD_BATCH_SIZE.key(), 100);
+        options.put(VariantStorageManager.Options.STATS_CHUNK_SIZE.key(), 1000000);
+        Iterator<String> iterator = studyConfiguration.getSampleIds().keySet().iterator();
+
+        HashSet<String> cohort1 = new HashSet<>();
+        cohort1.add(iterator.next());
+        cohort1.add(iterator.next());
+        Map<String, Set<String>> cohorts = Collections.singletonMap("cohort1", cohort1);
+        Map<String, Integer> cohortIds = Collections.singletonMap("cohort1", 10);
+
+        URI output = outputUri.resolve("cohort1.direct.stats");
+        vsm.calculateStats(dbAdaptor, output, cohorts, cohortIds, studyConfiguration, options);
+
+        assertTrue(studyConfiguration.getCalculatedStats().contains(10));
+        assertFalse(Files.exists(Paths.get(output.getPath() + VariantStatisticsManager.CHECKPOINT_SUFFIX)));
+        checkCohorts(dbAdaptor, studyConfiguration);
+    }
+
+    @Test
+    public void calculateStatsDirectResumeTest() throws Exception {
+        VariantStatisticsManager vsm = getVariantStorageManager().getVariantStatisticsManager();
+
+        Integer fileId = studyConfiguration.getFileIds().get(Paths.get(inputUri).getFileName().toString());
+        QueryOptions options = new QueryOptions(VariantStorageManager.Options.FILE_ID.key(), fileId);
+        options.put(VariantStorageManager.Options.LOAD_BATCH_SIZE.key(), 100);
+        options.put(VariantStorageManager.Options.STATS_CHUNK_SIZE.key(), 1000000);
+        Iterator<String> iterator = studyConfiguration.getSampleIds().keySet().iterator();
+
+        HashSet<String> cohort1 = new HashSet<>();
+        cohort1.add(iterator.next());
+        cohort1.add(iterator.next());
+        Map<String, Set<String>> cohorts = Collections.singletonMap("cohort1", cohort1);
+        Map<String, Integer> cohortIds = Collections.singletonMap("cohort1", 10);
+
+        Query query = new Query(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), studyConfiguration.getStudyId())
+                .append(VariantDBAdaptor.VariantQueryParams.FILES.key(), fileId);
+        List<Region> regions = vsm.getStatsChunks(dbAdaptor, query, 1000000);
+        Assume.assumeTrue("Storage engine does not split the stats calculation in regions", regions.size() > 1);
+
+        // Simulate an interrupted run, with the first half of the regions finished
+        List<Region> finishedRegions = regions.subList(0, regions.size() / 2);
+        URI output = outputUri.resolve("cohort1.resume.stats");
+        Path checkpointPath = Paths.get(output.getPath() + VariantStatisticsManager.CHECKPOINT_SUFFIX);
+        List<String> checkpoint = new ArrayList<>();
+        checkpoint.add(VariantStatisticsManager.CHECKPOINT_HEADER + new TreeSet<>(cohorts.keySet()));
+        finishedRegions.forEach(region -> checkpoint.add(region.toString()));
+        Files.write(checkpointPath, checkpoint);
+
+        vsm.calculateStats(dbAdaptor, output, cohorts, cohortIds, studyConfiguration, options);
+        assertFalse(Files.exists(checkpointPath));
+
+        int skipped = 0;
+        int calculated = 0;
+        for (Variant variant : dbAdaptor) {
+            boolean finished = finishedRegions.stream().anyMatch(region -> region.getChromosome().equals(variant.getChromosome())
+                    && region.getStart() <= variant.getStart() && variant.getStart() <= region.getEnd());
+            Map<String, VariantStats> cohortStats = variant.getStudy(studyConfiguration.getStudyName()).getStats();
+            if (finished) {
+                assertFalse("Stats of " + variant + " calculated in a finished region", cohortStats.containsKey("cohort1"));
+                skipped++;
+            } else {
+                assertTrue("Stats of " + variant + " not calculated", cohortStats.containsKey("cohort1"));
+                assertEquals(cohort1.size(), cohortStats.get("cohort1").getGenotypesCount().values().stream().reduce(0, Integer::sum).intValue());
+                calculated++;
+            }
+        }
+        assertTrue(skipped > 0);
+        assertTrue(calculated > 0);
+    }
+
     private static void checkCohorts(VariantDBAdaptor dbAdaptor, StudyConfiguration studyConfiguration) {
         for (Variant variant : dbAdaptor) {
             for (StudyEntry sourceEntry : variant.getStudies()) {
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.opencga.storage.core.variant.io.avro.AvroDataWriter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VariantStatsAvroReaderTest {
+
+    private static final int NUM_VARIANTS = 50000;
+    private Path output;
+
+    @Before
+    public void setUp() throws Exception {
+        Path rootDir = Paths.get("/tmp", "VariantStatsAvroReaderTest");
+        Files.createDirectories(rootDir);
+        output = rootDir.resolve("stats.variants.stats.avro");
+
+        VariantStatsWrapperAvroConverter converter = new VariantStatsWrapperAvroConverter();
+        AvroDataWriter<GenericRecord> writer = new AvroDataWriter<>(output, "gzip", VariantStatsWrapperAvroConverter.SCHEMA);
+        writer.open();
+        for (int i = 0; i < NUM_VARIANTS; i += 100) {
+            List<GenericRecord> batch = new ArrayList<>(100);
+            for (int position = i; position < i + 100; position++) {
+                VariantStats stats = new VariantStats(null, -1, null, null, VariantType.SNV, position / (float) NUM_VARIANTS, 0.01f,
+                        "A", "A/A", 10, 5, -1, -1, -1, -1, -1);
+                stats.addGenotype(new Genotype("0/1"), position % 7);
+                batch.add(converter.convertToStorageType(
+                        new VariantStatsWrapper("22", position, Collections.singletonMap("ALL", stats))));
+            }
+            writer.write(batch);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        VariantStatsAvroReader reader = new VariantStatsAvroReader(output.toFile());
+        reader.open();
+        List<VariantStatsWrapper> wrappers = new ArrayList<>();
+        for (List<VariantStatsWrapper> batch = reader.read(1000); !batch.isEmpty(); batch = reader.read(1000)) {
+            wrappers.addAll(batch);
+        }
+        reader.close();
+
+        assertEquals(NUM_VARIANTS, wrappers.size());
+        VariantStatsWrapper wrapper = wrappers.get(1234);
+        assertEquals("22", wrapper.getChromosome());
+        assertEquals(1234, wrapper.getPosition());
+        VariantStats stats = wrapper.getCohortStats().get("ALL");
+        assertEquals(1234 / (float) NUM_VARIANTS, stats.getMaf(), 0);
+        assertEquals("A", stats.getMafAllele());
+        assertEquals(1234 % 7, stats.getGenotypesCount().get(new Genotype("0/1")).intValue());
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        List<VariantStatsAvroReader> readers = VariantStatsAvroReader.split(output.toFile(), 7);
+        assertTrue(readers.size() > 1);
+        Set<Integer> positions = new HashSet<>();
+        int numRead = 0;
+        for (VariantStatsAvroReader reader : readers) {
+            reader.open();
+            for (List<VariantStatsWrapper> batch = reader.read(1000); !batch.isEmpty(); batch = reader.read(1000)) {
+                for (VariantStatsWrapper wrapper : batch) {
+                    positions.add(wrapper.getPosition());
+                    numRead++;
+                }
+            }
+            reader.close();
+        }
+        assertEquals(NUM_VARIANTS, numRead);
+        assertEquals(NUM_VARIANTS, positions.size());
+    }
+}
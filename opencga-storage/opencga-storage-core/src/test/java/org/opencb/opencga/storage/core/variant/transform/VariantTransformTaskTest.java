@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.transform;
+
+import org.junit.Test;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.stats.VariantGlobalStats;
+import org.opencb.biodata.tools.variant.stats.VariantGlobalStatsCalculator;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class VariantTransformTaskTest {
+
+    @Test
+    public void testMergeGlobalStats() throws Exception {
+        String vcf = Paths.get(getClass().getClassLoader().getResource("variant-test-file.vcf.gz").toURI()).toString();
+        VariantSource source = new VariantSource("variant-test-file.vcf.gz", "f", "s", "");
+        VariantVcfReader reader = new VariantVcfReader(source, vcf);
+        reader.open();
+        reader.pre();
+        List<Variant> variants = new ArrayList<>();
+        for (List<Variant> batch = reader.read(100); !batch.isEmpty(); batch = reader.read(100)) {
+            variants.addAll(batch);
+        }
+        reader.post();
+        reader.close();
+
+        int split = variants.size() / 3;
+        VariantGlobalStats expected = calculate(source, variants);
+        VariantGlobalStats merged = VariantTransformTask.mergeGlobalStats(
+                calculate(source, variants.subList(0, split)),
+                calculate(source, variants.subList(split, variants.size())));
+
+        assertEquals(expected.getVariantsCount(), merged.getVariantsCount());
+        assertEquals(expected.getSamplesCount(), merged.getSamplesCount());
+        assertEquals(expected.getSnpsCount(), merged.getSnpsCount());
+        assertEquals(expected.getIndelsCount(), merged.getIndelsCount());
+        assertEquals(expected.getStructuralCount(), merged.getStructuralCount());
+        assertEquals(expected.getPassCount(), merged.getPassCount());
+        assertEquals(expected.getTransitionsCount(), merged.getTransitionsCount());
+        assertEquals(expected.getTransversionsCount(), merged.getTransversionsCount());
+        assertEquals(expected.getAccumulatedQuality(), merged.getAccumulatedQuality(), 0.01);
+        assertEquals(expected.getMeanQuality(), merged.getMeanQuality(), 0.0001);
+        assertEquals(expected.getConsequenceTypesCount(), merged.getConsequenceTypesCount());
+    }
+
+    private static VariantGlobalStats calculate(VariantSource source, List<Variant> variants) {
+        VariantSource partialSource = new VariantSource(source.getFileName(), source.getFileId(), source.getStudyId(), source.getStudyName());
+        partialSource.setSamplesPosition(source.getSamplesPosition());
+        VariantGlobalStatsCalculator calculator = new VariantGlobalStatsCalculator(partialSource);
+        calculator.pre();
+        calculator.apply(new ArrayList<>(variants));
+        calculator.post();
+        return partialSource.getStats();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import com.mongodb.DBObject;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Variant with the studies, stats and annotation still in the original DBObject.
+ *
+ * The coordinates are set on creation. The rest of the fields are converted by the
+ * {@link DBObjectToVariantConverter} the first time any of them is accessed.
+ */
+class DBObjectLazyVariant extends Variant {
+
+    private DBObject object;
+    private final DBObjectToVariantConverter converter;
+
+    DBObjectLazyVariant(String chromosome, int start, int end, String reference, String alternate,
+                        DBObject object, DBObjectToVariantConverter converter) {
+        super(chromosome, start, end, reference, alternate);
+        this.object = object;
+        this.converter = converter;
+    }
+
+    private void convert() {
+        if (object != null) {
+            DBObject pending = object;
+            object = null;
+            converter.convertStudiesStatsAndAnnotation(pending, this);
+        }
+    }
+
+    boolean isConverted() {
+        return object == null;
+    }
+
+    @Override
+    public List<StudyEntry> getStudies() {
+        convert();
+        return super.getStudies();
+    }
+
+    @Override
+    public void setStudies(List<StudyEntry> studies) {
+        convert();
+        super.setStudies(studies);
+    }
+
+    @Override
+    public Map<String, StudyEntry> getStudiesMap() {
+        convert();
+        return super.getStudiesMap();
+    }
+
+    @Override
+    public StudyEntry getStudy(String studyId) {
+        convert();
+        return super.getStudy(studyId);
+    }
+
+    @Override
+    public void addStudyEntry(StudyEntry studyEntry) {
+        convert();
+        super.addStudyEntry(studyEntry);
+    }
+
+    @Override
+    public VariantAnnotation getAnnotation() {
+        convert();
+        return super.getAnnotation();
+    }
+
+    @Override
+    public void setAnnotation(VariantAnnotation annotation) {
+        convert();
+        super.setAnnotation(annotation);
+    }
+
+    @Override
+    public VariantAvro getImpl() {
+        convert();
+        return super.getImpl();
+    }
+
+    @Override
+    public String toJson() {
+        convert();
+        return super.toJson();
+    }
+
+    @Override
+    public String toString() {
+        convert();
+        return super.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        convert();
+        if (o instanceof DBObjectLazyVariant) {
+            ((DBObjectLazyVariant) o).convert();
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        convert();
+        return super.hashCode();
+    }
+}
@@ -32,9 +32,11 @@ import org.opencb.opencga.storage.core.variant.adaptors.VariantSourceDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.protobuf.VariantMongoDBProto;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.zip.DataFormatException;
@@ -53,6 +55,7 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
     private final Map<Integer, StudyConfiguration> studyConfigurations;
     private final Map<Integer, BiMap<String, Integer>> __studySamplesId; //Inverse map from "sampleIds". Do not use directly, can be null. Use "getIndexedIdSamplesMap()"
     private final Map<Integer, LinkedHashMap<String, Integer>> __returnedSamplesPosition;
+    private final Map<Integer, Integer> __returnedSamplesMaxId;
     private final Map<Integer, Set<String>> studyDefaultGenotypeSet;
     private LinkedHashSet<String> returnedSamples;
     private VariantSourceDBAdaptor sourceDbAdaptor;
@@ -109,6 +112,7 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
         studyConfigurations = new HashMap<>();
         __studySamplesId = new HashMap<>();
         __returnedSamplesPosition = new HashMap<>();
+        __returnedSamplesMaxId = new HashMap<>();
         studyDefaultGenotypeSet = new HashMap<>();
         returnedSamples = new LinkedHashSet<>();
         studyConfigurationManager = null;
@@ -264,9 +268,18 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
                 } else {
                     genotype = genotypeToDataModelType(dbo.getKey());
                 }
-                for (Integer sampleId : (List<Integer>) dbo.getValue()) {
-                    if (idSamples.containsKey(sampleId)) {
-                        samplesData.get(samplesPositionToReturn.get(idSamples.get(sampleId))).set(0, genotype);
+                IntConsumer setGenotype = sampleId -> {
+                    String sampleName = idSamples.get(sampleId);
+                    if (sampleName != null) {
+                        samplesData.get(samplesPositionToReturn.get(sampleName)).set(0, genotype);
+                    }
+                };
+                // Elements can be plain sample ids, or packed lists of sample ids. See GENOTYPE_ENCODING_PACKED
+                for (Object element : (List<Object>) dbo.getValue()) {
+                    if (element instanceof byte[]) {
+                        unpackSampleIds((byte[]) element, getReturnedSamplesMaxId(studyId), setGenotype);
+                    } else {
+                        setGenotype.accept((Integer) element);
                     }
                 }
             }
@@ -401,6 +414,7 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
                         VariantStorageManager.Options.EXTRA_GENOTYPE_FIELDS_COMPRESS.defaultValue());
 
         Set<String> defaultGenotype = studyDefaultGenotypeSet.get(studyId).stream().collect(Collectors.toSet());
+        boolean packGenotypes = isPackedGenotypes(studyConfiguration);
 
         HashBiMap<String, Integer> sampleIds = HashBiMap.create(studyConfiguration.getSampleIds());
         // Classify samples by genotype
@@ -439,7 +453,11 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
         for (Map.Entry<String, List<Integer>> entry : genotypeCodes.entrySet()) {
             String genotypeStr = genotypeToStorageType(entry.getKey());
             if (!defaultGenotype.contains(entry.getKey())) {
-                mongoGenotypes.append(genotypeStr, entry.getValue());
+                if (packGenotypes) {
+                    mongoGenotypes.append(genotypeStr, Collections.singletonList(packSampleIds(entry.getValue())));
+                } else {
+                    mongoGenotypes.append(genotypeStr, entry.getValue());
+                }
             }
         }
 
@@ -548,6 +566,7 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
         this.returnedSamples = new LinkedHashSet<>(returnedSamples);
         __studySamplesId.clear();
         __returnedSamplesPosition.clear();
+        __returnedSamplesMaxId.clear();
     }
 
     public void addStudyConfiguration(StudyConfiguration studyConfiguration) {
@@ -600,6 +619,18 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
         return sampleIds;
     }
 
+    /**
+     * Biggest sample id to return. Packed sample ids are sorted, so the decoding can stop after this id.
+     **/
+    private int getReturnedSamplesMaxId(int studyId) {
+        Integer maxId = __returnedSamplesMaxId.get(studyId);
+        if (maxId == null) {
+            maxId = getIndexedSamplesIdMap(studyId).values().stream().mapToInt(Integer::intValue).max().orElse(-1);
+            __returnedSamplesMaxId.put(studyId, maxId);
+        }
+        return maxId;
+    }
+
     private LinkedHashMap<String, Integer> getReturnedSamplesPosition(StudyConfiguration studyConfiguration) {
         if (!__returnedSamplesPosition.containsKey(studyConfiguration.getStudyId())) {
             LinkedHashMap<String, Integer> samplesPosition;
@@ -646,6 +677,69 @@ public class DBObjectToSamplesConverter /*implements ComplexTypeConverter<Varian
         return mongoSamples;
     }
 
+    public static boolean isPackedGenotypes(StudyConfiguration studyConfiguration) {
+        return MongoDBVariantStorageManager.GENOTYPE_ENCODING_PACKED.equals(
+                studyConfiguration.getAttributes().getString(MongoDBVariantStorageManager.GENOTYPE_ENCODING,
+                        MongoDBVariantStorageManager.GENOTYPE_ENCODING_LIST));
+    }
+
+    /**
+     * Pack a list of sample ids into a byte array.
+     * The ids are sorted, and written as the unsigned varint of the difference with the previous id.
+     * Consecutive ids take one single byte.
+     *
+     * @param sampleIds Sample ids. Will be sorted.
+     * @return Packed sample ids
+     */
+    public static byte[] packSampleIds(List<Integer> sampleIds) {
+        Collections.sort(sampleIds);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sampleIds.size() + 4);
+        int previous = -1;
+        for (Integer sampleId : sampleIds) {
+            int delta = sampleId - previous;
+            while ((delta & ~0x7F) != 0) {
+                out.write((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.write(delta);
+            previous = sampleId;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Unpack the sample ids from a byte array generated with {@link #packSampleIds}.
+     *
+     * @param packedSampleIds   Packed sample ids
+     * @param maxSampleId       Stop decoding after this sample id
+     * @param consumer          Consumer for the unpacked sample ids
+     */
+    public static void unpackSampleIds(byte[] packedSampleIds, int maxSampleId, IntConsumer consumer) {
+        int sampleId = -1;
+        int i = 0;
+        while (i < packedSampleIds.length) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = packedSampleIds[i++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            sampleId += delta;
+            if (sampleId > maxSampleId) {
+                return;
+            }
+            consumer.accept(sampleId);
+        }
+    }
+
+    public static List<Integer> unpackSampleIds(byte[] packedSampleIds) {
+        List<Integer> sampleIds = new ArrayList<>();
+        unpackSampleIds(packedSampleIds, Integer.MAX_VALUE, sampleIds::add);
+        return sampleIds;
+    }
+
     public static String genotypeToDataModelType(String genotype) {
         return genotype.replace("-1", ".");
     }
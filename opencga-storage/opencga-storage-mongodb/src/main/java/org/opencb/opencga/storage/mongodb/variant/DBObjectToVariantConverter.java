@@ -53,6 +53,9 @@ public class DBObjectToVariantConverter implements ComplexTypeConverter<Variant,
 
     public static final String _AT_FIELD = "_at";
     public static final String CHUNK_IDS_FIELD = "chunkIds";
+    public static final String _ANNOT_FIELD = "_annot";
+    public static final String ANNOT_VERSION_FIELD = "version";
+    public static final String ANNOT_DATE_FIELD = "date";
 
 //    public final static String ID_FIELD = "id";
 //    public final static String FILES_FIELD = "files";
@@ -83,6 +86,7 @@ public class DBObjectToVariantConverter implements ComplexTypeConverter<Variant,
     private DBObjectToStudyVariantEntryConverter variantSourceEntryConverter;
     private DBObjectToVariantAnnotationConverter variantAnnotationConverter;
     private DBObjectToVariantStatsConverter statsConverter;
+    private boolean lazy = false;
 
     /**
      * Create a converter between Variant and DBObject entities when there is 
@@ -114,7 +118,12 @@ public class DBObjectToVariantConverter implements ComplexTypeConverter<Variant,
         int end = (int) object.get(END_FIELD);
         String reference = (String) object.get(REFERENCE_FIELD);
         String alternate = (String) object.get(ALTERNATE_FIELD);
-        Variant variant = new Variant(chromosome, start, end, reference, alternate);
+        Variant variant;
+        if (lazy && (object.containsField(STUDIES_FIELD) || object.containsField(ANNOTATION_FIELD) || object.containsField(STATS_FIELD))) {
+            variant = new DBObjectLazyVariant(chromosome, start, end, reference, alternate, object, this);
+        } else {
+            variant = new Variant(chromosome, start, end, reference, alternate);
+        }
         if (object.containsField(IDS_FIELD)) {
             Object ids = object.get(IDS_FIELD);
             variant.setIds(new LinkedList<>(((Collection<String>) ids)));
@@ -132,6 +141,20 @@ public class DBObjectToVariantConverter implements ComplexTypeConverter<Variant,
             }
         }
 
+        if (!(variant instanceof DBObjectLazyVariant)) {
+            convertStudiesStatsAndAnnotation(object, variant);
+        }
+        return variant;
+    }
+
+    /**
+     * Convert the fields of the variant that are expensive to build: studies, with all the samples data,
+     * annotation and statistics. Only the fields present in the DBObject are converted.
+     *
+     * @param object    Mongo object
+     * @param variant   Variant to fill
+     */
+    void convertStudiesStatsAndAnnotation(DBObject object, Variant variant) {
         // Files
         if (variantSourceEntryConverter != null) {
             List mongoFiles = (List) object.get(STUDIES_FIELD);
@@ -169,7 +192,23 @@ public class DBObjectToVariantConverter implements ComplexTypeConverter<Variant,
             DBObject stats = (DBObject) object.get(STATS_FIELD);
             statsConverter.convertCohortsToDataModelType(stats, variant);
         }
-        return variant;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Delay the conversion of studies, annotation and statistics until they are accessed for the first time.
+     * The converter is used again at that moment, so lazy variants must not be accessed from a different thread
+     * while the converter is still in use.
+     *
+     * @param lazy Use lazy conversion
+     * @return this
+     */
+    public DBObjectToVariantConverter setLazy(boolean lazy) {
+        this.lazy = lazy;
+        return this;
     }
 
     @Override
@@ -191,8 +230,8 @@ public class DBObjectToVariantConverter implements ComplexTypeConverter<Variant,
 
         // Two different chunk sizes are calculated for different resolution levels: 1k and 10k
         BasicDBList chunkIds = new BasicDBList();
-        String chunkSmall = variant.getChromosome() + "_" + variant.getStart() / VariantMongoDBWriter.CHUNK_SIZE_SMALL + "_" + VariantMongoDBWriter.CHUNK_SIZE_SMALL / 1000 + "k";
-        String chunkBig = variant.getChromosome() + "_" + variant.getStart() / VariantMongoDBWriter.CHUNK_SIZE_BIG + "_" + VariantMongoDBWriter.CHUNK_SIZE_BIG / 1000 + "k";
+        String chunkSmall = getChunkId(variant.getChromosome(), variant.getStart(), VariantMongoDBWriter.CHUNK_SIZE_SMALL);
+        String chunkBig = getChunkId(variant.getChromosome(), variant.getStart(), VariantMongoDBWriter.CHUNK_SIZE_BIG);
         chunkIds.add(chunkSmall);
         chunkIds.add(chunkBig);
         _at.append(CHUNK_IDS_FIELD, chunkIds);
@@ -264,6 +303,18 @@ public class DBObjectToVariantConverter implements ComplexTypeConverter<Variant,
     }
 
 
+    /**
+     * Id of the chunk containing a position, as stored in the "_at.chunkIds" field.
+     *
+     * @param chromosome    Chromosome
+     * @param position      Position
+     * @param chunkSize     Chunk size, {@link VariantMongoDBWriter#CHUNK_SIZE_SMALL} or {@link VariantMongoDBWriter#CHUNK_SIZE_BIG}
+     * @return              Chunk id, e.g. "22_16050_1k"
+     */
+    public static String getChunkId(String chromosome, int position, int chunkSize) {
+        return chromosome + "_" + position / chunkSize + "_" + chunkSize / 1000 + "k";
+    }
+
     public static String toShortFieldName(String longFieldName) {
         if(longFieldName.contains(".")) {
             String[] split = longFieldName.split("\\.");
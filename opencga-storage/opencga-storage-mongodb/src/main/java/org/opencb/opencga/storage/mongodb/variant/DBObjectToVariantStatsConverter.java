@@ -19,10 +19,10 @@ package org.opencb.opencga.storage.mongodb.variant;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.opencb.biodata.models.feature.Genotype;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.StudyEntry;
@@ -66,8 +66,9 @@ public class DBObjectToVariantStatsConverter implements ComplexTypeConverter<Var
     protected static Logger logger = LoggerFactory.getLogger(DBObjectToVariantStatsConverter.class);
 
     private StudyConfigurationManager studyConfigurationManager = null;
-    private Map<Integer, String> studyIds = new HashMap<>();
-    private Map<Integer, Map<Integer, String>> studyCohortNames = new HashMap<>();
+    // The converter is shared by the threads loading stats concurrently
+    private Map<Integer, String> studyIds = new ConcurrentHashMap<>();
+    private Map<Integer, Map<Integer, String>> studyCohortNames = new ConcurrentHashMap<>();
 
     public void setStudyConfigurationManager(StudyConfigurationManager studyConfigurationManager) {
         this.studyConfigurationManager = studyConfigurationManager;
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import org.opencb.biodata.models.core.Region;
+import org.opencb.datastore.core.Query;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatisticsManager;
+
+import java.util.List;
+
+/**
+ * VariantStatisticsManager splitting the direct stats calculation in regions with the same number of positions,
+ * from the first to the last variant of each chromosome.
+ */
+public class MongoDBVariantStatisticsManager extends VariantStatisticsManager {
+
+    @Override
+    protected List<Region> getStatsChunks(VariantDBAdaptor variantDBAdaptor, Query query, int chunkSize) {
+        if (variantDBAdaptor instanceof VariantMongoDBAdaptor) {
+            return ((VariantMongoDBAdaptor) variantDBAdaptor).getQueryRegions(query, chunkSize);
+        } else {
+            return super.getStatsChunks(variantDBAdaptor, query, chunkSize);
+        }
+    }
+}
@@ -41,6 +41,8 @@ import org.opencb.opencga.storage.core.variant.FileStudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.VariantStorageManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantIndexAdvisor;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatisticsManager;
 import org.opencb.opencga.storage.mongodb.utils.MongoCredentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +54,7 @@ import java.net.UnknownHostException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -87,7 +90,21 @@ public class MongoDBVariantStorageManager extends VariantStorageManager {
     public static final String COLLECTION_STUDIES    = "collection.studies";
     public static final String BULK_SIZE = "bulkSize";
     public static final String DEFAULT_GENOTYPE = "defaultGenotype";
+    /** Storage encoding of the genotypes of a study. Saved in the StudyConfiguration attributes at the first load */
+    public static final String GENOTYPE_ENCODING = "genotypeEncoding";
+    /** Each genotype is stored as a list of sample ids */
+    public static final String GENOTYPE_ENCODING_LIST = "list";
+    /** Each genotype is stored as a list of binaries with the delta encoded sample ids of every loaded file */
+    public static final String GENOTYPE_ENCODING_PACKED = "packed";
     public static final String ALREADY_LOADED_VARIANTS = "alreadyLoadedVariants";
+    /** Fetch the existing variants of each batch and load them with one single bulk. Faster when most variants already exist */
+    public static final String LOAD_PREFETCH_IDS = "load.prefetchIds";
+    /** Partition the variants by chunk, and route every partition to the same writer. */
+    public static final String LOAD_PARTITION_BY_CHUNK = "load.partitionByChunk";
+    /** Fill the gaps with parallel updates over ranges of positions of the covered chromosomes. */
+    public static final String LOAD_FILL_GAPS_PARALLEL = "load.fillGaps.parallel";
+    /** Maintain the per chunk summary of variants used by getFrequency. Built after the load if it did not exist. */
+    public static final String LOAD_CHUNK_SUMMARY = "load.chunkSummary";
 
     protected static Logger logger = LoggerFactory.getLogger(MongoDBVariantStorageManager.class);
 
@@ -269,6 +286,10 @@ public class MongoDBVariantStorageManager extends VariantStorageManager {
         boolean includeSamples = options.getBoolean(Options.INCLUDE_GENOTYPES.key(), Options.INCLUDE_GENOTYPES.defaultValue());
         boolean includeStats = options.getBoolean(Options.INCLUDE_STATS.key(), Options.INCLUDE_STATS.defaultValue());
         boolean includeSrc = options.getBoolean(Options.INCLUDE_SRC.key(), Options.INCLUDE_SRC.defaultValue());
+        boolean prefetchIds = options.getBoolean(LOAD_PREFETCH_IDS, false);
+        boolean partitionByChunk = options.getBoolean(LOAD_PARTITION_BY_CHUNK, false);
+        boolean fillGapsParallel = options.getBoolean(LOAD_FILL_GAPS_PARALLEL, false);
+        boolean loadChunkSummary = options.getBoolean(LOAD_CHUNK_SUMMARY, false);
 
         Set<String> defaultGenotype;
         if (studyConfiguration.getAttributes().containsKey(DEFAULT_GENOTYPE)) {
@@ -296,6 +317,15 @@ public class MongoDBVariantStorageManager extends VariantStorageManager {
             studyConfiguration.getAttributes().put(DEFAULT_GENOTYPE, defaultGenotype);
         }
 
+        if (!studyConfiguration.getAttributes().containsKey(GENOTYPE_ENCODING)) {
+            String genotypeEncoding = options.getString(GENOTYPE_ENCODING, GENOTYPE_ENCODING_LIST);
+            if (!genotypeEncoding.equals(GENOTYPE_ENCODING_LIST) && !genotypeEncoding.equals(GENOTYPE_ENCODING_PACKED)) {
+                throw new StorageManagerException("Unknown " + GENOTYPE_ENCODING + " '" + genotypeEncoding + "'. "
+                        + "Expected one of [" + GENOTYPE_ENCODING_LIST + ", " + GENOTYPE_ENCODING_PACKED + "]");
+            }
+            studyConfiguration.getAttributes().put(GENOTYPE_ENCODING, genotypeEncoding);
+        }
+
 //        boolean compressGenotypes = options.getBoolean(Options.COMPRESS_GENOTYPES.key(), false);
 //        boolean compressGenotypes = defaultGenotype != null && !defaultGenotype.isEmpty();
 
@@ -327,17 +357,22 @@ public class MongoDBVariantStorageManager extends VariantStorageManager {
         List<VariantMongoDBWriter> writers = new LinkedList<>();
         List<DataWriter> writerList = new LinkedList<>();
         AtomicBoolean atomicBoolean = new AtomicBoolean();
+        Set<String> coveredChromosomes = Collections.newSetFromMap(new ConcurrentHashMap<>());
         for (int i = 0; i < numWriters; i++) {
             VariantMongoDBWriter variantDBWriter = this.getDBWriter(dbName);
 //            variantDBWriter.setBulkSize(bulkSize);
             variantDBWriter.includeSrc(includeSrc);
             variantDBWriter.includeSamples(includeSamples);
             variantDBWriter.includeStats(includeStats);
+            variantDBWriter.setPrefetchIds(prefetchIds);
 //            variantDBWriter.setCompressDefaultGenotype(compressGenotypes);
 //            variantDBWriter.setDefaultGenotype(defaultGenotype);
 //            variantDBWriter.setVariantSource(source);
 //            variantDBWriter.setSamplesIds(samplesIds);
             variantDBWriter.setThreadSynchronizationBoolean(atomicBoolean);
+            variantDBWriter.setCoveredChromosomesSet(coveredChromosomes);
+            variantDBWriter.setFillGapsParallel(fillGapsParallel);
+            variantDBWriter.setFillGapsThreads(loadThreads);
             writerList.add(variantDBWriter);
             writers.add(variantDBWriter);
         }
@@ -357,6 +392,15 @@ public class MongoDBVariantStorageManager extends VariantStorageManager {
         };
         taskList.add(remapIdsTask);
 
+        // An empty summary of an empty collection is updated while loading. Otherwise, build it at the end.
+        VariantMongoDBChunkSummary chunkSummary = null;
+        if (loadChunkSummary) {
+            VariantMongoDBChunkSummary summary = getDBAdaptor(dbName).getChunkSummary();
+            if (!summary.isComplete() && !summary.initEmpty()) {
+                chunkSummary = summary;
+            }
+        }
+
         logger.info("Loading variants...");
         long start = System.currentTimeMillis();
 
@@ -366,6 +410,35 @@ public class MongoDBVariantStorageManager extends VariantStorageManager {
             List<Task<Variant>> ts = Collections.singletonList(remapIdsTask);
             VariantRunner vr = new VariantRunner(source, (VariantReader) variantReader, null, (List) writers, taskList, batchSize);
             vr.run();
+        } else if (partitionByChunk) {
+            logger.info("Multi thread load partitioned by chunk... [{} readerThreads, {} writerThreads]", numReaders, numWriters);
+            ParallelTaskRunner<Variant, Variant> ptr;
+            try {
+                ParallelTaskRunner.Task<Variant, Variant> task = batch -> {
+                    try {
+                        remapIdsTask.apply(batch);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);// IMPOSSIBLE
+                    }
+                    return batch;
+                };
+                ptr = new ParallelTaskRunner<>(
+                        variantReader,
+                        task,
+                        new VariantMongoDBChunkRouter(writers, batchSize, capacity),
+                        new ParallelTaskRunner.Config(numReaders, batchSize, capacity, false)
+                );
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new StorageManagerException("Error while creating ParallelTaskRunner", e);
+            }
+
+            try {
+                ptr.run();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                throw new StorageManagerException("Error while executing LoadVariants in ParallelTaskRunner", e);
+            }
         } else {
             logger.info("Multi thread load... [{} readerThreads, {} writerThreads]", numReaders, numWriters);
 //            ThreadRunner runner = new ThreadRunner(Executors.newFixedThreadPool(loadThreads), batchSize);
@@ -445,9 +518,24 @@ public class MongoDBVariantStorageManager extends VariantStorageManager {
         logger.info("end - start = " + (end - start) / 1000.0 + "s");
         logger.info("Variants loaded!");
 
+        if (chunkSummary != null) {
+            logger.info("Building variant chunk summary...");
+            chunkSummary.build();
+        }
+
         return inputUri; //TODO: Return something like this: mongo://<host>/<dbName>/<collectionName>
     }
 
+    @Override
+    public VariantStatisticsManager getVariantStatisticsManager() {
+        return new MongoDBVariantStatisticsManager();
+    }
+
+    @Override
+    public VariantIndexAdvisor getIndexAdvisor(String dbName) throws StorageManagerException {
+        return getDBAdaptor(dbName).getIndexAdvisor();
+    }
+
     @Override
     public URI postLoad(URI input, URI output) throws IOException, StorageManagerException {
         return super.postLoad(input, output);
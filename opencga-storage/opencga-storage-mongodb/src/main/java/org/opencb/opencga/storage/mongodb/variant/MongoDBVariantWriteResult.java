@@ -14,6 +14,7 @@ public class MongoDBVariantWriteResult {
     private long newVariantsNanoTime;
     private long existingVariantsNanoTime;
     private long fillGapsNanoTime;
+    private long prefetchNanoTime;
 
     public MongoDBVariantWriteResult() {
     }
@@ -34,6 +35,7 @@ public class MongoDBVariantWriteResult {
             newVariantsNanoTime += other.newVariantsNanoTime;
             existingVariantsNanoTime += other.existingVariantsNanoTime;
             fillGapsNanoTime += other.fillGapsNanoTime;
+            prefetchNanoTime += other.prefetchNanoTime;
         }
     }
 
@@ -100,6 +102,15 @@ public class MongoDBVariantWriteResult {
         return this;
     }
 
+    public long getPrefetchNanoTime() {
+        return prefetchNanoTime;
+    }
+
+    public MongoDBVariantWriteResult setPrefetchNanoTime(long prefetchNanoTime) {
+        this.prefetchNanoTime = prefetchNanoTime;
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -113,7 +124,8 @@ public class MongoDBVariantWriteResult {
         if (nonInsertedVariants != that.nonInsertedVariants) return false;
         if (newVariantsNanoTime != that.newVariantsNanoTime) return false;
         if (existingVariantsNanoTime != that.existingVariantsNanoTime) return false;
-        return fillGapsNanoTime == that.fillGapsNanoTime;
+        if (fillGapsNanoTime != that.fillGapsNanoTime) return false;
+        return prefetchNanoTime == that.prefetchNanoTime;
 
     }
 
@@ -126,6 +138,7 @@ public class MongoDBVariantWriteResult {
         result = 31 * result + (int) (newVariantsNanoTime ^ (newVariantsNanoTime >>> 32));
         result = 31 * result + (int) (existingVariantsNanoTime ^ (existingVariantsNanoTime >>> 32));
         result = 31 * result + (int) (fillGapsNanoTime ^ (fillGapsNanoTime >>> 32));
+        result = 31 * result + (int) (prefetchNanoTime ^ (prefetchNanoTime >>> 32));
         return result;
     }
 
@@ -139,6 +152,7 @@ public class MongoDBVariantWriteResult {
                 ", newVariantsTime=" + newVariantsNanoTime / 1000000000.0 + "s" +
                 ", existingVariantsTime=" + existingVariantsNanoTime / 1000000000.0 + "s" +
                 ", fillGapsTime=" + fillGapsNanoTime / 1000000000.0 + "s" +
+                ", prefetchTime=" + prefetchNanoTime / 1000000000.0 + "s" +
                 '}';
     }
 
@@ -43,6 +43,7 @@ import org.opencb.opencga.storage.core.variant.VariantStorageManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantSourceDBAdaptor;
+import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
 import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
 import org.opencb.opencga.storage.mongodb.utils.MongoCredentials;
 import org.slf4j.Logger;
@@ -50,9 +51,17 @@ import org.slf4j.LoggerFactory;
 
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -66,6 +75,11 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
     public static final String DEFAULT_TIMEOUT = "dbadaptor.default_timeout";
     public static final String MAX_TIMEOUT = "dbadaptor.max_timeout";
+    public static final String QUERY_CACHE_SIZE = "dbadaptor.query_cache.size";     //Max number of cached results. 0 to disable
+    public static final String QUERY_CACHE_EXPIRE = "dbadaptor.query_cache.expire"; //Seconds
+    public static final String MULTI_QUERY_THREADS = "dbadaptor.multi_query.threads";       //Concurrent queries of get(List<Query>)
+    public static final String MULTI_QUERY_BATCH_SIZE = "dbadaptor.multi_query.batch_size"; //Max number of queries merged into one
+    public static final String INDEX_ADVISOR_SAMPLE_RATE = "dbadaptor.index_advisor.sample_rate"; //Fraction of queries explained. 0 to disable
     private final MongoDataStoreManager mongoManager;
     private final MongoDataStore db;
     private final String collectionName;
@@ -76,6 +90,11 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
     private final Pattern writeResultErrorPattern = Pattern.compile("^.*dup key: \\{ : \"([^\"]*)\" \\}$");
 
     private StudyConfigurationManager studyConfigurationManager;
+    private VariantMongoDBQueryCache queryCache;
+    private final VariantMongoDBChunkSummary chunkSummary;
+    private final VariantMongoDBIndexAdvisor indexAdvisor;
+    private volatile List<DBObject> indexInfo;
+    private volatile long indexInfoTime;
 
     @Deprecated
     private DataWriter dataWriter;
@@ -89,6 +108,10 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
     public static final String AND = ";";
     public static final String IS = ":";
 
+    private static final int FILL_GAPS_RANGE_CHUNKS = 100;
+    private static final long INDEX_INFO_EXPIRE = TimeUnit.MINUTES.toMillis(1);
+    private static final Set<String> COVERED_OPERATORS = new HashSet<>(Arrays.asList("$in", "$gt", "$gte", "$lt", "$lte"));
+
     protected static Logger logger = LoggerFactory.getLogger(VariantMongoDBAdaptor.class);
 
     public VariantMongoDBAdaptor(MongoCredentials credentials, String variantsCollectionName, String filesCollectionName,
@@ -105,12 +128,71 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         this.configuration = storageEngineConfiguration == null || this.storageEngineConfiguration.getVariant().getOptions() == null
                 ? new ObjectMap()
                 : this.storageEngineConfiguration.getVariant().getOptions();
+        int queryCacheSize = configuration.getInt(QUERY_CACHE_SIZE, 0);
+        if (queryCacheSize > 0) {
+            queryCache = new VariantMongoDBQueryCache(queryCacheSize, configuration.getInt(QUERY_CACHE_EXPIRE, 300));
+        }
+        chunkSummary = new VariantMongoDBChunkSummary(db.getDb().getCollection(collectionName + "_summary"),
+                db.getDb().getCollection(collectionName));
+        indexAdvisor = new VariantMongoDBIndexAdvisor(db.getDb().getCollection(collectionName),
+                db.getDb().getCollection(collectionName + "_index_advisor"), configuration.getDouble(INDEX_ADVISOR_SAMPLE_RATE, 0));
     }
 
     protected MongoDBCollection getVariantsCollection() {
         return variantsCollection;
     }
 
+    public VariantMongoDBChunkSummary getChunkSummary() {
+        return chunkSummary;
+    }
+
+    public VariantMongoDBIndexAdvisor getIndexAdvisor() {
+        return indexAdvisor;
+    }
+
+    public VariantMongoDBQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Set the cache for count, distinct, groupBy and getFrequency. Null to disable.
+     *
+     * @param queryCache Query cache
+     */
+    public void setQueryCache(VariantMongoDBQueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    private <T> QueryResult<T> cachedQuery(Supplier<QueryResult<T>> queryFunction, String method, Query query, Object... args) {
+        if (queryCache == null) {
+            return queryFunction.get();
+        }
+        // Query is modified while parsed. Build the key before running the query
+        String key = VariantMongoDBQueryCache.buildKey(method, query, args) + "|studies=" + getStudyTimeStamps(query);
+        long hits = queryCache.getHitCount();
+        QueryResult<T> queryResult = queryCache.get(key, queryFunction);
+        logger.debug("Query cache {} for {}. {}", queryCache.getHitCount() > hits ? "hit" : "miss", method, queryCache);
+        return queryResult;
+    }
+
+    private List<Long> getStudyTimeStamps(Query query) {
+        if (query == null || query.get(VariantQueryParams.STUDIES.key()) == null || query.getString(VariantQueryParams.STUDIES.key()).isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> timeStamps = new ArrayList<>();
+        for (Integer studyId : getStudyIds(query.getAsList(VariantQueryParams.STUDIES.key(), ",|;"), null)) {
+            StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(studyId, null).first();
+            timeStamps.add(studyConfiguration == null ? null : studyConfiguration.getTimeStamp());
+        }
+        return timeStamps;
+    }
+
+    private void invalidateQueryCache() {
+        if (queryCache != null) {
+            queryCache.invalidateAll();
+        }
+    }
+
     @Override
     @Deprecated
     public void setDataWriter(DataWriter dataWriter) {
@@ -142,6 +224,8 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         logger.debug("Delete to be executed: '{}'", qb.get().toString());
         QueryResult queryResult = variantsCollection.remove(qb.get(), options);
 
+        chunkSummary.setIncomplete("delete");
+        invalidateQueryCache();
         return queryResult;
     }
 
@@ -180,11 +264,14 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         logger.debug("deleteStudy: query = {}", query);
         logger.debug("deleteStudy: update = {}", update);
 
+        chunkSummary.removeStudy(studyConfiguration.getStudyId());
         if (options.getBoolean("purge", false)) {
             BasicDBObject purgeQuery = new BasicDBObject(DBObjectToVariantConverter.STUDIES_FIELD, new BasicDBObject("$size", 0));
             variantsCollection.remove(purgeQuery, new QueryOptions("multi", true));
+            chunkSummary.setIncomplete("purge");
         }
 
+        invalidateQueryCache();
         return result;
     }
 
@@ -216,12 +303,15 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         if (options.getBoolean("mongodb.explain", false)) {
             try (DBCursor dbCursor = variantsCollection.nativeQuery().find(qb.get(), projection, options)) {
                 DBObject explain = dbCursor.explain();
+                indexAdvisor.record(qb.get(), explain);
                 try {
                     System.err.println("mongodb.explain = " + new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(explain));
                 } catch (JsonProcessingException ignore) {
                     System.err.println("mongodb.explain = " + explain);
                 }
             }
+        } else {
+            indexAdvisor.sample(qb.get(), projection, options.getInt("limit", 0));
         }
         QueryResult<Variant> queryResult = variantsCollection.find(qb.get(), projection, getDbObjectToVariantConverter(query, options), options);
         // set query Id?
@@ -229,28 +319,344 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         return queryResult;
     }
 
+    /**
+     * Queries that only differ in the regions are merged into one query for up to {@link #MULTI_QUERY_BATCH_SIZE} regions,
+     * and the result is split back per query. The rest of queries, and the merged ones, are run concurrently.
+     * Queries are not merged if the options contain a limit or a skip.
+     */
     @Override
     public List<QueryResult<Variant>> get(List<Query> queries, QueryOptions options) {
-        List<QueryResult<Variant>> queryResultList = new ArrayList<>(queries.size());
-        for (Query query : queries) {
-            QueryResult<Variant> queryResult = get(query, options);
-            queryResultList.add(queryResult);
+        QueryOptions queryOptions = options == null ? new QueryOptions() : options;
+        int batchSize = configuration.getInt(MULTI_QUERY_BATCH_SIZE, 100);
+        boolean merge = batchSize > 1 && isMergeable(queryOptions);
+
+        // Mergeable queries, grouped by the query without the regions
+        Map<String, Query> groupQueries = new LinkedHashMap<>();
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        List<Supplier<List<QueryResult<Variant>>>> tasks = new ArrayList<>();
+        List<List<Integer>> taskQueries = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            Query query = queries.get(i);
+            if (merge && isRegionQuery(query)) {
+                Query groupQuery = new Query(query);
+                groupQuery.remove(VariantQueryParams.REGION.key());
+                String key = VariantMongoDBQueryCache.buildKey("get", groupQuery);
+                groupQueries.putIfAbsent(key, groupQuery);
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            } else {
+                tasks.add(() -> Collections.singletonList(get(query, new QueryOptions(queryOptions))));
+                taskQueries.add(Collections.singletonList(i));
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : groups.entrySet()) {
+            Query groupQuery = entry.getValue().size() == 1 ? null : groupQueries.get(entry.getKey());
+            for (int i = 0; i < entry.getValue().size(); i += batchSize) {
+                List<Integer> batch = entry.getValue().subList(i, Math.min(i + batchSize, entry.getValue().size()));
+                if (batch.size() == 1) {
+                    Query query = queries.get(batch.get(0));
+                    tasks.add(() -> Collections.singletonList(get(query, new QueryOptions(queryOptions))));
+                } else {
+                    List<List<Region>> regions = new ArrayList<>(batch.size());
+                    for (Integer queryIdx : batch) {
+                        regions.add(parseRegions(queries.get(queryIdx).getAsStringList(VariantQueryParams.REGION.key())));
+                    }
+                    tasks.add(() -> getMergedByRegions(regions, mergedRegions -> {
+                        Query mergedQuery = new Query(groupQuery);
+                        mergedQuery.put(VariantQueryParams.REGION.key(),
+                                mergedRegions.stream().map(Region::toString).collect(Collectors.toList()));
+                        return get(mergedQuery, new QueryOptions(queryOptions));
+                    }));
+                }
+                taskQueries.add(batch);
+            }
+        }
+
+        List<List<QueryResult<Variant>>> taskResults = runConcurrently(tasks);
+        List<QueryResult<Variant>> queryResultList = new ArrayList<>(Collections.nCopies(queries.size(), null));
+        for (int i = 0; i < taskResults.size(); i++) {
+            for (int j = 0; j < taskResults.get(i).size(); j++) {
+                queryResultList.set(taskQueries.get(i).get(j), taskResults.get(i).get(j));
+            }
         }
         return queryResultList;
     }
 
+    private static boolean isMergeable(QueryOptions options) {
+        return options.getInt("limit", 0) <= 0 && options.getInt("skip", 0) <= 0;
+    }
+
+    /**
+     * Region queries without chromosomes, as they are converted into regions while parsing the query.
+     */
+    private static boolean isRegionQuery(Query query) {
+        return query != null
+                && query.get(VariantQueryParams.REGION.key()) != null && !query.getString(VariantQueryParams.REGION.key()).isEmpty()
+                && (query.get(VariantQueryParams.CHROMOSOME.key()) == null || query.getString(VariantQueryParams.CHROMOSOME.key()).isEmpty());
+    }
+
+    private static List<Region> parseRegions(List<String> regionStrings) {
+        List<Region> regions = new ArrayList<>(regionStrings.size());
+        for (String region : regionStrings) {
+            regions.add(Region.parseRegion(region));
+        }
+        return regions;
+    }
+
+    /**
+     * Run one query for all the regions, and split the result into one QueryResult per list of regions.
+     * A variant is returned for every list with a region overlapping it, with the same criteria as {@link #getRegionFilter}.
+     *
+     * @param regionsPerQuery   Regions of each query
+     * @param mergedQuery       Query for the given regions
+     * @return                  One result for each list of regions, in the same order
+     */
+    private List<QueryResult<Variant>> getMergedByRegions(List<List<Region>> regionsPerQuery,
+                                                          Function<List<Region>, QueryResult<Variant>> mergedQuery) {
+        List<Region> mergedRegions = new ArrayList<>();
+        regionsPerQuery.forEach(mergedRegions::addAll);
+        QueryResult<Variant> mergedResult = mergedQuery.apply(mergedRegions);
+
+        List<QueryResult<Variant>> queryResults = new ArrayList<>(regionsPerQuery.size());
+        for (List<Region> regions : regionsPerQuery) {
+            List<Variant> variants = new ArrayList<>();
+            for (Variant variant : mergedResult.getResult()) {
+                for (Region region : regions) {
+                    if (variant.getChromosome().equals(region.getChromosome())
+                            && variant.getStart() <= region.getEnd() && variant.getEnd() >= region.getStart()) {
+                        variants.add(variant);
+                        break;
+                    }
+                }
+            }
+            queryResults.add(new QueryResult<>(mergedResult.getId(), mergedResult.getDbTime(), variants.size(), variants.size(),
+                    mergedResult.getWarningMsg(), mergedResult.getErrorMsg(), variants));
+        }
+        return queryResults;
+    }
+
+    /**
+     * Run the tasks with up to {@link #MULTI_QUERY_THREADS} threads.
+     *
+     * @return Results of the tasks, in the same order
+     */
+    private <T> List<T> runConcurrently(List<Supplier<T>> tasks) {
+        return runConcurrently(tasks, configuration.getInt(MULTI_QUERY_THREADS, 4));
+    }
+
+    private <T> List<T> runConcurrently(List<Supplier<T>> tasks, int maxThreads) {
+        int numThreads = Math.min(maxThreads, tasks.size());
+        List<T> results = new ArrayList<>(tasks.size());
+        if (numThreads <= 1) {
+            for (Supplier<T> task : tasks) {
+                results.add(task.get());
+            }
+            return results;
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Supplier<T> task : tasks) {
+                futures.add(executorService.submit(task::get));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return results;
+    }
+
 
     @Override
     public QueryResult<Long> count(Query query) {
+        return count(query, null);
+    }
+
+    /**
+     * Queries served by the fields of one index are counted with that index as hint, without fetching the variants.
+     * With {@link VariantStorageManager.Options#COUNT_THREADS} the query is split in disjoint ranges of positions,
+     * counted concurrently.
+     * With {@link VariantStorageManager.Options#APPROXIMATE_COUNT}, queries without filters are counted from the
+     * collection metadata, and queries by region, study and type from the chunk summary.
+     */
+    @Override
+    public QueryResult<Long> count(Query query, QueryOptions options) {
+        ObjectMap countOptions = options == null ? new ObjectMap() : options;
+        boolean approximate = countOptions.getBoolean(VariantStorageManager.Options.APPROXIMATE_COUNT.key(),
+                VariantStorageManager.Options.APPROXIMATE_COUNT.defaultValue());
+        int numThreads = countOptions.getInt(VariantStorageManager.Options.COUNT_THREADS.key(),
+                configuration.getInt(VariantStorageManager.Options.COUNT_THREADS.key(),
+                        VariantStorageManager.Options.COUNT_THREADS.defaultValue()));
+        if (approximate) {
+            return cachedQuery(() -> countNoCache(query, true, numThreads), "count", query, "approximate");
+        } else {
+            return cachedQuery(() -> countNoCache(query, false, numThreads), "count", query);
+        }
+    }
+
+    private QueryResult<Long> countNoCache(Query query, boolean approximate, int numThreads) {
+        long start = System.currentTimeMillis();
+        Query countQuery = query == null ? new Query() : query;
+        if (approximate) {
+            // Check before parsing the query, as it is modified
+            Long count = approximateCount(countQuery);
+            if (count != null) {
+                return new QueryResult<>("count", (int) (System.currentTimeMillis() - start), 1, 1, "Approximate count", "",
+                        Collections.singletonList(count));
+            }
+        }
         QueryBuilder qb = QueryBuilder.start();
-        parseQuery(query, qb);
-        logger.debug("Query to be executed: '{}'", qb.get().toString());
-        QueryResult<Long> queryResult = queryResult = variantsCollection.count(qb.get());
-        return queryResult;
+        DBObject mongoQuery = parseQuery(countQuery, qb).get();
+        logger.debug("Query to be executed: '{}'", mongoQuery);
+
+        long count;
+        if (numThreads > 1) {
+            List<Supplier<Long>> tasks = new ArrayList<>();
+            for (DBObject shard : getIteratorShards(countQuery, mongoQuery, numThreads)) {
+                tasks.add(() -> countWithCoveringIndex(shard));
+            }
+            count = 0;
+            for (Long shardCount : runConcurrently(tasks, numThreads)) {
+                count += shardCount;
+            }
+        } else {
+            count = countWithCoveringIndex(mongoQuery);
+        }
+        return new QueryResult<>("count", (int) (System.currentTimeMillis() - start), 1, 1, "", "", Collections.singletonList(count));
+    }
+
+    long countWithCoveringIndex(DBObject mongoQuery) {
+        DBObject index = getCoveringIndex(mongoQuery);
+        logger.debug("Count {} with index {}", mongoQuery, index);
+        DBCursor dbCursor = db.getDb().getCollection(collectionName).find(mongoQuery);
+        try {
+            if (index != null) {
+                dbCursor.hint(index);
+            }
+            return dbCursor.count();
+        } finally {
+            dbCursor.close();
+        }
+    }
+
+    /**
+     * Index with all the fields of the query, so the variants can be counted reading only the index.
+     * Only equality and range comparisons are answered by the index keys. Sparse and partial indexes are never used,
+     * as hinting them would skip the variants without the indexed fields.
+     *
+     * @param mongoQuery    Parsed query
+     * @return              Key of the smallest covering index, or null if there is none
+     */
+    DBObject getCoveringIndex(DBObject mongoQuery) {
+        Set<String> fields = new HashSet<>();
+        if (!addCoveredFields(mongoQuery, fields) || fields.isEmpty()) {
+            return null;
+        }
+        DBObject coveringIndex = null;
+        for (DBObject indexInfo : getIndexInfo()) {
+            if (Boolean.TRUE.equals(indexInfo.get("sparse")) || indexInfo.containsField("partialFilterExpression")) {
+                continue;
+            }
+            DBObject key = (DBObject) indexInfo.get("key");
+            Set<String> keyFields = key.keySet();
+            // The first field of the index must be in the query to bound the scan
+            if (keyFields.containsAll(fields) && fields.contains(keyFields.iterator().next())
+                    && (coveringIndex == null || keyFields.size() < coveringIndex.keySet().size())) {
+                coveringIndex = key;
+            }
+        }
+        return coveringIndex;
+    }
+
+    /**
+     * @return  False if any predicate needs the full document
+     */
+    private static boolean addCoveredFields(DBObject mongoQuery, Set<String> fields) {
+        for (String key : mongoQuery.keySet()) {
+            Object value = mongoQuery.get(key);
+            if (key.equals("$and") || key.equals("$or")) {
+                for (Object element : (List<?>) value) {
+                    if (!addCoveredFields((DBObject) element, fields)) {
+                        return false;
+                    }
+                }
+            } else if (key.startsWith("$") || value instanceof Pattern || value instanceof List) {
+                return false;
+            } else if (value instanceof DBObject) {
+                for (String operator : ((DBObject) value).keySet()) {
+                    if (!COVERED_OPERATORS.contains(operator)) {
+                        return false;
+                    }
+                }
+                fields.add(key);
+            } else {
+                fields.add(key);
+            }
+        }
+        return true;
+    }
+
+    private List<DBObject> getIndexInfo() {
+        List<DBObject> indexes = indexInfo;
+        if (indexes == null || System.currentTimeMillis() - indexInfoTime > INDEX_INFO_EXPIRE) {
+            indexes = db.getDb().getCollection(collectionName).getIndexInfo();
+            indexInfo = indexes;
+            indexInfoTime = System.currentTimeMillis();
+        }
+        return indexes;
+    }
+
+    /**
+     * Count from the collection metadata when there are no filters, or from the chunk summary when the query only has
+     * regions, one study and types. The chunks partially overlapping a region are counted completely.
+     *
+     * @return  Approximate count, or null if the query can not be approximated
+     */
+    private Long approximateCount(Query query) {
+        Query filters = new Query();
+        for (String key : query.keySet()) {
+            Object value = query.get(key);
+            if (value != null && !value.toString().isEmpty()) {
+                filters.put(key, value);
+            }
+        }
+        if (filters.isEmpty()) {
+            return db.getDb().getCollection(collectionName).getCount();
+        }
+        List<String> regions = filters.getAsStringList(VariantQueryParams.REGION.key());
+        filters.remove(VariantQueryParams.REGION.key());
+        if (regions.isEmpty() || !isChunkSummaryQuery(filters) || !chunkSummary.isComplete()) {
+            return null;
+        }
+        Integer studyId = getChunkSummaryStudy(filters);
+        List<String> types = getChunkSummaryTypes(filters);
+        long count = 0;
+        for (String regionString : regions) {
+            Region region = Region.parseRegion(regionString);
+            int firstChunk = region.getStart() / VariantMongoDBChunkSummary.CHUNK_SIZE;
+            int lastChunk = region.getEnd() / VariantMongoDBChunkSummary.CHUNK_SIZE;
+            for (Integer chunkCount : chunkSummary.count(region.getChromosome(), firstChunk, lastChunk, studyId, types).values()) {
+                count += chunkCount;
+            }
+        }
+        return count;
     }
 
     @Override
     public QueryResult distinct(Query query, String field) {
+        return cachedQuery(() -> distinctNoCache(query, field), "distinct", query, field);
+    }
+
+    private QueryResult distinctNoCache(Query query, String field) {
         String documentPath;
         switch (field) {
             case "gene":
@@ -292,11 +698,155 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         qb = parseQuery(query, qb);
 //        DBObject projection = parseProjectionQueryOptions(options);
         DBObject projection = createProjection(query, options);
+        int numThreads = options.getInt(VariantStorageManager.Options.ITERATOR_THREADS.key(),
+                VariantStorageManager.Options.ITERATOR_THREADS.defaultValue());
+        if (numThreads > 1 && options.getInt("limit", 0) <= 0 && options.getInt("skip", 0) <= 0 && !options.containsKey("sort")) {
+            return parallelIterator(query, options, qb.get(), projection, numThreads);
+        }
+        indexAdvisor.sample(qb.get(), projection, options.getInt("limit", 0));
         DBCursor dbCursor = variantsCollection.nativeQuery().find(qb.get(), projection, options);
         dbCursor.batchSize(options.getInt("batchSize", 100));
         return new VariantMongoDBIterator(dbCursor, getDbObjectToVariantConverter(query, options));
     }
 
+    /**
+     * Split the query in ranges of positions of each chromosome, and read them concurrently.
+     * With {@link VariantStorageManager.Options#ITERATOR_SORTED} the variants are returned ordered by chromosome and
+     * start, otherwise in the order they are read.
+     */
+    private VariantDBIterator parallelIterator(Query query, QueryOptions options, DBObject mongoQuery, DBObject projection,
+                                               int numThreads) {
+        boolean sorted = options.getBoolean(VariantStorageManager.Options.ITERATOR_SORTED.key(),
+                VariantStorageManager.Options.ITERATOR_SORTED.defaultValue());
+        List<DBObject> shards = getIteratorShards(query, mongoQuery, numThreads);
+        logger.debug("Reading {} shards with {} threads", shards.size(), numThreads);
+        QueryOptions cursorOptions = new QueryOptions(options);
+        Function<DBObject, DBCursor> cursorFactory = shard -> {
+            DBCursor dbCursor = variantsCollection.nativeQuery().find(shard, projection, cursorOptions);
+            if (sorted) {
+                dbCursor.sort(new BasicDBObject(DBObjectToVariantConverter.START_FIELD, 1));
+            }
+            return dbCursor;
+        };
+        return new VariantMongoDBParallelIterator(shards, cursorFactory, () -> {
+            synchronized (this) {   // Each thread needs its own converter. Creating them modifies the studyConfigurationManager
+                // Convert in the worker threads. Lazy variants would use the converter from the reader thread
+                return getDbObjectToVariantConverter(query, options).setLazy(false);
+            }
+        }, numThreads, options.getInt("batchSize", 100), sorted);
+    }
+
+    /**
+     * Disjoint ranges of positions covering all the variants of the query, sorted by chromosome and start.
+     * Each chromosome is split in ranges of at least {@link VariantMongoDBWriter#CHUNK_SIZE_BIG}, so there are around
+     * 4 ranges for each thread. The first and the last range of each chromosome are open.
+     */
+    private List<DBObject> getIteratorShards(Query query, DBObject mongoQuery, int numThreads) {
+        Map<String, int[]> limits = getStartLimits(query, mongoQuery);
+        long totalLength = 0;
+        for (int[] limit : limits.values()) {
+            totalLength += limit[1] - limit[0] + 1;
+        }
+        long shardSize = totalLength / (numThreads * 4);
+        shardSize = Math.max(VariantMongoDBWriter.CHUNK_SIZE_BIG,
+                (shardSize / VariantMongoDBWriter.CHUNK_SIZE_BIG + 1) * VariantMongoDBWriter.CHUNK_SIZE_BIG);
+
+        List<DBObject> shards = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : limits.entrySet()) {
+            int min = entry.getValue()[0];
+            int max = entry.getValue()[1];
+            for (long from = min; from <= max; from += shardSize) {
+                BasicDBObject start = new BasicDBObject();
+                if (from != min) {
+                    start.append("$gte", (int) from);
+                }
+                if (from + shardSize <= max) {
+                    start.append("$lt", (int) (from + shardSize));
+                }
+                BasicDBObject range = new BasicDBObject(DBObjectToVariantConverter.CHROMOSOME_FIELD, entry.getKey());
+                if (!start.isEmpty()) {
+                    range.append(DBObjectToVariantConverter.START_FIELD, start);
+                }
+                shards.add(new BasicDBObject("$and", Arrays.asList(mongoQuery, range)));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Split the variants of the query in regions of consecutive positions, sorted by chromosome and start.
+     * Each variant starts in exactly one region, but can overlap the next ones.
+     *
+     * @param query         Query
+     * @param regionSize    Size of the regions
+     * @return              Regions covering the start of all the variants of the query
+     */
+    public List<Region> getQueryRegions(Query query, int regionSize) {
+        Query regionsQuery = new Query(query);
+        DBObject mongoQuery = parseQuery(regionsQuery, new QueryBuilder()).get();
+        List<Region> regions = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : getStartLimits(regionsQuery, mongoQuery).entrySet()) {
+            int max = entry.getValue()[1];
+            for (long from = entry.getValue()[0]; from <= max; from += regionSize) {
+                regions.add(new Region(entry.getKey(), (int) from, (int) Math.min(from + regionSize - 1, max)));
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Min and max start of the variants of each chromosome, within the regions of the query.
+     */
+    private Map<String, int[]> getStartLimits(Query query, DBObject mongoQuery) {
+        // Requested interval of each chromosome
+        Map<String, int[]> chromosomes = new TreeMap<>(VariantMongoDBAdaptor::compareChromosomes);
+        if (query.get(VariantQueryParams.REGION.key()) != null && !query.getString(VariantQueryParams.REGION.key()).isEmpty()) {
+            for (String reg : query.getAsStringList(VariantQueryParams.REGION.key())) {
+                Region region = Region.parseRegion(reg);
+                int[] interval = chromosomes.computeIfAbsent(region.getChromosome(), c -> new int[]{Integer.MAX_VALUE, 0});
+                interval[0] = Math.min(interval[0], region.getStart());
+                interval[1] = Math.max(interval[1], region.getEnd());
+            }
+        } else {
+            for (Object chromosome : variantsCollection.distinct(DBObjectToVariantConverter.CHROMOSOME_FIELD, mongoQuery).getResult()) {
+                chromosomes.put(chromosome.toString(), new int[]{0, Integer.MAX_VALUE});
+            }
+        }
+
+        // Min and max start of each chromosome, using the {chromosome, start, end} index
+        Map<String, int[]> limits = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> entry : chromosomes.entrySet()) {
+            Integer min = getStartLimit(entry.getKey(), 1);
+            if (min == null) {
+                continue;
+            }
+            Integer max = getStartLimit(entry.getKey(), -1);
+            min = Math.max(min, entry.getValue()[0]);
+            max = Math.min(max, entry.getValue()[1]);
+            if (min > max) {
+                min = max;
+            }
+            limits.put(entry.getKey(), new int[]{min, max});
+        }
+        return limits;
+    }
+
+    /**
+     * Natural order of chromosomes. Numeric names first, by value.
+     */
+    static int compareChromosomes(String c1, String c2) {
+        boolean numeric1 = !c1.isEmpty() && c1.chars().allMatch(Character::isDigit);
+        boolean numeric2 = !c2.isEmpty() && c2.chars().allMatch(Character::isDigit);
+        if (numeric1 && numeric2) {
+            int compare = Integer.compare(c1.length(), c2.length());
+            return compare != 0 ? compare : c1.compareTo(c2);
+        } else if (numeric1 != numeric2) {
+            return numeric1 ? -1 : 1;
+        } else {
+            return c1.compareTo(c2);
+        }
+    }
+
     @Override
     public void forEach(Consumer<? super Variant> action) {
         forEach(new Query(), action, new QueryOptions());
@@ -305,9 +855,10 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
     @Override
     public void forEach(Query query, Consumer<? super Variant> action, QueryOptions options) {
         Objects.requireNonNull(action);
-        VariantDBIterator variantDBIterator = iterator(query, options);
-        while (variantDBIterator.hasNext()) {
-            action.accept(variantDBIterator.next());
+        try (VariantDBIterator variantDBIterator = iterator(query, options)) {
+            while (variantDBIterator.hasNext()) {
+                action.accept(variantDBIterator.next());
+            }
         }
     }
 
@@ -315,6 +866,11 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
     @Override
     public QueryResult getFrequency(Query query, Region region, int regionIntervalSize) {
+        return cachedQuery(() -> getFrequencyNoCache(query, region, regionIntervalSize), "getFrequency", query,
+                region.toString(), regionIntervalSize);
+    }
+
+    private QueryResult getFrequencyNoCache(Query query, Region region, int regionIntervalSize) {
         // db.variants.aggregate( { $match: { $and: [ {chr: "1"}, {start: {$gt: 251391, $lt: 2701391}} ] }},
         //                        { $group: { _id: { $subtract: [ { $divide: ["$start", 20000] }, { $divide: [{$mod: ["$start", 20000]}, 20000] } ] },
         //                                  totalCount: {$sum: 1}}})
@@ -327,6 +883,16 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             regionIntervalSize = (region.getEnd() - region.getStart()) / 200;
         }
 
+        // Check before parsing the query, as it is modified
+        boolean useChunkSummary = regionIntervalSize >= VariantMongoDBChunkSummary.CHUNK_SIZE && isChunkSummaryQuery(query)
+                && chunkSummary.isComplete();
+        Integer summaryStudyId = null;
+        List<String> summaryTypes = new ArrayList<>();
+        if (useChunkSummary && query != null) {
+            summaryStudyId = getChunkSummaryStudy(query);
+            summaryTypes = getChunkSummaryTypes(query);
+        }
+
         BasicDBObject start = new BasicDBObject("$gt", region.getStart());
         start.append("$lt", region.getEnd());
 
@@ -378,13 +944,19 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 //        System.out.println(sort.toString());
 
         long dbTimeStart = System.currentTimeMillis();
-        QueryResult output = variantsCollection.aggregate(/*"$histogram", */Arrays.asList(match, group, sort), options);
+        List<DBObject> intervals;
+        if (useChunkSummary) {
+            intervals = getFrequencyFromChunkSummary(region, regionIntervalSize, summaryStudyId, summaryTypes, andArr, group, sort);
+        } else {
+            QueryResult output = variantsCollection.aggregate(/*"$histogram", */Arrays.asList(match, group, sort), options);
+            intervals = (List<DBObject>) output.getResult();
+        }
         long dbTimeEnd = System.currentTimeMillis();
 
         Map<Long, DBObject> ids = new HashMap<>();
         // Create DBObject for intervals with features inside them
-        for (DBObject intervalObj : (List<DBObject>) output.getResult()) {
-            Long _id = Math.round((Double) intervalObj.get("_id"));//is double
+        for (DBObject intervalObj : intervals) {
+            Long _id = Math.round(((Number) intervalObj.get("_id")).doubleValue());//is double
 
             DBObject intervalVisited = ids.get(_id);
             if (intervalVisited == null) {
@@ -424,6 +996,131 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         return queryResult;
     }
 
+    /**
+     * The chunk summary only knows the study and the type of the variants.
+     */
+    private boolean isChunkSummaryQuery(Query query) {
+        if (query == null) {
+            return true;
+        }
+        for (String key : query.keySet()) {
+            Object value = query.get(key);
+            if (value == null || value.toString().isEmpty()) {
+                continue;
+            }
+            String string = value instanceof Collection
+                    ? ((Collection<?>) value).stream().map(Object::toString).collect(Collectors.joining(","))
+                    : value.toString();
+            if (string.contains("!") || string.contains(";")) {
+                return false;
+            }
+            if (key.equals(VariantQueryParams.STUDIES.key())) {
+                if (string.contains(",")) {
+                    return false;
+                }
+            } else if (!key.equals(VariantQueryParams.TYPE.key())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Integer getChunkSummaryStudy(Query query) {
+        if (query.containsKey(VariantQueryParams.STUDIES.key()) && !query.getString(VariantQueryParams.STUDIES.key()).isEmpty()) {
+            return getStudyIds(Collections.singletonList(query.getString(VariantQueryParams.STUDIES.key())), null).get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Types of the query, with their subtypes.
+     */
+    private static List<String> getChunkSummaryTypes(Query query) {
+        List<String> types = new ArrayList<>();
+        if (query.containsKey(VariantQueryParams.TYPE.key()) && !query.getString(VariantQueryParams.TYPE.key()).isEmpty()) {
+            for (String type : query.getAsStringList(VariantQueryParams.TYPE.key())) {
+                types.add(type);
+                Variant.subTypes(VariantType.valueOf(type)).forEach(subType -> types.add(subType.toString()));
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Count the variants of each interval with the chunk summary. Chunks not fully contained in the region or in one interval
+     * are counted from the variants collection, with the same aggregation restricted to the start positions of those chunks.
+     *
+     * @return  Same documents as the aggregation: the interval as "_id", and the number of variants as "features_count"
+     */
+    private List<DBObject> getFrequencyFromChunkSummary(Region region, int regionIntervalSize, Integer studyId, List<String> types,
+                                                        BasicDBList andArr, DBObject group, DBObject sort) {
+        int chunkSize = VariantMongoDBChunkSummary.CHUNK_SIZE;
+        int firstChunk = region.getStart() / chunkSize;
+        int lastChunk = region.getEnd() / chunkSize;
+        Map<Long, Integer> counts = new TreeMap<>();
+
+        // Start positions of the inexact chunks, merging consecutive chunks
+        BasicDBList inexactRanges = new BasicDBList();
+        long rangeStart = -1;
+        long rangeEnd = -1;
+        for (int chunk = firstChunk; chunk <= lastChunk; chunk++) {
+            if (!isExactChunk(chunk, region, regionIntervalSize)) {
+                long chunkStart = Math.max((long) chunk * chunkSize, region.getStart() + 1L);
+                long chunkEnd = Math.min((long) chunk * chunkSize + chunkSize - 1, region.getEnd() - 1L);
+                if (rangeStart >= 0 && rangeEnd + 1 == chunkStart) {
+                    rangeEnd = chunkEnd;
+                } else {
+                    if (rangeStart >= 0) {
+                        inexactRanges.add(new BasicDBObject(DBObjectToVariantConverter.START_FIELD,
+                                new BasicDBObject("$gte", rangeStart).append("$lte", rangeEnd)));
+                    }
+                    rangeStart = chunkStart;
+                    rangeEnd = chunkEnd;
+                }
+            }
+        }
+        if (rangeStart >= 0) {
+            inexactRanges.add(new BasicDBObject(DBObjectToVariantConverter.START_FIELD,
+                    new BasicDBObject("$gte", rangeStart).append("$lte", rangeEnd)));
+        }
+
+        if (!inexactRanges.isEmpty()) {
+            BasicDBList inexactAndArr = new BasicDBList();
+            inexactAndArr.addAll(andArr);
+            inexactAndArr.add(new BasicDBObject("$or", inexactRanges));
+            DBObject match = new BasicDBObject("$match", new BasicDBObject("$and", inexactAndArr));
+            QueryResult output = variantsCollection.aggregate(Arrays.asList(match, group, sort), new QueryOptions());
+            for (DBObject intervalObj : (List<DBObject>) output.getResult()) {
+                counts.merge(Math.round(((Number) intervalObj.get("_id")).doubleValue()),
+                        ((Number) intervalObj.get("features_count")).intValue(), Integer::sum);
+            }
+        }
+
+        Map<Integer, Integer> chunkCounts = chunkSummary.count(region.getChromosome(), firstChunk, lastChunk, studyId, types);
+        for (Map.Entry<Integer, Integer> entry : chunkCounts.entrySet()) {
+            int chunk = entry.getKey();
+            if (isExactChunk(chunk, region, regionIntervalSize)) {
+                counts.merge((long) chunk * chunkSize / regionIntervalSize, entry.getValue(), Integer::sum);
+            }
+        }
+
+        List<DBObject> intervals = new ArrayList<>(counts.size());
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            intervals.add(new BasicDBObject("_id", entry.getKey().doubleValue()).append("features_count", entry.getValue()));
+        }
+        return intervals;
+    }
+
+    /**
+     * A chunk can be taken from the summary if all its positions are inside the region, and inside the same interval.
+     */
+    private static boolean isExactChunk(int chunk, Region region, int regionIntervalSize) {
+        long chunkStart = (long) chunk * VariantMongoDBChunkSummary.CHUNK_SIZE;
+        long chunkEnd = chunkStart + VariantMongoDBChunkSummary.CHUNK_SIZE - 1;
+        return chunkStart > region.getStart() && chunkEnd < region.getEnd()
+                && chunkStart / regionIntervalSize == chunkEnd / regionIntervalSize;
+    }
+
     @Override
     public QueryResult rank(Query query, String field, int numResults, boolean asc) {
         QueryOptions options = new QueryOptions();
@@ -436,6 +1133,10 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
     @Override
     public QueryResult groupBy(Query query, String field, QueryOptions options) {
+        return cachedQuery(() -> groupByNoCache(query, field, options), "groupBy", query, field, options);
+    }
+
+    private QueryResult groupByNoCache(Query query, String field, QueryOptions options) {
         String documentPath;
         String unwindPath;
         int numUnwinds = 2;
@@ -646,6 +1347,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         int writes = writeResult.getModifiedCount();
 
 
+        invalidateQueryCache();
         return new QueryResult<>("", ((int) (System.nanoTime() - start)), writes, writes, "", "", Collections.singletonList(writeResult));
     }
 
@@ -675,7 +1377,9 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         logger.debug("deleteStats: query = {}", query);
         logger.debug("deleteStats: update = {}", update);
 
-        return variantsCollection.update(query, update, new QueryOptions("multi", true));
+        QueryResult<WriteResult> result = variantsCollection.update(query, update, new QueryOptions("multi", true));
+        invalidateQueryCache();
+        return result;
     }
 
 
@@ -693,18 +1397,26 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
         long start = System.nanoTime();
         DBObjectToVariantConverter variantConverter = getDbObjectToVariantConverter(new Query(), queryOptions);
+        // Version of the annotator, to find the outdated annotations
+        String version = queryOptions == null ? null : queryOptions.getString(VariantAnnotationManager.ANNOTATION_VERSION);
+        DBObject annotationInfo = version == null ? null : new BasicDBObject(DBObjectToVariantConverter.ANNOT_VERSION_FIELD, version)
+                .append(DBObjectToVariantConverter.ANNOT_DATE_FIELD, new Date());
         for (VariantAnnotation variantAnnotation : variantAnnotations) {
             String id = variantConverter.buildStorageId(variantAnnotation.getChromosome(), variantAnnotation.getStart(),
                     variantAnnotation.getReference(), variantAnnotation.getAlternate());
             DBObject find = new BasicDBObject("_id", id);
             DBObjectToVariantAnnotationConverter converter = new DBObjectToVariantAnnotationConverter();
             DBObject convertedVariantAnnotation = converter.convertToStorageType(variantAnnotation);
-            DBObject update = new BasicDBObject("$set", new BasicDBObject(DBObjectToVariantConverter.ANNOTATION_FIELD + ".0",
-                    convertedVariantAnnotation));
+            BasicDBObject set = new BasicDBObject(DBObjectToVariantConverter.ANNOTATION_FIELD + ".0", convertedVariantAnnotation);
+            if (annotationInfo != null) {
+                set.append(DBObjectToVariantConverter._ANNOT_FIELD, annotationInfo);
+            }
+            DBObject update = new BasicDBObject("$set", set);
             builder.find(find).updateOne(update);
         }
         BulkWriteResult writeResult = builder.execute();
 
+        invalidateQueryCache();
         return new QueryResult<>("", ((int) (System.nanoTime() - start)), 1, 1, "", "", Collections.singletonList(writeResult));
     }
 
@@ -717,12 +1429,15 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         DBObject dbQuery = parseQuery(query, new QueryBuilder()).get();
 
 //        DBObject update = new BasicDBObject("$unset", new BasicDBObject(DBObjectToVariantConverter.ANNOTATION_FIELD, ""));
-        DBObject update = new BasicDBObject("$set", new BasicDBObject(DBObjectToVariantConverter.ANNOTATION_FIELD + ".0", null));
+        DBObject update = new BasicDBObject("$set", new BasicDBObject(DBObjectToVariantConverter.ANNOTATION_FIELD + ".0", null))
+                .append("$unset", new BasicDBObject(DBObjectToVariantConverter._ANNOT_FIELD, ""));
 
         logger.debug("deleteAnnotation: query = {}", dbQuery);
         logger.debug("deleteAnnotation: update = {}", update);
 
-        return variantsCollection.update(dbQuery, update, new QueryOptions("multi", true));
+        QueryResult<WriteResult> result = variantsCollection.update(dbQuery, update, new QueryOptions("multi", true));
+        invalidateQueryCache();
+        return result;
     }
 
 
@@ -732,7 +1447,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         return true;
     }
 
-    private QueryBuilder parseQuery(Query query, QueryBuilder builder) {
+    QueryBuilder parseQuery(Query query, QueryBuilder builder) {
         if (query != null) {
 
             /** VARIANT PARAMS **/
@@ -797,6 +1512,13 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                 builder.exists(query.getBoolean(VariantQueryParams.ANNOTATION_EXISTS.key()));
             }
 
+            if (query.getString(VariantQueryParams.ANNOTATION_OUTDATED.key()) != null
+                    && !query.getString(VariantQueryParams.ANNOTATION_OUTDATED.key()).isEmpty()) {
+                // Also matches the variants without annotation version
+                builder.and(DBObjectToVariantConverter._ANNOT_FIELD + "." + DBObjectToVariantConverter.ANNOT_VERSION_FIELD)
+                        .notEquals(query.getString(VariantQueryParams.ANNOTATION_OUTDATED.key()));
+            }
+
             if (query.containsKey(VariantQueryParams.ANNOT_XREF.key())) {
                 String xrefs = query.getString(VariantQueryParams.ANNOT_XREF.key());
                 addQueryStringFilter(DBObjectToVariantConverter.ANNOTATION_FIELD + "." +
@@ -984,6 +1706,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
                     int sampleId;
                     final String genotypes;
+                    StudyConfiguration sampleStudyConfiguration = defaultStudyConfiguration;
                     if (sampleGenotype.length == 3) {  //Expect to be as <study>:<sample>
                         String study = sampleGenotype[0];
                         String sample = sampleGenotype[1];
@@ -996,6 +1719,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                             throw new IllegalArgumentException("Sample " + sample + " not found");
                         }
                         sampleId = queryResult.first().getSampleIds().get(sample);
+                        sampleStudyConfiguration = queryResult.first();
                     } else {
                         String sample = sampleGenotype[0];
                         genotypes = sampleGenotype[1];
@@ -1017,6 +1741,12 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                     }
 
 
+                    if (sampleStudyConfiguration != null && DBObjectToSamplesConverter.isPackedGenotypes(sampleStudyConfiguration)) {
+                        // Packed sample ids can not be matched by the database
+                        throw new IllegalArgumentException("Unable to filter by genotype in study \"" + sampleStudyConfiguration.getStudyName()
+                                + "\". Genotypes are stored with the encoding \"" + MongoDBVariantStorageManager.GENOTYPE_ENCODING_PACKED + "\"");
+                    }
+
                     String[] genotypesArray = genotypes.split(OR);
                     QueryBuilder genotypesBuilder = QueryBuilder.start();
                     for (String genotype : genotypesArray) {
@@ -1266,6 +1996,8 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         }
         List<DBObject> queries = new ArrayList<>(data.size());
         List<DBObject> updates = new ArrayList<>(data.size());
+        // Variant of each query, for the chunk summary
+        List<Variant> queryVariants = new ArrayList<>(data.size());
         // Use a multiset instead of a normal set, to keep tracking of duplicated variants
         Multiset<String> nonInsertedVariants = HashMultiset.create();
         String fileIdStr = Integer.toString(fileId);
@@ -1275,15 +2007,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
         long nanoTime = System.nanoTime();
         {
-            Map missingSamples = Collections.emptyMap();
-            String defaultGenotype = studyConfiguration.getAttributes().getString(MongoDBVariantStorageManager.DEFAULT_GENOTYPE, "");
-            if (defaultGenotype.equals(DBObjectToSamplesConverter.UNKNOWN_GENOTYPE)) {
-                logger.debug("Do not need fill gaps. DefaultGenotype is UNKNOWN_GENOTYPE({}).", DBObjectToSamplesConverter.UNKNOWN_GENOTYPE);
-            } else if (excludeGenotypes) {
-                logger.debug("Do not need fill gaps. Excluding genotypes.");
-            } else if (!loadedSampleIds.isEmpty()) {
-                missingSamples = new BasicDBObject(DBObjectToSamplesConverter.UNKNOWN_GENOTYPE, loadedSampleIds);   // ?/?
-            }
+            Map missingSamples = getMissingSamples(studyConfiguration, loadedSampleIds, excludeGenotypes);
 //            List<Object> missingOtherValues = new ArrayList<>(loadedSampleIds.size());
 //            for (int i = 0; i < loadedSampleIds.size(); i++) {
 //                missingOtherValues.add(DBObjectToSamplesConverter.UNKNOWN_FIELD);
@@ -1304,20 +2028,12 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                         continue;
                     }
                     int studyId = studyConfiguration.getStudyId();
-                    DBObject study = variantSourceEntryConverter.convertToStorageType(studyEntry);
-                    DBObject genotypes = (DBObject) study.get(DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD);
-                    if (genotypes != null) {        //If genotypes is null, genotypes are not suppose to be loaded
-                        genotypes.putAll(missingSamples);   //Add missing samples
-//                        for (String extraField : extraFields) {
-//                            List<Object> otherFieldValues = (List<Object>) study.get(extraField.toLowerCase());
-//                            otherFieldValues.addAll(0, missingOtherValues);
-//                        }
-                    }
+                    DBObject study = buildNewStudyObject(studyEntry, variantSourceEntryConverter, missingSamples);
                     DBObject push = new BasicDBObject(DBObjectToVariantConverter.STUDIES_FIELD, study);
                     BasicDBObject update = new BasicDBObject()
                             .append("$push", push)
                             .append("$setOnInsert", variantConverter.convertToStorageType(variant));
-                    if (variant.getIds() != null && !variant.getIds().isEmpty() && !variant.getIds().iterator().next().isEmpty()) {
+                    if (hasIds(variant)) {
                         update.put("$addToSet", new BasicDBObject(DBObjectToVariantConverter.IDS_FIELD, new BasicDBObject("$each", variant.getIds())));
                     }
                     // { _id: <variant_id>, "studies.sid": {$ne: <studyId> } }
@@ -1325,6 +2041,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                     queries.add(new BasicDBObject("_id", id).append(DBObjectToVariantConverter.STUDIES_FIELD + "." + DBObjectToStudyVariantEntryConverter.STUDYID_FIELD,
                             new BasicDBObject("$ne", studyId)));
                     updates.add(update);
+                    queryVariants.add(variant);
                 }
             }
             //
@@ -1332,6 +2049,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                 QueryOptions options = new QueryOptions("upsert", true);
                 options.put("multi", false);
                 BulkWriteResult bulkWriteResult;
+                Set<Integer> failedQueries = new HashSet<>();
                 try {
                     bulkWriteResult = variantsCollection.update(queries, updates, options).first();
                 } catch (BulkWriteException e) {
@@ -1342,6 +2060,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                             if (matcher.find()) {
                                 String id = matcher.group(1);
                                 nonInsertedVariants.add(id);
+                                failedQueries.add(writeError.getIndex());
                             } else {
                                 throw e;
                             }
@@ -1354,6 +2073,22 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                 writeResult.setNewDocuments(bulkWriteResult.getUpserts().size());
                 writeResult.setUpdatedObjects(bulkWriteResult.getModifiedCount());
 //                writeResult.setNewDocuments(data.size() - nonInsertedVariants.size() - writeResult.getSkippedVariants());
+                if (chunkSummary.isComplete()) {
+                    // Upserted variants are new. The rest of the successful updates added the study to an existing variant
+                    Set<Integer> upserts = new HashSet<>();
+                    for (BulkWriteUpsert upsert : bulkWriteResult.getUpserts()) {
+                        upserts.add(upsert.getIndex());
+                    }
+                    VariantMongoDBChunkSummary.Counts counts = new VariantMongoDBChunkSummary.Counts();
+                    for (int i = 0; i < queryVariants.size(); i++) {
+                        if (!failedQueries.contains(i)) {
+                            Variant variant = queryVariants.get(i);
+                            counts.add(variant.getChromosome(), variant.getStart(), variant.getType().name(),
+                                    studyConfiguration.getStudyId(), upserts.contains(i));
+                        }
+                    }
+                    chunkSummary.add(counts);
+                }
                 queries.clear();
                 updates.clear();
             }
@@ -1375,34 +2110,8 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                 }
 
                 DBObject studyObject = variantSourceEntryConverter.convertToStorageType(studyEntry);
-                DBObject genotypes = (DBObject) studyObject.get(DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD);
-                DBObject push = new BasicDBObject();
-                if (!excludeGenotypes) {
-                    if (genotypes != null) { //If genotypes is null, genotypes are not suppose to be loaded
-                        for (String genotype : genotypes.keySet()) {
-                            push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD + "." + genotype, new BasicDBObject("$each", genotypes.get(genotype)));
-                        }
-//                    for (String extraField : extraFields) {
-//                        List values = (List) studyObject.get(extraField.toLowerCase());
-//                        push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + extraField.toLowerCase(),
-//                                new BasicDBObject("$each", values).append("$position", loadedSampleIds.size()));
-//                    }
-                    } else {
-                        push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD, Collections.emptyMap());
-                    }
-                }
-                push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + DBObjectToStudyVariantEntryConverter.FILES_FIELD, ((List) studyObject.get(DBObjectToStudyVariantEntryConverter.FILES_FIELD)).get(0));
-                BasicDBObject update = new BasicDBObject(new BasicDBObject("$push", push));
-
-
-                queries.add(new BasicDBObject("_id", id)
-                        .append(DBObjectToVariantConverter.STUDIES_FIELD
-                                + '.' + DBObjectToStudyVariantEntryConverter.STUDYID_FIELD, studyConfiguration.getStudyId())
-                        .append(DBObjectToVariantConverter.STUDIES_FIELD
-                                + '.' + DBObjectToStudyVariantEntryConverter.FILES_FIELD
-                                + '.' + DBObjectToStudyVariantEntryConverter.FILEID_FIELD, new BasicDBObject("$ne", fileId))
-                );
-                updates.add(update);
+                queries.add(buildPushFileQuery(id, studyConfiguration.getStudyId(), fileId));
+                updates.add(buildPushFileUpdate(studyObject, excludeGenotypes));
 
             }
 
@@ -1419,9 +2128,325 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             writeResult.setUpdatedObjects(writeResult.getUpdatedObjects() + update.first().getModifiedCount());
         }
 
+        invalidateQueryCache();
         return new QueryResult<>("insertVariants", ((int) (System.currentTimeMillis() - startTime)), 1, 1, "", "", Collections.singletonList(writeResult));
     }
 
+    /**
+     * Single round trip insertion:
+     *      First, fetch the _id, studies and files of the variants of the batch that already exist in the database.
+     *      Then, decide for each variant if it has to be inserted, if the study has to be pushed into an existing variant,
+     *      or if the file has to be pushed into an existing study, and send all the operations in one unordered bulk.
+     *
+     *      Avoids the "dup key" round trip of {@link #insert} when most of the variants already exist.
+     *      Conflicts with other writers loading the same variants concurrently are resolved with {@link #insert}.
+     *
+     * @param loadedSampleIds Other loaded sampleIds EXCEPT those that are going to be loaded
+     * @param data  Variants to insert
+     */
+    QueryResult<MongoDBVariantWriteResult> insertPrefetchingIds(List<Variant> data, int fileId, DBObjectToVariantConverter variantConverter,
+                       DBObjectToStudyVariantEntryConverter variantSourceEntryConverter, StudyConfiguration studyConfiguration, List<Integer> loadedSampleIds) {
+        long nanoTime = System.nanoTime();
+        PrefetchedVariants prefetchedVariants = prefetchVariants(data, fileId, variantConverter, studyConfiguration);
+        long prefetchNanoTime = System.nanoTime() - nanoTime;
+
+        QueryResult<MongoDBVariantWriteResult> result = insertPrefetched(data, prefetchedVariants, fileId, variantConverter,
+                variantSourceEntryConverter, studyConfiguration, loadedSampleIds);
+        result.first().setPrefetchNanoTime(prefetchNanoTime);
+        return result;
+    }
+
+    /**
+     * Variants of a batch that already exist in the database, from {@link #prefetchVariants}.
+     */
+    static class PrefetchedVariants {
+        private final List<String> ids;
+        // Value is true if the variant already contains the study.
+        private final Map<String, Boolean> existingVariants = new HashMap<>();
+        // Ids with the file already loaded
+        private final Set<String> variantsWithFile = new HashSet<>();
+
+        PrefetchedVariants(List<String> ids) {
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Fetch the _id, studies and files of the variants of the batch that already exist in the database.
+     */
+    PrefetchedVariants prefetchVariants(List<Variant> data, int fileId, DBObjectToVariantConverter variantConverter,
+                                        StudyConfiguration studyConfiguration) {
+        int studyId = studyConfiguration.getStudyId();
+        List<String> ids = new ArrayList<>(data.size());
+        for (Variant variant : data) {
+            ids.add(variantConverter.buildStorageId(variant));
+        }
+        PrefetchedVariants prefetchedVariants = new PrefetchedVariants(ids);
+        if (ids.isEmpty()) {
+            return prefetchedVariants;
+        }
+        DBCollection coll = db.getDb().getCollection(collectionName);
+        String studyIdField = DBObjectToVariantConverter.STUDIES_FIELD + '.' + DBObjectToStudyVariantEntryConverter.STUDYID_FIELD;
+        String fileIdField = DBObjectToVariantConverter.STUDIES_FIELD + '.' + DBObjectToStudyVariantEntryConverter.FILES_FIELD
+                + '.' + DBObjectToStudyVariantEntryConverter.FILEID_FIELD;
+        BasicDBObject projection = new BasicDBObject(studyIdField, true).append(fileIdField, true);
+        try (DBCursor cursor = coll.find(new BasicDBObject("_id", new BasicDBObject("$in", ids)), projection)) {
+            for (DBObject object : cursor) {
+                String id = object.get("_id").toString();
+                boolean containsStudy = false;
+                Object studies = object.get(DBObjectToVariantConverter.STUDIES_FIELD);
+                if (studies instanceof List) {
+                    for (Object study : (List) studies) {
+                        DBObject studyObject = (DBObject) study;
+                        if (((Number) studyObject.get(DBObjectToStudyVariantEntryConverter.STUDYID_FIELD)).intValue() == studyId) {
+                            containsStudy = true;
+                            Object files = studyObject.get(DBObjectToStudyVariantEntryConverter.FILES_FIELD);
+                            if (files instanceof List) {
+                                for (Object file : (List) files) {
+                                    Object fid = ((DBObject) file).get(DBObjectToStudyVariantEntryConverter.FILEID_FIELD);
+                                    if (fid instanceof Number && ((Number) fid).intValue() == fileId) {
+                                        prefetchedVariants.variantsWithFile.add(id);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                prefetchedVariants.existingVariants.put(id, containsStudy);
+            }
+        }
+        return prefetchedVariants;
+    }
+
+    /**
+     * Second step of {@link #insertPrefetchingIds}. Sends all the operations of the batch in one unordered bulk, based on
+     * the prefetched variants. The variants written by other writers after the prefetch are retried with {@link #insert}.
+     */
+    QueryResult<MongoDBVariantWriteResult> insertPrefetched(List<Variant> data, PrefetchedVariants prefetchedVariants, int fileId,
+                                                            DBObjectToVariantConverter variantConverter,
+                                                            DBObjectToStudyVariantEntryConverter variantSourceEntryConverter,
+                                                            StudyConfiguration studyConfiguration, List<Integer> loadedSampleIds) {
+
+        MongoDBVariantWriteResult writeResult = new MongoDBVariantWriteResult();
+        long startTime = System.currentTimeMillis();
+        if (data.isEmpty()) {
+            return new QueryResult<>("insertVariants", 0, 1, 1, "", "", Collections.singletonList(writeResult));
+        }
+        String fileIdStr = Integer.toString(fileId);
+        int studyId = studyConfiguration.getStudyId();
+        boolean excludeGenotypes = studyConfiguration.getAttributes().getBoolean(VariantStorageManager.Options.EXCLUDE_GENOTYPES.key(),
+                VariantStorageManager.Options.EXCLUDE_GENOTYPES.defaultValue());
+        Map missingSamples = getMissingSamples(studyConfiguration, loadedSampleIds, excludeGenotypes);
+        // Copies, also updated with the previous variants of this batch
+        Map<String, Boolean> existingVariants = new HashMap<>(prefetchedVariants.existingVariants);
+        Set<String> variantsWithFile = new HashSet<>(prefetchedVariants.variantsWithFile);
+        DBCollection coll = db.getDb().getCollection(collectionName);
+        String studyIdField = DBObjectToVariantConverter.STUDIES_FIELD + '.' + DBObjectToStudyVariantEntryConverter.STUDYID_FIELD;
+
+        // Build the bulk operation. Variants are kept in the same order as the operations to identify the failed ones.
+        long nanoTime = System.nanoTime();
+        BulkWriteOperation bulk = coll.initializeUnorderedBulkOperation();
+        List<Variant> operationVariants = new ArrayList<>(data.size());
+        List<String> operationIds = new ArrayList<>(data.size());
+        // Indexes of the operations that insert a new variant, and of the ones that add the study to an existing variant
+        Set<Integer> insertOperations = new HashSet<>();
+        Set<Integer> newStudyOperations = new HashSet<>();
+        Iterator<String> idsIterator = prefetchedVariants.ids.iterator();
+        for (Variant variant : data) {
+            String id = idsIterator.next();
+            if (variant.getType().equals(VariantType.NO_VARIATION)) {
+                //Storage-MongoDB is not able to store NON VARIANTS
+                writeResult.setSkippedVariants(writeResult.getSkippedVariants() + 1);
+                continue;
+            } else if (variant.getType().equals(VariantType.SYMBOLIC)) {
+                logger.warn("Skip symbolic variant " + variant.toString());
+                writeResult.setSkippedVariants(writeResult.getSkippedVariants() + 1);
+                continue;
+            }
+            for (StudyEntry studyEntry : variant.getStudies()) {
+                if (studyEntry.getFiles().size() == 0 || !studyEntry.getFiles().get(0).getFileId().equals(fileIdStr)) {
+                    continue;
+                }
+                if (variantsWithFile.contains(id)) {
+                    // Duplicated variant. The file is already loaded
+                    writeResult.setNonInsertedVariants(writeResult.getNonInsertedVariants() + 1);
+                    continue;
+                }
+                Boolean containsStudy = existingVariants.get(id);
+                if (containsStudy == null) {
+                    DBObject study = buildNewStudyObject(studyEntry, variantSourceEntryConverter, missingSamples);
+                    DBObject document = variantConverter.convertToStorageType(variant);
+                    document.put(DBObjectToVariantConverter.STUDIES_FIELD, new BasicDBList());
+                    ((List) document.get(DBObjectToVariantConverter.STUDIES_FIELD)).add(study);
+                    if (hasIds(variant)) {
+                        document.put(DBObjectToVariantConverter.IDS_FIELD, new ArrayList<>(new LinkedHashSet<>(variant.getIds())));
+                    }
+                    bulk.insert(document);
+                    insertOperations.add(operationVariants.size());
+                } else if (!containsStudy) {
+                    DBObject study = buildNewStudyObject(studyEntry, variantSourceEntryConverter, missingSamples);
+                    BasicDBObject update = new BasicDBObject("$push", new BasicDBObject(DBObjectToVariantConverter.STUDIES_FIELD, study));
+                    if (hasIds(variant)) {
+                        update.put("$addToSet", new BasicDBObject(DBObjectToVariantConverter.IDS_FIELD, new BasicDBObject("$each", variant.getIds())));
+                    }
+                    bulk.find(new BasicDBObject("_id", id).append(studyIdField, new BasicDBObject("$ne", studyId))).updateOne(update);
+                    newStudyOperations.add(operationVariants.size());
+                } else {
+                    DBObject studyObject = variantSourceEntryConverter.convertToStorageType(studyEntry);
+                    bulk.find(buildPushFileQuery(id, studyId, fileId)).updateOne(buildPushFileUpdate(studyObject, excludeGenotypes));
+                }
+                operationVariants.add(variant);
+                operationIds.add(id);
+                existingVariants.put(id, true);
+                variantsWithFile.add(id);
+            }
+        }
+
+        if (!operationVariants.isEmpty()) {
+            List<Variant> retryVariants = new ArrayList<>();
+            Set<Integer> failedOperations = new HashSet<>();
+            BulkWriteResult bulkWriteResult;
+            try {
+                bulkWriteResult = bulk.execute();
+            } catch (BulkWriteException e) {
+                bulkWriteResult = e.getWriteResult();
+                for (BulkWriteError writeError : e.getWriteErrors()) {
+                    if (writeError.getCode() == 11000) { //Dup Key error code. Inserted by other writer
+                        retryVariants.add(operationVariants.get(writeError.getIndex()));
+                        failedOperations.add(writeError.getIndex());
+                    } else {
+                        throw e;
+                    }
+                }
+            }
+            writeResult.setNewDocuments(bulkWriteResult.getInsertedCount());
+            writeResult.setUpdatedObjects(bulkWriteResult.getModifiedCount());
+            int numUpdates = operationVariants.size() - insertOperations.size();
+            if (bulkWriteResult.getMatchedCount() < numUpdates) {
+                // Some other writer modified the variants after the prefetch. Retry only the updates that did not write the file.
+                logger.debug("Only {} out of {} updates matched. Retry the unmatched with two steps insertion",
+                        bulkWriteResult.getMatchedCount(), numUpdates);
+                Set<String> variantsWithFileWritten = getVariantsWithFile(operationIds, studyId, fileId);
+                for (int i = 0; i < operationVariants.size(); i++) {
+                    if (!insertOperations.contains(i) && !variantsWithFileWritten.contains(operationIds.get(i))) {
+                        retryVariants.add(operationVariants.get(i));
+                        failedOperations.add(i);
+                    }
+                }
+            }
+            updateChunkSummary(operationVariants, insertOperations, newStudyOperations, failedOperations, studyId);
+            if (!retryVariants.isEmpty()) {
+                writeResult.merge(insert(retryVariants, fileId, variantConverter, variantSourceEntryConverter, studyConfiguration,
+                        loadedSampleIds).first());
+            }
+        }
+        writeResult.setNewVariantsNanoTime(System.nanoTime() - nanoTime);
+
+        invalidateQueryCache();
+        return new QueryResult<>("insertVariants", ((int) (System.currentTimeMillis() - startTime)), 1, 1, "", "", Collections.singletonList(writeResult));
+    }
+
+    /**
+     * @return  Ids of the given variants that contain the file in the study
+     */
+    private Set<String> getVariantsWithFile(List<String> ids, int studyId, int fileId) {
+        DBObject query = new BasicDBObject("_id", new BasicDBObject("$in", ids))
+                .append(DBObjectToVariantConverter.STUDIES_FIELD, new BasicDBObject("$elemMatch",
+                        new BasicDBObject(DBObjectToStudyVariantEntryConverter.STUDYID_FIELD, studyId)
+                                .append(DBObjectToStudyVariantEntryConverter.FILES_FIELD + '.'
+                                        + DBObjectToStudyVariantEntryConverter.FILEID_FIELD, fileId)));
+        Set<String> variantsWithFile = new HashSet<>();
+        try (DBCursor cursor = db.getDb().getCollection(collectionName).find(query, new BasicDBObject("_id", true))) {
+            for (DBObject object : cursor) {
+                variantsWithFile.add(object.get("_id").toString());
+            }
+        }
+        return variantsWithFile;
+    }
+
+    /**
+     * Add the operations of {@link #insertPrefetched} to the chunk summary. Failed operations are retried, and added by {@link #insert}.
+     */
+    private void updateChunkSummary(List<Variant> operationVariants, Set<Integer> insertOperations, Set<Integer> newStudyOperations,
+                                    Set<Integer> failedOperations, int studyId) {
+        if (!chunkSummary.isComplete()) {
+            return;
+        }
+        VariantMongoDBChunkSummary.Counts counts = new VariantMongoDBChunkSummary.Counts();
+        for (int i = 0; i < operationVariants.size(); i++) {
+            boolean newVariant = insertOperations.contains(i);
+            if (!failedOperations.contains(i) && (newVariant || newStudyOperations.contains(i))) {
+                Variant variant = operationVariants.get(i);
+                counts.add(variant.getChromosome(), variant.getStart(), variant.getType().name(), studyId, newVariant);
+            }
+        }
+        chunkSummary.add(counts);
+    }
+
+    /**
+     * Genotypes for the samples already loaded in the study, to be added to the variants that are new for the study.
+     */
+    private Map getMissingSamples(StudyConfiguration studyConfiguration, List<Integer> loadedSampleIds, boolean excludeGenotypes) {
+        String defaultGenotype = studyConfiguration.getAttributes().getString(MongoDBVariantStorageManager.DEFAULT_GENOTYPE, "");
+        if (defaultGenotype.equals(DBObjectToSamplesConverter.UNKNOWN_GENOTYPE)) {
+            logger.debug("Do not need fill gaps. DefaultGenotype is UNKNOWN_GENOTYPE({}).", DBObjectToSamplesConverter.UNKNOWN_GENOTYPE);
+        } else if (excludeGenotypes) {
+            logger.debug("Do not need fill gaps. Excluding genotypes.");
+        } else if (!loadedSampleIds.isEmpty()) {
+            return new BasicDBObject(DBObjectToSamplesConverter.UNKNOWN_GENOTYPE, loadedSampleIds);   // ?/?
+        }
+        return Collections.emptyMap();
+    }
+
+    private DBObject buildNewStudyObject(StudyEntry studyEntry, DBObjectToStudyVariantEntryConverter variantSourceEntryConverter,
+                                         Map missingSamples) {
+        DBObject study = variantSourceEntryConverter.convertToStorageType(studyEntry);
+        DBObject genotypes = (DBObject) study.get(DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD);
+        if (genotypes != null) {        //If genotypes is null, genotypes are not suppose to be loaded
+            genotypes.putAll(missingSamples);   //Add missing samples
+//            for (String extraField : extraFields) {
+//                List<Object> otherFieldValues = (List<Object>) study.get(extraField.toLowerCase());
+//                otherFieldValues.addAll(0, missingOtherValues);
+//            }
+        }
+        return study;
+    }
+
+    private static boolean hasIds(Variant variant) {
+        return variant.getIds() != null && !variant.getIds().isEmpty() && !variant.getIds().iterator().next().isEmpty();
+    }
+
+    // { _id: <variant_id>, "studies.sid": <studyId>, "studies.files.fid": { $ne: <fileId> } }
+    private static DBObject buildPushFileQuery(String id, int studyId, int fileId) {
+        return new BasicDBObject("_id", id)
+                .append(DBObjectToVariantConverter.STUDIES_FIELD
+                        + '.' + DBObjectToStudyVariantEntryConverter.STUDYID_FIELD, studyId)
+                .append(DBObjectToVariantConverter.STUDIES_FIELD
+                        + '.' + DBObjectToStudyVariantEntryConverter.FILES_FIELD
+                        + '.' + DBObjectToStudyVariantEntryConverter.FILEID_FIELD, new BasicDBObject("$ne", fileId));
+    }
+
+    private static DBObject buildPushFileUpdate(DBObject studyObject, boolean excludeGenotypes) {
+        DBObject genotypes = (DBObject) studyObject.get(DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD);
+        DBObject push = new BasicDBObject();
+        if (!excludeGenotypes) {
+            if (genotypes != null) { //If genotypes is null, genotypes are not suppose to be loaded
+                for (String genotype : genotypes.keySet()) {
+                    push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD + "." + genotype, new BasicDBObject("$each", genotypes.get(genotype)));
+                }
+//                for (String extraField : extraFields) {
+//                    List values = (List) studyObject.get(extraField.toLowerCase());
+//                    push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + extraField.toLowerCase(),
+//                            new BasicDBObject("$each", values).append("$position", loadedSampleIds.size()));
+//                }
+            } else {
+                push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD, Collections.emptyMap());
+            }
+        }
+        push.put(DBObjectToVariantConverter.STUDIES_FIELD + ".$." + DBObjectToStudyVariantEntryConverter.FILES_FIELD, ((List) studyObject.get(DBObjectToStudyVariantEntryConverter.FILES_FIELD)).get(0));
+        return new BasicDBObject("$push", push);
+    }
+
     /**
      * Fills the missing genotype values for the new loaded samples.
      * Missing data is which was present in the database but not in the input file.
@@ -1450,6 +2475,123 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         //      "studies.$.gt.?/?" : {$each : [ <fileSampleIds> ] }
         // } }
 
+        if (!needsFillGaps(fileSampleIds, studyConfiguration)) {
+            return new QueryResult<>();
+        }
+        logger.debug("Do fill gaps.");
+
+
+        DBObject query = buildFillGapsQuery(fileId, studyConfiguration);
+        if (chromosomes != null && !chromosomes.isEmpty()) {
+            query.put(DBObjectToVariantConverter.CHROMOSOME_FIELD, new BasicDBObject("$in", chromosomes));
+        }
+
+        BasicDBObject update = buildFillGapsUpdate(fileSampleIds);
+
+        QueryOptions queryOptions = new QueryOptions("multi", true);
+        logger.debug("FillGaps find : {}", query);
+        logger.debug("FillGaps update : {}", update);
+        QueryResult<WriteResult> result = variantsCollection.update(query, update, queryOptions);
+        invalidateQueryCache();
+        return result;
+    }
+
+    /**
+     * Fills the missing genotype values for the new loaded samples.
+     * Same as {@link #fillFileGaps}, but the multi-update is split in ranges of positions of every chromosome,
+     * executed in parallel. Each range covers {@link #FILL_GAPS_RANGE_CHUNKS} big chunks, and is selected with
+     * the {chromosome, start, end} index. The first and the last range of each chromosome are open.
+     *
+     * @param fileId        Loading File ID
+     * @param chromosomes   Chromosomes covered by the current file
+     * @param fileSampleIds FileSampleIds
+     * @param studyConfiguration StudyConfiguration
+     * @param numThreads    Number of parallel updates
+     * @return  Number of updated variants
+     */
+    QueryResult<Long> fillFileGapsParallel(int fileId, Collection<String> chromosomes, List<Integer> fileSampleIds,
+                                           StudyConfiguration studyConfiguration, int numThreads) {
+        long start = System.currentTimeMillis();
+        if (!needsFillGaps(fileSampleIds, studyConfiguration) || chromosomes.isEmpty()) {
+            return new QueryResult<>("fillGaps", 0, 1, 1, "", "", Collections.singletonList(0L));
+        }
+
+        int rangeSize = FILL_GAPS_RANGE_CHUNKS * VariantMongoDBWriter.CHUNK_SIZE_BIG;
+        List<DBObject> ranges = new ArrayList<>();
+        for (String chromosome : chromosomes) {
+            Integer min = getStartLimit(chromosome, 1);
+            if (min == null) {
+                continue;
+            }
+            int max = getStartLimit(chromosome, -1);
+            for (long from = min; from <= max; from += rangeSize) {
+                BasicDBObject startRange = new BasicDBObject();
+                if (from != min) {
+                    startRange.append("$gte", (int) from);
+                }
+                if (from + rangeSize <= max) {
+                    startRange.append("$lt", (int) (from + rangeSize));
+                }
+                BasicDBObject range = new BasicDBObject(DBObjectToVariantConverter.CHROMOSOME_FIELD, chromosome);
+                if (!startRange.isEmpty()) {
+                    range.append(DBObjectToVariantConverter.START_FIELD, startRange);
+                }
+                ranges.add(range);
+            }
+        }
+        logger.info("Fill gaps in {} chromosomes, {} ranges, {} threads", chromosomes.size(), ranges.size(), numThreads);
+
+        BasicDBObject update = buildFillGapsUpdate(fileSampleIds);
+        QueryOptions queryOptions = new QueryOptions("multi", true);
+        AtomicLong updatedVariants = new AtomicLong();
+        AtomicInteger processedRanges = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(ranges.size());
+            for (DBObject range : ranges) {
+                futures.add(executorService.submit(() -> {
+                    DBObject query = buildFillGapsQuery(fileId, studyConfiguration);
+                    query.putAll(range);
+                    QueryResult<WriteResult> result = variantsCollection.update(query, update, queryOptions);
+                    updatedVariants.addAndGet(result.first().getN());
+                    int processed = processedRanges.incrementAndGet();
+                    logger.info("Fill gaps: {}/{} ranges ({}%), {} variants updated", processed, ranges.size(),
+                            processed * 100 / ranges.size(), updatedVariants.get());
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error filling gaps", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        invalidateQueryCache();
+        return new QueryResult<>("fillGaps", ((int) (System.currentTimeMillis() - start)), 1, 1, "", "",
+                Collections.singletonList(updatedVariants.get()));
+    }
+
+    private Integer getStartLimit(String chromosome, int order) {
+        DBCursor dbCursor = variantsCollection.nativeQuery().find(
+                new BasicDBObject(DBObjectToVariantConverter.CHROMOSOME_FIELD, chromosome),
+                new BasicDBObject(DBObjectToVariantConverter.START_FIELD, 1), new QueryOptions());
+        try {
+            dbCursor.sort(new BasicDBObject(DBObjectToVariantConverter.CHROMOSOME_FIELD, order)
+                    .append(DBObjectToVariantConverter.START_FIELD, order)).limit(1);
+            return dbCursor.hasNext() ? ((Number) dbCursor.next().get(DBObjectToVariantConverter.START_FIELD)).intValue() : null;
+        } finally {
+            dbCursor.close();
+        }
+    }
+
+    /**
+     * Check if it is needed to fill the gaps of the file.
+     */
+    private boolean needsFillGaps(List<Integer> fileSampleIds, StudyConfiguration studyConfiguration) {
         if (studyConfiguration.getAttributes().getAsStringList(MongoDBVariantStorageManager.DEFAULT_GENOTYPE, "")
                 .equals(Collections.singletonList(DBObjectToSamplesConverter.UNKNOWN_GENOTYPE))
 //                && studyConfiguration.getAttributes().getAsStringList(VariantStorageManager.Options.EXTRA_GENOTYPE_FIELDS.key()).isEmpty()
@@ -1457,29 +2599,26 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             // Check if the default genotype is the unknown genotype. In that case, is not required to fill missing genotypes.
             // Previously, also checks if there where EXTRA_GENOTYPE_FIELDS like DP:AD,... . In that case, those arrays had to be filled.
             logger.debug("Do not need fill gaps. DefaultGenotype is UNKNOWN_GENOTYPE({}).", DBObjectToSamplesConverter.UNKNOWN_GENOTYPE);
-            return new QueryResult<>();
+            return false;
         } else if (studyConfiguration.getAttributes().getBoolean(VariantStorageManager.Options.EXCLUDE_GENOTYPES.key(),
                 VariantStorageManager.Options.EXCLUDE_GENOTYPES.defaultValue())) {
             // Check if the genotypes are not required. In that case, no fillGaps is needed
             logger.debug("Do not need fill gaps. Exclude genotypes.");
-            return new QueryResult<>();
+            return false;
         } else {
             BiMap<String, Integer> indexedSamples = StudyConfiguration.getIndexedSamples(studyConfiguration);
             if (indexedSamples.isEmpty() || indexedSamples.values().equals(new HashSet<>(fileSampleIds))) {
                 // If the loaded samples match with the current samples means that there where no other samples loaded.
                 // There were no gaps, so it is not needed to fill anything.
                 logger.debug("Do not need fill gaps. First sample batch.");
-                return new QueryResult<>();
+                return false;
             }
         }
-        logger.debug("Do fill gaps.");
-
+        return true;
+    }
 
+    private static DBObject buildFillGapsQuery(int fileId, StudyConfiguration studyConfiguration) {
         DBObject query = new BasicDBObject();
-        if (chromosomes != null && !chromosomes.isEmpty()) {
-            query.put(DBObjectToVariantConverter.CHROMOSOME_FIELD, new BasicDBObject("$in", chromosomes));
-        }
-
         query.put(DBObjectToVariantConverter.STUDIES_FIELD, new BasicDBObject("$elemMatch",
                 new BasicDBObject(
                         DBObjectToStudyVariantEntryConverter.STUDYID_FIELD,
@@ -1489,7 +2628,10 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                                 new BasicDBObject("$ne", fileId)
                         )
         ));
+        return query;
+    }
 
+    private static BasicDBObject buildFillGapsUpdate(List<Integer> fileSampleIds) {
         BasicDBObject push = new BasicDBObject()
                 .append(DBObjectToVariantConverter.STUDIES_FIELD + ".$." +
                         DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD + "." +
@@ -1507,12 +2649,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 //            );
 //        }
 
-        BasicDBObject update = new BasicDBObject("$push", push);
-
-        QueryOptions queryOptions = new QueryOptions("multi", true);
-        logger.debug("FillGaps find : {}", query);
-        logger.debug("FillGaps update : {}", update);
-        return variantsCollection.update(query, update, queryOptions);
+        return new BasicDBObject("$push", push);
     }
 
 
@@ -1549,7 +2686,9 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                 samplesConverter
         );
         sourceEntryConverter.setStudyConfigurationManager(studyConfigurationManager);
-        return new DBObjectToVariantConverter(sourceEntryConverter, new DBObjectToVariantStatsConverter(studyConfigurationManager));
+        return new DBObjectToVariantConverter(sourceEntryConverter, new DBObjectToVariantStatsConverter(studyConfigurationManager))
+                .setLazy(options.getBoolean(VariantStorageManager.Options.LAZY_CONVERSION.key(),
+                        VariantStorageManager.Options.LAZY_CONVERSION.defaultValue()));
     }
 
     @Deprecated
@@ -2076,9 +3215,13 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                         + "." + DBObjectToVariantAnnotationConverter.POPULATION_FREQUENCY_ALTERNATE_FREQUENCY_FIELD, 1), backgroundAndSparse);
         variantsCollection.createIndex(new BasicDBObject(DBObjectToVariantConverter.ANNOTATION_FIELD
                 + "." + DBObjectToVariantAnnotationConverter.CLINICAL_DATA_FIELD + ".clinvar.clinicalSignificance", 1), backgroundAndSparse);
+        // Not sparse, to find the variants without annotation version in incremental annotations
+        variantsCollection.createIndex(new BasicDBObject(DBObjectToVariantConverter._ANNOT_FIELD
+                + "." + DBObjectToVariantConverter.ANNOT_VERSION_FIELD, 1), onBackground);
         variantsCollection.createIndex(new BasicDBObject(DBObjectToVariantConverter.STATS_FIELD + "." + DBObjectToVariantStatsConverter.MAF_FIELD, 1), onBackground);
         variantsCollection.createIndex(new BasicDBObject(DBObjectToVariantConverter.STATS_FIELD + "." + DBObjectToVariantStatsConverter.MGF_FIELD, 1), onBackground);
 
+        indexInfo = null;
         logger.debug("sent order to create indices");
     }
 
@@ -2517,12 +3660,12 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
     @Override
     @Deprecated
     public List<QueryResult<Variant>> getAllVariantsByIdList(List<String> idList, QueryOptions options) {
-        List<QueryResult<Variant>> allResults = new ArrayList<>(idList.size());
-        for (String r : idList) {
-            QueryResult<Variant> queryResult = getVariantById(r, options);
-            allResults.add(queryResult);
+        List<Supplier<QueryResult<Variant>>> tasks = new ArrayList<>(idList.size());
+        for (String id : idList) {
+            // getVariantById adds the id to the options
+            tasks.add(() -> getVariantById(id, options == null ? null : new QueryOptions(options)));
         }
-        return allResults;
+        return runConcurrently(tasks);
     }
 
     @Override
@@ -2562,11 +3705,28 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             options.add(VariantQueryParams.REGION.key(), regionList);
             allResults = Collections.singletonList(getAllVariants(options));
         } else {
+            QueryOptions queryOptions = options;
+            int batchSize = isMergeable(options) ? configuration.getInt(MULTI_QUERY_BATCH_SIZE, 100) : 1;
+            List<Supplier<List<QueryResult<Variant>>>> tasks = new ArrayList<>();
+            for (int i = 0; i < regionList.size(); i += batchSize) {
+                List<Region> batch = regionList.subList(i, Math.min(i + batchSize, regionList.size()));
+                if (batch.size() == 1) {
+                    tasks.add(() -> Collections.singletonList(getAllVariantsByRegion(batch.get(0), new QueryOptions(queryOptions))));
+                } else {
+                    List<List<Region>> regions = batch.stream().map(Collections::singletonList).collect(Collectors.toList());
+                    tasks.add(() -> getMergedByRegions(regions, mergedRegions -> {
+                        QueryOptions mergedOptions = new QueryOptions(queryOptions);
+                        mergedOptions.put(VariantQueryParams.REGION.key(), mergedRegions);
+                        return getAllVariants(mergedOptions);
+                    }));
+                }
+            }
             allResults = new ArrayList<>(regionList.size());
-            for (Region r : regionList) {
-                QueryResult queryResult = getAllVariantsByRegion(r, options);
-                queryResult.setId(r.toString());
-                allResults.add(queryResult);
+            for (List<QueryResult<Variant>> results : runConcurrently(tasks)) {
+                allResults.addAll(results);
+            }
+            for (int i = 0; i < regionList.size(); i++) {
+                allResults.get(i).setId(regionList.get(i).toString());
             }
         }
         return allResults;
@@ -2924,6 +4084,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         BulkWriteResult writeResult = builder.execute();
         int writes = writeResult.getModifiedCount();
 
+        invalidateQueryCache();
         return new QueryResult<>("", ((int) (System.nanoTime() - start)), writes, writes, "", "", Collections.singletonList(writeResult));
     }
 
@@ -2974,11 +4135,14 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         logger.debug("deleteStudy: query = {}", query);
         logger.debug("deleteStudy: update = {}", update);
 
+        chunkSummary.removeStudy(studyId);
         if (queryOptions.getBoolean("purge", false)) {
             BasicDBObject purgeQuery = new BasicDBObject(DBObjectToVariantConverter.STUDIES_FIELD, new BasicDBObject("$size", 0));
             variantsCollection.remove(purgeQuery, new QueryOptions("multi", true));
+            chunkSummary.setIncomplete("purge");
         }
 
+        invalidateQueryCache();
         return result;
     }
 
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.io.DataWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Load stage that partitions the variants by chunk and routes each partition to a dedicated {@link VariantMongoDBWriter}.
+ *
+ * Every chunk (same ids as the big chunks in {@link DBObjectToVariantConverter#CHUNK_IDS_FIELD}) belongs to one single writer,
+ * so two writers never insert or update the same range of "_id". Each writer runs in its own thread, fed by a
+ * bounded queue, and receives batches sorted by chunk and position.
+ */
+public class VariantMongoDBChunkRouter implements DataWriter<Variant> {
+
+    // Dedicated instance, compared by identity
+    private final List<Variant> endOfData = new ArrayList<>(0);
+
+    private final List<VariantMongoDBWriter> writers;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final List<BlockingQueue<List<Variant>>> queues;
+    private final List<List<Variant>> buffers;
+    private final List<Future<Integer>> futures;
+    private ExecutorService executorService;
+
+    protected static Logger logger = LoggerFactory.getLogger(VariantMongoDBChunkRouter.class);
+
+    public VariantMongoDBChunkRouter(List<VariantMongoDBWriter> writers, int batchSize, int queueCapacity) {
+        this.writers = new ArrayList<>(writers);
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.queues = new ArrayList<>(writers.size());
+        this.buffers = new ArrayList<>(writers.size());
+        this.futures = new ArrayList<>(writers.size());
+    }
+
+    /**
+     * Index of the writer in charge of the chunk of the given variant.
+     *
+     * @param variant       Variant
+     * @param numWriters    Number of writers
+     * @return              Index of the writer, between 0 and numWriters - 1
+     */
+    public static int getPartition(Variant variant, int numWriters) {
+        int hash = variant.getChromosome().hashCode() * 31 + variant.getStart() / VariantMongoDBWriter.CHUNK_SIZE_BIG;
+        return Math.floorMod(hash, numWriters);
+    }
+
+    @Override
+    public boolean open() {
+        for (VariantMongoDBWriter writer : writers) {
+            if (!writer.open()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean pre() {
+        executorService = Executors.newFixedThreadPool(writers.size(), r -> {
+            Thread thread = new Thread(r, "mongodb-chunk-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (VariantMongoDBWriter writer : writers) {
+            writer.pre();
+            BlockingQueue<List<Variant>> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            buffers.add(new ArrayList<>(batchSize));
+            futures.add(executorService.submit(() -> {
+                int batches = 0;
+                List<Variant> batch;
+                while ((batch = queue.take()) != endOfData) {
+                    writer.write(batch);
+                    batches++;
+                }
+                return batches;
+            }));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean write(Variant variant) {
+        return write(Collections.singletonList(variant));
+    }
+
+    @Override
+    public boolean write(List<Variant> batch) {
+        for (Variant variant : batch) {
+            int partition = getPartition(variant, writers.size());
+            List<Variant> buffer = buffers.get(partition);
+            if (!buffer.isEmpty() && !buffer.get(buffer.size() - 1).getChromosome().equals(variant.getChromosome())) {
+                // Never mix chromosomes in the same batch
+                flush(partition);
+                buffer = buffers.get(partition);
+            }
+            buffer.add(variant);
+            if (buffer.size() >= batchSize) {
+                flush(partition);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        for (int partition = 0; partition < writers.size(); partition++) {
+            if (!buffers.get(partition).isEmpty()) {
+                flush(partition);
+            }
+            put(partition, endOfData);
+        }
+        for (int partition = 0; partition < writers.size(); partition++) {
+            int batches = waitWriter(partition);
+            logger.debug("Chunk writer {} finished after {} batches", partition, batches);
+        }
+        executorService.shutdown();
+        for (VariantMongoDBWriter writer : writers) {
+            writer.post();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        for (VariantMongoDBWriter writer : writers) {
+            writer.close();
+        }
+        return true;
+    }
+
+    public List<VariantMongoDBWriter> getWriters() {
+        return writers;
+    }
+
+    private void flush(int partition) {
+        List<Variant> buffer = buffers.get(partition);
+        buffer.sort(Comparator.comparingInt((Variant v) -> v.getStart() / VariantMongoDBWriter.CHUNK_SIZE_BIG)
+                .thenComparingInt(Variant::getStart));
+        buffers.set(partition, new ArrayList<>(batchSize));
+        put(partition, buffer);
+    }
+
+    /**
+     * Enqueue a batch for a writer. Fails if the writer thread died, instead of blocking forever.
+     */
+    private void put(int partition, List<Variant> batch) {
+        BlockingQueue<List<Variant>> queue = queues.get(partition);
+        try {
+            while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                if (futures.get(partition).isDone()) {
+                    waitWriter(partition);
+                    throw new IllegalStateException("Chunk writer " + partition + " finished unexpectedly");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int waitWriter(int partition) {
+        try {
+            return futures.get(partition).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error writing variants in chunk writer " + partition, e.getCause());
+        }
+    }
+}
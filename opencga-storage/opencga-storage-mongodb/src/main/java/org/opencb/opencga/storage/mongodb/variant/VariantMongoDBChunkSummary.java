@@ -0,0 +1,245 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import com.mongodb.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Number of variants of each type in every chunk of {@link VariantMongoDBWriter#CHUNK_SIZE_SMALL} positions.
+ *
+ * One document per chunk, with the counts of all the variants, and the counts of the variants of each study:
+ * <pre>
+ * { _id: "22_16050", chr: "22", chunk: 16050, all: { SNV: 12, INDEL: 1 }, studies: { "1": { SNV: 10 } } }
+ * </pre>
+ *
+ * The summary is kept up to date by the {@link VariantMongoDBAdaptor} on every insertion. Operations that can not
+ * be tracked incrementally, like deleting variants, mark the summary as incomplete, and it is not used again until
+ * it is rebuilt with {@link #build()}.
+ */
+public class VariantMongoDBChunkSummary {
+
+    public static final int CHUNK_SIZE = VariantMongoDBWriter.CHUNK_SIZE_SMALL;
+    public static final String CHROMOSOME_FIELD = "chr";
+    public static final String CHUNK_FIELD = "chunk";
+    public static final String ALL_FIELD = "all";
+    public static final String STUDIES_FIELD = "studies";
+
+    private static final String STATUS_ID = "_status";
+    private static final String COMPLETE_FIELD = "complete";
+
+    private final DBCollection collection;
+    private final DBCollection variantsCollection;
+
+    protected static Logger logger = LoggerFactory.getLogger(VariantMongoDBChunkSummary.class);
+
+    VariantMongoDBChunkSummary(DBCollection collection, DBCollection variantsCollection) { //Package protected
+        this.collection = collection;
+        this.variantsCollection = variantsCollection;
+    }
+
+    /**
+     * Counts to add to the summary. Not thread safe.
+     */
+    public static class Counts {
+        private final Map<String, Map<String, Integer>> increments = new LinkedHashMap<>();
+
+        /**
+         * @param chromosome    Chromosome of the variant
+         * @param start         Start of the variant
+         * @param type          Type of the variant
+         * @param studyId       Study where the variant was added
+         * @param newVariant    If the variant did not exist before
+         */
+        public void add(String chromosome, int start, String type, int studyId, boolean newVariant) {
+            Map<String, Integer> chunk = increments.computeIfAbsent(getChunkDocumentId(chromosome, start / CHUNK_SIZE),
+                    id -> new HashMap<>());
+            if (newVariant) {
+                chunk.merge(ALL_FIELD + '.' + type, 1, Integer::sum);
+            }
+            chunk.merge(STUDIES_FIELD + '.' + studyId + '.' + type, 1, Integer::sum);
+        }
+
+        public boolean isEmpty() {
+            return increments.isEmpty();
+        }
+    }
+
+    /**
+     * The status is read every time, as the summary can be built or modified by other processes.
+     *
+     * @return If the summary contains all the variants
+     */
+    public boolean isComplete() {
+        DBObject status = collection.findOne(new BasicDBObject("_id", STATUS_ID));
+        return status != null && Boolean.TRUE.equals(status.get(COMPLETE_FIELD));
+    }
+
+    /**
+     * Stop using the summary until it is built again.
+     *
+     * @param reason Operation that made the summary incomplete
+     */
+    public void setIncomplete(String reason) {
+        if (isComplete()) {
+            logger.warn("Variant chunk summary is not complete anymore after {}. It has to be built again", reason);
+            collection.remove(new BasicDBObject("_id", STATUS_ID));
+        }
+    }
+
+    /**
+     * Build the summary from scratch, reading all the variants sorted by chromosome and start.
+     */
+    public void build() {
+        long start = System.currentTimeMillis();
+        collection.drop();
+        createIndexes();
+        DBObject projection = new BasicDBObject(DBObjectToVariantConverter.CHROMOSOME_FIELD, true)
+                .append(DBObjectToVariantConverter.START_FIELD, true)
+                .append(DBObjectToVariantConverter.TYPE_FIELD, true)
+                .append(DBObjectToVariantConverter.STUDIES_FIELD + '.' + DBObjectToStudyVariantEntryConverter.STUDYID_FIELD, true);
+        Counts counts = new Counts();
+        long numVariants = 0;
+        try (DBCursor cursor = variantsCollection.find(new BasicDBObject(), projection)
+                .sort(new BasicDBObject(DBObjectToVariantConverter.CHROMOSOME_FIELD, 1).append(DBObjectToVariantConverter.START_FIELD, 1))) {
+            for (DBObject variant : cursor) {
+                String chromosome = variant.get(DBObjectToVariantConverter.CHROMOSOME_FIELD).toString();
+                int position = ((Number) variant.get(DBObjectToVariantConverter.START_FIELD)).intValue();
+                String type = String.valueOf(variant.get(DBObjectToVariantConverter.TYPE_FIELD));
+                Map<String, Integer> chunk = counts.increments.computeIfAbsent(
+                        getChunkDocumentId(chromosome, position / CHUNK_SIZE), id -> new HashMap<>());
+                chunk.merge(ALL_FIELD + '.' + type, 1, Integer::sum);
+                Object studies = variant.get(DBObjectToVariantConverter.STUDIES_FIELD);
+                if (studies instanceof List) {
+                    for (Object study : (List) studies) {
+                        Object studyId = ((DBObject) study).get(DBObjectToStudyVariantEntryConverter.STUDYID_FIELD);
+                        chunk.merge(STUDIES_FIELD + '.' + studyId + '.' + type, 1, Integer::sum);
+                    }
+                }
+                if (++numVariants % 100000 == 0) {
+                    add(counts);
+                    counts = new Counts();
+                    logger.info("Variant chunk summary: {} variants read", numVariants);
+                }
+            }
+        }
+        add(counts);
+        collection.update(new BasicDBObject("_id", STATUS_ID), new BasicDBObject("$set", new BasicDBObject(COMPLETE_FIELD, true)),
+                true, false);
+        logger.info("Variant chunk summary built from {} variants in {}s", numVariants, (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    /**
+     * Start the summary of an empty collection of variants, without reading it.
+     *
+     * @return  false if the collection of variants was not empty and the summary has to be built.
+     */
+    public boolean initEmpty() {
+        if (variantsCollection.findOne() != null) {
+            return false;
+        }
+        collection.drop();
+        createIndexes();
+        collection.update(new BasicDBObject("_id", STATUS_ID), new BasicDBObject("$set", new BasicDBObject(COMPLETE_FIELD, true)),
+                true, false);
+        return true;
+    }
+
+    /**
+     * Add counts to the summary. Chunks are created if missing.
+     *
+     * @param counts Counts to add
+     */
+    public void add(Counts counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        for (Map.Entry<String, Map<String, Integer>> entry : counts.increments.entrySet()) {
+            String id = entry.getKey();
+            int separator = id.lastIndexOf('_');
+            BasicDBObject update = new BasicDBObject("$inc", new BasicDBObject(entry.getValue()))
+                    .append("$setOnInsert", new BasicDBObject(CHROMOSOME_FIELD, id.substring(0, separator))
+                            .append(CHUNK_FIELD, Integer.parseInt(id.substring(separator + 1))));
+            bulk.find(new BasicDBObject("_id", id)).upsert().updateOne(update);
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Remove the counts of a study.
+     *
+     * @param studyId Study
+     */
+    public void removeStudy(int studyId) {
+        collection.update(new BasicDBObject(STUDIES_FIELD + '.' + studyId, new BasicDBObject("$exists", true)),
+                new BasicDBObject("$unset", new BasicDBObject(STUDIES_FIELD + '.' + studyId, "")), false, true);
+    }
+
+    /**
+     * Count the variants of each chunk.
+     *
+     * @param chromosome    Chromosome
+     * @param firstChunk    First chunk, included
+     * @param lastChunk     Last chunk, included
+     * @param studyId       Only count variants from this study. Null for all the variants
+     * @param types         Only count variants of these types. Empty for all the types
+     * @return              Number of variants of each chunk. Chunks without variants are not included
+     */
+    public Map<Integer, Integer> count(String chromosome, int firstChunk, int lastChunk, Integer studyId, Collection<String> types) {
+        String countsField = studyId == null ? ALL_FIELD : STUDIES_FIELD + '.' + studyId;
+        DBObject query = new BasicDBObject(CHROMOSOME_FIELD, chromosome)
+                .append(CHUNK_FIELD, new BasicDBObject("$gte", firstChunk).append("$lte", lastChunk));
+        DBObject projection = new BasicDBObject(CHUNK_FIELD, true).append(countsField, true);
+        Map<Integer, Integer> chunks = new HashMap<>();
+        try (DBCursor cursor = collection.find(query, projection)) {
+            for (DBObject chunk : cursor) {
+                DBObject counts;
+                if (studyId == null) {
+                    counts = (DBObject) chunk.get(ALL_FIELD);
+                } else {
+                    DBObject studies = (DBObject) chunk.get(STUDIES_FIELD);
+                    counts = studies == null ? null : (DBObject) studies.get(studyId.toString());
+                }
+                if (counts == null) {
+                    continue;
+                }
+                int count = 0;
+                for (String type : counts.keySet()) {
+                    if (types.isEmpty() || types.contains(type)) {
+                        count += ((Number) counts.get(type)).intValue();
+                    }
+                }
+                if (count > 0) {
+                    chunks.put(((Number) chunk.get(CHUNK_FIELD)).intValue(), count);
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private void createIndexes() {
+        collection.createIndex(new BasicDBObject(CHROMOSOME_FIELD, 1).append(CHUNK_FIELD, 1));
+    }
+
+    static String getChunkDocumentId(String chromosome, int chunk) {
+        return chromosome + '_' + chunk;
+    }
+}
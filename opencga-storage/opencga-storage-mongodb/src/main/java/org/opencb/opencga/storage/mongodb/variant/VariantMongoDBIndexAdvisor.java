@@ -0,0 +1,496 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import com.mongodb.*;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantIndexAdvisor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the queries executed by the {@link VariantMongoDBAdaptor} and suggests indexes for the inefficient ones.
+ *
+ * A fraction of the queries is explained in a background thread. The explain is stored in the collection
+ * "variants_index_advisor", one document per query shape, with the number of queries, the documents examined and
+ * returned, and the candidate index. The shape is the query with the values replaced, so queries that only differ in
+ * the values are accumulated together. Being stored in the database, the samples taken by a server can be used later
+ * from the command line.
+ *
+ * The candidate index of a query has the fields compared by equality first, then one field compared by range. Fields
+ * only required to exist, like optional annotations, become the filter of a partial index. A compound index can not
+ * have fields from parallel arrays, like "annotation.ct" and "studies", so the candidate only takes the fields of the
+ * most selective array. The fields of the other arrays go to the partial filter.
+ */
+public class VariantMongoDBIndexAdvisor implements VariantIndexAdvisor {
+
+    public static final String SHAPE_FIELD = "shape";
+    public static final String EXAMPLE_FIELD = "example";
+    public static final String PLAN_FIELD = "plan";
+    public static final String INDEX_FIELD = "index";
+    public static final String PARTIAL_FIELD = "partial";
+    public static final String COUNT_FIELD = "count";
+    public static final String EXAMINED_FIELD = "examined";
+    public static final String RETURNED_FIELD = "returned";
+    public static final String LAST_SEEN_FIELD = "lastSeen";
+
+    private static final int MAX_INDEX_FIELDS = 4;
+    private static final int MAX_EXAMPLE_LENGTH = 1000;
+    private static final Set<String> RANGE_OPERATORS = new HashSet<>(Arrays.asList("$gt", "$gte", "$lt", "$lte", "$ne", "$nin", "$regex"));
+    private static final Set<String> EQUALITY_OPERATORS = new HashSet<>(Arrays.asList("$eq", "$in", "$all"));
+    // Operators that do not match documents without the field
+    private static final Set<String> EXISTS_OPERATORS = new HashSet<>(Arrays.asList("$eq", "$in", "$all", "$gt", "$gte", "$lt", "$lte", "$regex"));
+    // Array fields of the variants collection. Fields queried with $elemMatch are arrays as well
+    private static final Set<String> ARRAY_FIELDS = new HashSet<>(Arrays.asList(
+            DBObjectToVariantConverter.IDS_FIELD,
+            DBObjectToVariantConverter.HGVS_FIELD,
+            DBObjectToVariantConverter.STUDIES_FIELD,
+            DBObjectToVariantConverter.STATS_FIELD,
+            DBObjectToVariantConverter.ANNOTATION_FIELD,
+            DBObjectToVariantConverter.ANNOTATION_FIELD + "." + DBObjectToVariantAnnotationConverter.CONSEQUENCE_TYPE_FIELD,
+            DBObjectToVariantConverter.ANNOTATION_FIELD + "." + DBObjectToVariantAnnotationConverter.XREFS_FIELD,
+            DBObjectToVariantConverter.ANNOTATION_FIELD + "." + DBObjectToVariantAnnotationConverter.POPULATION_FREQUENCIES_FIELD,
+            DBObjectToVariantConverter._AT_FIELD + "." + DBObjectToVariantConverter.CHUNK_IDS_FIELD));
+
+    private final DBCollection variantsCollection;
+    private final DBCollection samplesCollection;
+    private final double sampleRate;
+    private final ThreadPoolExecutor executor;
+
+    protected static Logger logger = LoggerFactory.getLogger(VariantMongoDBIndexAdvisor.class);
+
+    /**
+     * @param variantsCollection    Collection of variants
+     * @param samplesCollection     Collection to store the explained queries
+     * @param sampleRate            Fraction of the queries to explain, between 0 and 1
+     */
+    VariantMongoDBIndexAdvisor(DBCollection variantsCollection, DBCollection samplesCollection, double sampleRate) { //Package protected
+        this.variantsCollection = variantsCollection;
+        this.samplesCollection = samplesCollection;
+        this.sampleRate = sampleRate;
+        // Explains are discarded when the queue is full, to never slow down the queries
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(16), r -> {
+            Thread thread = new Thread(r, "index-advisor");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public boolean isSampling() {
+        return sampleRate > 0;
+    }
+
+    /**
+     * Explains the query in background, if selected by the sample rate.
+     *
+     * @param query         Query executed, from VariantMongoDBAdaptor#parseQuery
+     * @param projection    Projection of the query
+     * @param limit         Limit of the query, or 0
+     */
+    public void sample(DBObject query, DBObject projection, int limit) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        executor.execute(() -> {
+            try (DBCursor cursor = variantsCollection.find(query, projection).limit(limit)) {
+                record(query, cursor.explain());
+            } catch (RuntimeException e) {
+                logger.warn("Unable to explain query {}: {}", query, e.toString());
+            }
+        });
+    }
+
+    /**
+     * Stores the explain of a query.
+     *
+     * @param query     Query explained
+     * @param explain   Result of the explain
+     */
+    public void record(DBObject query, DBObject explain) {
+        String shape = getShape(query).toString();
+        long[] stats = getExecutionStats(explain);
+        Candidate candidate = new Candidate(query);
+
+        BasicDBObject set = new BasicDBObject(SHAPE_FIELD, shape)
+                .append(EXAMPLE_FIELD, truncate(query.toString()))
+                .append(PLAN_FIELD, getWinningPlan(explain))
+                .append(INDEX_FIELD, candidate.getIndex())
+                .append(PARTIAL_FIELD, candidate.getPartialFilter())
+                .append(LAST_SEEN_FIELD, new Date());
+        BasicDBObject inc = new BasicDBObject(COUNT_FIELD, 1L)
+                .append(EXAMINED_FIELD, stats[0])
+                .append(RETURNED_FIELD, stats[1]);
+        String id = UUID.nameUUIDFromBytes(shape.getBytes(StandardCharsets.UTF_8)).toString();
+        samplesCollection.update(new BasicDBObject("_id", id), new BasicDBObject("$set", set).append("$inc", inc), true, false);
+    }
+
+    @Override
+    public List<IndexAdvice> getAdvice(double minExaminedRatio) {
+        List<DBObject> existingIndexes = variantsCollection.getIndexInfo();
+        Map<String, IndexAdvice> advice = new LinkedHashMap<>();
+        try (DBCursor cursor = samplesCollection.find()) {
+            for (DBObject sample : cursor) {
+                DBObject index = (DBObject) sample.get(INDEX_FIELD);
+                long count = ((Number) sample.get(COUNT_FIELD)).longValue();
+                long examined = ((Number) sample.get(EXAMINED_FIELD)).longValue();
+                long returned = ((Number) sample.get(RETURNED_FIELD)).longValue();
+                if (index == null || index.keySet().isEmpty() || examined < minExaminedRatio * Math.max(1, returned)) {
+                    continue;
+                }
+                if (isServed(index, existingIndexes)) {
+                    continue;
+                }
+                LinkedHashMap<String, Integer> indexFields = new LinkedHashMap<>();
+                for (String field : index.keySet()) {
+                    indexFields.put(field, ((Number) index.get(field)).intValue());
+                }
+                DBObject partial = (DBObject) sample.get(PARTIAL_FIELD);
+                Map<String, Object> partialFilter = partial == null ? null : partial.toMap();
+                String key = indexFields + " " + partialFilter;
+                advice.computeIfAbsent(key, k -> new IndexAdvice(indexFields, partialFilter))
+                        .addQueries(count, examined, returned, (String) sample.get(PLAN_FIELD), (String) sample.get(EXAMPLE_FIELD));
+            }
+        }
+        List<IndexAdvice> adviceList = new ArrayList<>(advice.values());
+        adviceList.sort(Comparator.comparingLong(IndexAdvice::getDocsExamined).reversed());
+        return adviceList;
+    }
+
+    @Override
+    public void createIndexes(List<IndexAdvice> advice) {
+        for (IndexAdvice indexAdvice : advice) {
+            BasicDBObject index = new BasicDBObject(indexAdvice.getIndex());
+            BasicDBObject options = new BasicDBObject("background", true);
+            if (indexAdvice.getPartialFilter() != null) {
+                options.append("partialFilterExpression", new BasicDBObject(indexAdvice.getPartialFilter()));
+            }
+            logger.info("Creating index {} {}", index, options);
+            variantsCollection.createIndex(index, options);
+        }
+    }
+
+    /**
+     * Removes all the samples.
+     */
+    public void clear() {
+        samplesCollection.drop();
+    }
+
+    /**
+     * An index is already served if the candidate fields are a prefix of an existing index.
+     */
+    static boolean isServed(DBObject index, List<DBObject> existingIndexes) {
+        List<String> fields = new ArrayList<>(index.keySet());
+        for (DBObject existingIndex : existingIndexes) {
+            List<String> existingFields = new ArrayList<>(((DBObject) existingIndex.get("key")).keySet());
+            int length = Math.min(fields.size(), existingFields.size());
+            if (length > 0 && fields.subList(0, length).equals(existingFields.subList(0, length))
+                    && existingFields.size() >= fields.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Query with all the values replaced by "?", except the $exists flags.
+     */
+    static Object getShape(Object value) {
+        if (value instanceof DBObject && !(value instanceof List)) {
+            DBObject object = (DBObject) value;
+            BasicDBObject shape = new BasicDBObject();
+            for (String key : object.keySet()) {
+                Object subValue = object.get(key);
+                if (key.equals("$exists")) {
+                    shape.put(key, subValue);
+                } else if (key.equals("$in") || key.equals("$nin") || key.equals("$all")) {
+                    shape.put(key, "?");
+                } else {
+                    shape.put(key, getShape(subValue));
+                }
+            }
+            return shape;
+        } else if (value instanceof List) {
+            BasicDBList shape = new BasicDBList();
+            for (Object element : (List<?>) value) {
+                shape.add(getShape(element));
+            }
+            return shape;
+        } else {
+            return "?";
+        }
+    }
+
+    /**
+     * @return  Documents (or index keys, if more) examined, and documents returned
+     */
+    static long[] getExecutionStats(DBObject explain) {
+        DBObject executionStats = (DBObject) explain.get("executionStats");
+        if (executionStats != null) {
+            long examined = Math.max(getLong(executionStats, "totalDocsExamined"), getLong(executionStats, "totalKeysExamined"));
+            return new long[]{examined, getLong(executionStats, "nReturned")};
+        } else {
+            // Explain format of MongoDB 2.x
+            long examined = Math.max(getLong(explain, "nscannedObjects"), getLong(explain, "nscanned"));
+            return new long[]{examined, getLong(explain, "n")};
+        }
+    }
+
+    /**
+     * @return  Stages of the winning plan, like "FETCH > IXSCAN annotation.ct.so_1", or "COLLSCAN"
+     */
+    static String getWinningPlan(DBObject explain) {
+        DBObject queryPlanner = (DBObject) explain.get("queryPlanner");
+        if (queryPlanner == null) {
+            // Explain format of MongoDB 2.x
+            Object cursor = explain.get("cursor");
+            return cursor == null ? "?" : cursor.toString();
+        }
+        StringBuilder plan = new StringBuilder();
+        DBObject stage = (DBObject) queryPlanner.get("winningPlan");
+        while (stage != null) {
+            if (plan.length() > 0) {
+                plan.append(" > ");
+            }
+            plan.append(stage.get("stage"));
+            if (stage.containsField("indexName")) {
+                plan.append(' ').append(stage.get("indexName"));
+            }
+            if (stage.containsField("inputStage")) {
+                stage = (DBObject) stage.get("inputStage");
+            } else if (stage.containsField("inputStages")) {
+                // Only the first branch of OR and AND_HASH stages
+                List<?> inputStages = (List<?>) stage.get("inputStages");
+                stage = inputStages.isEmpty() ? null : (DBObject) inputStages.get(0);
+            } else {
+                stage = null;
+            }
+        }
+        return plan.toString();
+    }
+
+    private static long getLong(DBObject object, String key) {
+        Object value = object.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static String truncate(String string) {
+        return string.length() > MAX_EXAMPLE_LENGTH ? string.substring(0, MAX_EXAMPLE_LENGTH) + "..." : string;
+    }
+
+    /**
+     * Candidate index for a query.
+     */
+    static class Candidate {
+        private final List<String> equalityFields = new ArrayList<>();
+        private final List<String> rangeFields = new ArrayList<>();
+        private final List<String> existsFields = new ArrayList<>();
+        // Fields that the query requires to exist, to move to the partial filter
+        private final Set<String> requiredFields = new LinkedHashSet<>();
+        private final Set<String> elemMatchFields = new HashSet<>();
+        private final List<String> selectedFields;
+
+        Candidate(DBObject query) {
+            addFields("", query);
+            selectedFields = selectArrayFields();
+        }
+
+        private void addFields(String prefix, DBObject query) {
+            for (String key : query.keySet()) {
+                Object value = query.get(key);
+                if (key.equals("$and")) {
+                    for (Object element : (List<?>) value) {
+                        addFields(prefix, (DBObject) element);
+                    }
+                } else if (key.startsWith("$")) {
+                    // $or, $nor, $where... can not be served by one compound index
+                    continue;
+                } else if (value instanceof DBObject && !(value instanceof List) && isOperatorObject((DBObject) value)) {
+                    addOperators(prefix + key, (DBObject) value);
+                } else {
+                    addField(equalityFields, prefix + key);
+                    if (value != null) {
+                        requiredFields.add(prefix + key);
+                    }
+                }
+            }
+        }
+
+        private void addOperators(String field, DBObject operators) {
+            for (String operator : operators.keySet()) {
+                Object value = operators.get(operator);
+                if (operator.equals("$elemMatch") && value instanceof DBObject) {
+                    elemMatchFields.add(field);
+                    addFields(field + ".", (DBObject) value);
+                } else if (operator.equals("$exists")) {
+                    if (Boolean.TRUE.equals(value)) {
+                        addField(existsFields, field);
+                    }
+                } else if (EQUALITY_OPERATORS.contains(operator)) {
+                    addField(equalityFields, field);
+                } else if (RANGE_OPERATORS.contains(operator)) {
+                    addField(rangeFields, field);
+                }
+                if (EXISTS_OPERATORS.contains(operator) && value != null) {
+                    requiredFields.add(field);
+                }
+            }
+        }
+
+        private static boolean isOperatorObject(DBObject object) {
+            Set<String> keys = object.keySet();
+            return !keys.isEmpty() && keys.iterator().next().startsWith("$");
+        }
+
+        private static void addField(List<String> fields, String field) {
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+
+        /**
+         * @return  Deepest array in the path of the field, or an empty string if none
+         */
+        private String getArrayRoot(String field) {
+            String root = "";
+            int idx = field.indexOf('.');
+            while (idx > 0) {
+                String path = field.substring(0, idx);
+                if (ARRAY_FIELDS.contains(path) || elemMatchFields.contains(path)) {
+                    root = path;
+                }
+                idx = field.indexOf('.', idx + 1);
+            }
+            if (ARRAY_FIELDS.contains(field) || elemMatchFields.contains(field)) {
+                root = field;
+            }
+            return root;
+        }
+
+        private static boolean isAncestorOrSelf(String root, String array) {
+            return root.isEmpty() || root.equals(array) || array.startsWith(root + ".");
+        }
+
+        /**
+         * Selects the fields not in an array, and the fields of the most selective array: the one with more equality
+         * fields, then more range fields, then more exists fields. The fields of the arrays containing the selected
+         * one, like "annotation" for "annotation.ct", are also taken.
+         *
+         * @return  Fields that can go together in a compound index
+         */
+        private List<String> selectArrayFields() {
+            List<String> allFields = new ArrayList<>(equalityFields);
+            allFields.addAll(rangeFields);
+            allFields.addAll(existsFields);
+
+            Set<String> arrays = new LinkedHashSet<>();
+            allFields.forEach(field -> arrays.add(getArrayRoot(field)));
+            arrays.remove("");
+
+            String selectedArray = "";
+            int[] selectedScore = null;
+            for (String array : arrays) {
+                int[] score = {countFields(equalityFields, array), countFields(rangeFields, array), countFields(existsFields, array)};
+                if (selectedScore == null || compare(score, selectedScore) > 0) {
+                    selectedArray = array;
+                    selectedScore = score;
+                }
+            }
+
+            List<String> selected = new ArrayList<>();
+            for (String field : allFields) {
+                if (isAncestorOrSelf(getArrayRoot(field), selectedArray)) {
+                    selected.add(field);
+                }
+            }
+            return selected;
+        }
+
+        private int countFields(List<String> fields, String array) {
+            int count = 0;
+            for (String field : fields) {
+                if (isAncestorOrSelf(getArrayRoot(field), array)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static int compare(int[] score1, int[] score2) {
+            for (int i = 0; i < score1.length; i++) {
+                if (score1[i] != score2[i]) {
+                    return Integer.compare(score1[i], score2[i]);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return  Equality fields, then the first range field. The exists fields if there is no other field.
+         *          Only the fields selected by {@link #selectArrayFields()}
+         */
+        DBObject getIndex() {
+            BasicDBObject index = new BasicDBObject();
+            for (String field : equalityFields) {
+                if (index.size() < MAX_INDEX_FIELDS && selectedFields.contains(field)) {
+                    index.put(field, 1);
+                }
+            }
+            for (String field : rangeFields) {
+                if (index.size() < MAX_INDEX_FIELDS && selectedFields.contains(field) && !index.containsField(field)) {
+                    index.put(field, 1);
+                    break;
+                }
+            }
+            if (index.isEmpty()) {
+                for (String field : existsFields) {
+                    if (index.size() < MAX_INDEX_FIELDS && selectedFields.contains(field)) {
+                        index.put(field, 1);
+                    }
+                }
+            }
+            if (index.containsField("_id")) {
+                // Already served by the _id index
+                return new BasicDBObject();
+            }
+            return index;
+        }
+
+        /**
+         * @return  Filter of the partial index, with the exists fields and the fields of the arrays not selected
+         *          that the query requires to exist. Null if none.
+         */
+        DBObject getPartialFilter() {
+            BasicDBObject filter = new BasicDBObject();
+            for (String field : existsFields) {
+                filter.put(field, new BasicDBObject("$exists", true));
+            }
+            for (String field : requiredFields) {
+                if (!selectedFields.contains(field)) {
+                    filter.put(field, new BasicDBObject("$exists", true));
+                }
+            }
+            return filter.isEmpty() ? null : filter;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * VariantDBIterator that reads several shards of the same query at the same time.
+ *
+ * Every shard is a disjoint range of the collection, given as a query. Each shard is read by a worker thread
+ * with its own cursor and converter, and the converted variants are handed over in batches through bounded
+ * queues. The variants can be returned in the same order as the shards, or as soon as any shard has them.
+ */
+public class VariantMongoDBParallelIterator extends VariantDBIterator {
+
+    private static final int PREFETCH_BATCHES = 4;
+
+    private final List<DBObject> shards;
+    private final Function<DBObject, DBCursor> cursorFactory;
+    private final ThreadLocal<DBObjectToVariantConverter> converter;
+    private final int batchSize;
+    private final boolean ordered;
+    private final ExecutorService executorService;
+
+    // Ordered: one queue per shard, read in order. Unordered: one queue for all the shards.
+    private final List<BlockingQueue<List<Variant>>> queues;
+    private final List<Variant> endOfShard = new ArrayList<>(0);
+    private int currentQueue = 0;
+    private int pendingShards;
+    private volatile Throwable error;
+
+    private final AtomicLong fetchingNanos = new AtomicLong();
+    private final AtomicLong convertingNanos = new AtomicLong();
+    private Iterator<Variant> currentBatch = Collections.emptyIterator();
+
+    VariantMongoDBParallelIterator(List<DBObject> shards, Function<DBObject, DBCursor> cursorFactory,
+                                   Supplier<DBObjectToVariantConverter> converterSupplier,
+                                   int numThreads, int batchSize, boolean ordered) { //Package protected
+        this.shards = shards;
+        this.cursorFactory = cursorFactory;
+        this.converter = ThreadLocal.withInitial(converterSupplier);
+        this.batchSize = batchSize;
+        this.ordered = ordered;
+        this.pendingShards = shards.size();
+        this.executorService = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "variant-iterator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (ordered) {
+            queues = new ArrayList<>(shards.size());
+            for (DBObject shard : shards) {
+                BlockingQueue<List<Variant>> queue = new ArrayBlockingQueue<>(PREFETCH_BATCHES);
+                queues.add(queue);
+                executorService.submit(() -> readShard(shard, queue));
+            }
+        } else {
+            BlockingQueue<List<Variant>> queue = new ArrayBlockingQueue<>(PREFETCH_BATCHES * numThreads);
+            queues = Collections.singletonList(queue);
+            for (DBObject shard : shards) {
+                executorService.submit(() -> readShard(shard, queue));
+            }
+        }
+        executorService.shutdown();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentBatch.hasNext()) {
+            List<Variant> batch = nextBatch();
+            if (batch == null) {
+                return false;
+            }
+            currentBatch = batch.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Variant next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentBatch.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("can't remove from a cursor");
+    }
+
+    /**
+     * Stop all the workers. Required if the iterator is not consumed until the end.
+     */
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public long getTimeFetching() {
+        return TimeUnit.NANOSECONDS.toMillis(fetchingNanos.get());
+    }
+
+    @Override
+    public void setTimeFetching(long timeFetching) {
+        fetchingNanos.set(TimeUnit.MILLISECONDS.toNanos(timeFetching));
+    }
+
+    @Override
+    public long getTimeConverting() {
+        return TimeUnit.NANOSECONDS.toMillis(convertingNanos.get());
+    }
+
+    @Override
+    public void setTimeConverting(long timeConverting) {
+        convertingNanos.set(TimeUnit.MILLISECONDS.toNanos(timeConverting));
+    }
+
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    private List<Variant> nextBatch() {
+        try {
+            while (pendingShards > 0) {
+                List<Variant> batch = queues.get(currentQueue).take();
+                if (batch == endOfShard) {
+                    if (error != null) {
+                        close();
+                        throw new RuntimeException("Error reading variants", error);
+                    }
+                    pendingShards--;
+                    if (ordered) {
+                        currentQueue++;
+                    }
+                } else {
+                    return batch;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        return null;
+    }
+
+    private void readShard(DBObject shard, BlockingQueue<List<Variant>> queue) {
+        try {
+            DBObjectToVariantConverter converter = this.converter.get();
+            try (DBCursor dbCursor = cursorFactory.apply(shard)) {
+                dbCursor.batchSize(batchSize);
+                List<Variant> batch = new ArrayList<>(batchSize);
+                while (true) {
+                    long start = System.nanoTime();
+                    if (!dbCursor.hasNext()) {
+                        break;
+                    }
+                    DBObject dbObject = dbCursor.next();
+                    long fetched = System.nanoTime();
+                    batch.add(converter.convertToDataModelType(dbObject));
+                    fetchingNanos.addAndGet(fetched - start);
+                    convertingNanos.addAndGet(System.nanoTime() - fetched);
+                    if (batch.size() == batchSize) {
+                        queue.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    queue.put(batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed. Nobody is waiting for more variants
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException | Error e) {
+            error = e;
+        }
+        try {
+            queue.put(endOfShard);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
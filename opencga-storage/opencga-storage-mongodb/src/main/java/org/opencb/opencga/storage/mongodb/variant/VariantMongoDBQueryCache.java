@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.opencb.datastore.core.Query;
+import org.opencb.datastore.core.QueryResult;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the results of the aggregation queries of the {@link VariantMongoDBAdaptor}, like count, distinct,
+ * groupBy or getFrequency.
+ *
+ * Entries are evicted by size and by time since they were written. The adaptor invalidates all the entries after
+ * any write, and adds the timestamp of the queried studies to the key, so a modified StudyConfiguration never
+ * reuses old results. Writes from other processes that do not modify the StudyConfiguration, like the annotation,
+ * are only visible after the entries expire.
+ *
+ * Extend this class to use a different storage for the results.
+ */
+public class VariantMongoDBQueryCache {
+
+    private final Cache<String, QueryResult> cache;
+
+    public VariantMongoDBQueryCache(long maxSize, long expireAfterWriteSeconds) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the cached result for the key, or run the query and cache the result.
+     * The returned QueryResult is a copy, so the caller can modify it.
+     *
+     * @param key       Key, from {@link #buildKey}
+     * @param loader    Query to run if the result is not cached
+     * @param <T>       Result type
+     * @return          Query result
+     */
+    public <T> QueryResult<T> get(String key, Supplier<QueryResult<T>> loader) {
+        try {
+            return copy((QueryResult<T>) cache.get(key, loader::get));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Build a key independent of the order of the query params.
+     *
+     * @param method    Adaptor method
+     * @param query     Query, before being parsed
+     * @param args      Other arguments of the method
+     * @return          Key for the cache
+     */
+    public static String buildKey(String method, Query query, Object... args) {
+        StringBuilder key = new StringBuilder(method);
+        Map<String, Object> sortedQuery = query == null ? Collections.emptyMap() : new TreeMap<>(query);
+        for (Map.Entry<String, Object> entry : sortedQuery.entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().toString().isEmpty()) {
+                key.append('|').append(entry.getKey()).append('=').append(normalize(entry.getValue()));
+            }
+        }
+        for (Object arg : args) {
+            key.append('|').append(normalize(arg));
+        }
+        return key.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "VariantMongoDBQueryCache{size=" + cache.size() + ", " + cache.stats() + '}';
+    }
+
+    private static String normalize(Object value) {
+        if (value instanceof Collection) {
+            StringBuilder sb = new StringBuilder("[");
+            for (Object o : (Collection) value) {
+                sb.append(normalize(o)).append(',');
+            }
+            return sb.append(']').toString();
+        } else if (value instanceof Map) {
+            return normalize(new TreeMap<>((Map) value).entrySet());
+        } else {
+            return String.valueOf(value);
+        }
+    }
+
+    private static <T> QueryResult<T> copy(QueryResult<T> queryResult) {
+        return new QueryResult<>(queryResult.getId(), queryResult.getDbTime(), queryResult.getNumResults(),
+                queryResult.getNumTotalResults(), queryResult.getWarningMsg(), queryResult.getErrorMsg(),
+                new ArrayList<>(queryResult.getResult()));
+    }
+}
@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -63,10 +64,13 @@ public class VariantMongoDBWriter extends VariantDBWriter {
 
     private int fileId;
     private boolean writeStudyConfiguration = true;
+    private boolean prefetchIds = false;
+    private boolean fillGapsParallel = false;
+    private int fillGapsThreads = 1;
 
     private AtomicBoolean variantSourceWritten = new AtomicBoolean(false);
     private MongoDBVariantWriteResult writeResult = new MongoDBVariantWriteResult();
-    private HashSet<String> coveredChromosomes = new HashSet<>();
+    private Set<String> coveredChromosomes = new HashSet<>();
     private List<Integer> fileSampleIds;
     private List<Integer> loadedSampleIds;
 
@@ -120,7 +124,12 @@ public class VariantMongoDBWriter extends VariantDBWriter {
         if (!data.isEmpty()) {
             coveredChromosomes.add(data.get(0).getChromosome());
         }
-        QueryResult<MongoDBVariantWriteResult> queryResult = dbAdaptor.insert(data, fileId, this.variantConverter, this.sourceEntryConverter, studyConfiguration, loadedSampleIds);
+        QueryResult<MongoDBVariantWriteResult> queryResult;
+        if (prefetchIds) {
+            queryResult = dbAdaptor.insertPrefetchingIds(data, fileId, this.variantConverter, this.sourceEntryConverter, studyConfiguration, loadedSampleIds);
+        } else {
+            queryResult = dbAdaptor.insert(data, fileId, this.variantConverter, this.sourceEntryConverter, studyConfiguration, loadedSampleIds);
+        }
 
         MongoDBVariantWriteResult batchWriteResult = queryResult.first();
         logger.debug("New batch of {} elements. WriteResult: {}", data.size(), batchWriteResult);
@@ -172,7 +181,11 @@ public class VariantMongoDBWriter extends VariantDBWriter {
 
             List<Region> regions = coveredChromosomes.stream().map(Region::new).collect(Collectors.toList());
             long nanoTime = System.nanoTime();
-            dbAdaptor.fillFileGaps(fileId, new LinkedList<>(coveredChromosomes), fileSampleIds, studyConfiguration);
+            if (fillGapsParallel) {
+                dbAdaptor.fillFileGapsParallel(fileId, coveredChromosomes, fileSampleIds, studyConfiguration, fillGapsThreads);
+            } else {
+                dbAdaptor.fillFileGaps(fileId, new LinkedList<>(coveredChromosomes), fileSampleIds, studyConfiguration);
+            }
             writeResult.setFillGapsNanoTime(System.nanoTime() - nanoTime);
             dbAdaptor.createIndexes(new QueryOptions());
 
@@ -213,6 +226,14 @@ public class VariantMongoDBWriter extends VariantDBWriter {
         this.variantSourceWritten = atomicBoolean;
     }
 
+    /**
+     * Share the loaded chromosomes between all the writers of the same file. Only one writer fills the gaps in the
+     * {@link #post()}, so it has to know the chromosomes written by the others.
+     */
+    public void setCoveredChromosomesSet(Set<String> coveredChromosomes) {
+        this.coveredChromosomes = coveredChromosomes;
+    }
+
     private void setConverters() {
 
         sourceConverter = new DBObjectToVariantSourceConverter();
@@ -234,6 +255,25 @@ public class VariantMongoDBWriter extends VariantDBWriter {
         this.writeStudyConfiguration = writeStudyConfiguration;
     }
 
+    /**
+     * Fetch the existing variants before each insert, to send all the operations of a batch in one bulk.
+     * See {@link VariantMongoDBAdaptor#insertPrefetchingIds}
+     */
+    public void setPrefetchIds(boolean prefetchIds) {
+        this.prefetchIds = prefetchIds;
+    }
+
+    /**
+     * Fill the gaps with parallel updates over ranges of positions. See {@link VariantMongoDBAdaptor#fillFileGapsParallel}
+     */
+    public void setFillGapsParallel(boolean fillGapsParallel) {
+        this.fillGapsParallel = fillGapsParallel;
+    }
+
+    public void setFillGapsThreads(int fillGapsThreads) {
+        this.fillGapsThreads = fillGapsThreads;
+    }
+
     public MongoDBVariantWriteResult getWriteResult() {
         return writeResult;
     }
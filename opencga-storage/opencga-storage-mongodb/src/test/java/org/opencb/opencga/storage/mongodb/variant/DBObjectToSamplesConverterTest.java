@@ -2,6 +2,10 @@ package org.opencb.opencga.storage.mongodb.variant;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -51,6 +55,20 @@ public class DBObjectToSamplesConverterTest {
 
     }
 
+    @Test
+    public void testPackSampleIds() throws Exception {
+        List<Integer> sampleIds = new ArrayList<>(Arrays.asList(300, 0, 1, 2, 127, 128, 100000, 5));
+        byte[] packed = DBObjectToSamplesConverter.packSampleIds(sampleIds);
+        assertEquals(Arrays.asList(0, 1, 2, 5, 127, 128, 300, 100000), DBObjectToSamplesConverter.unpackSampleIds(packed));
+        assertEquals(1 + 1 + 1 + 1 + 1 + 1 + 2 + 3, packed.length);
+
+        List<Integer> unpacked = new ArrayList<>();
+        DBObjectToSamplesConverter.unpackSampleIds(packed, 128, unpacked::add);
+        assertEquals(Arrays.asList(0, 1, 2, 5, 127, 128), unpacked);
+
+        assertEquals(0, DBObjectToSamplesConverter.packSampleIds(new ArrayList<>()).length);
+    }
+
     public void testInteger(String dataModelType) {
         assertEquals(dataModelType, DBObjectToSamplesConverter.INTEGER_COMPLEX_TYPE_CONVERTER.convertToDataModelType(DBObjectToSamplesConverter.INTEGER_COMPLEX_TYPE_CONVERTER.convertToStorageType(dataModelType)));
     }
@@ -220,6 +220,23 @@ public class DBObjectToStudyVariantEntryConverterTest {
 
     }
 
+    @Test
+    public void testConvertPackedGenotypes() {
+        studyConfiguration.getAttributes().put(MongoDBVariantStorageManager.GENOTYPE_ENCODING, MongoDBVariantStorageManager.GENOTYPE_ENCODING_PACKED);
+        DBObjectToStudyVariantEntryConverter converter = new DBObjectToStudyVariantEntryConverter(true, fileId,
+                new DBObjectToSamplesConverter(studyConfiguration));
+
+        DBObject convertedMongo = converter.convertToStorageType(studyEntry);
+        DBObject genotypes = (DBObject) convertedMongo.get(DBObjectToStudyVariantEntryConverter.GENOTYPES_FIELD);
+        assertEquals(Collections.singletonList(25), DBObjectToSamplesConverter.unpackSampleIds((byte[]) ((List) genotypes.get("0/1")).get(0)));
+        assertEquals(Collections.singletonList(35), DBObjectToSamplesConverter.unpackSampleIds((byte[]) ((List) genotypes.get("1/1")).get(0)));
+        assertEquals(studyEntry, converter.convertToDataModelType(convertedMongo));
+
+        // Packed and plain sample ids can be mixed, e.g. after filling gaps
+        genotypes.put("1/1", Collections.singletonList(35));
+        assertEquals(studyEntry, converter.convertToDataModelType(convertedMongo));
+    }
+
     @Test
     public void testConvertToDataTypeWithoutStatsWithSampleIds() {
         DBObjectToStudyVariantEntryConverter converter;
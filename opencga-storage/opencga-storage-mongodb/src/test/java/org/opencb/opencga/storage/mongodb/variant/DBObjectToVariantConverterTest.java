@@ -33,6 +33,7 @@ import java.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -95,6 +96,27 @@ public class DBObjectToVariantConverterTest {
     
     @Test
     public void testConvertToDataModelTypeWithFiles() {
+        DBObjectToVariantConverter converter = addStudyAndCreateConverter();
+        Variant converted = converter.convertToDataModelType(mongoVariant);
+        assertEquals("\n" + variant.toJson() + "\n" + converted.toJson(),variant, converted);
+    }
+
+    @Test
+    public void testConvertToDataModelTypeLazy() {
+        DBObjectToVariantConverter converter = addStudyAndCreateConverter().setLazy(true);
+        Variant converted = converter.convertToDataModelType(mongoVariant);
+        assertTrue(converted instanceof DBObjectLazyVariant);
+        assertEquals(variant.getChromosome(), converted.getChromosome());
+        assertEquals(variant.getStart(), converted.getStart());
+        assertEquals(variant.getIds(), converted.getIds());
+        assertFalse(((DBObjectLazyVariant) converted).isConverted());
+
+        assertEquals(variant.getStudies().size(), converted.getStudies().size());
+        assertTrue(((DBObjectLazyVariant) converted).isConverted());
+        assertEquals(variant.toJson(), converted.toJson());
+    }
+
+    private DBObjectToVariantConverter addStudyAndCreateConverter() {
         // MongoDB object
 
         BasicDBObject mongoStudy = new BasicDBObject(DBObjectToStudyVariantEntryConverter.STUDYID_FIELD, Integer.parseInt(studyEntry.getStudyId()));
@@ -123,8 +145,7 @@ public class DBObjectToVariantConverterTest {
                         true,
                         new DBObjectToSamplesConverter(studyConfiguration)),
                 new DBObjectToVariantStatsConverter());
-        Variant converted = converter.convertToDataModelType(mongoVariant);
-        assertEquals("\n" + variant.toJson() + "\n" + converted.toJson(),variant, converted);
+        return converter;
     }
 
     @Test
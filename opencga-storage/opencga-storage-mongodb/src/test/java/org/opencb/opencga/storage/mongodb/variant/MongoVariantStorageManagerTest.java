@@ -22,19 +22,23 @@ import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.opencb.biodata.models.variant.VariantSource;
 import org.opencb.datastore.core.ObjectMap;
 import org.opencb.datastore.core.QueryOptions;
 import org.opencb.datastore.core.config.DataStoreConfiguration;
 import org.opencb.datastore.mongodb.MongoDBCollection;
 import org.opencb.opencga.storage.core.StorageManagerException;
 import org.opencb.opencga.storage.core.StudyConfiguration;
+import org.opencb.opencga.storage.core.variant.VariantStorageManager;
 import org.opencb.opencga.storage.core.variant.VariantStorageManagerTest;
 
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Map;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -50,6 +54,19 @@ public class MongoVariantStorageManagerTest extends VariantStorageManagerTest im
 //        return thrown;
 //    }
 
+    @Test
+    public void chunkPartitionedIndex() throws Exception {
+        clearDB(DB_NAME);
+        StudyConfiguration studyConfiguration = newStudyConfiguration();
+        ETLResult etlResult = runDefaultETL(inputUri, variantStorageManager, studyConfiguration, new ObjectMap()
+                .append(VariantStorageManager.Options.LOAD_THREADS.key(), 4)
+                .append(MongoDBVariantStorageManager.LOAD_PARTITION_BY_CHUNK, true));
+        VariantSource source = VariantStorageManager.readVariantSource(Paths.get(etlResult.transformResult.getPath()), null);
+
+        assertTrue(studyConfiguration.getIndexedFiles().contains(6));
+        checkLoadedVariants(variantStorageManager.getDBAdaptor(DB_NAME), studyConfiguration, true, false, getExpectedNumLoadedVariants(source));
+    }
+
     @Test
     public void checkCanLoadSampleBatchTest() throws StorageManagerException {
         StudyConfiguration studyConfiguration = createStudyConfiguration();
@@ -16,12 +16,16 @@
 
 package org.opencb.opencga.storage.mongodb.variant;
 
+import com.mongodb.DBObject;
+import com.mongodb.QueryBuilder;
 import org.junit.Test;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.datastore.core.Query;
 import org.opencb.datastore.core.QueryOptions;
 import org.opencb.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.variant.VariantStorageManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptorTest;
 
@@ -98,4 +102,102 @@ public class VariantMongoDBAdaptorTest extends VariantDBAdaptorTest implements M
         assertEquals(numVariantsChr1, numVariantsNoAnnotation);
     }
 
+    @Test
+    public void getMultipleQueriesTest() throws Exception {
+        List<Query> queries = new ArrayList<>();
+        for (String region : Arrays.asList("1:1-1000000", "1:900000-10000000", "2", "3:1-20000000,4:1-20000000")) {
+            queries.add(new Query(VariantDBAdaptor.VariantQueryParams.REGION.key(), region));
+            queries.add(new Query(VariantDBAdaptor.VariantQueryParams.REGION.key(), region)
+                    .append(VariantDBAdaptor.VariantQueryParams.TYPE.key(), "SNV"));
+        }
+        queries.add(new Query(VariantDBAdaptor.VariantQueryParams.CHROMOSOME.key(), "5"));
+
+        List<QueryResult<Variant>> queryResults = dbAdaptor.get(queries, new QueryOptions());
+        assertEquals(queries.size(), queryResults.size());
+        for (int i = 0; i < queries.size(); i++) {
+            QueryResult<Variant> expected = dbAdaptor.get(new Query(queries.get(i)), new QueryOptions());
+            assertEquals(expected.getResult().toString(), queryResults.get(i).getResult().toString());
+        }
+    }
+
+    @Test
+    public void getFrequencyChunkSummaryTest() throws Exception {
+        VariantMongoDBAdaptor mongoDBAdaptor = (VariantMongoDBAdaptor) dbAdaptor;
+        Region region = new Region("1", 1000500, 50000000);
+        List<Query> queries = Arrays.asList(
+                new Query(),
+                new Query(VariantDBAdaptor.VariantQueryParams.TYPE.key(), "SNV"),
+                new Query(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), studyConfiguration.getStudyId()));
+        List<Integer> intervals = Arrays.asList(0, 1000, 1234567);
+
+        List<Object> expected = new ArrayList<>();
+        for (Query query : queries) {
+            for (Integer interval : intervals) {
+                expected.add(mongoDBAdaptor.getFrequency(new Query(query), region, interval).getResult());
+            }
+        }
+
+        VariantMongoDBChunkSummary chunkSummary = mongoDBAdaptor.getChunkSummary();
+        chunkSummary.build();
+        assertTrue(chunkSummary.isComplete());
+        Iterator<Object> iterator = expected.iterator();
+        for (Query query : queries) {
+            for (Integer interval : intervals) {
+                assertEquals(iterator.next().toString(), mongoDBAdaptor.getFrequency(new Query(query), region, interval).getResult().toString());
+            }
+        }
+
+        fileIndexed = false;
+        dbAdaptor.delete(new Query(VariantDBAdaptor.VariantQueryParams.CHROMOSOME.key(), "1"), new QueryOptions());
+        assertFalse(chunkSummary.isComplete());
+    }
+
+    @Test
+    public void countTest() throws Exception {
+        List<Query> queries = Arrays.asList(
+                new Query(),
+                new Query(VariantDBAdaptor.VariantQueryParams.TYPE.key(), "SNV"),
+                new Query(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), studyConfiguration.getStudyId()),
+                new Query(VariantDBAdaptor.VariantQueryParams.REGION.key(), "1:1000500-50000000,2"),
+                new Query(VariantDBAdaptor.VariantQueryParams.ANNOTATION_EXISTS.key(), true));
+        for (Query query : queries) {
+            long expected = dbAdaptor.count(new Query(query)).first();
+            QueryOptions options = new QueryOptions(VariantStorageManager.Options.COUNT_THREADS.key(), 4);
+            assertEquals(query.toString(), expected, dbAdaptor.count(new Query(query), options).first().longValue());
+        }
+
+        VariantMongoDBAdaptor mongoDBAdaptor = (VariantMongoDBAdaptor) dbAdaptor;
+        mongoDBAdaptor.getChunkSummary().build();
+        QueryOptions approximate = new QueryOptions(VariantStorageManager.Options.APPROXIMATE_COUNT.key(), true);
+        assertEquals(NUM_VARIANTS, dbAdaptor.count(new Query(), approximate).first().intValue());
+        QueryResult<Long> regionCount = dbAdaptor.count(new Query(VariantDBAdaptor.VariantQueryParams.REGION.key(), "1:1000500-50000000")
+                .append(VariantDBAdaptor.VariantQueryParams.TYPE.key(), "SNV"), approximate);
+        assertEquals("Approximate count", regionCount.getWarningMsg());
+        assertTrue(regionCount.first() > 0);
+    }
+
+    @Test
+    public void countCoveringIndexTest() throws Exception {
+        VariantMongoDBAdaptor mongoDBAdaptor = (VariantMongoDBAdaptor) dbAdaptor;
+        String studyIdField = DBObjectToVariantConverter.STUDIES_FIELD + "." + DBObjectToStudyVariantEntryConverter.STUDYID_FIELD;
+
+        // Study is covered by the {studies.sid, studies.files.fid} index
+        Query query = new Query(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), studyConfiguration.getStudyId());
+        DBObject mongoQuery = mongoDBAdaptor.parseQuery(new Query(query), QueryBuilder.start()).get();
+        DBObject index = mongoDBAdaptor.getCoveringIndex(mongoQuery);
+        assertNotNull(index);
+        assertEquals(studyIdField, index.keySet().iterator().next());
+        long unhinted = mongoDBAdaptor.getVariantsCollection().count(mongoQuery).first();
+        assertEquals(NUM_VARIANTS, unhinted);
+        assertEquals(unhinted, mongoDBAdaptor.countWithCoveringIndex(mongoQuery));
+        assertEquals(unhinted, dbAdaptor.count(new Query(query)).first().longValue());
+
+        // There is no index starting with the type, so study and type are not covered
+        query.append(VariantDBAdaptor.VariantQueryParams.TYPE.key(), "SNV");
+        mongoQuery = mongoDBAdaptor.parseQuery(new Query(query), QueryBuilder.start()).get();
+        assertNull(mongoDBAdaptor.getCoveringIndex(mongoQuery));
+        assertEquals(mongoDBAdaptor.getVariantsCollection().count(mongoQuery).first().longValue(),
+                mongoDBAdaptor.countWithCoveringIndex(mongoQuery));
+    }
+
 }
\ No newline at end of file
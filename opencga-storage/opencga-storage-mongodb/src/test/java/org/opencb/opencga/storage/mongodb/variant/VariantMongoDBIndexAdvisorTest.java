@@ -0,0 +1,85 @@
+package org.opencb.opencga.storage.mongodb.variant;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class VariantMongoDBIndexAdvisorTest {
+
+    @Test
+    public void testCandidateIndex() throws Exception {
+        DBObject query = new BasicDBObject("annotation.ct.so", new BasicDBObject("$in", Arrays.asList(1583, 1587)))
+                .append("studies", new BasicDBObject("$elemMatch", new BasicDBObject("sid", 1).append("maf", new BasicDBObject("$lt", 0.01))))
+                .append("annotation.xrefs.id", "BRCA2")
+                .append("annotation.ps", new BasicDBObject("$exists", true));
+
+        // Parallel arrays. Only the fields of "studies", the other arrays go to the partial filter
+        VariantMongoDBIndexAdvisor.Candidate candidate = new VariantMongoDBIndexAdvisor.Candidate(query);
+        assertEquals(Arrays.asList("studies.sid", "studies.maf"), Arrays.asList(candidate.getIndex().keySet().toArray()));
+        assertEquals(new BasicDBObject("annotation.ps", new BasicDBObject("$exists", true))
+                        .append("annotation.ct.so", new BasicDBObject("$exists", true))
+                        .append("annotation.xrefs.id", new BasicDBObject("$exists", true)),
+                candidate.getPartialFilter());
+    }
+
+    @Test
+    public void testCandidateIndexNestedArrays() throws Exception {
+        DBObject query = new BasicDBObject("chromosome", "1")
+                .append("annotation.ct.so", 1583)
+                .append("annotation.id", "rs123")
+                .append("annotation.xrefs.id", new BasicDBObject("$in", Arrays.asList("BRCA2", "ENSG00000139618")))
+                .append("annotation.ct.gn", "BRCA2")
+                .append("annotation.popFq.altFq", new BasicDBObject("$ne", 0.5));
+
+        // "annotation.ct" and "annotation.xrefs" are parallel, but both can go with the fields of "annotation"
+        VariantMongoDBIndexAdvisor.Candidate candidate = new VariantMongoDBIndexAdvisor.Candidate(query);
+        assertEquals(Arrays.asList("chromosome", "annotation.ct.so", "annotation.id", "annotation.ct.gn"),
+                Arrays.asList(candidate.getIndex().keySet().toArray()));
+        // $ne also matches the variants without the field
+        assertEquals(new BasicDBObject("annotation.xrefs.id", new BasicDBObject("$exists", true)), candidate.getPartialFilter());
+    }
+
+    @Test
+    public void testCandidateIndexSkipsId() throws Exception {
+        DBObject query = new BasicDBObject("_id", "1_000012345_A_C").append("annotation.ct.so", 1583);
+        assertTrue(new VariantMongoDBIndexAdvisor.Candidate(query).getIndex().keySet().isEmpty());
+    }
+
+    @Test
+    public void testShape() throws Exception {
+        DBObject query1 = new BasicDBObject("chr", "1").append("start", new BasicDBObject("$gte", 100).append("$lte", 200))
+                .append("annotation", new BasicDBObject("$exists", true));
+        DBObject query2 = new BasicDBObject("chr", "22").append("start", new BasicDBObject("$gte", 5000).append("$lte", 6000))
+                .append("annotation", new BasicDBObject("$exists", true));
+        assertEquals(VariantMongoDBIndexAdvisor.getShape(query1), VariantMongoDBIndexAdvisor.getShape(query2));
+        assertNotEquals(VariantMongoDBIndexAdvisor.getShape(query1),
+                VariantMongoDBIndexAdvisor.getShape(new BasicDBObject("chr", "1")));
+    }
+
+    @Test
+    public void testExplain() throws Exception {
+        BasicDBList inputStages = new BasicDBList();
+        inputStages.add(new BasicDBObject("stage", "IXSCAN").append("indexName", "chr_1_start_1"));
+        DBObject explain = new BasicDBObject("queryPlanner", new BasicDBObject("winningPlan",
+                new BasicDBObject("stage", "FETCH").append("inputStage", new BasicDBObject("stage", "OR").append("inputStages", inputStages))))
+                .append("executionStats", new BasicDBObject("totalDocsExamined", 1000).append("totalKeysExamined", 1200).append("nReturned", 10));
+
+        assertEquals("FETCH > OR > IXSCAN chr_1_start_1", VariantMongoDBIndexAdvisor.getWinningPlan(explain));
+        assertArrayEquals(new long[]{1200, 10}, VariantMongoDBIndexAdvisor.getExecutionStats(explain));
+    }
+
+    @Test
+    public void testIsServed() throws Exception {
+        DBObject existing = new BasicDBObject("key", new BasicDBObject("chr", 1).append("start", 1).append("end", 1));
+        assertTrue(VariantMongoDBIndexAdvisor.isServed(new BasicDBObject("chr", 1).append("start", 1), Collections.singletonList(existing)));
+        assertFalse(VariantMongoDBIndexAdvisor.isServed(new BasicDBObject("start", 1), Collections.singletonList(existing)));
+        assertFalse(VariantMongoDBIndexAdvisor.isServed(new BasicDBObject("chr", 1).append("start", 1).append("end", 1).append("type", 1),
+                Collections.singletonList(existing)));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant;
+
+import org.junit.Test;
+import org.opencb.datastore.core.Query;
+import org.opencb.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class VariantMongoDBQueryCacheTest {
+
+    @Test
+    public void testBuildKey() {
+        Query query1 = new Query(VariantDBAdaptor.VariantQueryParams.CHROMOSOME.key(), "22")
+                .append(VariantDBAdaptor.VariantQueryParams.TYPE.key(), Arrays.asList("SNV", "INDEL"));
+        Query query2 = new Query(VariantDBAdaptor.VariantQueryParams.TYPE.key(), Arrays.asList("SNV", "INDEL"))
+                .append(VariantDBAdaptor.VariantQueryParams.CHROMOSOME.key(), "22")
+                .append(VariantDBAdaptor.VariantQueryParams.GENE.key(), "");
+
+        assertEquals(VariantMongoDBQueryCache.buildKey("count", query1), VariantMongoDBQueryCache.buildKey("count", query2));
+        assertNotEquals(VariantMongoDBQueryCache.buildKey("count", query1), VariantMongoDBQueryCache.buildKey("distinct", query1));
+        assertNotEquals(VariantMongoDBQueryCache.buildKey("groupBy", query1, "gene"),
+                VariantMongoDBQueryCache.buildKey("groupBy", query1, "ct"));
+    }
+
+    @Test
+    public void testGet() {
+        VariantMongoDBQueryCache cache = new VariantMongoDBQueryCache(10, 60);
+        AtomicInteger queries = new AtomicInteger();
+        String key = VariantMongoDBQueryCache.buildKey("count", new Query());
+
+        for (int i = 0; i < 3; i++) {
+            QueryResult<Long> result = cache.get(key, () -> {
+                queries.incrementAndGet();
+                return new QueryResult<>("count", 10, 1, 1, "", "", Collections.singletonList(42L));
+            });
+            assertEquals(42L, result.first().longValue());
+            result.setWarningMsg("modified");
+            result.getResult().clear();
+        }
+        assertEquals(1, queries.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+
+        cache.invalidateAll();
+        cache.get(key, () -> {
+            queries.incrementAndGet();
+            return new QueryResult<>("count", 10, 1, 1, "", "", Collections.singletonList(43L));
+        });
+        assertEquals(2, queries.get());
+    }
+}
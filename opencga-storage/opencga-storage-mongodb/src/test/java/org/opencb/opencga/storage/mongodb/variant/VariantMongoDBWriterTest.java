@@ -16,6 +16,8 @@
 
 package org.opencb.opencga.storage.mongodb.variant;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
@@ -28,6 +30,7 @@ import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantSource;
 import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.biodata.tools.variant.tasks.VariantRunner;
 import org.opencb.commons.containers.list.SortedList;
@@ -39,8 +42,15 @@ import org.opencb.opencga.storage.core.StorageManagerException;
 import org.opencb.opencga.storage.core.StudyConfiguration;
 import org.opencb.opencga.storage.core.variant.VariantStorageManager;
 import org.opencb.opencga.storage.core.variant.VariantStorageManagerTestUtils;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
+import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotator;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
@@ -68,6 +78,8 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
     private String studyName1 = "Study 1";
     private String studyName2 = "Study 2";
     private VariantMongoDBAdaptor dbAdaptor;
+    private boolean prefetchIds = false;
+    private boolean fillGapsParallel = false;
 
     @Before
     public void setUp() throws Exception {
@@ -214,6 +226,113 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
 
     }
 
+    /**
+     * The chunk summary updated on every insertion must be equal to the summary built from scratch after the load.
+     */
+    @Test
+    public void testChunkSummaryIncremental() throws StorageManagerException {
+        VariantMongoDBChunkSummary chunkSummary = dbAdaptor.getChunkSummary();
+        assertTrue(chunkSummary.initEmpty());
+
+        loadFile1();
+        loadFile2();
+        loadFile3();
+        assertTrue(chunkSummary.isComplete());
+        List<Map<Integer, Integer>> incremental = countChunkSummary(chunkSummary);
+
+        chunkSummary.build();
+        assertTrue(chunkSummary.isComplete());
+        List<Map<Integer, Integer>> built = countChunkSummary(chunkSummary);
+        assertEquals(built, incremental);
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(0, 1);     // 999
+        expected.put(1, 4);     // 1000, 1002, 1004, 1006
+        assertEquals(expected, built.get(0));
+        assertEquals(Collections.singletonMap(1, 4), built.get(2));
+    }
+
+    @Test
+    public void testChunkSummaryIncrementalPrefetchIds() throws StorageManagerException {
+        prefetchIds = true;
+        testChunkSummaryIncremental();
+    }
+
+    /**
+     * Other writer loads some variants of the same study between the prefetch and the bulk. The new variant fails with
+     * a dup key, and the study pushed into an existing variant does not match. Only those two must be retried.
+     */
+    @Test
+    public void testInsertPrefetchedConcurrentWriter() throws StorageManagerException {
+        VariantMongoDBChunkSummary chunkSummary = dbAdaptor.getChunkSummary();
+        assertTrue(chunkSummary.initEmpty());
+        prefetchIds = true;
+        loadFile1();
+
+        DBObjectToStudyVariantEntryConverter sourceEntryConverter = new DBObjectToStudyVariantEntryConverter(false,
+                new DBObjectToSamplesConverter(studyConfiguration2));
+        DBObjectToVariantConverter variantConverter = new DBObjectToVariantConverter(null, null);
+        List<String> samples2 = Arrays.asList("NA19600", "NA19660", "NA19661", "NA19685");
+        List<String> samples3 = Arrays.asList("NA00001.X", "NA00002.X", "NA00003.X", "NA00004.X");
+
+        List<Variant> variants = new ArrayList<>();
+        for (int start : Arrays.asList(999, 1000, 1002, 1004, 1006)) {
+            variants.add(newVariant(start, source2, samples2, "0/1"));
+        }
+        VariantMongoDBAdaptor.PrefetchedVariants prefetchedVariants = dbAdaptor.prefetchVariants(variants, fileId2,
+                variantConverter, studyConfiguration2);
+
+        // Other writer adds the study to 1000 and inserts 1004
+        List<Variant> otherVariants = Arrays.asList(newVariant(1000, source3, samples3, "1/1"), newVariant(1004, source3, samples3, "1/1"));
+        assertEquals(new MongoDBVariantWriteResult(1, 1, 0, 0), dbAdaptor.insert(otherVariants, fileId3, variantConverter,
+                sourceEntryConverter, studyConfiguration2, Collections.emptyList()).first());
+
+        // 1006 inserted, study pushed into 999 and 1002. The file is pushed into 1000 and 1004 with the two steps insertion
+        assertEquals(new MongoDBVariantWriteResult(1, 4, 0, 0), dbAdaptor.insertPrefetched(variants, prefetchedVariants, fileId2,
+                variantConverter, sourceEntryConverter, studyConfiguration2, Collections.emptyList()).first());
+
+        studyConfiguration2.getIndexedFiles().add(fileId2);
+        studyConfiguration2.getIndexedFiles().add(fileId3);
+        dbAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration2, new QueryOptions());
+        List<Variant> allVariants = dbAdaptor.get(new Query(), new QueryOptions("sort", true)).getResult();
+        assertEquals(5, allVariants.size());
+        for (Variant variant : allVariants) {
+            checkSampleData(variant, studyConfiguration2, fileId2, (sampleId) -> "0/1", "GT");
+            if (variant.getStart() == 1000 || variant.getStart() == 1004) {
+                checkSampleData(variant, studyConfiguration2, fileId3, (sampleId) -> "1/1", "GT");
+            }
+        }
+
+        // Every variant is counted once for the study, so the summary is still complete and exact
+        assertTrue(chunkSummary.isComplete());
+        List<Map<Integer, Integer>> incremental = countChunkSummary(chunkSummary);
+        chunkSummary.build();
+        assertEquals(countChunkSummary(chunkSummary), incremental);
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(0, 1);     // 999
+        expected.put(1, 4);     // 1000, 1002, 1004, 1006
+        assertEquals(expected, incremental.get(2));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Variant newVariant(int start, VariantSource source, List<String> samples, String gt) {
+        Variant variant = new Variant("X", start, start, "A", "C");
+        StudyEntry sourceEntry = new StudyEntry(source.getFileId(), source.getStudyId());
+        for (String sample : samples) {
+            sourceEntry.addSampleData(sample, ((Map) new ObjectMap("GT", gt)));
+        }
+        variant.addStudyEntry(sourceEntry);
+        return variant;
+    }
+
+    private List<Map<Integer, Integer>> countChunkSummary(VariantMongoDBChunkSummary chunkSummary) {
+        List<Map<Integer, Integer>> counts = new ArrayList<>();
+        for (Integer studyId : Arrays.asList(null, studyId1, studyId2)) {
+            counts.add(chunkSummary.count("X", 0, Integer.MAX_VALUE / VariantMongoDBChunkSummary.CHUNK_SIZE, studyId,
+                    Collections.emptyList()));
+        }
+        return counts;
+    }
+
     public void checkSampleData(Variant variant, StudyConfiguration studyConfiguration, Integer fileId, Function<Integer, String> valueProvider, String field) {
         assertTrue(studyConfiguration.getFileIds().values().contains(fileId));
         studyConfiguration.getSamplesInFiles().get(fileId).forEach((sampleId) ->
@@ -222,6 +341,174 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
         );
     }
 
+    @Test
+    public void testInsertMultiFilesPrefetchIds() throws StorageManagerException {
+        prefetchIds = true;
+        testInsertMultiFiles();
+    }
+
+    @Test
+    public void testInsertMultiFilesFillGapsParallel() throws StorageManagerException {
+        fillGapsParallel = true;
+        testInsertMultiFiles();
+    }
+
+    /**
+     * The second file only covers the first chunk. Variants from the first file in other chunks and ranges of the
+     * chromosome must get the unknown genotype for the new samples.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFillGapsParallelUntouchedChunks() throws StorageManagerException {
+        fillGapsParallel = true;
+        List<Integer> positions = Arrays.asList(1000, 25000, 1500000, 3000000);
+
+        VariantMongoDBWriter mongoDBWriter = new VariantMongoDBWriter(fileId2, studyConfiguration2, dbAdaptor, true, false);
+        mongoDBWriter.setThreadSynchronizationBoolean(new AtomicBoolean(false));
+        mongoDBWriter.open();
+        mongoDBWriter.pre();
+        for (Integer position : positions) {
+            Variant variant = new Variant("X", position, position, "A", "C");
+            StudyEntry sourceEntry = new StudyEntry(source2.getFileId(), source2.getStudyId());
+            for (String sample : Arrays.asList("NA19600", "NA19660", "NA19661", "NA19685")) {
+                sourceEntry.addSampleData(sample, ((Map) new ObjectMap("GT", "0/1")));
+            }
+            variant.addStudyEntry(sourceEntry);
+            mongoDBWriter.write(variant);
+        }
+        mongoDBWriter.post();
+        mongoDBWriter.close();
+        studyConfiguration2.getIndexedFiles().add(fileId2);
+
+        mongoDBWriter = new VariantMongoDBWriter(fileId3, studyConfiguration2, dbAdaptor, true, false);
+        mongoDBWriter.setThreadSynchronizationBoolean(new AtomicBoolean(false));
+        mongoDBWriter.setFillGapsParallel(fillGapsParallel);
+        mongoDBWriter.setFillGapsThreads(2);
+        mongoDBWriter.open();
+        mongoDBWriter.pre();
+        Variant variant = new Variant("X", 1000, 1000, "A", "C");
+        StudyEntry sourceEntry = new StudyEntry(source3.getFileId(), source3.getStudyId());
+        for (String sample : Arrays.asList("NA00001.X", "NA00002.X", "NA00003.X", "NA00004.X")) {
+            sourceEntry.addSampleData(sample, ((Map) new ObjectMap("GT", "1/1")));
+        }
+        variant.addStudyEntry(sourceEntry);
+        mongoDBWriter.write(variant);
+        mongoDBWriter.post();
+        mongoDBWriter.close();
+        studyConfiguration2.getIndexedFiles().add(fileId3);
+
+        List<Variant> allVariants = dbAdaptor.get(new Query(), new QueryOptions("sort", true)).getResult();
+        assertEquals(positions.size(), allVariants.size());
+        checkSampleData(allVariants.get(0), studyConfiguration2, fileId3, (sampleId) -> "1/1", "GT");
+        for (Variant v : allVariants.subList(1, allVariants.size())) {
+            checkSampleData(v, studyConfiguration2, fileId2, (sampleId) -> "0/1", "GT");
+            checkSampleData(v, studyConfiguration2, fileId3, (sampleId) -> UNKNOWN_GENOTYPE, "GT");
+        }
+    }
+
+    /**
+     * Annotate with version A, add variants and annotate incrementally. Only the new variants are annotated, and all of
+     * them with version B.
+     */
+    @Test
+    public void testIncrementalAnnotation() throws Exception {
+        final String[] version = {"A"};
+        final List<Variant> annotated = new ArrayList<>();
+        VariantAnnotator annotator = new VariantAnnotator(null, null) {
+            @Override
+            public List<VariantAnnotation> annotate(List<Variant> variants) {
+                List<VariantAnnotation> annotations = new ArrayList<>(variants.size());
+                for (Variant variant : variants) {
+                    VariantAnnotation annotation = new VariantAnnotation();
+                    annotation.setChromosome(variant.getChromosome());
+                    annotation.setStart(variant.getStart());
+                    annotation.setReference(variant.getReference());
+                    annotation.setAlternate(variant.getAlternate());
+                    annotation.setConsequenceTypes(Collections.emptyList());
+                    annotations.add(annotation);
+                }
+                synchronized (annotated) {
+                    annotated.addAll(variants);
+                }
+                return annotations;
+            }
+
+            @Override
+            public String getVersion() {
+                return version[0];
+            }
+        };
+        VariantAnnotationManager annotationManager = new VariantAnnotationManager(annotator, dbAdaptor);
+        Path outDir = Paths.get("/tmp", "VariantMongoDBWriterTest");
+        Files.createDirectories(outDir);
+        QueryOptions options = new QueryOptions(VariantAnnotationManager.INCREMENTAL, true)
+                .append(VariantAnnotationManager.OUT_DIR, outDir.toString())
+                .append(VariantAnnotationManager.FILE_NAME, "annotation");
+
+        loadFile1();
+        annotationManager.annotate(new Query(), options);
+        assertEquals(Arrays.asList(999, 1000, 1002), getStarts(annotated));
+        Map<Integer, DBObject> annotInfo = getAnnotInfo();
+        assertEquals(3, annotInfo.size());
+        for (DBObject info : annotInfo.values()) {
+            assertEquals("A", info.get(DBObjectToVariantConverter.ANNOT_VERSION_FIELD));
+            assertTrue(info.get(DBObjectToVariantConverter.ANNOT_DATE_FIELD) instanceof Date);
+        }
+
+        loadFile2();
+        annotated.clear();
+        annotationManager.annotate(new Query(), options);
+        assertEquals(Collections.singletonList(1004), getStarts(annotated));
+        assertEquals(4, getAnnotInfo().size());
+
+        version[0] = "B";
+        annotated.clear();
+        annotationManager.annotate(new Query(), options);
+        assertEquals(Arrays.asList(999, 1000, 1002, 1004), getStarts(annotated));
+        getAnnotInfo().values().forEach(info -> assertEquals("B", info.get(DBObjectToVariantConverter.ANNOT_VERSION_FIELD)));
+
+        dbAdaptor.deleteAnnotation(null, new Query(), new QueryOptions());
+        assertTrue(getAnnotInfo().isEmpty());
+
+        // External file, without the version written by createAnnotation. Must not take the version of the current annotator
+        Path annotationFile = outDir.resolve("annotation.annot.json.gz");
+        Path externalFile = outDir.resolve("external.annot.json.gz");
+        Files.copy(annotationFile, externalFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(Paths.get(externalFile + VariantAnnotationManager.VERSION_SUFFIX));
+        annotationManager.loadAnnotation(externalFile.toUri(), new QueryOptions());
+        assertTrue(getAnnotInfo().isEmpty());
+        assertEquals(4, dbAdaptor.count(new Query(VariantDBAdaptor.VariantQueryParams.ANNOTATION_EXISTS.key(), true)).first().intValue());
+
+        annotationManager.loadAnnotation(externalFile.toUri(), new QueryOptions(VariantAnnotationManager.ANNOTATION_VERSION, "C"));
+        getAnnotInfo().values().forEach(info -> assertEquals("C", info.get(DBObjectToVariantConverter.ANNOT_VERSION_FIELD)));
+
+        // The file created by the annotator keeps its version
+        version[0] = "D";
+        annotationManager.loadAnnotation(annotationFile.toUri(), new QueryOptions());
+        assertEquals(4, getAnnotInfo().size());
+        getAnnotInfo().values().forEach(info -> assertEquals("B", info.get(DBObjectToVariantConverter.ANNOT_VERSION_FIELD)));
+    }
+
+    private static List<Integer> getStarts(List<Variant> variants) {
+        List<Integer> starts = new ArrayList<>(variants.size());
+        variants.forEach(variant -> starts.add(variant.getStart()));
+        Collections.sort(starts);
+        return starts;
+    }
+
+    /**
+     * @return  The _annot field of the annotated variants, by start
+     */
+    private Map<Integer, DBObject> getAnnotInfo() {
+        Map<Integer, DBObject> annotInfo = new HashMap<>();
+        DBObject query = new BasicDBObject(DBObjectToVariantConverter._ANNOT_FIELD, new BasicDBObject("$exists", true));
+        for (DBObject dbObject : dbAdaptor.getVariantsCollection().nativeQuery().find(query, new QueryOptions())) {
+            annotInfo.put(((Number) dbObject.get(DBObjectToVariantConverter.START_FIELD)).intValue(),
+                    (DBObject) dbObject.get(DBObjectToVariantConverter._ANNOT_FIELD));
+        }
+        return annotInfo;
+    }
+
     @SuppressWarnings("unchecked")
     public MongoDBVariantWriteResult loadFile1() throws StorageManagerException {
         VariantMongoDBWriter mongoDBWriter;
@@ -229,6 +516,8 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
         StudyEntry sourceEntry;
         mongoDBWriter = new VariantMongoDBWriter(fileId1, studyConfiguration, dbAdaptor, true, false);
         mongoDBWriter.setThreadSynchronizationBoolean(new AtomicBoolean(false));
+        mongoDBWriter.setPrefetchIds(prefetchIds);
+        mongoDBWriter.setFillGapsParallel(fillGapsParallel);
         mongoDBWriter.open();
         mongoDBWriter.pre();
 
@@ -273,6 +562,8 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
         StudyEntry sourceEntry;
         mongoDBWriter = new VariantMongoDBWriter(fileId2, studyConfiguration2, dbAdaptor, true, false);
         mongoDBWriter.setThreadSynchronizationBoolean(new AtomicBoolean(false));
+        mongoDBWriter.setPrefetchIds(prefetchIds);
+        mongoDBWriter.setFillGapsParallel(fillGapsParallel);
         mongoDBWriter.open();
         mongoDBWriter.pre();
 
@@ -308,6 +599,8 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
         StudyEntry sourceEntry;
         mongoDBWriter = new VariantMongoDBWriter(fileId3, studyConfiguration2, dbAdaptor, true, false);
         mongoDBWriter.setThreadSynchronizationBoolean(new AtomicBoolean(false));
+        mongoDBWriter.setPrefetchIds(prefetchIds);
+        mongoDBWriter.setFillGapsParallel(fillGapsParallel);
         mongoDBWriter.open();
         mongoDBWriter.pre();
 
@@ -353,6 +646,8 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
         StudyEntry sourceEntry;
         mongoDBWriter = new VariantMongoDBWriter(fileId1, studyConfiguration, dbAdaptor, true, false);
         mongoDBWriter.setThreadSynchronizationBoolean(new AtomicBoolean(false));
+        mongoDBWriter.setPrefetchIds(prefetchIds);
+        mongoDBWriter.setFillGapsParallel(fillGapsParallel);
         mongoDBWriter.open();
         mongoDBWriter.pre();
 
@@ -414,4 +709,10 @@ public class VariantMongoDBWriterTest implements MongoVariantStorageManagerTestU
         studyConfiguration.getIndexedFiles().add(fileId1);
     }
 
+    @Test
+    public void testInsertSameVariantTwicePrefetchIds() throws StorageManagerException {
+        prefetchIds = true;
+        testInsertSameVariantTwice();
+    }
+
 }